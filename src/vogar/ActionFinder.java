@@ -18,52 +18,109 @@ package vogar;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
 /**
  * Handles finding actions to perform, given files and classes.
+ *
+ * <p>Directories are walked in parallel, with a task per directory, and each
+ * action is passed to the listener as soon as it is found.
  */
 public final class ActionFinder {
     private final Log log;
-    private final Map<String, Action> actions;
-    private final Map<String, Outcome> outcomes;
+    private final DotJavaFileCache dotJavaFileCache;
+    private final Listener listener;
+
+    /**
+     * Receives the actions that are found. This is called by multiple
+     * threads, in no particular order.
+     */
+    public interface Listener {
+        /**
+         * @param outcome the action's outcome if it can't be run, or null.
+         */
+        void actionFound(Action action, Outcome outcome);
+    }
 
-    public ActionFinder(Log log, Map<String, Action> actions, Map<String, Outcome> outcomes) {
+    public ActionFinder(Log log, DotJavaFileCache dotJavaFileCache, Listener listener) {
         this.log = log;
-        this.actions = actions;
-        this.outcomes = outcomes;
+        this.dotJavaFileCache = dotJavaFileCache;
+        this.listener = listener;
     }
 
     public void findActions(File file) {
-        findActionsRecursive(file, 0);
+        ForkJoinPool pool = new ForkJoinPool();
+        try {
+            pool.invoke(new FindActionsTask(file, 0));
+        } finally {
+            pool.shutdown();
+        }
     }
 
-    private void findActionsRecursive(File file, int depth) {
-        if (file.isDirectory()) {
-            int size = actions.size();
-            for (File child : file.listFiles()) {
-                findActionsRecursive(child, depth + 1);
+    /**
+     * Finds the actions in a file or directory, and returns how many there
+     * were.
+     */
+    @SuppressWarnings("serial")
+    private class FindActionsTask extends RecursiveTask<Integer> {
+        private final File file;
+        private final int depth;
+
+        FindActionsTask(File file, int depth) {
+            this.file = file;
+            this.depth = depth;
+        }
+
+        @Override protected Integer compute() {
+            if (!file.isDirectory()) {
+                // Don't try to treat this file as a class unless it resembles a .java file
+                if (!matches(file)) {
+                    return 0;
+                }
+                findAction(file);
+                return 1;
+            }
+
+            File[] children = file.listFiles();
+            if (children == null) {
+                return 0;
+            }
+            List<FindActionsTask> directories = new ArrayList<FindActionsTask>();
+            int count = 0;
+            for (File child : children) {
+                if (child.isDirectory()) {
+                    FindActionsTask directory = new FindActionsTask(child, depth + 1);
+                    directory.fork();
+                    directories.add(directory);
+                } else if (matches(child)) {
+                    findAction(child);
+                    count++;
+                }
+            }
+            for (FindActionsTask directory : directories) {
+                count += directory.join();
             }
             if (depth < 3) {
-                log.verbose("found " + (actions.size() - size) + " actions in " + file);
+                log.verbose("found " + count + " actions in " + file);
             }
-            return;
-        }
-
-        // Don't try to treat this file as a class unless it resembles a .java file
-        if (!matches(file)) {
-            return;
+            return count;
         }
+    }
 
+    private void findAction(File file) {
+        Action action;
         try {
-            Action action = fileToAction(file);
-            actions.put(action.getName(), action);
+            action = fileToAction(file);
         } catch (IllegalArgumentException e) {
             String actionName = Action.nameForJavaFile(file);
-            Action action = new Action(actionName, null, null, null, file);
-            actions.put(actionName, action);
-            outcomes.put(actionName, new Outcome(actionName, Result.UNSUPPORTED, e));
+            action = new Action(actionName, null, null, null, file);
+            listener.actionFound(action, new Outcome(actionName, Result.UNSUPPORTED, e));
+            return;
         }
+        listener.actionFound(action, null);
     }
 
     private boolean matches(File file) {
@@ -75,7 +132,7 @@ public final class ActionFinder {
      */
     private Action fileToAction(File javaFile) {
         try {
-            DotJavaFile dotJavaFile = DotJavaFile.parse(javaFile);
+            DotJavaFile dotJavaFile = dotJavaFileCache.parse(javaFile);
             File resourcesDir = dotJavaFile.isJtreg() ? javaFile.getParentFile() : null;
             return new Action(dotJavaFile.getActionName(), dotJavaFile.getClassName(), resourcesDir,
                     getSourcePath(javaFile, dotJavaFile.getClassName()), javaFile);
@@ -0,0 +1,65 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package vogar;
+
+/**
+ * A part of a package action that runs in a VM of its own: the classes whose
+ * names sort from {@code firstClass}, inclusive, to {@code endClass},
+ * exclusive. The first shard of an action is open below and the last open
+ * above, so between them the shards cover every class the target finds.
+ */
+public final class ActionShard {
+
+    private final int index;
+    private final int count;
+    private final String firstClass;
+    private final String endClass;
+
+    public ActionShard(int index, int count, String firstClass, String endClass) {
+        this.index = index;
+        this.count = count;
+        this.firstClass = firstClass;
+        this.endClass = endClass;
+    }
+
+    /**
+     * Returns the index of this shard among the shards of its action, from 0.
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * Returns the first class of this shard, or null if it starts at the
+     * action's first class.
+     */
+    public String getFirstClass() {
+        return firstClass;
+    }
+
+    /**
+     * Returns the first class of the next shard, or null if this is the last
+     * shard.
+     */
+    public String getEndClass() {
+        return endClass;
+    }
+
+    @Override public String toString() {
+        return "shard " + (index + 1) + " of " + count;
+    }
+}
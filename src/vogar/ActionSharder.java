@@ -0,0 +1,206 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package vogar;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Splits package actions into shards that run concurrently, each in a VM of
+ * its own, so that one big package doesn't keep the other action slots idle.
+ *
+ * <p>A package's classes are found on the host classpath, which the target's
+ * classpath is built from. They are split into runs of consecutive classes,
+ * balanced by how long each class took last time.
+ */
+final class ActionSharder {
+
+    private static final String DOT_CLASS = ".class";
+
+    private final Log log;
+    private final Classpath classpath;
+    private final OutcomeStore outcomeStore;
+    private final int maxShards;
+
+    /** The top-level classes on the classpath, or null until it is indexed. */
+    private SortedSet<String> classNames;
+
+    ActionSharder(Log log, Classpath classpath, OutcomeStore outcomeStore, int maxShards) {
+        this.log = log;
+        this.classpath = classpath;
+        this.outcomeStore = outcomeStore;
+        this.maxShards = maxShards;
+    }
+
+    /**
+     * Returns the shards to run {@code action} in, or an empty list if it
+     * should run in a single VM. Only actions naming a package of at least
+     * two classes are sharded.
+     */
+    public List<ActionShard> shard(Action action) {
+        String packageName = action.getTargetClass();
+        if (maxShards < 2 || action.getJavaFile() != null || packageName.contains("#")) {
+            return Collections.emptyList();
+        }
+
+        // The same classes the target runs, in the same order.
+        List<String> classes = new ArrayList<String>();
+        for (String className : classNames().subSet(packageName + ".", packageName + "/")) {
+            if (!className.endsWith(".AllTests")) {
+                classes.add(className);
+            }
+        }
+        if (classes.size() < 2) {
+            return Collections.emptyList();
+        }
+
+        long[] weights = estimateWallTimes(packageName, classes);
+        long total = 0;
+        for (long weight : weights) {
+            total += weight;
+        }
+
+        int shardCount = Math.min(maxShards, classes.size());
+        List<ActionShard> result = new ArrayList<ActionShard>();
+        int start = 0;
+        long cumulative = 0;
+        for (int k = 0; k < shardCount; k++) {
+            int end = start;
+            if (k == shardCount - 1) {
+                end = classes.size();
+            } else {
+                double target = (double) total * (k + 1) / shardCount;
+                // Take each class whose midpoint falls before the target, but
+                // at least one, and leave at least one for each later shard.
+                int lastEnd = classes.size() - (shardCount - k - 1);
+                do {
+                    cumulative += weights[end];
+                    end++;
+                } while (end < lastEnd && cumulative + weights[end] / 2.0 < target);
+            }
+            result.add(new ActionShard(k, shardCount,
+                    k == 0 ? null : classes.get(start),
+                    end == classes.size() ? null : classes.get(end)));
+            start = end;
+        }
+        return result;
+    }
+
+    /**
+     * Returns how long each of {@code classes} is expected to take, from the
+     * outcomes of their tests in the previous run. Classes without history are
+     * expected to take as long as the average class with history.
+     */
+    private long[] estimateWallTimes(String packageName, List<String> classes) {
+        Map<String, Long> classWallTimes = new HashMap<String, Long>();
+        for (Map.Entry<String, Long> entry
+                : outcomeStore.getLatestWallTimeNanos(packageName + ".").entrySet()) {
+            String className = topLevelClassName(entry.getKey());
+            Long sum = classWallTimes.get(className);
+            classWallTimes.put(className, (sum != null ? sum : 0L) + entry.getValue());
+        }
+
+        long[] result = new long[classes.size()];
+        long knownTotal = 0;
+        int knownCount = 0;
+        for (int i = 0; i < result.length; i++) {
+            Long wallTime = classWallTimes.get(classes.get(i));
+            if (wallTime != null) {
+                result[i] = Math.max(wallTime, 1);
+                knownTotal += result[i];
+                knownCount++;
+            }
+        }
+        long unknown = knownCount > 0 ? Math.max(knownTotal / knownCount, 1) : 1;
+        for (int i = 0; i < result.length; i++) {
+            if (result[i] == 0) {
+                result[i] = unknown;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the top-level class of an outcome, such as {@code a.b.C} for
+     * {@code a.b.C$D#testE}.
+     */
+    private static String topLevelClassName(String outcomeName) {
+        int hash = outcomeName.indexOf('#');
+        String className = hash != -1 ? outcomeName.substring(0, hash) : outcomeName;
+        int dollar = className.indexOf('$', className.lastIndexOf('.') + 1);
+        return dollar != -1 ? className.substring(0, dollar) : className;
+    }
+
+    private synchronized SortedSet<String> classNames() {
+        if (classNames == null) {
+            classNames = new TreeSet<String>();
+            for (File element : classpath.getElements()) {
+                try {
+                    if (element.isDirectory()) {
+                        addClassNames(element, "", classNames);
+                    } else if (element.isFile()) {
+                        addClassNames(element, classNames);
+                    }
+                } catch (IOException e) {
+                    log.verbose("Failed to list the classes in " + element + ": " + e);
+                }
+            }
+        }
+        return classNames;
+    }
+
+    private static void addClassNames(File jar, SortedSet<String> result) throws IOException {
+        ZipFile zipFile = new ZipFile(jar);
+        try {
+            for (Enumeration<? extends ZipEntry> e = zipFile.entries(); e.hasMoreElements(); ) {
+                String name = e.nextElement().getName();
+                if (name.endsWith(DOT_CLASS) && name.indexOf('$') == -1) {
+                    result.add(name.substring(0, name.length() - DOT_CLASS.length())
+                            .replace('/', '.'));
+                }
+            }
+        } finally {
+            zipFile.close();
+        }
+    }
+
+    private static void addClassNames(File directory, String packagePrefix,
+            SortedSet<String> result) {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            String name = file.getName();
+            if (file.isDirectory()) {
+                addClassNames(file, packagePrefix + name + ".", result);
+            } else if (name.endsWith(DOT_CLASS) && name.indexOf('$') == -1) {
+                result.add(packagePrefix + name.substring(0, name.length() - DOT_CLASS.length()));
+            }
+        }
+    }
+}
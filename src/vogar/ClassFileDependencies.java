@@ -0,0 +1,169 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package vogar;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Finds the classes that a class file refers to, by reading the class
+ * references in its constant pool and the types in its field and method
+ * descriptors.
+ */
+public final class ClassFileDependencies {
+
+    private static final int CONSTANT_UTF8 = 1;
+    private static final int CONSTANT_INTEGER = 3;
+    private static final int CONSTANT_FLOAT = 4;
+    private static final int CONSTANT_LONG = 5;
+    private static final int CONSTANT_DOUBLE = 6;
+    private static final int CONSTANT_CLASS = 7;
+    private static final int CONSTANT_STRING = 8;
+    private static final int CONSTANT_FIELDREF = 9;
+    private static final int CONSTANT_METHODREF = 10;
+    private static final int CONSTANT_INTERFACE_METHODREF = 11;
+    private static final int CONSTANT_NAME_AND_TYPE = 12;
+    private static final int CONSTANT_METHOD_HANDLE = 15;
+    private static final int CONSTANT_METHOD_TYPE = 16;
+    private static final int CONSTANT_DYNAMIC = 17;
+    private static final int CONSTANT_INVOKE_DYNAMIC = 18;
+    private static final int CONSTANT_MODULE = 19;
+    private static final int CONSTANT_PACKAGE = 20;
+
+    private ClassFileDependencies() {}
+
+    /**
+     * Returns the binary names, like {@code java.util.Map$Entry}, of the
+     * classes referred to by {@code classFile}, excluding the class itself.
+     *
+     * @throws IOException if {@code classFile} is not a valid class file.
+     */
+    public static Set<String> referencedClasses(byte[] classFile) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(classFile));
+        if (in.readInt() != 0xcafebabe) {
+            throw new IOException("Not a class file");
+        }
+        in.readUnsignedShort(); // minor version
+        in.readUnsignedShort(); // major version
+
+        int constantPoolCount = in.readUnsignedShort();
+        String[] utf8s = new String[constantPoolCount];
+        int[] classNameIndexes = new int[constantPoolCount];
+        List<Integer> descriptorIndexes = new ArrayList<Integer>();
+        for (int i = 1; i < constantPoolCount; i++) {
+            int tag = in.readUnsignedByte();
+            switch (tag) {
+                case CONSTANT_UTF8:
+                    utf8s[i] = in.readUTF();
+                    break;
+                case CONSTANT_CLASS:
+                    classNameIndexes[i] = in.readUnsignedShort();
+                    break;
+                case CONSTANT_NAME_AND_TYPE:
+                    in.readUnsignedShort(); // name
+                    descriptorIndexes.add(in.readUnsignedShort());
+                    break;
+                case CONSTANT_METHOD_TYPE:
+                    descriptorIndexes.add(in.readUnsignedShort());
+                    break;
+                case CONSTANT_STRING:
+                case CONSTANT_MODULE:
+                case CONSTANT_PACKAGE:
+                    in.skipBytes(2);
+                    break;
+                case CONSTANT_METHOD_HANDLE:
+                    in.skipBytes(3);
+                    break;
+                case CONSTANT_INTEGER:
+                case CONSTANT_FLOAT:
+                case CONSTANT_FIELDREF:
+                case CONSTANT_METHODREF:
+                case CONSTANT_INTERFACE_METHODREF:
+                case CONSTANT_DYNAMIC:
+                case CONSTANT_INVOKE_DYNAMIC:
+                    in.skipBytes(4);
+                    break;
+                case CONSTANT_LONG:
+                case CONSTANT_DOUBLE:
+                    in.skipBytes(8);
+                    i++; // these take two constant pool entries
+                    break;
+                default:
+                    throw new IOException("Unexpected constant pool tag " + tag);
+            }
+        }
+
+        in.readUnsignedShort(); // access flags
+        int thisClassIndex = in.readUnsignedShort();
+        in.readUnsignedShort(); // super class, also in classNameIndexes
+        in.skipBytes(2 * in.readUnsignedShort()); // interfaces, also in classNameIndexes
+        for (int members = 0; members < 2; members++) { // fields, then methods
+            for (int i = 0, count = in.readUnsignedShort(); i < count; i++) {
+                in.readUnsignedShort(); // access flags
+                in.readUnsignedShort(); // name
+                descriptorIndexes.add(in.readUnsignedShort());
+                skipAttributes(in);
+            }
+        }
+
+        Set<String> result = new TreeSet<String>();
+        for (int index : classNameIndexes) {
+            if (index == 0) {
+                continue;
+            }
+            String name = utf8s[index];
+            if (name.startsWith("[")) {
+                addDescriptorTypes(result, name);
+            } else {
+                result.add(name.replace('/', '.'));
+            }
+        }
+        for (int index : descriptorIndexes) {
+            addDescriptorTypes(result, utf8s[index]);
+        }
+        result.remove(utf8s[classNameIndexes[thisClassIndex]].replace('/', '.'));
+        return result;
+    }
+
+    private static void skipAttributes(DataInputStream in) throws IOException {
+        for (int i = 0, count = in.readUnsignedShort(); i < count; i++) {
+            in.readUnsignedShort(); // name
+            in.skipBytes(in.readInt());
+        }
+    }
+
+    /**
+     * Adds the class types mentioned in a field or method descriptor such as
+     * {@code (ILjava/lang/String;)[Ljava/util/List;}.
+     */
+    private static void addDescriptorTypes(Set<String> result, String descriptor) {
+        int start = descriptor.indexOf('L');
+        while (start != -1) {
+            int end = descriptor.indexOf(';', start);
+            if (end == -1) {
+                return;
+            }
+            result.add(descriptor.substring(start + 1, end).replace('/', '.'));
+            start = descriptor.indexOf('L', end);
+        }
+    }
+}
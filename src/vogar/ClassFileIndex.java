@@ -16,95 +16,167 @@
 
 package vogar;
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
+import com.google.common.base.Charsets;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileReader;
-import java.io.FileWriter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import vogar.commands.Mkdir;
-import vogar.util.Strings;
+import vogar.util.Threads;
 
 /**
  * Indexes the locations of commonly used classes to assist in constructing correct Vogar commands.
+ *
+ * <p>The index is stored as a memory-mapped file, so looking up a name reads
+ * only the parts of the index that a binary search visits. The file holds
+ * <ul>
+ *   <li>a header: a magic number, the format version, and the number of
+ *       jars and of names;
+ *   <li>the jars, each as its path, length and modification time;
+ *   <li>the names of classes and packages in sorted order, each followed by
+ *       the ids of the jars that contain it;
+ *   <li>the offset of each name, so names can be found by binary search.
+ * </ul>
+ *
+ * <p>When the index expires, only the jars that were added or whose length or
+ * modification time changed are read again.
  */
 public final class ClassFileIndex {
 
     /** how many milliseconds before the cache expires and we reindex jars */
     private static final long CACHE_EXPIRY = 86400000; // = one day
 
+    private static final int MAGIC = 0x76434649; // "vCFI"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    /** Name lengths and jar ids are stored as unsigned shorts. */
+    private static final int MAX_UNSIGNED_SHORT = 0xffff;
+
     /** regular expressions representing things that make sense on the classpath */
     private static final List<String> JAR_PATTERN_STRINGS = Arrays.asList(
             "classes\\.jar"
     );
-    /** regular expressions representing failures probably due to things missing on the classpath */
-    private static final List<String> FAILURE_PATTERN_STRINGS = Arrays.asList(
-            ".*package (.*) does not exist.*",
-            ".*import (.*);.*",
-            ".*ClassNotFoundException: (\\S*).*",
-            ".*NoClassDefFoundError: Could not initialize class (\\S*).*"
-    );
     private static final List<Pattern> JAR_PATTERNS = new ArrayList<Pattern>();
     static {
         for (String patternString : JAR_PATTERN_STRINGS) {
             JAR_PATTERNS.add(Pattern.compile(patternString));
         }
     }
-    private static final List<Pattern> FAILURE_PATTERNS = new ArrayList<Pattern>();
-    static {
-        for (String patternString : FAILURE_PATTERN_STRINGS) {
-            // DOTALL flag allows proper handling of multiline strings
-            FAILURE_PATTERNS.add(Pattern.compile(patternString, Pattern.DOTALL));
-        }
-    }
+
+    /**
+     * Text in failure output that is followed by the name of a package or
+     * class that is probably missing from the classpath. Each is paired with
+     * the text that ends the name, or null if the name ends at whitespace.
+     */
+    private static final String[][] MISSING_NAME_MARKERS = {
+            { "package ", " does not exist" },
+            { "import ", ";" },
+            { "ClassNotFoundException: ", null },
+            { "NoClassDefFoundError: Could not initialize class ", null },
+    };
 
     private final Log log;
     private final Mkdir mkdir;
-    private final String DELIMITER = "\t";
-    private final File classFileIndexFile =
-            new File(System.getProperty("user.home"), ".vogar/classfileindex");
-    private final Map<String, Set<File>> classFileMap = new HashMap<String, Set<File>>();
+    private final File classFileIndexFile;
     private final List<File> jarSearchDirs;
 
+    /** The index file, or null if it hasn't been created. */
+    private volatile MappedIndex index;
+
     public ClassFileIndex(Log log, Mkdir mkdir, List<File> jarSearchDirs) {
+        this(log, mkdir, jarSearchDirs,
+                new File(System.getProperty("user.home"), ".vogar/classfileindex"));
+    }
+
+    ClassFileIndex(Log log, Mkdir mkdir, List<File> jarSearchDirs, File classFileIndexFile) {
         this.log = log;
         this.mkdir = mkdir;
         this.jarSearchDirs = jarSearchDirs;
+        this.classFileIndexFile = classFileIndexFile;
     }
 
     public Set<File> suggestClasspaths(String testOutput) {
         Set<File> suggestedClasspaths = new HashSet<File>();
+        MappedIndex index = this.index;
+        if (index == null) {
+            return suggestedClasspaths;
+        }
 
-        for (Pattern pattern : FAILURE_PATTERNS) {
-            Matcher matcher = pattern.matcher(testOutput);
-            if (!matcher.matches()) {
-                continue;
-            }
+        for (String missingPackageOrClass : missingNames(testOutput)) {
+            index.addJars(missingPackageOrClass, suggestedClasspaths);
+        }
+        return suggestedClasspaths;
+    }
 
-            for (int i = 1; i <= matcher.groupCount(); i++) {
-                String missingPackageOrClass = matcher.group(i);
-                Set<File> containingJars = classFileMap.get(missingPackageOrClass);
-                if (containingJars != null) {
-                    suggestedClasspaths.addAll(containingJars);
+    /**
+     * Returns the names of the packages and classes that {@code output} says
+     * are missing, in a single pass over its lines.
+     */
+    static Set<String> missingNames(String output) {
+        Set<String> result = new LinkedHashSet<String>();
+        int lineStart = 0;
+        while (lineStart < output.length()) {
+            int lineEnd = output.indexOf('\n', lineStart);
+            if (lineEnd == -1) {
+                lineEnd = output.length();
+            }
+            // Search within the line, so that no search runs on to later lines.
+            String line = output.substring(lineStart, lineEnd);
+            for (String[] marker : MISSING_NAME_MARKERS) {
+                int markerStart = line.indexOf(marker[0]);
+                while (markerStart != -1) {
+                    int nameStart = markerStart + marker[0].length();
+                    int nameEnd = marker[1] != null
+                            ? line.indexOf(marker[1], nameStart)
+                            : endOfToken(line, nameStart);
+                    if (nameEnd == -1) {
+                        break;
+                    }
+                    String name = line.substring(nameStart, nameEnd).trim();
+                    if (!name.isEmpty()) {
+                        result.add(name);
+                    }
+                    markerStart = line.indexOf(marker[0], nameEnd);
                 }
             }
+            lineStart = lineEnd + 1;
         }
+        return result;
+    }
 
-        return suggestedClasspaths;
+    private static int endOfToken(String s, int start) {
+        int end = start;
+        while (end < s.length() && !Character.isWhitespace(s.charAt(end))) {
+            end++;
+        }
+        return end;
     }
 
     /**
@@ -112,26 +184,36 @@ public final class ClassFileIndex {
      *
      * If this has already been done, instead just use the cached version in .vogar
      */
-    public void createIndex() {
-        if (!classFileMap.isEmpty()) {
+    public synchronized void createIndex() {
+        if (index != null) {
             return;
         }
 
+        MappedIndex previous = null;
         if (classFileIndexFile.exists()) {
+            try {
+                previous = MappedIndex.open(classFileIndexFile);
+            } catch (IOException e) {
+                log.verbose("discarding unreadable class file index: " + e.getMessage());
+            }
+        }
+
+        if (previous != null) {
             long lastModified = classFileIndexFile.lastModified();
             long curTime = new Date().getTime();
             boolean cacheExpired = lastModified < curTime - CACHE_EXPIRY;
             if (cacheExpired) {
-                log.verbose("class file index expired, rebuilding");
+                log.verbose("class file index expired, updating");
             } else {
-                readIndexCache();
+                log.verbose("using class file index cache");
+                index = previous;
                 return;
             }
         }
 
         log.verbose("building class file index");
 
-        // Create index
+        Set<File> jarFiles = new TreeSet<File>();
         for (File jarSearchDir : jarSearchDirs) {
             if (!jarSearchDir.exists()) {
                 log.warn("directory \"" + jarSearchDir + "\" in jar paths doesn't exist");
@@ -140,45 +222,109 @@ public final class ClassFileIndex {
 
             // traverse the jar directory, looking for files called ending in .jar
             log.verbose("looking in " + jarSearchDir + " for .jar files");
-
-            Set<File> jarFiles = new HashSet<File>();
             getJarFiles(jarFiles, jarSearchDir);
-            for (File file : jarFiles) {
-                indexJarFile(file);
-            }
         }
 
-        // save for use on subsequent runs
-        writeIndexCache();
+        List<Jar> jars = new ArrayList<Jar>();
+        for (File file : jarFiles) {
+            jars.add(new Jar(file.getPath(), file.length(), file.lastModified()));
+        }
+
+        try {
+            writeIndex(jars, indexJars(jars, previous));
+            index = MappedIndex.open(classFileIndexFile);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
     }
 
-    private void indexJarFile(File file) {
+    /**
+     * Returns the names in each jar, by jar id. The names of jars that are
+     * unchanged since {@code previous} was written are taken from it; the
+     * other jars are read in parallel.
+     */
+    private List<Set<String>> indexJars(List<Jar> jars, MappedIndex previous)
+            throws IOException {
+        Map<Jar, Set<String>> reused = previous != null
+                ? previous.namesByJar()
+                : new HashMap<Jar, Set<String>>();
+
+        ExecutorService executor = Threads.threadPerCpuExecutor(log, "ClassFileIndex");
         try {
-            JarFile jarFile = new JarFile(file);
-            for (Enumeration<JarEntry> e = jarFile.entries(); e.hasMoreElements(); ) {
-                JarEntry jarEntry = e.nextElement();
-
-                // change paths into classes/packages, strip trailing period, and strip
-                // trailing .class extension
-                String classPath = jarEntry.getName()
-                        .replaceAll("/", ".")
-                        .replaceFirst("\\.$", "")
-                        .replaceFirst("\\.class$", "");
-                if (classFileMap.containsKey(classPath)) {
-                    classFileMap.get(classPath).add(file);
+            List<Future<Set<String>>> futures = new ArrayList<Future<Set<String>>>();
+            for (final Jar jar : jars) {
+                if (reused.containsKey(jar)) {
+                    futures.add(null);
+                    continue;
+                }
+                futures.add(executor.submit(new Callable<Set<String>>() {
+                    @Override public Set<String> call() {
+                        return indexJarFile(new File(jar.path));
+                    }
+                }));
+            }
+
+            List<Set<String>> result = new ArrayList<Set<String>>();
+            int reindexed = 0;
+            for (int i = 0; i < jars.size(); i++) {
+                Future<Set<String>> future = futures.get(i);
+                if (future == null) {
+                    result.add(reused.get(jars.get(i)));
                 } else {
-                    Set<File> classPathJars = new HashSet<File>();
-                    classPathJars.add(file);
-                    classFileMap.put(classPath, classPathJars);
+                    result.add(future.get());
+                    reindexed++;
                 }
             }
+            log.verbose("indexed " + reindexed + " of " + jars.size() + " jars");
+            return result;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while indexing jars", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private Set<String> indexJarFile(File file) {
+        Set<String> result = new HashSet<String>();
+        try {
+            JarFile jarFile = new JarFile(file);
+            try {
+                for (Enumeration<JarEntry> e = jarFile.entries(); e.hasMoreElements(); ) {
+                    result.add(toClassOrPackageName(e.nextElement().getName()));
+                }
+            } finally {
+                jarFile.close();
+            }
         } catch (IOException e) {
             log.warn("failed to read " + file + ": " + e.getMessage());
         }
+        return result;
+    }
+
+    /**
+     * Changes a jar entry's path into a class or package name, by replacing
+     * slashes with periods, and stripping a trailing period and then a
+     * trailing .class extension.
+     */
+    static String toClassOrPackageName(String entryName) {
+        String name = entryName.replace('/', '.');
+        if (name.endsWith(".")) {
+            name = name.substring(0, name.length() - 1);
+        }
+        if (name.endsWith(".class")) {
+            name = name.substring(0, name.length() - ".class".length());
+        }
+        return name;
     }
 
     private void getJarFiles(Set<File> jarFiles, File dir) {
-        List<File> files = Arrays.asList(dir.listFiles());
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
         for (File file : files) {
             if (file.isDirectory() && file.exists() && file.canRead()) {
                 getJarFiles(jarFiles, file);
@@ -194,54 +340,197 @@ public final class ClassFileIndex {
         }
     }
 
-    private void writeIndexCache() {
+    /**
+     * Writes the index to a temporary file and then moves it into place, so
+     * that concurrent readers see either the old index or the new one.
+     */
+    private void writeIndex(List<Jar> jars, List<Set<String>> namesByJar) throws IOException {
         log.verbose("writing index cache");
+        if (jars.size() > MAX_UNSIGNED_SHORT) {
+            throw new IOException("too many jars to index: " + jars.size());
+        }
+
+        Map<String, List<Integer>> jarIdsByName = new TreeMap<String, List<Integer>>();
+        for (int jarId = 0; jarId < jars.size(); jarId++) {
+            for (String name : namesByJar.get(jarId)) {
+                if (name.length() * 3 > MAX_UNSIGNED_SHORT) {
+                    continue; // too long to store, and not a plausible class name
+                }
+                List<Integer> jarIds = jarIdsByName.get(name);
+                if (jarIds == null) {
+                    jarIds = new ArrayList<Integer>(1);
+                    jarIdsByName.put(name, jarIds);
+                }
+                jarIds.add(jarId);
+            }
+        }
 
-        BufferedWriter indexCacheWriter;
         mkdir.mkdirs(classFileIndexFile.getParentFile());
+        File temp = new File(classFileIndexFile.getPath() + ".tmp");
+        DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(temp)));
         try {
-            indexCacheWriter = new BufferedWriter(new FileWriter(classFileIndexFile));
-            for (Map.Entry<String, Set<File>> entry : classFileMap.entrySet()) {
-                indexCacheWriter.write(entry.getKey() + DELIMITER
-                        + Strings.join(entry.getValue(), DELIMITER));
-                indexCacheWriter.newLine();
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(jars.size());
+            out.writeInt(jarIdsByName.size());
+            for (Jar jar : jars) {
+                out.writeUTF(jar.path);
+                out.writeLong(jar.length);
+                out.writeLong(jar.lastModified);
             }
-            indexCacheWriter.close();
-        } catch (IOException e) {
-            throw new RuntimeException(e);
+
+            int[] offsets = new int[jarIdsByName.size()];
+            int n = 0;
+            for (Map.Entry<String, List<Integer>> entry : jarIdsByName.entrySet()) {
+                offsets[n++] = out.size();
+                byte[] name = entry.getKey().getBytes(Charsets.UTF_8);
+                out.writeShort(name.length);
+                out.write(name);
+                out.writeShort(entry.getValue().size());
+                for (int jarId : entry.getValue()) {
+                    out.writeShort(jarId);
+                }
+            }
+            for (int offset : offsets) {
+                out.writeInt(offset);
+            }
+        } finally {
+            out.close();
+        }
+
+        if (!temp.renameTo(classFileIndexFile)) {
+            throw new IOException("Failed to rename " + temp + " to " + classFileIndexFile);
         }
     }
 
-    private void readIndexCache() {
-        log.verbose("reading class file index cache");
+    /** A jar, identified by its path, length and modification time. */
+    private static final class Jar {
+        final String path;
+        final long length;
+        final long lastModified;
 
-        BufferedReader reader;
-        try {
-            reader = new BufferedReader(new FileReader(classFileIndexFile));
-        } catch (FileNotFoundException e) {
-            throw new RuntimeException(e);
+        Jar(String path, long length, long lastModified) {
+            this.path = path;
+            this.length = length;
+            this.lastModified = lastModified;
         }
-        try {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                line = line.trim();
-
-                // Each line is a mapping of a class, package or file to the .jar files that
-                // contain its definition within VOGAR_JAR_PATH. Each component is separated
-                // by a delimiter.
-                String[] parts = line.split(DELIMITER);
-                if (parts.length < 2) {
-                    throw new RuntimeException("classfileindex contains invalid line: " + line);
+
+        @Override public boolean equals(Object o) {
+            return o instanceof Jar
+                    && path.equals(((Jar) o).path)
+                    && length == ((Jar) o).length
+                    && lastModified == ((Jar) o).lastModified;
+        }
+
+        @Override public int hashCode() {
+            return path.hashCode() * 31 + (int) (length ^ lastModified);
+        }
+    }
+
+    /**
+     * A read-only view of an index file. Only the jar table is read into
+     * memory; names are looked up in the mapped file.
+     */
+    private static final class MappedIndex {
+        private final Jar[] jars;
+        private final MappedByteBuffer buffer;
+        private final int nameCount;
+        private final int offsetsStart;
+
+        private MappedIndex(Jar[] jars, MappedByteBuffer buffer, int nameCount) {
+            this.jars = jars;
+            this.buffer = buffer;
+            this.nameCount = nameCount;
+            this.offsetsStart = buffer.capacity() - 4 * nameCount;
+        }
+
+        static MappedIndex open(File file) throws IOException {
+            Jar[] jars;
+            int nameCount;
+            DataInputStream in = new DataInputStream(
+                    new BufferedInputStream(new FileInputStream(file)));
+            try {
+                if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                    throw new IOException("unexpected format");
                 }
-                String resource = parts[0];
-                Set<File> jarFiles = new HashSet<File>();
-                for (int i = 1; i < parts.length; i++) {
-                    jarFiles.add(new File(parts[i]));
+                jars = new Jar[in.readInt()];
+                nameCount = in.readInt();
+                for (int i = 0; i < jars.length; i++) {
+                    jars[i] = new Jar(in.readUTF(), in.readLong(), in.readLong());
                 }
-                classFileMap.put(resource, jarFiles);
+            } finally {
+                in.close();
             }
-        } catch (IOException e) {
-            throw new RuntimeException(e);
+
+            RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+            try {
+                FileChannel channel = randomAccessFile.getChannel();
+                if (channel.size() < HEADER_SIZE + 4L * nameCount) {
+                    throw new IOException("truncated");
+                }
+                // The mapping stays valid after the channel is closed.
+                return new MappedIndex(jars,
+                        channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), nameCount);
+            } finally {
+                randomAccessFile.close();
+            }
+        }
+
+        /**
+         * Adds the jars containing {@code name} to {@code result}.
+         */
+        void addJars(String name, Set<File> result) {
+            int low = 0;
+            int high = nameCount - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                int offset = buffer.getInt(offsetsStart + 4 * mid);
+                int comparison = readName(offset).compareTo(name);
+                if (comparison < 0) {
+                    low = mid + 1;
+                } else if (comparison > 0) {
+                    high = mid - 1;
+                } else {
+                    int jarIdsOffset = offset + 2 + (buffer.getShort(offset) & 0xffff);
+                    int count = buffer.getShort(jarIdsOffset) & 0xffff;
+                    for (int i = 0; i < count; i++) {
+                        int jarId = buffer.getShort(jarIdsOffset + 2 + 2 * i) & 0xffff;
+                        result.add(new File(jars[jarId].path));
+                    }
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Returns the names in each jar, by reading the whole index. This is
+         * used to carry unchanged jars over into a new index.
+         */
+        Map<Jar, Set<String>> namesByJar() {
+            Map<Jar, Set<String>> result = new HashMap<Jar, Set<String>>();
+            for (Jar jar : jars) {
+                result.put(jar, new HashSet<String>());
+            }
+            for (int n = 0; n < nameCount; n++) {
+                int offset = buffer.getInt(offsetsStart + 4 * n);
+                String name = readName(offset);
+                int jarIdsOffset = offset + 2 + (buffer.getShort(offset) & 0xffff);
+                int count = buffer.getShort(jarIdsOffset) & 0xffff;
+                for (int i = 0; i < count; i++) {
+                    int jarId = buffer.getShort(jarIdsOffset + 2 + 2 * i) & 0xffff;
+                    result.get(jars[jarId]).add(name);
+                }
+            }
+            return result;
+        }
+
+        private String readName(int offset) {
+            byte[] bytes = new byte[buffer.getShort(offset) & 0xffff];
+            for (int i = 0; i < bytes.length; i++) {
+                bytes[i] = buffer.get(offset + 2 + i);
+            }
+            return new String(bytes, Charsets.UTF_8);
         }
     }
 }
@@ -17,13 +17,20 @@
 package vogar;
 
 import com.google.common.collect.Lists;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import vogar.monitor.HostMonitor;
+import vogar.util.BoundedOutputBuffer;
+import vogar.util.ConsoleRenderer;
 import vogar.util.MarkResetConsole;
+import vogar.util.TimeUtilities;
 
 /**
  * Controls, formats and emits output to the command line. This class emits
@@ -34,28 +41,84 @@ import vogar.util.MarkResetConsole;
  *   <li><strong>Multiplexing</strong> buffers output until it is complete and
  *       then prints it completely.
  * </ul>
+ *
+ * <p>Output may be rendered on the calling thread, or handed to a {@link
+ * ConsoleRenderer} that renders it on a thread of its own. Each public method
+ * hands its work to {@link #render}, which does one or the other.
  */
 public abstract class Console implements Log {
     static final long DAY_MILLIS = 1000 * 60 * 60 * 24;
     static final long HOUR_MILLIS = 1000 * 60 * 60;
     static final long WARNING_HOURS = 12;
     static final long FAILURE_HOURS = 48;
+    static final int RENDERER_CAPACITY = 4096;
+    static final int RENDERER_FRAMES_PER_SECOND = 20;
 
     private boolean useColor;
     private boolean ansi;
     private boolean verbose;
     protected String indent;
+    protected int outputHeadChars = HostMonitor.DEFAULT_OUTPUT_CHARS;
+    protected int outputTailChars = HostMonitor.DEFAULT_OUTPUT_CHARS;
     protected CurrentLine currentLine = CurrentLine.NEW;
     protected final MarkResetConsole out = new MarkResetConsole(System.out);
     protected MarkResetConsole.Mark currentVerboseMark;
     protected MarkResetConsole.Mark currentStreamMark;
+    /** Renders output on a thread of its own, or null to render on the calling thread. */
+    private volatile ConsoleRenderer renderer;
 
     private Console() {}
 
+    /**
+     * Renders output on a thread of its own from now on, so that callers
+     * don't wait for each other or for the terminal.
+     */
+    public void startRenderer() {
+        ConsoleRenderer renderer =
+                new ConsoleRenderer(RENDERER_CAPACITY, RENDERER_FRAMES_PER_SECOND);
+        renderer.start();
+        this.renderer = renderer;
+    }
+
+    /**
+     * Renders all pending output, and then renders on the calling thread
+     * again.
+     */
+    public void stopRenderer() {
+        ConsoleRenderer renderer = this.renderer;
+        if (renderer != null) {
+            this.renderer = null;
+            renderer.stop();
+        }
+    }
+
+    /**
+     * Runs {@code event}, or hands it to the renderer thread if there is one.
+     *
+     * @param status true if the event only shows status that is overwritten
+     *     by whatever is printed next.
+     */
+    protected void render(Runnable event, boolean status) {
+        ConsoleRenderer renderer = this.renderer;
+        if (renderer != null && !renderer.isRendererThread()) {
+            renderer.submit(event, status);
+        } else {
+            event.run();
+        }
+    }
+
     public void setIndent(String indent) {
         this.indent = indent;
     }
 
+    /**
+     * Limits the output buffered for each outcome, for consoles that buffer it.
+     */
+    public void setOutputLimits(int outputHeadChars, int outputTailChars) {
+        this.outputHeadChars = outputHeadChars;
+        this.outputTailChars = outputTailChars;
+    }
+
     public void setUseColor(
       boolean useColor, int passColor, int skipColor, int failColor, int warnColor) {
         this.useColor = useColor;
@@ -78,7 +141,7 @@ public abstract class Console implements Log {
         return verbose;
     }
 
-    public synchronized void verbose(String s) {
+    public void verbose(final String s) {
         /*
          * terminal does't support overwriting output, so don't print
          * verbose message unless requested.
@@ -86,6 +149,15 @@ public abstract class Console implements Log {
         if (!verbose && !ansi) {
             return;
         }
+        // Unless verbose, the message is overwritten by whatever comes next.
+        render(new Runnable() {
+            @Override public void run() {
+                renderVerbose(s);
+            }
+        }, !verbose);
+    }
+
+    private synchronized void renderVerbose(String s) {
         /*
          * When writing verbose output in the middle of streamed output, keep
          * the streamed mark location. That way we can remove the verbose output
@@ -102,14 +174,23 @@ public abstract class Console implements Log {
         currentLine = CurrentLine.VERBOSE;
     }
 
-    public synchronized void warn(String message) {
+    public void warn(String message) {
         warn(message, Collections.<String>emptyList());
     }
 
     /**
      * Warns, and also puts a list of strings afterwards.
      */
-    public synchronized void warn(String message, List<String> list) {
+    public void warn(final String message, List<String> list) {
+        final List<String> items = new ArrayList<String>(list);
+        render(new Runnable() {
+            @Override public void run() {
+                renderWarn(message, items);
+            }
+        }, false);
+    }
+
+    private synchronized void renderWarn(String message, List<String> list) {
         newLine();
         out.println(colorString("Warning: " + message, Color.WARN));
         for (String item : list) {
@@ -117,12 +198,28 @@ public abstract class Console implements Log {
         }
     }
 
-    public synchronized void info(String s) {
+    public void info(final String s) {
+        render(new Runnable() {
+            @Override public void run() {
+                renderInfo(s);
+            }
+        }, false);
+    }
+
+    private synchronized void renderInfo(String s) {
         newLine();
         out.println(s);
     }
 
-    public synchronized void info(String message, Throwable throwable) {
+    public void info(final String message, final Throwable throwable) {
+        render(new Runnable() {
+            @Override public void run() {
+                renderInfo(message, throwable);
+            }
+        }, false);
+    }
+
+    private synchronized void renderInfo(String message, Throwable throwable) {
         newLine();
         out.println(message);
         throwable.printStackTrace(System.out);
@@ -131,19 +228,43 @@ public abstract class Console implements Log {
     /**
      * Begins streaming output for the named action.
      */
-    public void action(String name) {}
+    public void action(final String name) {
+        render(new Runnable() {
+            @Override public void run() {
+                renderAction(name);
+            }
+        }, false);
+    }
+
+    protected void renderAction(String name) {}
 
     /**
      * Begins streaming output for the named outcome.
      */
-    public void outcome(String name) {}
+    public void outcome(final String name) {
+        render(new Runnable() {
+            @Override public void run() {
+                renderOutcome(name);
+            }
+        }, false);
+    }
+
+    protected void renderOutcome(String name) {}
 
     /**
      * Appends the action output immediately to the stream when streaming is on,
      * or to a buffer when streaming is off. Buffered output will be held and
      * printed only if the outcome is unsuccessful.
      */
-    public abstract void streamOutput(String outcomeName, String output);
+    public void streamOutput(final String outcomeName, final String output) {
+        render(new Runnable() {
+            @Override public void run() {
+                renderStreamOutput(outcomeName, output);
+            }
+        }, false);
+    }
+
+    protected abstract void renderStreamOutput(String outcomeName, String output);
 
     /**
      * Hook to flush anything streamed via {@link #streamOutput}.
@@ -153,15 +274,26 @@ public abstract class Console implements Log {
     /**
      * Writes the action's outcome.
      */
-    public synchronized void printResult(
+    public void printResult(final String outcomeName, final Result result,
+            final ResultValue resultValue, final Expectation expectation) {
+        render(new Runnable() {
+            @Override public void run() {
+                renderResult(outcomeName, result, resultValue, expectation);
+            }
+        }, false);
+    }
+
+    private synchronized void renderResult(
             String outcomeName, Result result, ResultValue resultValue, Expectation expectation) {
         // when the result is interesting, include the description and bug number
         if (result != Result.SUCCESS || resultValue != ResultValue.OK) {
             if (!expectation.getDescription().isEmpty()) {
-                streamOutput(outcomeName, "\n" + colorString(expectation.getDescription(), Color.COMMENT));
+                renderStreamOutput(outcomeName,
+                        "\n" + colorString(expectation.getDescription(), Color.COMMENT));
             }
             if (expectation.getBug() != -1) {
-                streamOutput(outcomeName, "\n" + colorString("http://b/" + expectation.getBug(), Color.COMMENT));
+                renderStreamOutput(outcomeName,
+                        "\n" + colorString("http://b/" + expectation.getBug(), Color.COMMENT));
             }
         }
 
@@ -185,7 +317,17 @@ public abstract class Console implements Log {
         currentLine = CurrentLine.NEW;
     }
 
-    public synchronized void summarizeOutcomes(Collection<AnnotatedOutcome> annotatedOutcomes) {
+    public void summarizeOutcomes(Collection<AnnotatedOutcome> annotatedOutcomes) {
+        final List<AnnotatedOutcome> snapshot = new ArrayList<AnnotatedOutcome>(annotatedOutcomes);
+        render(new Runnable() {
+            @Override public void run() {
+                renderOutcomeSummary(snapshot);
+            }
+        }, false);
+    }
+
+    private synchronized void renderOutcomeSummary(
+            Collection<AnnotatedOutcome> annotatedOutcomes) {
         List<AnnotatedOutcome> annotatedOutcomesSorted =
                 AnnotatedOutcome.ORDER_BY_NAME.sortedCopy(annotatedOutcomes);
 
@@ -283,6 +425,79 @@ public abstract class Console implements Log {
         }
     }
 
+    /**
+     * Prints the {@code count} outcomes that took the most wall time on the
+     * target, slowest first. Outcomes without a measured time are ignored.
+     */
+    public void summarizeSlowestOutcomes(Collection<Outcome> outcomes, final int count) {
+        final List<Outcome> snapshot = new ArrayList<Outcome>(outcomes);
+        render(new Runnable() {
+            @Override public void run() {
+                renderSlowestOutcomes(snapshot, count);
+            }
+        }, false);
+    }
+
+    private synchronized void renderSlowestOutcomes(Collection<Outcome> outcomes, int count) {
+        List<Outcome> timedOutcomes = Lists.newArrayList();
+        for (Outcome outcome : outcomes) {
+            if (outcome.getWallTimeNanos() != -1) {
+                timedOutcomes.add(outcome);
+            }
+        }
+        if (count <= 0 || timedOutcomes.isEmpty()) {
+            return;
+        }
+
+        Collections.sort(timedOutcomes, new Comparator<Outcome>() {
+            @Override public int compare(Outcome a, Outcome b) {
+                return Long.compare(b.getWallTimeNanos(), a.getWallTimeNanos());
+            }
+        });
+
+        newLine();
+        out.println("Slowest outcomes:");
+        for (Outcome outcome : timedOutcomes.subList(0, Math.min(count, timedOutcomes.size()))) {
+            StringBuilder sb = new StringBuilder();
+            sb.append(indent).append(outcome.getName()).append(" ")
+                    .append(TimeUtilities.nsToString(outcome.getWallTimeNanos()));
+            if (outcome.getCpuTimeNanos() != -1) {
+                sb.append(" (cpu ").append(TimeUtilities.nsToString(outcome.getCpuTimeNanos()))
+                        .append(")");
+            }
+            out.println(sb.toString());
+        }
+    }
+
+    /**
+     * Prints whether each rerun failure turned out to be flaky.
+     *
+     * @param reruns true for each outcome whose rerun passed, false for each
+     *     outcome that failed again.
+     */
+    public void summarizeReruns(Map<String, Boolean> reruns) {
+        final Map<String, Boolean> snapshot = new LinkedHashMap<String, Boolean>(reruns);
+        render(new Runnable() {
+            @Override public void run() {
+                renderRerunSummary(snapshot);
+            }
+        }, false);
+    }
+
+    private synchronized void renderRerunSummary(Map<String, Boolean> reruns) {
+        if (reruns.isEmpty()) {
+            return;
+        }
+
+        newLine();
+        out.println("Rerun summary:");
+        for (Map.Entry<String, Boolean> entry : reruns.entrySet()) {
+            out.println(indent + entry.getKey() + (entry.getValue()
+                    ? colorString(" flaky (passed on rerun)", Color.WARN)
+                    : colorString(" consistent (failed on rerun)", Color.FAIL)));
+        }
+    }
+
     private String formatElapsedTime(long elapsedTime) {
         if (elapsedTime < 0) {
             throw new IllegalArgumentException("non-negative elapsed times only");
@@ -330,10 +545,19 @@ public abstract class Console implements Log {
     /**
      * Prints the action output with appropriate indentation.
      */
-    public synchronized void streamOutput(CharSequence streamedOutput) {
+    public void streamOutput(CharSequence streamedOutput) {
         if (streamedOutput.length() == 0) {
             return;
         }
+        final String output = streamedOutput.toString();
+        render(new Runnable() {
+            @Override public void run() {
+                renderStreamOutput(output);
+            }
+        }, false);
+    }
+
+    protected synchronized void renderStreamOutput(CharSequence streamedOutput) {
 
         String[] lines = messageToLines(streamedOutput.toString());
 
@@ -442,7 +666,7 @@ public abstract class Console implements Log {
     static class StreamingConsole extends Console {
         private String currentName;
 
-        @Override public synchronized void action(String name) {
+        @Override protected synchronized void renderAction(String name) {
             newLine();
             out.print("Action " + name);
             currentName = name;
@@ -452,7 +676,7 @@ public abstract class Console implements Log {
         /**
          * Prints the beginning of the named outcome.
          */
-        @Override public synchronized void outcome(String name) {
+        @Override protected synchronized void renderOutcome(String name) {
             // if the outcome and action names are the same, omit the outcome name
             if (name.equals(currentName)) {
                 return;
@@ -464,8 +688,9 @@ public abstract class Console implements Log {
             currentLine = CurrentLine.NAME;
         }
 
-        @Override public synchronized void streamOutput(String outcomeName, String output) {
-            streamOutput(output);
+        @Override protected synchronized void renderStreamOutput(
+                String outcomeName, String output) {
+            renderStreamOutput(output);
         }
     }
 
@@ -474,12 +699,14 @@ public abstract class Console implements Log {
      * supports multiple concurrent actions.
      */
     static class MultiplexingConsole extends Console {
-        private final Map<String, StringBuilder> bufferedOutputByOutcome = new HashMap<String, StringBuilder>();
+        private final Map<String, BoundedOutputBuffer> bufferedOutputByOutcome
+                = new HashMap<String, BoundedOutputBuffer>();
 
-        @Override public synchronized void streamOutput(String outcomeName, String output) {
-            StringBuilder buffer = bufferedOutputByOutcome.get(outcomeName);
+        @Override protected synchronized void renderStreamOutput(
+                String outcomeName, String output) {
+            BoundedOutputBuffer buffer = bufferedOutputByOutcome.get(outcomeName);
             if (buffer == null) {
-                buffer = new StringBuilder();
+                buffer = new BoundedOutputBuffer(outputHeadChars, outputTailChars, null);
                 bufferedOutputByOutcome.put(outcomeName, buffer);
             }
 
@@ -491,9 +718,9 @@ public abstract class Console implements Log {
             out.print(indent + outcomeName);
             currentLine = CurrentLine.NAME;
 
-            StringBuilder buffer = bufferedOutputByOutcome.remove(outcomeName);
+            BoundedOutputBuffer buffer = bufferedOutputByOutcome.remove(outcomeName);
             if (buffer != null) {
-                streamOutput(buffer);
+                renderStreamOutput(buffer.toString());
             }
         }
     }
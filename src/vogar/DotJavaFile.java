@@ -16,11 +16,15 @@
 
 package vogar;
 
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStreamReader;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
-import vogar.util.Strings;
 
 /**
  * A {@code .java} file for execution as an action.
@@ -37,7 +41,7 @@ public final class DotJavaFile {
     private final String actionName;
     private final boolean isJtreg;
 
-    private DotJavaFile(String simpleName, String packageName, String actionName, boolean isJtreg) {
+    DotJavaFile(String simpleName, String packageName, String actionName, boolean isJtreg) {
         this.simpleName = simpleName;
         this.packageName = packageName;
         this.actionName = actionName;
@@ -61,6 +65,11 @@ public final class DotJavaFile {
         return packageName != null ? packageName + "." + simpleName : simpleName;
     }
 
+    /**
+     * Parses the header of {@code javaFile}. This reads only up to the first
+     * type declaration outside of a comment, as the package declaration and
+     * any jtreg {@code @test} tag come before it.
+     */
     public static DotJavaFile parse(File javaFile) throws IOException {
         // We can get the unqualified class name from the path.
         // It's the last element minus the trailing ".java".
@@ -69,24 +78,88 @@ public final class DotJavaFile {
 
         // For the package, the only foolproof way is to look for the package
         // declaration inside the file.
-        String content = Strings.readFile(javaFile);
-        boolean isjtreg = AT_TEST_PATTERN.matcher(content).find();
-
-        String packageName;
-        String actionName;
-        Matcher packageMatcher = PACKAGE_PATTERN.matcher(content);
-        if (packageMatcher.find()) {
-            packageName = packageMatcher.group(1);
-            actionName = packageName + "." + simpleName;
-        } else {
-            packageName = null;
-            actionName = Action.nameForJavaFile(javaFile);
+        boolean isjtreg = false;
+        String packageName = null;
+        boolean hasTypeDeclaration = false;
+        BufferedReader in = new BufferedReader(
+                new InputStreamReader(new FileInputStream(javaFile), "UTF-8"));
+        try {
+            CommentStripper commentStripper = new CommentStripper();
+            String line;
+            while (!hasTypeDeclaration && (line = in.readLine()) != null) {
+                if (!isjtreg) {
+                    isjtreg = AT_TEST_PATTERN.matcher("\n" + line + "\n").find();
+                }
+                String code = commentStripper.strip(line);
+                if (packageName == null) {
+                    Matcher packageMatcher = PACKAGE_PATTERN.matcher(code);
+                    if (packageMatcher.find()) {
+                        packageName = packageMatcher.group(1);
+                    }
+                }
+                hasTypeDeclaration = TYPE_DECLARATION_PATTERN.matcher(code).find();
+            }
+        } finally {
+            in.close();
         }
 
-        if (!TYPE_DECLARATION_PATTERN.matcher(content).find()) {
+        if (!hasTypeDeclaration) {
             throw new IllegalArgumentException("Malformed .java file: " + javaFile);
         }
 
+        String actionName = packageName != null
+                ? packageName + "." + simpleName
+                : Action.nameForJavaFile(javaFile);
         return new DotJavaFile(simpleName, packageName, actionName, isjtreg);
     }
+
+    void writeTo(DataOutputStream out) throws IOException {
+        out.writeUTF(simpleName);
+        out.writeBoolean(packageName != null);
+        if (packageName != null) {
+            out.writeUTF(packageName);
+        }
+        out.writeUTF(actionName);
+        out.writeBoolean(isJtreg);
+    }
+
+    static DotJavaFile readFrom(DataInputStream in) throws IOException {
+        String simpleName = in.readUTF();
+        String packageName = in.readBoolean() ? in.readUTF() : null;
+        String actionName = in.readUTF();
+        boolean isJtreg = in.readBoolean();
+        return new DotJavaFile(simpleName, packageName, actionName, isJtreg);
+    }
+
+    /**
+     * Removes comments from source lines, remembering whether a block comment
+     * continues onto the next line.
+     */
+    private static class CommentStripper {
+        private boolean inBlockComment;
+
+        String strip(String line) {
+            StringBuilder result = new StringBuilder();
+            int i = 0;
+            while (i < line.length()) {
+                if (inBlockComment) {
+                    int end = line.indexOf("*/", i);
+                    if (end == -1) {
+                        break;
+                    }
+                    inBlockComment = false;
+                    i = end + 2;
+                    result.append(' ');
+                } else if (line.startsWith("//", i)) {
+                    break;
+                } else if (line.startsWith("/*", i)) {
+                    inBlockComment = true;
+                    i += 2;
+                } else {
+                    result.append(line.charAt(i++));
+                }
+            }
+            return result.toString();
+        }
+    }
 }
@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package vogar;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Remembers the parsed headers of {@code .java} files between runs, so that
+ * files whose length and modification time are unchanged needn't be read.
+ */
+public final class DotJavaFileCache {
+
+    private static final int MAGIC = 0x76444a46; // "vDJF"
+    private static final int VERSION = 1;
+
+    private final Log log;
+    private final File file;
+    private Map<String, Entry> entries;
+    private volatile boolean dirty;
+
+    public DotJavaFileCache(Log log, File file) {
+        this.log = log;
+        this.file = file;
+    }
+
+    /**
+     * Returns the parsed header of {@code javaFile}, reading it only if it
+     * has changed since it was cached.
+     */
+    public DotJavaFile parse(File javaFile) throws IOException {
+        Map<String, Entry> entries = getEntries();
+        String path = javaFile.getPath();
+        long length = javaFile.length();
+        long lastModified = javaFile.lastModified();
+        Entry entry = entries.get(path);
+        if (entry != null && entry.length == length && entry.lastModified == lastModified) {
+            return entry.dotJavaFile;
+        }
+
+        DotJavaFile result = DotJavaFile.parse(javaFile);
+        entries.put(path, new Entry(length, lastModified, result));
+        dirty = true;
+        return result;
+    }
+
+    private synchronized Map<String, Entry> getEntries() {
+        if (entries == null) {
+            entries = new ConcurrentHashMap<String, Entry>();
+            if (file.exists()) {
+                try {
+                    read();
+                } catch (IOException e) {
+                    log.verbose("discarding unreadable .java file cache: " + e.getMessage());
+                    entries.clear();
+                }
+            }
+        }
+        return entries;
+    }
+
+    private void read() throws IOException {
+        DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file)));
+        try {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("unexpected format");
+            }
+            for (int i = 0, count = in.readInt(); i < count; i++) {
+                String path = in.readUTF();
+                long length = in.readLong();
+                long lastModified = in.readLong();
+                entries.put(path, new Entry(length, lastModified, DotJavaFile.readFrom(in)));
+            }
+        } finally {
+            in.close();
+        }
+        log.verbose("read " + entries.size() + " cached .java file headers");
+    }
+
+    /**
+     * Saves the cache if any file was parsed since it was read. The cache is
+     * written to a temporary file and then moved into place.
+     */
+    public synchronized void write() throws IOException {
+        if (!dirty) {
+            return;
+        }
+
+        Map<String, Entry> snapshot = new HashMap<String, Entry>(entries);
+        file.getParentFile().mkdirs();
+        File temp = new File(file.getPath() + ".tmp");
+        DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(temp)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(snapshot.size());
+            for (Map.Entry<String, Entry> entry : snapshot.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeLong(entry.getValue().length);
+                out.writeLong(entry.getValue().lastModified);
+                entry.getValue().dotJavaFile.writeTo(out);
+            }
+        } finally {
+            out.close();
+        }
+
+        if (!temp.renameTo(file)) {
+            throw new IOException("Failed to rename " + temp + " to " + file);
+        }
+        dirty = false;
+    }
+
+    private static class Entry {
+        final long length;
+        final long lastModified;
+        final DotJavaFile dotJavaFile;
+
+        Entry(long length, long lastModified, DotJavaFile dotJavaFile) {
+            this.length = length;
+            this.lastModified = lastModified;
+            this.dotJavaFile = dotJavaFile;
+        }
+    }
+}
@@ -17,29 +17,60 @@
 package vogar;
 
 import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import vogar.tasks.BuildActionTask;
 import vogar.tasks.PrepareTarget;
 import vogar.tasks.PrepareUserDirTask;
 import vogar.tasks.RetrieveFilesTask;
 import vogar.tasks.RmTask;
 import vogar.tasks.Task;
+import vogar.tasks.TaskQueue;
+import vogar.util.Threads;
 import vogar.util.TimeUtilities;
 
 /**
  * Compiles, installs, runs and reports on actions.
  */
 public final class Driver {
+
+    /**
+     * Adaptive timeouts allow an outcome this many times its envelope, plus
+     * the floor, so that fast outcomes aren't cut short by a hiccup.
+     */
+    static final int ADAPTIVE_TIMEOUT_FACTOR = 3;
+    static final int ADAPTIVE_TIMEOUT_FLOOR_SECONDS = 10;
+    /** Outcomes taking this many times their envelope, and a second more, are reported. */
+    static final int DURATION_REGRESSION_FACTOR = 2;
+
     private final Run run;
 
+    /**
+     * Scans the output of failed outcomes for missing classes, so that
+     * recording an outcome doesn't wait on the scan.
+     */
+    private final ExecutorService jarSuggestionExecutor;
+
+    /** The historical durations of the outcomes of actions given adaptive timeouts. */
+    private final DurationEnvelopes durationEnvelopes;
+
     public Driver(Run run) {
         this.run = run;
+        this.jarSuggestionExecutor = Threads.fixedThreadsExecutor(run.log, "jar-suggestions", 1);
+        this.durationEnvelopes = new DurationEnvelopes(run.outcomeStore);
     }
 
     private int successes = 0;
@@ -49,13 +80,41 @@ public final class Driver {
 
     private Task prepareTargetTask;
     private Set<Task> installVogarTasks;
+    private ActionSharder sharder;
+    /** Cancels the run once its time budget runs out, or null if it has none. */
+    private ScheduledExecutorService timeBudget;
+    /** The names of the actions enqueued to run that haven't finished. */
+    private final Set<String> unfinishedActionNames =
+            Collections.synchronizedSet(new HashSet<String>());
+    /** The number of shards yet to finish, by the names of sharded actions. */
+    private final Map<String, Integer> unfinishedShards = new HashMap<String, Integer>();
 
     private final Map<String, Action> actions = Collections.synchronizedMap(
             new LinkedHashMap<String, Action>());
+    /**
+     * The outcomes of this run. Those whose output won't be shown again, such
+     * as passing ones, are kept without it.
+     */
     private final Map<String, Outcome> outcomes = Collections.synchronizedMap(
             new LinkedHashMap<String, Outcome>());
+    /** The expectation that each outcome was judged by, by outcome name. */
+    private final Map<String, Expectation> expectations = Collections.synchronizedMap(
+            new HashMap<String, Expectation>());
     public boolean recordResults = true;
 
+    /** The outcomes being rerun. */
+    private final Set<String> rerunOutcomeNames = new HashSet<String>();
+    /** Cleanup tasks held back until any reruns are done, as reruns reuse the actions' files. */
+    private final List<Task> deferredCleanupTasks = new ArrayList<Task>();
+    /** True for each rerun outcome that passed (flaky), false if it failed again. */
+    private final Map<String, Boolean> rerunOutcomes = new LinkedHashMap<String, Boolean>();
+    private volatile boolean rerunning;
+    /** The names of the actions selected to run by change-impact analysis. */
+    private final Set<String> impactedActionNames =
+            Collections.synchronizedSet(new HashSet<String>());
+    /** The actions to build for impact analysis, or null if they run as they are found. */
+    private List<Action> actionsAwaitingImpactAnalysis;
+
     /**
      * Builds and executes the actions in the given files.
      */
@@ -64,72 +123,112 @@ public final class Driver {
             throw new IllegalStateException("Drivers are not reusable");
         }
 
-        run.mkdir.mkdirs(run.localTemp);
-
-        filesToActions(files);
-        classesToActions(classes);
+        if (run.timeBudgetSeconds > 0) {
+            timeBudget = Executors.newSingleThreadScheduledExecutor(
+                    Threads.daemonThreadFactory("time-budget"));
+            timeBudget.schedule(new Runnable() {
+                @Override public void run() {
+                    run.taskQueue.cancel("the time budget of " + run.timeBudgetSeconds
+                            + "s ran out");
+                }
+            }, run.timeBudgetSeconds, TimeUnit.SECONDS);
+        }
 
-        if (actions.isEmpty()) {
-            run.console.info("Nothing to do.");
-            return false;
+        try {
+            return buildAndRunActions(files, classes);
+        } finally {
+            if (timeBudget != null) {
+                timeBudget.shutdownNow();
+            }
+            jarSuggestionExecutor.shutdownNow();
         }
+    }
 
-        run.console.info("Actions: " + actions.size());
+    private boolean buildAndRunActions(Collection<File> files, Collection<String> classes) {
+        run.mkdir.mkdirs(run.localTemp);
+        sharder = new ActionSharder(run.log, run.classpath, run.outcomeStore, run.actionShards);
         final long t0 = System.currentTimeMillis();
 
-        prepareTargetTask = new PrepareTarget(run, run.target);
-        run.taskQueue.enqueue(prepareTargetTask);
+        if (run.impactAnalyzer.isEnabled()) {
+            // Impact is worked out from every compiled action, so find them all first.
+            actionsAwaitingImpactAnalysis = new ArrayList<Action>();
+            findActions(files, classes);
+            if (actions.isEmpty()) {
+                run.console.info("Nothing to do.");
+                return false;
+            }
+            enqueueImpactedActions(actionsAwaitingImpactAnalysis);
+            run.taskQueue.runTasks();
+        } else {
+            runTasksWhileFindingActions(files, classes);
+            if (actions.isEmpty()) {
+                run.console.info("Nothing to do.");
+                return false;
+            }
+        }
 
-        installVogarTasks = run.mode.installTasks();
-        run.taskQueue.enqueueAll(installVogarTasks);
-        registerPrerequisites(Collections.singleton(prepareTargetTask), installVogarTasks);
+        if (timeBudget != null) {
+            // Don't cancel the reruns and cleanup that follow.
+            timeBudget.shutdownNow();
+        }
+        String cancelReason = run.taskQueue.getCancelReason();
+        if (cancelReason != null) {
+            skipUnfinishedActions(cancelReason);
+        }
 
-        for (Action action : actions.values()) {
-            action.setUserDir(new File(run.runnerDir, action.getName()));
-            Outcome outcome = outcomes.get(action.getName());
-            if (outcome != null) {
-                addEarlyResult(outcome);
-            } else if (run.expectationStore.get(action.getName()).getResult()
-                    == Result.UNSUPPORTED) {
-                addEarlyResult(new Outcome(action.getName(), Result.UNSUPPORTED,
-                    "Unsupported according to expectations file"));
+        if (run.rerunFlakyFailures) {
+            if (cancelReason != null) {
+                run.console.info("Not rerunning flaky failures because the run was cancelled.");
+            } else if (run.taskQueue.hasFailedTasks()) {
+                run.console.warn("Not rerunning flaky failures because some tasks failed.");
             } else {
-                enqueueActionTasks(action);
+                rerunFlakyFailures();
             }
         }
 
         if (run.cleanAfter) {
+            // Shut down only once any reruns are done, as they share the target's directories.
+            run.taskQueue.enqueueAll(deferredCleanupTasks);
+            run.taskQueue.runTasks();
             Set<Task> shutdownTasks = new HashSet<Task>();
             shutdownTasks.add(new RmTask(run.rm, run.localTemp));
             shutdownTasks.add(run.target.rmTask(run.runnerDir));
-            for (Task task : shutdownTasks) {
-                task.after(run.taskQueue.getTasks());
-            }
             run.taskQueue.enqueueAll(shutdownTasks);
+            run.taskQueue.runTasks();
+        }
+
+        if (run.reportPrinter.isReady()) {
+            // Most reports were written as their actions finished.
+            int numFiles = run.reportPrinter.finish();
+            run.console.info(numFiles + " XML files written.");
         }
 
-        run.taskQueue.printTasks();
-        run.taskQueue.runTasks();
         if (run.taskQueue.hasFailedTasks()) {
             run.taskQueue.printProblemTasks();
             return false;
         }
 
-        if (run.reportPrinter.isReady()) {
-            run.console.info("Printing XML Reports... ");
-            int numFiles = run.reportPrinter.generateReports(outcomes.values());
-            run.console.info(numFiles + " XML files written.");
-        }
-
         long t1 = System.currentTimeMillis();
 
-        Map<String, AnnotatedOutcome> annotatedOutcomes = run.outcomeStore.read(this.outcomes);
+        Map<String, AnnotatedOutcome> annotatedOutcomes =
+                run.outcomeStore.read(outcomes, expectations);
         if (recordResults) {
             run.outcomeStore.write(outcomes);
+            if (run.recordResults && run.impactAnalyzer.isEnabled()) {
+                try {
+                    run.impactAnalyzer.writeFingerprints(
+                            getPassingActionNames(), impactedActionNames);
+                } catch (IOException e) {
+                    run.console.info("Failed to write action fingerprints", e);
+                }
+            }
         }
 
         run.console.summarizeOutcomes(annotatedOutcomes.values());
+        run.console.summarizeSlowestOutcomes(outcomes.values(), run.slowestOutcomes);
+        run.console.summarizeReruns(rerunOutcomes);
 
+        awaitJarSuggestions();
         List<String> jarStringList = run.jarSuggestions.getStringList();
         if (!jarStringList.isEmpty()) {
             run.console.warn(
@@ -137,6 +236,9 @@ public final class Driver {
                     jarStringList);
         }
 
+        if (cancelReason != null) {
+            run.console.info("Cancelled the run because " + cancelReason + ".");
+        }
         if (failures > 0 || skipped > 0 || warnings > 0) {
             run.console.info(String.format(
                     "Outcomes: %s. Passed: %d, Failed: %d, Skipped: %d, Warnings: %d. Took %s.",
@@ -146,45 +248,287 @@ public final class Driver {
             run.console.info(String.format("Outcomes: %s. All successful. Took %s.",
                     successes, TimeUtilities.msToString(t1 - t0)));
         }
-        return failures == 0;
+        return failures == 0 && cancelReason == null;
+    }
+
+    /**
+     * Reports the actions that were cancelled before they finished as
+     * skipped, unless they already have an outcome of their own, such as
+     * from failing to build.
+     */
+    private void skipUnfinishedActions(String cancelReason) {
+        List<String> actionNames;
+        synchronized (unfinishedActionNames) {
+            actionNames = new ArrayList<String>(unfinishedActionNames);
+        }
+        for (String actionName : actionNames) {
+            if (!outcomes.containsKey(actionName)) {
+                addEarlyResult(new Outcome(actionName, Result.UNSUPPORTED,
+                        "Skipped because " + cancelReason));
+            }
+        }
+    }
+
+    /**
+     * Re-executes the outcomes that failed in this run after passing in the
+     * previous run, if their history shows them to be flaky. Each rerun is a
+     * {@link Mode#rerunOutcomeTask} that runs the original action again with
+     * {@code --outcome}, reusing its jar and user dir, so that only the
+     * failing outcome runs. Reruns go through a task queue of their own, and
+     * only decide whether the original failure was flaky.
+     */
+    private void rerunFlakyFailures() {
+        FlakinessAnalyzer analyzer = new FlakinessAnalyzer(run.flakinessThreshold);
+        Map<String, Action> rerunActions = new LinkedHashMap<String, Action>();
+        for (Outcome outcome : new ArrayList<Outcome>(outcomes.values())) {
+            Expectation expectation = expectations.get(outcome.getName());
+            if (outcome.getResultValue(expectation) != ResultValue.FAIL) {
+                continue;
+            }
+            List<OutcomeHistory.Entry> history =
+                    run.outcomeStore.getHistory(outcome.getName(), OutcomeHistory.HISTORY_DEPTH);
+            if (!analyzer.shouldRerun(outcome, history)) {
+                continue;
+            }
+            Action action = findActionForOutcome(outcome.getName());
+            if (action != null) {
+                rerunActions.put(outcome.getName(), action);
+            }
+        }
+
+        if (rerunActions.isEmpty()) {
+            return;
+        }
+
+        run.console.info("Rerunning " + rerunActions.size() + " newly failing flaky outcome(s)");
+        // Use a queue of their own so that reruns which fail don't fail the run.
+        TaskQueue rerunQueue = new TaskQueue(run.console, run.maxConcurrentActions);
+        rerunOutcomeNames.addAll(rerunActions.keySet());
+        rerunning = true;
+        for (Map.Entry<String, Action> entry : rerunActions.entrySet()) {
+            Action action = entry.getValue();
+            boolean useLargeTimeout =
+                    run.expectationStore.get(action.getName()).getTags().contains("large");
+            rerunQueue.enqueue(
+                    run.mode.rerunOutcomeTask(action, useLargeTimeout, entry.getKey()));
+        }
+        rerunQueue.runTasks();
+        rerunning = false;
+    }
+
+    private Action findActionForOutcome(String outcomeName) {
+        Action action = actions.get(outcomeName);
+        String name = outcomeName;
+        int hash = name.indexOf('#');
+        if (hash != -1) {
+            name = name.substring(0, hash);
+        }
+        while (action == null && !name.isEmpty()) {
+            action = actions.get(name);
+            int dot = name.lastIndexOf('.');
+            name = dot != -1 ? name.substring(0, dot) : "";
+        }
+        return action;
+    }
+
+    /**
+     * Builds every action, then enqueues the remaining tasks of only those
+     * actions that are impacted by the changes being tested. The build has
+     * to come first because impact is worked out from the compiled classes.
+     */
+    private void enqueueImpactedActions(List<Action> actionsToRun) {
+        Map<Action, Task> builds = new LinkedHashMap<Action, Task>();
+        for (Action action : actionsToRun) {
+            Task build = new BuildActionTask(run, action, this, run.hostJar(action));
+            run.taskQueue.enqueue(build);
+            builds.put(action, build);
+        }
+        run.taskQueue.printTasks(builds.values());
+        run.taskQueue.runTasks();
+
+        try {
+            Classpath classpath = Classpath.of(run.classpath.getElements());
+            classpath.addAll(run.buildClasspath);
+            run.impactAnalyzer.indexClasspath(classpath);
+        } catch (IOException e) {
+            run.console.warn("Failed to index the classpath, running every action: " + e);
+            for (Map.Entry<Action, Task> entry : builds.entrySet()) {
+                impactedActionNames.add(entry.getKey().getName());
+                enqueueActionTasks(entry.getKey(), entry.getValue());
+            }
+            return;
+        }
+
+        for (Map.Entry<Action, Task> entry : builds.entrySet()) {
+            Action action = entry.getKey();
+            File jar = run.hostJar(action);
+            boolean impacted;
+            try {
+                // Actions that failed to build have already been reported.
+                impacted = jar.exists() && run.impactAnalyzer.isImpacted(action, jar);
+            } catch (IOException e) {
+                run.console.verbose("Failed to analyze " + action + ": " + e);
+                impacted = true;
+            }
+            if (impacted) {
+                impactedActionNames.add(action.getName());
+                enqueueActionTasks(action, entry.getValue());
+            } else {
+                // Not an outcome: recording one would hide the action's real
+                // results from the history that flakiness and timeouts rely on.
+                synchronized (this) {
+                    skipped++;
+                }
+                run.console.verbose("skipped " + action + " as it isn't impacted");
+            }
+        }
+        run.console.info("Impacted actions: " + impactedActionNames.size());
+    }
+
+    /**
+     * Returns the impacted actions that had at least one outcome and whose
+     * outcomes all passed. Only these have their fingerprints stored, so that
+     * a failing action is selected again until it passes.
+     */
+    private Set<String> getPassingActionNames() {
+        Set<String> result = new HashSet<String>();
+        Set<String> failing = new HashSet<String>();
+        synchronized (outcomes) {
+            for (Outcome outcome : outcomes.values()) {
+                String actionName = getImpactedActionName(outcome.getName());
+                if (actionName == null) {
+                    continue;
+                }
+                Expectation expectation = expectations.get(outcome.getName());
+                if (outcome.getResultValue(expectation) == ResultValue.OK) {
+                    result.add(actionName);
+                } else {
+                    failing.add(actionName);
+                }
+            }
+        }
+        result.removeAll(failing);
+        return result;
+    }
+
+    /**
+     * Returns the impacted action that produced the named outcome, or null if
+     * there is none. Outcome names extend the names of their actions, as in
+     * {@code a.FooTest#testBar} for {@code a.FooTest} or {@code a}.
+     */
+    private String getImpactedActionName(String outcomeName) {
+        String name = outcomeName;
+        while (true) {
+            if (impactedActionNames.contains(name)) {
+                return name;
+            }
+            int separator = Math.max(name.lastIndexOf('#'),
+                    Math.max(name.lastIndexOf('.'), name.lastIndexOf('$')));
+            if (separator == -1) {
+                return null;
+            }
+            name = name.substring(0, separator);
+        }
+    }
+
+    /**
+     * Enqueues the tasks that prepare the target for every action, unless
+     * they have been already. These wait for the first action to run, so that
+     * a run with nothing to do doesn't touch the target.
+     */
+    private synchronized void enqueueGlobalTasks() {
+        if (prepareTargetTask != null) {
+            return;
+        }
+        prepareTargetTask = new PrepareTarget(run, run.target);
+        run.taskQueue.enqueue(prepareTargetTask);
+
+        installVogarTasks = run.mode.installTasks();
+        registerPrerequisites(Collections.singleton(prepareTargetTask), installVogarTasks);
+        run.taskQueue.enqueueAll(installVogarTasks);
+
+        List<Task> globalTasks = new ArrayList<Task>();
+        globalTasks.add(prepareTargetTask);
+        globalTasks.addAll(installVogarTasks);
+        run.taskQueue.printTasks(globalTasks);
     }
 
     private void enqueueActionTasks(Action action) {
+        enqueueGlobalTasks();
+        Task build = new BuildActionTask(run, action, this, run.hostJar(action));
+        run.taskQueue.enqueue(build);
+        run.taskQueue.printTasks(Collections.singleton(build));
+        enqueueActionTasks(action, build);
+    }
+
+    /**
+     * Enqueues the tasks that install, run and clean up after an action once
+     * {@code build} has built it.
+     */
+    private void enqueueActionTasks(Action action, Task build) {
+        enqueueGlobalTasks();
+        List<Task> enqueued = new ArrayList<Task>();
         Expectation expectation = run.expectationStore.get(action.getName());
         boolean useLargeTimeout = expectation.getTags().contains("large");
         File jar = run.hostJar(action);
-        Task build = new BuildActionTask(run, action, this, jar);
-        run.taskQueue.enqueue(build);
+        unfinishedActionNames.add(action.getName());
 
-        Task prepareUserDir = new PrepareUserDirTask(run.target, action);
+        int timeoutSeconds = useLargeTimeout ? run.largeTimeoutSeconds : run.smallTimeoutSeconds;
+        Task prepareUserDir = new PrepareUserDirTask(run.target, action,
+                getOutcomeTimeouts(action, timeoutSeconds),
+                run.localFile(action, PrepareUserDirTask.TIMEOUTS_FILE));
         prepareUserDir.after(installVogarTasks);
         run.taskQueue.enqueue(prepareUserDir);
+        enqueued.add(prepareUserDir);
 
         Set<Task> install = run.mode.installActionTasks(action, jar);
         registerPrerequisites(Collections.singleton(build), install);
         registerPrerequisites(installVogarTasks, install);
         registerPrerequisites(Collections.singleton(prepareTargetTask), install);
         run.taskQueue.enqueueAll(install);
+        enqueued.addAll(install);
 
-        Task execute = run.mode.executeActionTask(action, useLargeTimeout)
-                .afterSuccess(installVogarTasks)
-                .afterSuccess(build)
-                .afterSuccess(prepareUserDir)
-                .afterSuccess(install);
-        run.taskQueue.enqueue(execute);
+        List<ActionShard> shards = sharder.shard(action);
+        Set<Task> executeTasks = new LinkedHashSet<Task>();
+        if (shards.isEmpty()) {
+            executeTasks.add(run.mode.executeActionTask(action, useLargeTimeout, null));
+        } else {
+            run.console.verbose("running " + action + " in " + shards.size() + " shards");
+            synchronized (unfinishedShards) {
+                unfinishedShards.put(action.getName(), shards.size());
+            }
+            for (ActionShard shard : shards) {
+                executeTasks.add(run.mode.executeActionTask(action, useLargeTimeout, shard));
+            }
+        }
+        for (Task execute : executeTasks) {
+            execute.afterSuccess(installVogarTasks)
+                    .afterSuccess(build)
+                    .afterSuccess(prepareUserDir)
+                    .afterSuccess(install);
+        }
+        run.taskQueue.enqueueAll(executeTasks);
+        enqueued.addAll(executeTasks);
 
-        Task retrieveFiles = new RetrieveFilesTask(run, action.getUserDir()).after(execute);
+        Task retrieveFiles = new RetrieveFilesTask(run, action.getUserDir()).after(executeTasks);
         run.taskQueue.enqueue(retrieveFiles);
+        enqueued.add(retrieveFiles);
 
         if (run.cleanAfter) {
-            run.taskQueue.enqueue(new RmTask(run.rm, run.localFile(action))
-                    .after(execute).after(retrieveFiles));
-            Set<Task> cleanupTasks = run.mode.cleanupTasks(action);
+            Set<Task> cleanupTasks = new LinkedHashSet<Task>();
+            cleanupTasks.add(new RmTask(run.rm, run.localFile(action)));
+            cleanupTasks.addAll(run.mode.cleanupTasks(action));
             for (Task task : cleanupTasks) {
-                task.after(execute).after(retrieveFiles);
+                task.after(executeTasks).after(retrieveFiles);
+            }
+            if (run.rerunFlakyFailures) {
+                deferredCleanupTasks.addAll(cleanupTasks);
+            } else {
+                run.taskQueue.enqueueAll(cleanupTasks);
+                enqueued.addAll(cleanupTasks);
             }
-            run.taskQueue.enqueueAll(cleanupTasks);
         }
+        run.taskQueue.printTasks(enqueued);
     }
 
     private void registerPrerequisites(Set<Task> allBefore, Set<Task> allAfter) {
@@ -193,16 +537,85 @@ public final class Driver {
         }
     }
 
-    private void classesToActions(Collection<String> classNames) {
-        for (String className : classNames) {
-            Action action = new Action(className, className, null, null, null);
-            actions.put(action.getName(), action);
+    /**
+     * Runs the task queue while actions are found and enqueued, so that the
+     * global tasks and the first actions start before all actions are found.
+     */
+    private void runTasksWhileFindingActions(Collection<File> files, Collection<String> classes) {
+        final TaskQueue taskQueue = run.taskQueue;
+        taskQueue.holdOpen();
+        Thread runner = new Thread(new Runnable() {
+            @Override public void run() {
+                taskQueue.runTasks();
+            }
+        }, "TaskQueue-runner");
+        runner.setDaemon(true);
+        runner.start();
+
+        try {
+            findActions(files, classes);
+        } finally {
+            taskQueue.close();
+        }
+
+        try {
+            runner.join();
+        } catch (InterruptedException e) {
+            throw new AssertionError();
         }
     }
 
-    private void filesToActions(Collection<File> files) {
+    /**
+     * Finds the actions in {@code files} and {@code classes}, enqueueing each
+     * as it is found.
+     */
+    private void findActions(Collection<File> files, Collection<String> classes) {
+        ActionFinder.Listener listener = new ActionFinder.Listener() {
+            @Override public void actionFound(Action action, Outcome outcome) {
+                addAction(action, outcome);
+            }
+        };
         for (File file : files) {
-            new ActionFinder(run.console, actions, outcomes).findActions(file);
+            new ActionFinder(run.console, run.dotJavaFileCache, listener).findActions(file);
+        }
+        try {
+            run.dotJavaFileCache.write();
+        } catch (IOException e) {
+            run.console.verbose("failed to write .java file cache: " + e.getMessage());
+        }
+
+        for (String className : classes) {
+            addAction(new Action(className, className, null, null, null), null);
+        }
+
+        run.console.info("Actions: " + actions.size());
+    }
+
+    /**
+     * Records an action that was found, and either reports its early outcome
+     * or enqueues its tasks.
+     *
+     * @param earlyOutcome the action's outcome if it can't be run, or null.
+     */
+    private synchronized void addAction(Action action, Outcome earlyOutcome) {
+        if (actions.containsKey(action.getName())) {
+            run.console.warn("Ignoring duplicate action " + action.getName()
+                    + (action.getJavaFile() != null ? " in " + action.getJavaFile() : ""));
+            return;
+        }
+        actions.put(action.getName(), action);
+
+        action.setUserDir(new File(run.runnerDir, action.getName()));
+        if (earlyOutcome != null) {
+            addEarlyResult(earlyOutcome);
+        } else if (run.expectationStore.get(action.getName()).getResult()
+                == Result.UNSUPPORTED) {
+            addEarlyResult(new Outcome(action.getName(), Result.UNSUPPORTED,
+                "Unsupported according to expectations file"));
+        } else if (actionsAwaitingImpactAnalysis != null) {
+            actionsAwaitingImpactAnalysis.add(action);
+        } else {
+            enqueueActionTasks(action);
         }
     }
 
@@ -220,14 +633,29 @@ public final class Driver {
     }
 
     public synchronized void recordOutcome(Outcome outcome) {
-        outcomes.put(outcome.getName(), outcome);
+        if (rerunning) {
+            recordRerunOutcome(outcome);
+            return;
+        }
+
         Expectation expectation = run.expectationStore.get(outcome);
         ResultValue resultValue = outcome.getResultValue(expectation);
+        boolean outputShown = resultValue == ResultValue.FAIL
+                || resultValue == ResultValue.WARNING;
+        outcomes.put(outcome.getName(), outputShown ? outcome : outcome.withoutOutput());
+        expectations.put(outcome.getName(), expectation);
+        if (run.reportPrinter.isReady()) {
+            run.reportPrinter.addOutcome(outcome, expectation);
+        }
 
         if (resultValue == ResultValue.OK) {
             successes++;
         } else if (resultValue == ResultValue.FAIL) {
             failures++;
+            if (run.maxFailures > 0 && failures == run.maxFailures) {
+                run.taskQueue.cancel(failures + (failures == 1 ? " outcome" : " outcomes")
+                        + " failed");
+            }
         } else if (resultValue == ResultValue.WARNING) {
             warnings++;
         } else { // ResultValue.IGNORE
@@ -238,15 +666,173 @@ public final class Driver {
         run.console.outcome(outcome.getName());
         run.console.printResult(outcome.getName(), result, resultValue, expectation);
 
-        JarSuggestions singleOutcomeJarSuggestions = new JarSuggestions();
-        singleOutcomeJarSuggestions.addSuggestionsFromOutcome(outcome, run.classFileIndex,
-                run.classpath);
-        List<String> jarStringList = singleOutcomeJarSuggestions.getStringList();
-        if (!jarStringList.isEmpty()) {
-            run.console.warn(
-                    "may have failed because some of these jars are missing from the classpath:",
-                    jarStringList);
+        if (result == Result.COMPILE_FAILED || result == Result.EXEC_FAILED) {
+            suggestJars(outcome);
+        }
+
+        warnAboutResourceUsage(outcome);
+        warnAboutDurationRegression(outcome);
+    }
+
+    /**
+     * Returns the timeouts of the outcomes of {@code action} that override the
+     * action's timeout, by outcome name. With adaptive timeouts, outcomes with
+     * enough history get a timeout fitted to how long they took before, up to
+     * the large timeout. Outcomes tagged as large in the expectations get the
+     * large timeout.
+     */
+    public Map<String, Integer> getOutcomeTimeouts(Action action, int timeoutSeconds) {
+        Map<String, Integer> result = new HashMap<String, Integer>();
+        if (timeoutSeconds == 0) {
+            return result;
+        }
+        if (run.adaptiveTimeouts) {
+            for (Map.Entry<String, Long> entry
+                    : durationEnvelopes.read(action.getName()).entrySet()) {
+                result.put(entry.getKey(),
+                        adaptiveTimeoutSeconds(entry.getValue(), run.largeTimeoutSeconds));
+            }
+        }
+        if (timeoutSeconds >= run.largeTimeoutSeconds) {
+            return result;
+        }
+        for (String outcomeName
+                : run.expectationStore.getOutcomeNamesWithTag(action.getName(), "large")) {
+            result.put(outcomeName, run.largeTimeoutSeconds);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the timeout of an outcome whose envelope is {@code
+     * envelopeNanos}, up to {@code largeTimeoutSeconds}.
+     */
+    static int adaptiveTimeoutSeconds(long envelopeNanos, int largeTimeoutSeconds) {
+        long seconds = TimeUnit.NANOSECONDS.toSeconds(envelopeNanos * ADAPTIVE_TIMEOUT_FACTOR)
+                + 1 + ADAPTIVE_TIMEOUT_FLOOR_SECONDS;
+        return (int) Math.min(seconds, largeTimeoutSeconds);
+    }
+
+    /**
+     * Returns the classes of {@code action} that must not run concurrently
+     * with others, or null if none of its classes may. Actions opt in to
+     * running their classes concurrently with the "parallel" expectation tag,
+     * and classes that change global state opt out with "serial".
+     */
+    public Set<String> getSerialClasses(Action action) {
+        if (!run.expectationStore.get(action.getName()).getTags().contains("parallel")) {
+            return null;
+        }
+        return run.expectationStore.getOutcomeNamesWithTag(action.getName(), "serial");
+    }
+
+    /**
+     * Receives notice that the named action, or one of its shards, has
+     * produced all of its outcomes.
+     */
+    public void actionFinished(String actionName) {
+        synchronized (unfinishedShards) {
+            Integer remaining = unfinishedShards.get(actionName);
+            if (remaining != null) {
+                if (remaining > 1) {
+                    unfinishedShards.put(actionName, remaining - 1);
+                    return;
+                }
+                unfinishedShards.remove(actionName);
+            }
+        }
+        unfinishedActionNames.remove(actionName);
+        if (!rerunning && run.reportPrinter.isReady()) {
+            run.reportPrinter.actionFinished(actionName);
+        }
+    }
+
+    /**
+     * Suggests jars that may be missing from the classpath of {@code outcome}
+     * on a background thread.
+     */
+    private void suggestJars(final Outcome outcome) {
+        jarSuggestionExecutor.execute(new Runnable() {
+            @Override public void run() {
+                JarSuggestions singleOutcomeJarSuggestions = new JarSuggestions();
+                singleOutcomeJarSuggestions.addSuggestionsFromOutcome(outcome,
+                        run.classFileIndex, run.classpath);
+                List<String> jarStringList = singleOutcomeJarSuggestions.getStringList();
+                if (!jarStringList.isEmpty()) {
+                    run.console.warn(outcome.getName() + " may have failed because some of "
+                            + "these jars are missing from the classpath:", jarStringList);
+                }
+                run.jarSuggestions.addSuggestions(singleOutcomeJarSuggestions);
+            }
+        });
+    }
+
+    /**
+     * Waits for the jar suggestions of every recorded outcome.
+     */
+    private void awaitJarSuggestions() {
+        jarSuggestionExecutor.shutdown();
+        try {
+            jarSuggestionExecutor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Records the outcome of a rerun. The original outcome and the counts of
+     * the run are left as they were; the rerun only decides whether the
+     * original failure was flaky.
+     */
+    private void recordRerunOutcome(Outcome outcome) {
+        Outcome original = outcomes.get(outcome.getName());
+        if (original == null || !rerunOutcomeNames.contains(outcome.getName())) {
+            run.console.verbose("ignoring rerun outcome " + outcome.getName());
+            return;
+        }
+        Expectation expectation = expectations.get(outcome.getName());
+        rerunOutcomes.put(outcome.getName(), outcome.getResultValue(expectation) == ResultValue.OK);
+        run.console.verbose("rerun of " + outcome.getName() + " " + outcome.getResult());
+    }
+
+    /**
+     * Warns if a successful outcome took much longer than its envelope, as
+     * such a slowdown is a regression, even if the outcome didn't time out.
+     */
+    private void warnAboutDurationRegression(Outcome outcome) {
+        if (!run.adaptiveTimeouts) {
+            return;
+        }
+        Long envelopeNanos = durationEnvelopes.get(outcome.getName());
+        long wallTimeNanos = outcome.getWallTimeNanos();
+        if (envelopeNanos == null || outcome.getResult() != Result.SUCCESS
+                || wallTimeNanos <= envelopeNanos * DURATION_REGRESSION_FACTOR
+                        + TimeUnit.SECONDS.toNanos(1)) {
+            return;
+        }
+        run.console.warn(outcome.getName() + " took "
+                + TimeUtilities.msToString(TimeUnit.NANOSECONDS.toMillis(wallTimeNanos))
+                + ", more than " + DURATION_REGRESSION_FACTOR + "x its usual "
+                + TimeUtilities.msToString(TimeUnit.NANOSECONDS.toMillis(envelopeNanos)));
+    }
+
+    /**
+     * Warns if the outcome leaked more threads or retained more heap than the
+     * configured thresholds allow.
+     */
+    private void warnAboutResourceUsage(Outcome outcome) {
+        ResourceUsage resourceUsage = outcome.getResourceUsage();
+        if (resourceUsage == null) {
+            return;
+        }
+        if (run.threadLeakThreshold > 0
+                && resourceUsage.getThreadDelta() >= run.threadLeakThreshold) {
+            run.console.warn(outcome.getName() + " leaked " + resourceUsage.getThreadDelta()
+                    + " thread(s)");
+        }
+        long retainedKiB = resourceUsage.getHeapDeltaBytes() / 1024;
+        if (run.retainedHeapThresholdKiB > 0 && retainedKiB >= run.retainedHeapThresholdKiB) {
+            run.console.warn(outcome.getName() + " retained " + retainedKiB + " KiB of heap");
         }
-        run.jarSuggestions.addSuggestions(singleOutcomeJarSuggestions);
     }
 }
@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package vogar;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * How long outcomes have taken in previous runs, so that each can get a
+ * timeout fitted to it, and so that an outcome that suddenly takes much
+ * longer stands out.
+ *
+ * <p>An outcome's envelope is the 99th percentile of the wall times of its
+ * recent successful results. Outcomes with fewer than {@link #MIN_SAMPLES}
+ * such results have no envelope.
+ */
+final class DurationEnvelopes {
+
+    static final int MIN_SAMPLES = 3;
+
+    private final OutcomeStore outcomeStore;
+
+    /**
+     * Envelopes in nanoseconds by outcome name, read from the history the
+     * first time they're needed, or null until then. These are sorted so that
+     * an action's outcomes can be found without visiting every outcome.
+     */
+    private SortedMap<String, Long> envelopes;
+
+    DurationEnvelopes(OutcomeStore outcomeStore) {
+        this.outcomeStore = outcomeStore;
+    }
+
+    /**
+     * Returns the envelopes of the outcomes of the named action, in
+     * nanoseconds by outcome name.
+     */
+    public Map<String, Long> read(String actionName) {
+        Map<String, Long> result = new HashMap<String, Long>();
+        for (Map.Entry<String, Long> entry
+                : envelopes().subMap(actionName, actionName + Character.MAX_VALUE).entrySet()) {
+            String outcomeName = entry.getKey();
+            if (belongsTo(outcomeName, actionName)) {
+                result.put(outcomeName, entry.getValue());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the envelope of the named outcome in nanoseconds, or null if it
+     * has none.
+     */
+    public Long get(String outcomeName) {
+        return envelopes().get(outcomeName);
+    }
+
+    /**
+     * Returns the envelopes of all outcomes in the history. These are read in
+     * a single pass, rather than once per action, so that the history's lock
+     * isn't taken for each action that is run.
+     */
+    private synchronized SortedMap<String, Long> envelopes() {
+        if (envelopes == null) {
+            envelopes = new TreeMap<String, Long>();
+            for (Map.Entry<String, List<Long>> entry : outcomeStore.getSuccessfulWallTimeNanos(
+                    "", OutcomeHistory.HISTORY_DEPTH).entrySet()) {
+                List<Long> wallTimes = entry.getValue();
+                if (wallTimes.size() >= MIN_SAMPLES) {
+                    envelopes.put(entry.getKey(), percentile99(wallTimes));
+                }
+            }
+        }
+        return envelopes;
+    }
+
+    /**
+     * Returns true if {@code outcomeName} is the action itself, or a test in
+     * the class or package that the action names. The names of other actions
+     * may share the prefix, like {@code a.FooBar} does {@code a.Foo}.
+     */
+    private static boolean belongsTo(String outcomeName, String actionName) {
+        if (outcomeName.length() == actionName.length()) {
+            return true;
+        }
+        char next = outcomeName.charAt(actionName.length());
+        return next == '#' || next == '.' || next == '$';
+    }
+
+    /**
+     * Returns the nearest-rank 99th percentile of {@code values}.
+     */
+    private static long percentile99(List<Long> values) {
+        List<Long> sorted = new ArrayList<Long>(values);
+        Collections.sort(sorted);
+        int rank = (int) Math.ceil(sorted.size() * 0.99);
+        return sorted.get(rank - 1);
+    }
+}
@@ -37,9 +37,11 @@ import java.util.regex.Pattern;
  */
 final class Expectation {
 
+    /** The flags that expectation patterns are compiled with. */
+    static final int PATTERN_FLAGS = Pattern.MULTILINE | Pattern.DOTALL;
+
     /** The pattern to use when no expected output is specified */
-    public static final Pattern MATCH_ALL_PATTERN
-            = Pattern.compile(".*", Pattern.MULTILINE | Pattern.DOTALL);
+    public static final Pattern MATCH_ALL_PATTERN = Pattern.compile(".*", PATTERN_FLAGS);
 
     /** The expectation of a general successful run. */
     static final Expectation SUCCESS = new Expectation(Result.SUCCESS, MATCH_ALL_PATTERN,
@@ -51,8 +53,11 @@ final class Expectation {
     /** The action's expected result, such as {@code EXEC_FAILED}. */
     private final Result result;
 
-    /** The pattern the expected output will match. */
-    private final Pattern pattern;
+    /** The regular expression the expected output will match. */
+    private final String regex;
+
+    /** {@link #regex} compiled, or null until it is first needed. */
+    private volatile Pattern pattern;
 
     /** Attributes of this test. */
     private final Set<String> tags;
@@ -72,14 +77,30 @@ final class Expectation {
                        String description,
                        long bug,
                        boolean fromExpectationFile) {
-        if (result == null || description == null || pattern == null) {
+        this(result, pattern != null ? pattern.pattern() : null, tags, description, bug,
+                fromExpectationFile);
+        this.pattern = pattern;
+    }
+
+    /**
+     * Creates an expectation whose pattern is compiled with {@link
+     * #PATTERN_FLAGS} the first time it is matched. Most expectations are
+     * never matched against any output, so this saves compiling them.
+     */
+    public Expectation(Result result,
+                       String regex,
+                       Set<String> tags,
+                       String description,
+                       long bug,
+                       boolean fromExpectationFile) {
+        if (result == null || description == null || regex == null) {
             throw new IllegalArgumentException(
-                    "result=" + result + " description=" + description + " pattern=" + pattern);
+                    "result=" + result + " description=" + description + " pattern=" + regex);
         }
 
         this.description = description;
         this.result = result;
-        this.pattern = pattern;
+        this.regex = regex;
         this.tags = new LinkedHashSet<String>(tags);
         this.bug = bug;
         this.isFromExpectationFile = fromExpectationFile;
@@ -97,6 +118,19 @@ final class Expectation {
         return result;
     }
 
+    public String getRegex() {
+        return regex;
+    }
+
+    public Pattern getPattern() {
+        Pattern result = pattern;
+        if (result == null) {
+            result = Pattern.compile(regex, PATTERN_FLAGS);
+            pattern = result;
+        }
+        return result;
+    }
+
     public Set<String> getTags() {
         return tags;
     }
@@ -117,14 +151,18 @@ final class Expectation {
      * Returns true if {@code outcome} matches this expectation.
      */
     public boolean matches(Outcome outcome) {
-        return patternMatches(outcome) && (bugIsOpen || result == outcome.getResult());
+        return (bugIsOpen || result == outcome.getResult()) && patternMatches(outcome);
     }
 
     private boolean patternMatches(Outcome outcome) {
-        return pattern.matcher(outcome.getOutput()).matches();
+        // Matching everything is the common case; it needn't decode the output.
+        if (regex.equals(MATCH_ALL_PATTERN.pattern())) {
+            return true;
+        }
+        return getPattern().matcher(outcome.getOutput()).matches();
     }
 
     @Override public String toString() {
-        return "Expectation[description=" + description + " pattern=" + pattern.pattern() + "]";
+        return "Expectation[description=" + description + " pattern=" + regex + "]";
     }
 }
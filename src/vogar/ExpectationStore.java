@@ -16,20 +16,41 @@
 
 package vogar;
 
+import com.google.common.base.Charsets;
 import com.google.common.base.Joiner;
 import com.google.common.base.Splitter;
 import com.google.common.collect.Iterables;
+import com.google.common.collect.MapMaker;
 import com.google.gson.stream.JsonReader;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.EnumSet;
 import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+import vogar.util.MultiLiteralMatcher;
+import vogar.util.Threads;
 
 /**
  * A database of expected outcomes. Entries in this database come in two forms.
@@ -44,14 +65,30 @@ import java.util.regex.Pattern;
  *
  * <p>If an outcome matches both an outcome expectation and a failure
  * expectation, the outcome expectation will be returned.
+ *
+ * <p>Lookups use a compiled form of the store: a trie of the outcome
+ * expectation names, and an automaton that finds the literal text of every
+ * failure expectation's pattern in a single pass over an outcome's output.
+ * Only the failure expectations whose literal occurs in the output, or whose
+ * pattern has no literal, are matched against their full pattern.
+ *
+ * <p>Parsing the expectation files is slow, so the expectations that apply to
+ * a mode and variant may be cached in a binary form keyed by the MD5s of the
+ * files that they came from.
  */
 final class ExpectationStore {
-    private static final int PATTERN_FLAGS = Pattern.MULTILINE | Pattern.DOTALL;
+    /** Identifies the binary form; change this whenever the form changes. */
+    private static final int CACHE_VERSION = 1;
 
     private final Log log;
     private final Map<String, Expectation> outcomes = new LinkedHashMap<String, Expectation>();
     private final Map<String, Expectation> failures = new LinkedHashMap<String, Expectation>();
 
+    /** The expectation of each outcome that has been looked up, by identity. */
+    private final ConcurrentMap<Outcome, Expectation> outcomeExpectations =
+            new MapMaker().weakKeys().makeMap();
+    private volatile Compiled compiled;
+
     private ExpectationStore(Log log) {
         this.log = log;
     }
@@ -61,10 +98,29 @@ final class ExpectationStore {
      * returns a value for all names, even if no explicit expectation was set.
      */
     public Expectation get(String name) {
-        Expectation byName = getByNameOrPackage(name);
+        Expectation byName = compiled().getByNameOrPackage(name);
         return byName != null ? byName : Expectation.SUCCESS;
     }
 
+    /**
+     * Returns the names of the outcomes within the named action whose
+     * expectations carry {@code tag}. Only expectations that name a single
+     * outcome are considered.
+     */
+    public Set<String> getOutcomeNamesWithTag(String actionName, String tag) {
+        Set<String> result = new LinkedHashSet<String>();
+        for (Map.Entry<String, Expectation> entry : outcomes.entrySet()) {
+            String name = entry.getKey();
+            if (name.length() > actionName.length()
+                    && name.startsWith(actionName)
+                    && "#.$".indexOf(name.charAt(actionName.length())) != -1
+                    && entry.getValue().getTags().contains(tag)) {
+                result.add(name);
+            }
+        }
+        return result;
+    }
+
     /**
      * Finds the expected result for the specified outcome after it has
      * completed. Unlike {@code get()}, this also takes into account the
@@ -75,53 +131,175 @@ final class ExpectationStore {
      * name matches.
      */
     public Expectation get(Outcome outcome) {
-        Expectation exactNameMatch = outcomes.get(outcome.getName());
-        if (exactNameMatch != null) {
-            return exactNameMatch;
+        Expectation result = outcomeExpectations.get(outcome);
+        if (result == null) {
+            result = compiled().get(outcome);
+            outcomeExpectations.put(outcome, result);
         }
+        return result;
+    }
 
-        for (Map.Entry<String, Expectation> entry : failures.entrySet()) {
-            if (entry.getValue().matches(outcome)) {
-                return entry.getValue();
+    private Compiled compiled() {
+        Compiled result = compiled;
+        if (result == null) {
+            synchronized (this) {
+                result = compiled;
+                if (result == null) {
+                    result = new Compiled(outcomes, failures);
+                    compiled = result;
+                }
             }
         }
+        return result;
+    }
 
-        Expectation byName = getByNameOrPackage(outcome.getName());
-        return byName != null ? byName : Expectation.SUCCESS;
+    /**
+     * Discards the compiled store and the memoized expectations, after the
+     * expectations have changed.
+     */
+    private synchronized void invalidate() {
+        compiled = null;
+        outcomeExpectations.clear();
     }
 
-    private Expectation getByNameOrPackage(String name) {
-        while (true) {
-            Expectation expectation = outcomes.get(name);
-            if (expectation != null) {
-                return expectation;
+    public static ExpectationStore parse(Log log,
+                                         Set<File> expectationFiles,
+                                         ModeId mode,
+                                         Variant variant)
+            throws IOException {
+        List<File> files = new ArrayList<File>();
+        for (File f : expectationFiles) {
+            if (f.exists()) {
+                files.add(f);
             }
-
-            int dotOrHash = Math.max(name.lastIndexOf('.'), name.lastIndexOf('#'));
-            if (dotOrHash == -1) {
-                return null;
+        }
+        if (files.size() < 2) {
+            ExpectationStore result = new ExpectationStore(log);
+            for (File f : files) {
+                result.parse(f, mode, variant);
             }
-
-            name = name.substring(0, dotOrHash);
+            return result;
         }
+        return parseInParallel(log, files, mode, variant);
     }
 
+    /**
+     * Like {@link #parse(Log, Set, ModeId, Variant)}, but reads the
+     * expectations from {@code cache} if the same files were parsed for the
+     * same mode and variant before.
+     *
+     * @param cacheFile a local file to hold the binary form while it is
+     *     copied to or from the cache.
+     */
     public static ExpectationStore parse(Log log,
                                          Set<File> expectationFiles,
                                          ModeId mode,
-                                         Variant variant)
+                                         Variant variant,
+                                         Md5Cache cache,
+                                         File cacheFile)
             throws IOException {
-        ExpectationStore result = new ExpectationStore(log);
+        List<String> keyElements = new ArrayList<String>();
+        keyElements.add(Integer.toString(CACHE_VERSION));
+        keyElements.add(mode.toString());
+        keyElements.add(variant.toString());
         for (File f : expectationFiles) {
             if (f.exists()) {
-                result.parse(f, mode, variant);
+                keyElements.add(cache.makeKey(f));
+            }
+        }
+        String key = cache.makeKey(keyElements.toArray(new String[keyElements.size()]));
+
+        cacheFile.getParentFile().mkdirs();
+        if (cache.getFromCache(cacheFile, key)) {
+            try {
+                ExpectationStore result = new ExpectationStore(log);
+                result.readCache(cacheFile);
+                log.verbose("loaded " + result.outcomes.size() + " outcome and "
+                        + result.failures.size() + " failure expectations from " + key);
+                return result;
+            } catch (IOException e) {
+                log.warn("Failed to read cached expectations " + key + ": " + e);
             }
         }
+
+        ExpectationStore result = parse(log, expectationFiles, mode, variant);
+        result.writeCache(cacheFile);
+        cache.insert(key, cacheFile);
         return result;
     }
 
+    /**
+     * Parses each file into a store of its own on a separate thread, then
+     * merges the stores in the order of the files.
+     */
+    private static ExpectationStore parseInParallel(final Log log, List<File> files,
+            final ModeId mode, final Variant variant) throws IOException {
+        ExecutorService executor = Threads.fixedThreadsExecutor(log, "expectations",
+                Math.min(files.size(), Runtime.getRuntime().availableProcessors()));
+        try {
+            List<Future<ExpectationStore>> futures = new ArrayList<Future<ExpectationStore>>();
+            for (final File file : files) {
+                futures.add(executor.submit(new Callable<ExpectationStore>() {
+                    @Override public ExpectationStore call() throws IOException {
+                        ExpectationStore store = new ExpectationStore(log);
+                        store.parse(file, mode, variant);
+                        return store;
+                    }
+                }));
+            }
+
+            ExpectationStore result = new ExpectationStore(log);
+            for (Future<ExpectationStore> future : futures) {
+                ExpectationStore store = getUninterruptibly(future);
+                putAll(result.outcomes, store.outcomes);
+                putAll(result.failures, store.failures);
+            }
+            return result;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static ExpectationStore getUninterruptibly(Future<ExpectationStore> future)
+            throws IOException {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return future.get();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof IOException) {
+                        throw (IOException) cause;
+                    } else if (cause instanceof RuntimeException) {
+                        throw (RuntimeException) cause;
+                    } else if (cause instanceof Error) {
+                        throw (Error) cause;
+                    }
+                    throw new RuntimeException(cause);
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static void putAll(Map<String, Expectation> target,
+            Map<String, Expectation> source) {
+        for (Map.Entry<String, Expectation> entry : source.entrySet()) {
+            if (target.put(entry.getKey(), entry.getValue()) != null) {
+                throw new IllegalArgumentException("Duplicate expectations for " + entry.getKey());
+            }
+        }
+    }
+
     public void parse(File expectationsFile, ModeId mode, Variant variant) throws IOException {
         log.verbose("loading expectations file " + expectationsFile);
+        invalidate();
 
         int count = 0;
         JsonReader reader = null;
@@ -130,7 +308,7 @@ final class ExpectationStore {
             reader.setLenient(true);
             reader.beginArray();
             while (reader.hasNext()) {
-                readExpectation(reader, mode, variant);
+                readExpectation(expectationsFile, reader, mode, variant);
                 count++;
             }
             reader.endArray();
@@ -143,11 +321,11 @@ final class ExpectationStore {
         }
     }
 
-    private void readExpectation(JsonReader reader, ModeId mode, Variant variant)
-          throws IOException {
+    private void readExpectation(File expectationsFile, JsonReader reader, ModeId mode,
+            Variant variant) throws IOException {
         boolean isFailure = false;
         Result result = Result.SUCCESS;
-        Pattern pattern = Expectation.MATCH_ALL_PATTERN;
+        String regex = Expectation.MATCH_ALL_PATTERN.pattern();
         Set<String> names = new LinkedHashSet<String>();
         Set<String> tags = new LinkedHashSet<String>();
         Map<ModeId, Set<Variant>> modeVariants = null;
@@ -168,10 +346,9 @@ final class ExpectationStore {
                 isFailure = true;
                 names.add(reader.nextString());
             } else if (name.equals("pattern")) {
-                pattern = Pattern.compile(reader.nextString(), PATTERN_FLAGS);
+                regex = reader.nextString();
             } else if (name.equals("substring")) {
-                pattern = Pattern.compile(
-                        ".*" + Pattern.quote(reader.nextString()) + ".*", PATTERN_FLAGS);
+                regex = ".*" + Pattern.quote(reader.nextString()) + ".*";
             } else if (name.equals("tags")) {
                 readStrings(reader, tags);
             } else if (name.equals("description")) {
@@ -204,8 +381,16 @@ final class ExpectationStore {
             }
         }
 
-        Expectation expectation =
-              new Expectation(result, pattern, tags, description, buganizerBug, true);
+        Pattern pattern;
+        try {
+            pattern = compileUnlessQuoted(regex);
+        } catch (PatternSyntaxException e) {
+            throw new IllegalArgumentException("Malformed pattern for " + names + " in "
+                    + expectationsFile + ": " + e.getMessage(), e);
+        }
+        Expectation expectation = pattern != null
+                ? new Expectation(result, pattern, tags, description, buganizerBug, true)
+                : new Expectation(result, regex, tags, description, buganizerBug, true);
         Map<String, Expectation> map = isFailure ? failures : outcomes;
         for (String name : names) {
             if (map.put(name, expectation) != null) {
@@ -214,6 +399,23 @@ final class ExpectationStore {
         }
     }
 
+    /**
+     * Compiles {@code regex}, so that a malformed pattern is reported where
+     * it is read rather than when an outcome is first matched against it.
+     * Returns null for the match-all pattern and for substrings, which are
+     * quoted and so can't be malformed; they are compiled lazily.
+     *
+     * @throws PatternSyntaxException if {@code regex} is malformed.
+     */
+    private static Pattern compileUnlessQuoted(String regex) {
+        if (regex.equals(Expectation.MATCH_ALL_PATTERN.pattern())
+                || (regex.startsWith(".*\\Q") && regex.endsWith("\\E.*")
+                        && regex.indexOf("\\E") == regex.length() - 4)) {
+            return null;
+        }
+        return Pattern.compile(regex, Expectation.PATTERN_FLAGS);
+    }
+
     private void readStrings(JsonReader reader, Set<String> output) throws IOException {
         reader.beginArray();
         while (reader.hasNext()) {
@@ -283,10 +485,234 @@ final class ExpectationStore {
                 expectation.setBugIsOpen(true);
             }
         }
+        invalidate();
+    }
+
+    /**
+     * Writes the expectations in a binary form: a table of the distinct
+     * expectations, followed by the outcome and failure names that refer to
+     * them. Bug statuses aren't written; they are loaded afresh each run.
+     */
+    private void writeCache(File file) throws IOException {
+        Map<Expectation, Integer> indexes = new IdentityHashMap<Expectation, Integer>();
+        List<Expectation> expectations = new ArrayList<Expectation>();
+        for (Expectation expectation : Iterables.concat(outcomes.values(), failures.values())) {
+            if (!indexes.containsKey(expectation)) {
+                indexes.put(expectation, expectations.size());
+                expectations.add(expectation);
+            }
+        }
+
+        DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(file)));
+        try {
+            out.writeInt(CACHE_VERSION);
+            out.writeInt(expectations.size());
+            for (Expectation expectation : expectations) {
+                writeString(out, expectation.getResult().name());
+                writeString(out, expectation.getRegex());
+                out.writeInt(expectation.getTags().size());
+                for (String tag : expectation.getTags()) {
+                    writeString(out, tag);
+                }
+                writeString(out, expectation.getDescription());
+                out.writeLong(expectation.getBug());
+            }
+            writeNames(out, outcomes, indexes);
+            writeNames(out, failures, indexes);
+        } finally {
+            out.close();
+        }
+    }
+
+    private void readCache(File file) throws IOException {
+        DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file)));
+        try {
+            if (in.readInt() != CACHE_VERSION) {
+                throw new IOException("Unexpected version");
+            }
+            Expectation[] expectations = new Expectation[in.readInt()];
+            for (int i = 0; i < expectations.length; i++) {
+                Result result = Result.valueOf(readString(in));
+                String regex = readString(in);
+                Set<String> tags = new LinkedHashSet<String>();
+                for (int t = 0, count = in.readInt(); t < count; t++) {
+                    tags.add(readString(in));
+                }
+                String description = readString(in);
+                long bug = in.readLong();
+                // The cache is only written once every pattern has been validated by
+                // parsing, so patterns are compiled lazily here.
+                expectations[i] = new Expectation(result, regex, tags, description, bug, true);
+            }
+            readNames(in, outcomes, expectations);
+            readNames(in, failures, expectations);
+        } catch (IllegalArgumentException | IndexOutOfBoundsException
+                | NegativeArraySizeException e) {
+            throw new IOException("Corrupt expectations cache", e);
+        } finally {
+            in.close();
+        }
+    }
+
+    private static void writeNames(DataOutputStream out, Map<String, Expectation> names,
+            Map<Expectation, Integer> indexes) throws IOException {
+        out.writeInt(names.size());
+        for (Map.Entry<String, Expectation> entry : names.entrySet()) {
+            writeString(out, entry.getKey());
+            out.writeInt(indexes.get(entry.getValue()));
+        }
+    }
+
+    private static void readNames(DataInputStream in, Map<String, Expectation> names,
+            Expectation[] expectations) throws IOException {
+        for (int i = 0, count = in.readInt(); i < count; i++) {
+            names.put(readString(in), expectations[in.readInt()]);
+        }
+    }
+
+    /**
+     * Writes {@code s} as length-prefixed UTF-8. Unlike {@code writeUTF()},
+     * this has no limit on the length of the string.
+     */
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] bytes = s.getBytes(Charsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, Charsets.UTF_8);
     }
 
     interface BugDatabase {
         Set<Long> bugsToOpenBugs(Set<Long> bugs);
     }
 
+    /**
+     * An immutable snapshot of the store, compiled for fast lookups.
+     */
+    private static class Compiled {
+        private final Map<String, Expectation> outcomes;
+        private final NameTrieNode names = new NameTrieNode();
+        private final Expectation[] failures;
+        /** The failures whose patterns have no literal, and must always be tried. */
+        private final BitSet alwaysCandidates = new BitSet();
+        /** The failure that each literal in {@link #literalMatcher} came from. */
+        private final int[] literalFailures;
+        private final MultiLiteralMatcher literalMatcher;
+
+        Compiled(Map<String, Expectation> outcomes, Map<String, Expectation> failures) {
+            this.outcomes = new HashMap<String, Expectation>(outcomes);
+            for (Map.Entry<String, Expectation> entry : outcomes.entrySet()) {
+                names.add(entry.getKey(), entry.getValue());
+            }
+
+            this.failures = failures.values().toArray(new Expectation[failures.size()]);
+            List<String> literals = new ArrayList<String>();
+            List<Integer> literalFailures = new ArrayList<Integer>();
+            for (int i = 0; i < this.failures.length; i++) {
+                String literal = requiredLiteral(this.failures[i].getRegex());
+                if (literal == null) {
+                    alwaysCandidates.set(i);
+                } else {
+                    literals.add(literal);
+                    literalFailures.add(i);
+                }
+            }
+            this.literalFailures = new int[literalFailures.size()];
+            for (int i = 0; i < this.literalFailures.length; i++) {
+                this.literalFailures[i] = literalFailures.get(i);
+            }
+            this.literalMatcher = new MultiLiteralMatcher(literals);
+        }
+
+        Expectation get(Outcome outcome) {
+            Expectation exactNameMatch = outcomes.get(outcome.getName());
+            if (exactNameMatch != null) {
+                return exactNameMatch;
+            }
+
+            if (failures.length > 0) {
+                BitSet candidates = (BitSet) alwaysCandidates.clone();
+                BitSet literalHits = literalMatcher.findAll(outcome.getOutput());
+                for (int i = literalHits.nextSetBit(0); i >= 0; i = literalHits.nextSetBit(i + 1)) {
+                    candidates.set(literalFailures[i]);
+                }
+                // Try candidates in the order the failures were declared.
+                for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+                    if (failures[i].matches(outcome)) {
+                        return failures[i];
+                    }
+                }
+            }
+
+            Expectation byName = getByNameOrPackage(outcome.getName());
+            return byName != null ? byName : Expectation.SUCCESS;
+        }
+
+        /**
+         * Returns the expectation of the longest prefix of {@code name} that
+         * ends at a '.', a '#' or the end of the name, or null if there is
+         * none.
+         */
+        Expectation getByNameOrPackage(String name) {
+            Expectation result = null;
+            NameTrieNode node = names;
+            for (int i = 0; i < name.length() && node != null; i++) {
+                char c = name.charAt(i);
+                if ((c == '.' || c == '#') && node.expectation != null) {
+                    result = node.expectation;
+                }
+                node = node.children.get(c);
+            }
+            if (node != null && node.expectation != null) {
+                result = node.expectation;
+            }
+            return result;
+        }
+
+        /**
+         * Returns text that every output matching {@code pattern} must
+         * contain, or null if it can't be worked out. This understands the
+         * {@code .*text.*} patterns that expectations use for substrings.
+         */
+        private static String requiredLiteral(String regex) {
+            if (!regex.startsWith(".*") || !regex.endsWith(".*") || regex.length() < 4) {
+                return null;
+            }
+            String middle = regex.substring(2, regex.length() - 2);
+            if (middle.startsWith("\\Q") && middle.endsWith("\\E")) {
+                String quoted = middle.substring(2, middle.length() - 2);
+                return !quoted.isEmpty() && !quoted.contains("\\E") ? quoted : null;
+            }
+            for (char c : middle.toCharArray()) {
+                if ("\\[](){}.*+?^$|".indexOf(c) != -1) {
+                    return null;
+                }
+            }
+            return !middle.isEmpty() ? middle : null;
+        }
+    }
+
+    private static class NameTrieNode {
+        final Map<Character, NameTrieNode> children = new HashMap<Character, NameTrieNode>();
+        Expectation expectation;
+
+        void add(String name, Expectation expectation) {
+            NameTrieNode node = this;
+            for (int i = 0; i < name.length(); i++) {
+                NameTrieNode child = node.children.get(name.charAt(i));
+                if (child == null) {
+                    child = new NameTrieNode();
+                    node.children.put(name.charAt(i), child);
+                }
+                node = child;
+            }
+            node.expectation = expectation;
+        }
+    }
 }
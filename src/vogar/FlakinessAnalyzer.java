@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package vogar;
+
+import java.util.List;
+
+/**
+ * Scores how flaky an outcome is from its history, and decides whether a
+ * failure is worth re-running to find out if it was caused by flakiness.
+ */
+public final class FlakinessAnalyzer {
+
+    /**
+     * The minimum number of previous results needed before an outcome's
+     * history is trusted to say whether it is flaky.
+     */
+    static final int MIN_HISTORY = 4;
+
+    private final double threshold;
+
+    /**
+     * @param threshold the transition rate at or above which an outcome is
+     *     considered flaky.
+     */
+    public FlakinessAnalyzer(double threshold) {
+        this.threshold = threshold;
+    }
+
+    /**
+     * Returns the fraction of consecutive pairs of previous results that
+     * differ. An outcome that always passes or always fails scores 0; one that
+     * alternates between passing and failing scores 1.
+     *
+     * @param history previous results, most recent first.
+     */
+    public static double transitionRate(List<OutcomeHistory.Entry> history) {
+        if (history.size() < 2) {
+            return 0;
+        }
+        int transitions = 0;
+        for (int i = 1; i < history.size(); i++) {
+            if (isPass(history.get(i)) != isPass(history.get(i - 1))) {
+                transitions++;
+            }
+        }
+        return (double) transitions / (history.size() - 1);
+    }
+
+    /**
+     * Returns true if {@code outcome} failed in this run after passing in the
+     * previous run, and its history shows it to be flaky.
+     *
+     * @param history previous results of the outcome, most recent first.
+     */
+    public boolean shouldRerun(Outcome outcome, List<OutcomeHistory.Entry> history) {
+        return outcome.getResult() != Result.SUCCESS
+                && history.size() >= MIN_HISTORY
+                && isPass(history.get(0))
+                && transitionRate(history) >= threshold;
+    }
+
+    private static boolean isPass(OutcomeHistory.Entry entry) {
+        return entry.getResult() == Result.SUCCESS;
+    }
+}
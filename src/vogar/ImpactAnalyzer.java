@@ -0,0 +1,346 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package vogar;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.ByteStreams;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Selects the actions affected by a change, using a graph of the classes
+ * that each class refers to.
+ *
+ * <p>An action's fingerprint is a hash of every class that it transitively
+ * depends on, found in its own jar and on the classpath. Fingerprints of the
+ * actions that ran are stored in the results directory, so that a later run
+ * can skip the actions whose fingerprint hasn't changed. The dependencies of
+ * classpath jars are cached by the MD5 of each jar.
+ */
+public final class ImpactAnalyzer {
+
+    private static final String FINGERPRINTS_FILE_NAME = "action-fingerprints.properties";
+
+    private final Log log;
+    private final Md5Cache dependencyCache;
+    private final File tempDir;
+    private final File resultsDir;
+    private final boolean changedSince;
+    private final List<String> impactedBy;
+
+    /** The classes on the classpath, by name. */
+    private final Map<String, ClassNode> classpathClasses = new HashMap<String, ClassNode>();
+    private Properties previousFingerprints;
+    private final Map<String, String> fingerprints =
+            Collections.synchronizedMap(new TreeMap<String, String>());
+
+    /**
+     * @param changedSince true to select the actions whose fingerprint changed
+     *     since the last recorded run.
+     * @param impactedBy classes, or packages ending in ".*", whose dependent
+     *     actions are selected.
+     */
+    public ImpactAnalyzer(Log log, Md5Cache dependencyCache, File tempDir, File resultsDir,
+            boolean changedSince, List<String> impactedBy) {
+        this.log = log;
+        this.dependencyCache = dependencyCache;
+        this.tempDir = tempDir;
+        this.resultsDir = resultsDir;
+        this.changedSince = changedSince;
+        this.impactedBy = impactedBy;
+    }
+
+    public boolean isEnabled() {
+        return changedSince || !impactedBy.isEmpty();
+    }
+
+    /**
+     * Reads the class dependencies of each element of {@code classpath}.
+     */
+    public synchronized void indexClasspath(Classpath classpath) throws IOException {
+        for (File element : classpath.getElements()) {
+            if (element.isDirectory()) {
+                indexDirectory(element, "");
+            } else if (element.getName().endsWith(".jar")) {
+                indexJar(element);
+            }
+        }
+        log.verbose("indexed " + classpathClasses.size() + " classpath classes");
+    }
+
+    private void indexJar(File jar) throws IOException {
+        String key = dependencyCache.makeKey(jar);
+        File cached = new File(tempDir, key);
+        if (dependencyCache.getFromCache(cached, key)) {
+            readNodes(cached);
+            return;
+        }
+
+        Map<String, ClassNode> nodes = readJar(jar);
+        writeNodes(nodes, cached);
+        dependencyCache.insert(key, cached);
+        classpathClasses.putAll(nodes);
+    }
+
+    private void indexDirectory(File directory, String packagePrefix) throws IOException {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (file.isDirectory()) {
+                indexDirectory(file, packagePrefix + file.getName() + ".");
+            } else if (file.getName().endsWith(".class")) {
+                String className = packagePrefix
+                        + file.getName().substring(0, file.getName().length() - ".class".length());
+                InputStream in = new FileInputStream(file);
+                try {
+                    classpathClasses.put(className, toNode(ByteStreams.toByteArray(in)));
+                } finally {
+                    in.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns true if {@code action} should run, given the jar it was
+     * compiled to.
+     */
+    public boolean isImpacted(Action action, File actionJar) throws IOException {
+        Map<String, ClassNode> actionClasses = readJar(actionJar);
+
+        // Walk the dependency graph from the action's own classes.
+        Map<String, ClassNode> reachable = new TreeMap<String, ClassNode>();
+        Deque<String> toVisit = new ArrayDeque<String>(actionClasses.keySet());
+        Set<String> visited = new HashSet<String>(actionClasses.keySet());
+        while (!toVisit.isEmpty()) {
+            String className = toVisit.remove();
+            ClassNode node = actionClasses.get(className);
+            if (node == null) {
+                synchronized (this) {
+                    node = classpathClasses.get(className);
+                }
+            }
+            if (node == null) {
+                continue; // provided by the runtime
+            }
+            reachable.put(className, node);
+            for (String dependency : node.dependencies) {
+                if (visited.add(dependency)) {
+                    toVisit.add(dependency);
+                }
+            }
+        }
+
+        MessageDigest digester = newDigester();
+        for (Map.Entry<String, ClassNode> entry : reachable.entrySet()) {
+            digester.update(entry.getKey().getBytes(Charsets.UTF_8));
+            digester.update(entry.getValue().hash.getBytes(Charsets.UTF_8));
+        }
+        String fingerprint = toHexString(digester.digest());
+        fingerprints.put(action.getName(), fingerprint);
+
+        for (String changed : impactedBy) {
+            if (changed.endsWith(".*")) {
+                String packagePrefix = changed.substring(0, changed.length() - 1);
+                for (String className : reachable.keySet()) {
+                    if (className.startsWith(packagePrefix)) {
+                        return true;
+                    }
+                }
+            } else if (reachable.containsKey(changed)) {
+                return true;
+            }
+        }
+
+        return changedSince && !fingerprint.equals(getPreviousFingerprints().getProperty(
+                action.getName()));
+    }
+
+    /**
+     * Stores the fingerprints of the actions that passed for later runs. The
+     * stored fingerprints of the other actions that ran are dropped, so that
+     * they are selected again, and those of actions that didn't run are kept.
+     */
+    public void writeFingerprints(Set<String> passedActionNames, Set<String> ranActionNames)
+            throws IOException {
+        Properties properties = new Properties();
+        properties.putAll(getPreviousFingerprints());
+        for (String actionName : ranActionNames) {
+            String fingerprint = fingerprints.get(actionName);
+            if (fingerprint != null && passedActionNames.contains(actionName)) {
+                properties.setProperty(actionName, fingerprint);
+            } else {
+                properties.remove(actionName);
+            }
+        }
+
+        resultsDir.mkdirs();
+        OutputStream out = new FileOutputStream(new File(resultsDir, FINGERPRINTS_FILE_NAME));
+        try {
+            properties.store(out, "generated by " + ImpactAnalyzer.class.getName());
+        } finally {
+            out.close();
+        }
+    }
+
+    private synchronized Properties getPreviousFingerprints() throws IOException {
+        if (previousFingerprints == null) {
+            previousFingerprints = new Properties();
+            File file = new File(resultsDir, FINGERPRINTS_FILE_NAME);
+            if (file.exists()) {
+                InputStream in = new FileInputStream(file);
+                try {
+                    previousFingerprints.load(in);
+                } finally {
+                    in.close();
+                }
+            }
+        }
+        return previousFingerprints;
+    }
+
+    private static Map<String, ClassNode> readJar(File jar) throws IOException {
+        Map<String, ClassNode> result = new HashMap<String, ClassNode>();
+        ZipFile zipFile = new ZipFile(jar);
+        try {
+            Enumeration<? extends ZipEntry> entries = zipFile.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                String name = entry.getName();
+                if (!name.endsWith(".class") || name.endsWith("module-info.class")) {
+                    continue;
+                }
+                InputStream in = zipFile.getInputStream(entry);
+                try {
+                    String className = name.substring(0, name.length() - ".class".length())
+                            .replace('/', '.');
+                    result.put(className, toNode(ByteStreams.toByteArray(in)));
+                } finally {
+                    in.close();
+                }
+            }
+        } finally {
+            zipFile.close();
+        }
+        return result;
+    }
+
+    private static ClassNode toNode(byte[] classFile) throws IOException {
+        return new ClassNode(toHexString(newDigester().digest(classFile)),
+                ClassFileDependencies.referencedClasses(classFile));
+    }
+
+    /**
+     * Writes nodes one per line, as the class name, its hash and a comma
+     * separated list of its dependencies.
+     */
+    private static void writeNodes(Map<String, ClassNode> nodes, File file) throws IOException {
+        file.getParentFile().mkdirs();
+        Writer out = new BufferedWriter(
+                new OutputStreamWriter(new FileOutputStream(file), Charsets.UTF_8));
+        try {
+            for (Map.Entry<String, ClassNode> entry : nodes.entrySet()) {
+                out.write(entry.getKey());
+                out.write(' ');
+                out.write(entry.getValue().hash);
+                out.write(' ');
+                boolean first = true;
+                for (String dependency : entry.getValue().dependencies) {
+                    if (!first) {
+                        out.write(',');
+                    }
+                    out.write(dependency);
+                    first = false;
+                }
+                out.write('\n');
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    private void readNodes(File file) throws IOException {
+        BufferedReader in = new BufferedReader(
+                new InputStreamReader(new FileInputStream(file), Charsets.UTF_8));
+        try {
+            String line;
+            while ((line = in.readLine()) != null) {
+                String[] parts = line.split(" ", -1);
+                Set<String> dependencies = new HashSet<String>();
+                if (!parts[2].isEmpty()) {
+                    Collections.addAll(dependencies, parts[2].split(","));
+                }
+                classpathClasses.put(parts[0], new ClassNode(parts[1], dependencies));
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    private static MessageDigest newDigester() {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private static String toHexString(byte[] bytes) {
+        StringBuilder result = new StringBuilder();
+        for (byte b : bytes) {
+            result.append(Integer.toHexString((b >> 4) & 0xf));
+            result.append(Integer.toHexString(b & 0xf));
+        }
+        return result.toString();
+    }
+
+    private static class ClassNode {
+        final String hash;
+        final Set<String> dependencies;
+
+        ClassNode(String hash, Set<String> dependencies) {
+            this.hash = hash;
+            this.dependencies = dependencies;
+        }
+    }
+}
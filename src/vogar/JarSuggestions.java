@@ -25,16 +25,20 @@ import java.util.Set;
 
 /**
  * Stores and presents information about jars the user may have forgotten to include.
+ * This is safe for use by multiple threads.
  */
 public final class JarSuggestions {
     private final Set<File> allSuggestedJars = new HashSet<File>();
 
-    public Set<File> getAllSuggestedJars() {
-        return allSuggestedJars;
+    public synchronized Set<File> getAllSuggestedJars() {
+        return new HashSet<File>(allSuggestedJars);
     }
 
     public void addSuggestions(JarSuggestions jarSuggestions) {
-        allSuggestedJars.addAll(jarSuggestions.getAllSuggestedJars());
+        Set<File> suggestedJars = jarSuggestions.getAllSuggestedJars();
+        synchronized (this) {
+            allSuggestedJars.addAll(suggestedJars);
+        }
     }
 
     public void addSuggestionsFromOutcome(Outcome outcome, ClassFileIndex classFileIndex,
@@ -47,10 +51,12 @@ public final class JarSuggestions {
         // don't suggest adding a jar that's already on the classpath
         suggestedJars.removeAll(classpath.getElements());
 
-        allSuggestedJars.addAll(suggestedJars);
+        synchronized (this) {
+            allSuggestedJars.addAll(suggestedJars);
+        }
     }
 
-    public List<String> getStringList() {
+    public synchronized List<String> getStringList() {
         List<String> jarStringList = new ArrayList<String>();
         for (File jar : allSuggestedJars) {
             jarStringList.add(jar.getPath());
@@ -54,8 +54,14 @@ final class JavaVm implements Mode {
         return vmCommandBuilder;
     }
 
-    @Override public Task executeActionTask(Action action, boolean useLargeTimeout) {
-        return new RunActionTask(run, action, useLargeTimeout);
+    @Override public Task executeActionTask(Action action, boolean useLargeTimeout,
+            ActionShard shard) {
+        return new RunActionTask(run, action, useLargeTimeout, shard);
+    }
+
+    @Override public Task rerunOutcomeTask(Action action, boolean useLargeTimeout,
+            String outcomeName) {
+        return RunActionTask.rerun(run, action, useLargeTimeout, outcomeName);
     }
 
     @Override public Set<Task> installActionTasks(Action action, File jar) {
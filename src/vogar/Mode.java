@@ -33,7 +33,19 @@ public interface Mode {
      */
     Set<Task> installTasks();
 
-    Task executeActionTask(Action action, boolean useLargeTimeout);
+    /**
+     * Returns the task that runs {@code action}, or the part of it that
+     * {@code shard} selects.
+     *
+     * @param shard the shard of the action to run, or null to run all of it.
+     */
+    Task executeActionTask(Action action, boolean useLargeTimeout, ActionShard shard);
+
+    /**
+     * Returns the task that runs only the named outcome of {@code action},
+     * reusing the jar and user dir that the action already ran with.
+     */
+    Task rerunOutcomeTask(Action action, boolean useLargeTimeout, String outcomeName);
 
     /**
      * Hook method called after action compilation.
@@ -16,67 +16,144 @@
 
 package vogar;
 
-import com.google.common.collect.Lists;
+import java.io.File;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
+import vogar.util.CompactText;
 import vogar.util.Strings;
 
 /**
  * An outcome of an action. Some actions may have multiple outcomes. For
  * example, JUnit tests have one outcome for each test method.
+ *
+ * <p>Runs may hold hundreds of thousands of outcomes, so output is kept
+ * compact as it was received. It is sanitized and split into lines only when
+ * it is asked for.
  */
 public final class Outcome {
 
     private final String outcomeName;
     private final Result result;
-    private final String output;
-    private final Date date;
+    private final CompactText output;
+    /** {@link #output} sanitized, or null until it is first asked for. */
+    private volatile CompactText sanitizedOutput;
+    private final long date;
+    private final long wallTimeNanos;
+    private final long cpuTimeNanos;
+    private final ResourceUsage resourceUsage;
+    private final File fullOutputFile;
 
     public Outcome(String outcomeName, Result result, List<String> outputLines) {
+        this(outcomeName, result, outputLines, -1, -1, null);
+    }
+
+    /**
+     * @param wallTimeNanos the monotonic wall time taken by the outcome, or -1 if unknown.
+     * @param cpuTimeNanos the thread CPU time taken by the outcome, or -1 if unknown.
+     * @param resourceUsage the resources consumed by the outcome, or null if unknown.
+     */
+    public Outcome(String outcomeName, Result result, List<String> outputLines,
+            long wallTimeNanos, long cpuTimeNanos, ResourceUsage resourceUsage) {
+        this(outcomeName, result, outputLines, wallTimeNanos, cpuTimeNanos, resourceUsage, null);
+    }
+
+    /**
+     * @param fullOutputFile a gzipped file holding the complete output, if
+     *     {@code outputLines} is truncated, or null.
+     */
+    public Outcome(String outcomeName, Result result, List<String> outputLines,
+            long wallTimeNanos, long cpuTimeNanos, ResourceUsage resourceUsage,
+            File fullOutputFile) {
         this.outcomeName = outcomeName;
         this.result = result;
-        this.output = sanitizeOutputLines(outputLines);
-        this.date = new Date();
+        this.output = CompactText.of(Strings.join(outputLines, "\n"));
+        this.date = System.currentTimeMillis();
+        this.wallTimeNanos = wallTimeNanos;
+        this.cpuTimeNanos = cpuTimeNanos;
+        this.resourceUsage = resourceUsage;
+        this.fullOutputFile = fullOutputFile;
     }
 
     public Outcome(String outcomeName, Result result, String outputLine, Date date) {
         this.outcomeName = outcomeName;
         this.result = result;
-        this.output = sanitizeOutputLine(outputLine);
-        this.date = date;
+        this.output = CompactText.of(outputLine);
+        this.date = date.getTime();
+        this.wallTimeNanos = -1;
+        this.cpuTimeNanos = -1;
+        this.resourceUsage = null;
+        this.fullOutputFile = null;
     }
 
     public Outcome(String outcomeName, Result result, String outputLine) {
+        this(outcomeName, result, outputLine, -1, -1, null);
+    }
+
+    public Outcome(String outcomeName, Result result, String outputLine,
+            long wallTimeNanos, long cpuTimeNanos, ResourceUsage resourceUsage) {
+        this(outcomeName, result, outputLine, wallTimeNanos, cpuTimeNanos, resourceUsage, null);
+    }
+
+    /**
+     * @param fullOutputFile a gzipped file holding the complete output, if
+     *     {@code outputLine} is truncated, or null.
+     */
+    public Outcome(String outcomeName, Result result, String outputLine,
+            long wallTimeNanos, long cpuTimeNanos, ResourceUsage resourceUsage,
+            File fullOutputFile) {
         this.outcomeName = outcomeName;
         this.result = result;
-        this.output = sanitizeOutputLine(outputLine);
-        this.date = new Date();
+        this.output = CompactText.of(outputLine);
+        this.date = System.currentTimeMillis();
+        this.wallTimeNanos = wallTimeNanos;
+        this.cpuTimeNanos = cpuTimeNanos;
+        this.resourceUsage = resourceUsage;
+        this.fullOutputFile = fullOutputFile;
     }
 
     public Outcome(String outcomeName, Result result, Throwable throwable) {
         this.outcomeName = outcomeName;
         this.result = result;
-        this.output = sanitizeOutputLines(throwableToLines(throwable));
-        this.date = new Date();
+        this.output = CompactText.of(throwableToString(throwable));
+        this.date = System.currentTimeMillis();
+        this.wallTimeNanos = -1;
+        this.cpuTimeNanos = -1;
+        this.resourceUsage = null;
+        this.fullOutputFile = null;
     }
 
-    private String sanitizeOutputLines(List<String> outputLines) {
-        List<String> sanitizedStrings = Lists.newArrayList();
-        for (String line : outputLines) {
-            sanitizedStrings.add(sanitizeOutputLine(line));
-        }
-        return Strings.join(sanitizedStrings, "\n");
+    /**
+     * Returns a copy of {@code outcome} named {@code outcomeName}. The copy
+     * shares the original's output rather than decoding and re-encoding it.
+     */
+    public Outcome(String outcomeName, Outcome outcome) {
+        this(outcomeName, outcome, outcome.output);
     }
 
-    private String sanitizeOutputLine(String outputLine) {
-        return Strings.xmlSanitize(outputLine.replaceAll("\r\n?", "\n"));
+    private Outcome(String outcomeName, Outcome outcome, CompactText output) {
+        this.outcomeName = outcomeName;
+        this.result = outcome.result;
+        this.output = output;
+        this.sanitizedOutput = output == outcome.output ? outcome.sanitizedOutput : null;
+        this.date = outcome.date;
+        this.wallTimeNanos = outcome.wallTimeNanos;
+        this.cpuTimeNanos = outcome.cpuTimeNanos;
+        this.resourceUsage = outcome.resourceUsage;
+        this.fullOutputFile = outcome.fullOutputFile;
+    }
+
+    private static String sanitize(String output) {
+        if (output.indexOf('\r') != -1) {
+            output = output.replaceAll("\r\n?", "\n");
+        }
+        return Strings.xmlSanitize(output);
     }
 
     public Date getDate() {
-        return date;
+        return new Date(date);
     }
 
     public String getName() {
@@ -87,19 +164,70 @@ public final class Outcome {
         return result;
     }
 
+    /**
+     * Returns the monotonic wall time taken by this outcome on the target, or
+     * -1 if it is not known.
+     */
+    public long getWallTimeNanos() {
+        return wallTimeNanos;
+    }
+
+    /**
+     * Returns the thread CPU time taken by this outcome on the target, or -1
+     * if it is not known.
+     */
+    public long getCpuTimeNanos() {
+        return cpuTimeNanos;
+    }
+
+    /**
+     * Returns the resources consumed by this outcome on the target, or null
+     * if they are not known.
+     */
+    public ResourceUsage getResourceUsage() {
+        return resourceUsage;
+    }
+
+    /**
+     * Returns the gzipped file holding this outcome's complete output, or null
+     * if {@link #getOutput} is complete.
+     */
+    public File getFullOutputFile() {
+        return fullOutputFile;
+    }
+
     public String getOutput() {
-        return output;
+        CompactText result = sanitizedOutput;
+        if (result != null) {
+            return result.toString();
+        }
+        String raw = output.toString();
+        String sanitized = sanitize(raw);
+        // Most output needs no sanitizing, so usually this shares the original.
+        sanitizedOutput = sanitized.equals(raw) ? output : CompactText.of(sanitized);
+        return sanitized;
     }
 
     public List<String> getOutputLines() {
-        return Arrays.asList(output.split("\n"));
+        return Arrays.asList(getOutput().split("\n"));
+    }
+
+    /**
+     * Returns a copy of this outcome without its output, to be retained once
+     * nothing will show the output, such as after the outcome passed.
+     */
+    public Outcome withoutOutput() {
+        return output == CompactText.EMPTY
+                ? this
+                : new Outcome(outcomeName, this, CompactText.EMPTY);
     }
 
-    private static List<String> throwableToLines(Throwable t) {
+    private static String throwableToString(Throwable t) {
         StringWriter writer = new StringWriter();
         PrintWriter out = new PrintWriter(writer);
         t.printStackTrace(out);
-        return Arrays.asList(writer.toString().split("\\n"));
+        out.flush();
+        return writer.toString();
     }
 
     /**
@@ -174,7 +302,7 @@ public final class Outcome {
     }
 
     @Override public String toString() {
-        return "Outcome[name=" + outcomeName + " output=" + output + "]";
+        return "Outcome[name=" + outcomeName + " output=" + getOutput() + "]";
     }
 
 }
@@ -0,0 +1,781 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package vogar;
+
+import com.google.common.base.Charsets;
+import com.google.gson.stream.JsonReader;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An append-only database of the outcomes of previous runs, indexed by
+ * outcome name.
+ *
+ * <p>Each outcome of each run is stored as a fixed-size record in a segment
+ * file. Segments are memory mapped for reading. Every record points at the
+ * previous record of the same outcome, and the index maps each outcome name
+ * to its most recent record, so the recent history of one outcome is found
+ * without reading any other outcome's records.
+ *
+ * <p>The index file is a snapshot followed by one delta per run, holding the
+ * run's date and metadata and the outcomes whose most recent record it moved.
+ * Every {@link #COMPACTION_INTERVAL} runs the segments are rewritten into a
+ * new generation that keeps only the newest {@link #HISTORY_DEPTH} records of
+ * each outcome, and forgets outcomes that haven't run for
+ * {@link #MAX_RUN_AGE} runs, and the index is rewritten as a single snapshot.
+ *
+ * <p>Writers hold an exclusive lock on the directory, and readers hold a
+ * shared lock while they read the index and map its segments. A compaction
+ * therefore never deletes segments that a reader is about to map.
+ *
+ * <p>Results written as JSON files by earlier versions are imported the first
+ * time the history is used.
+ */
+public final class OutcomeHistory {
+
+    /** The number of previous results retained for each outcome. */
+    public static final int HISTORY_DEPTH = 100;
+
+    static final int COMPACTION_INTERVAL = 50;
+    static final int MAX_RUN_AGE = 1000;
+    static final int RECORDS_PER_SEGMENT = 1 << 22;
+
+    private static final int MAGIC = 0x766f6768;
+    private static final int VERSION = 2;
+    private static final int INDEX_HEADER_SIZE = 12;
+    private static final String INDEX_FILE_NAME = "history.idx";
+    private static final String LOCK_FILE_NAME = "history.lock";
+    private static final String LEGACY_RESULTS_SUFFIX = ".json";
+    private static final int NO_RECORD = -1;
+
+    /**
+     * Records are laid out as: the record number of the previous record of
+     * the same outcome (int), the run id (int), the result code (byte), the
+     * wall time in microseconds (int) and the CPU time in microseconds (int).
+     */
+    private static final int RECORD_SIZE = 4 + 4 + 1 + 4 + 4;
+
+    private final File directory;
+
+    private int generation;
+    private int recordCount;
+    private int lastCompactionRun;
+    /** The names of the results, indexed by the result code stored in records. */
+    private final List<String> resultNames = new ArrayList<String>();
+    /** The start date of each run, indexed by run id. */
+    private final List<Long> runDates = new ArrayList<Long>();
+    /** The metadata of each run, indexed by run id. */
+    private final List<Map<String, String>> runMetadata = new ArrayList<Map<String, String>>();
+    /** The record number of the most recent record of each outcome. */
+    private final Map<String, Integer> latestRecords = new HashMap<String, Integer>();
+    private final List<MappedByteBuffer> segments = new ArrayList<MappedByteBuffer>();
+    /** The length of the index file that has been read, up to its last complete delta. */
+    private long indexLength;
+    private boolean loaded;
+
+    public OutcomeHistory(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Returns up to {@code limit} previous results of the named outcome, most
+     * recent first.
+     */
+    public synchronized List<Entry> get(String outcomeName, int limit) throws IOException {
+        ensureLoaded();
+        Integer latest = latestRecords.get(outcomeName);
+        if (latest == null) {
+            return Collections.emptyList();
+        }
+
+        List<Entry> result = new ArrayList<Entry>();
+        for (int record = latest; record != NO_RECORD && result.size() < limit; ) {
+            ByteBuffer buffer = segment(record / RECORDS_PER_SEGMENT);
+            int offset = (record % RECORDS_PER_SEGMENT) * RECORD_SIZE;
+            int previous = buffer.getInt(offset);
+            int runId = buffer.getInt(offset + 4);
+            int resultCode = buffer.get(offset + 8);
+            long wallTimeNanos = microsToNanos(buffer.getInt(offset + 9));
+            long cpuTimeNanos = microsToNanos(buffer.getInt(offset + 13));
+            result.add(new Entry(runDates.get(runId), runMetadata.get(runId),
+                    Result.valueOf(resultNames.get(resultCode)), wallTimeNanos, cpuTimeNanos));
+            record = previous;
+        }
+        return result;
+    }
+
+    /**
+     * Returns the wall time of the most recent result of each outcome whose
+     * name starts with {@code prefix}, by outcome name. Outcomes whose wall
+     * time wasn't measured are omitted.
+     */
+    public synchronized Map<String, Long> getLatestWallTimeNanos(String prefix)
+            throws IOException {
+        ensureLoaded();
+        Map<String, Long> result = new HashMap<String, Long>();
+        for (Map.Entry<String, Integer> entry : latestRecords.entrySet()) {
+            if (!entry.getKey().startsWith(prefix)) {
+                continue;
+            }
+            int record = entry.getValue();
+            ByteBuffer buffer = segment(record / RECORDS_PER_SEGMENT);
+            int offset = (record % RECORDS_PER_SEGMENT) * RECORD_SIZE;
+            long wallTimeNanos = microsToNanos(buffer.getInt(offset + 9));
+            if (wallTimeNanos != -1) {
+                result.put(entry.getKey(), wallTimeNanos);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the wall times of up to {@code limit} previous successful
+     * results of each outcome whose name starts with {@code prefix}, most
+     * recent first, by outcome name. Results whose wall time wasn't measured
+     * are omitted, as are outcomes left with none.
+     */
+    public synchronized Map<String, List<Long>> getSuccessfulWallTimeNanos(String prefix,
+            int limit) throws IOException {
+        ensureLoaded();
+        Map<String, List<Long>> result = new HashMap<String, List<Long>>();
+        for (Map.Entry<String, Integer> entry : latestRecords.entrySet()) {
+            if (!entry.getKey().startsWith(prefix)) {
+                continue;
+            }
+            List<Long> wallTimes = new ArrayList<Long>();
+            int count = 0;
+            for (int record = entry.getValue(); record != NO_RECORD && count < limit; count++) {
+                ByteBuffer buffer = segment(record / RECORDS_PER_SEGMENT);
+                int offset = (record % RECORDS_PER_SEGMENT) * RECORD_SIZE;
+                int resultCode = buffer.get(offset + 8);
+                long wallTimeNanos = microsToNanos(buffer.getInt(offset + 9));
+                if (wallTimeNanos != -1
+                        && resultNames.get(resultCode).equals(Result.SUCCESS.name())) {
+                    wallTimes.add(wallTimeNanos);
+                }
+                record = buffer.getInt(offset);
+            }
+            if (!wallTimes.isEmpty()) {
+                result.put(entry.getKey(), wallTimes);
+            }
+        }
+        return result;
+    }
+
+    public void append(long date, Collection<Outcome> outcomes) throws IOException {
+        append(date, Collections.<String, String>emptyMap(), outcomes);
+    }
+
+    /**
+     * Appends the outcomes of a run that started at {@code date}. This first
+     * reads what concurrent runs sharing the directory appended, so that
+     * they don't lose each other's results.
+     *
+     * @param metadata describes the run, such as the mode it ran in.
+     */
+    public synchronized void append(long date, Map<String, String> metadata,
+            Collection<Outcome> outcomes) throws IOException {
+        directory.mkdirs();
+        RandomAccessFile lockFile = new RandomAccessFile(new File(directory, LOCK_FILE_NAME), "rw");
+        try {
+            FileLock lock = lockFile.getChannel().lock();
+            try {
+                refresh();
+                appendLocked(date, metadata, outcomes);
+            } finally {
+                lock.release();
+            }
+        } finally {
+            lockFile.close();
+        }
+    }
+
+    /**
+     * Appends a run while holding the exclusive lock, with the index up to
+     * date.
+     */
+    private void appendLocked(long date, Map<String, String> metadata,
+            Collection<Outcome> outcomes) throws IOException {
+        int firstNewResultName = resultNames.size();
+        int runId = runDates.size();
+        runDates.add(date);
+        runMetadata.add(metadata);
+
+        Map<String, Integer> updates = new LinkedHashMap<String, Integer>();
+        RecordWriter writer = new RecordWriter(generation, recordCount);
+        try {
+            for (Outcome outcome : outcomes) {
+                Integer previous = latestRecords.get(outcome.getName());
+                int record = writer.write(previous != null ? previous : NO_RECORD, runId,
+                        resultCode(outcome.getResult()),
+                        nanosToMicros(outcome.getWallTimeNanos()),
+                        nanosToMicros(outcome.getCpuTimeNanos()));
+                latestRecords.put(outcome.getName(), record);
+                updates.put(outcome.getName(), record);
+            }
+        } finally {
+            writer.close();
+        }
+        recordCount = writer.recordCount;
+        mapSegments();
+
+        if (runDates.size() - lastCompactionRun >= COMPACTION_INTERVAL) {
+            compact();
+        } else {
+            appendDelta(runId, firstNewResultName, updates);
+        }
+    }
+
+    /**
+     * Rewrites the retained records of every outcome into a new generation of
+     * segments, then deletes the old generation. Readers map segments while
+     * holding the shared lock, which this waits out, so none is left about to
+     * map a deleted segment.
+     */
+    private void compact() throws IOException {
+        int oldGeneration = generation;
+        int oldestRetainedRun = runDates.size() - MAX_RUN_AGE;
+        Map<String, Integer> compactedRecords = new HashMap<String, Integer>();
+
+        RecordWriter writer = new RecordWriter(oldGeneration + 1, 0);
+        try {
+            int[] chain = new int[HISTORY_DEPTH];
+            for (Map.Entry<String, Integer> entry : latestRecords.entrySet()) {
+                int length = 0;
+                int record = entry.getValue();
+                while (record != NO_RECORD && length < HISTORY_DEPTH) {
+                    chain[length++] = record;
+                    record = previousOf(record);
+                }
+                if (runIdOf(chain[0]) < oldestRetainedRun) {
+                    continue;
+                }
+
+                // copy oldest first so that each record can point at its predecessor
+                int previous = NO_RECORD;
+                for (int i = length - 1; i >= 0; i--) {
+                    ByteBuffer buffer = segment(chain[i] / RECORDS_PER_SEGMENT);
+                    int offset = (chain[i] % RECORDS_PER_SEGMENT) * RECORD_SIZE;
+                    previous = writer.write(previous, buffer.getInt(offset + 4),
+                            buffer.get(offset + 8), buffer.getInt(offset + 9),
+                            buffer.getInt(offset + 13));
+                }
+                compactedRecords.put(entry.getKey(), previous);
+            }
+        } finally {
+            writer.close();
+        }
+
+        generation = oldGeneration + 1;
+        recordCount = writer.recordCount;
+        lastCompactionRun = runDates.size();
+        latestRecords.clear();
+        latestRecords.putAll(compactedRecords);
+        mapSegments();
+        writeSnapshot();
+
+        for (int i = 0; segmentFile(oldGeneration, i).exists(); i++) {
+            segmentFile(oldGeneration, i).delete();
+        }
+    }
+
+    private int previousOf(int record) throws IOException {
+        return segment(record / RECORDS_PER_SEGMENT)
+                .getInt((record % RECORDS_PER_SEGMENT) * RECORD_SIZE);
+    }
+
+    private int runIdOf(int record) throws IOException {
+        return segment(record / RECORDS_PER_SEGMENT)
+                .getInt((record % RECORDS_PER_SEGMENT) * RECORD_SIZE + 4);
+    }
+
+    private byte resultCode(Result result) {
+        int code = resultNames.indexOf(result.name());
+        if (code == -1) {
+            code = resultNames.size();
+            resultNames.add(result.name());
+        }
+        return (byte) code;
+    }
+
+    /**
+     * Reads the index and maps the segments the first time the history is
+     * used, importing any results written by earlier versions first.
+     */
+    private void ensureLoaded() throws IOException {
+        if (loaded) {
+            return;
+        }
+        if (!directory.isDirectory()) {
+            clear();
+            return;
+        }
+
+        boolean importLegacyResults = !indexFile().exists() && !legacyResultFiles().isEmpty();
+        RandomAccessFile lockFile = new RandomAccessFile(new File(directory, LOCK_FILE_NAME), "rw");
+        try {
+            FileLock lock = lockFile.getChannel().lock(0, Long.MAX_VALUE, !importLegacyResults);
+            try {
+                refresh();
+                if (importLegacyResults && runDates.isEmpty()) {
+                    importLegacyResults();
+                }
+            } finally {
+                lock.release();
+            }
+        } finally {
+            lockFile.close();
+        }
+    }
+
+    /**
+     * Brings the in-memory index up to date with the index file, reading only
+     * the deltas appended since it was last read where possible. Must be
+     * called with the lock held.
+     */
+    private void refresh() throws IOException {
+        File indexFile = indexFile();
+        if (!indexFile.exists()) {
+            clear();
+            return;
+        }
+
+        DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(indexFile)));
+        try {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Unrecognized outcome history index " + indexFile);
+            }
+            int fileGeneration = in.readInt();
+            if (indexLength == 0 || fileGeneration != generation
+                    || indexFile.length() < indexLength) {
+                // Nothing was read yet, or another run compacted the history.
+                clear();
+                generation = fileGeneration;
+                indexLength = INDEX_HEADER_SIZE;
+            } else {
+                skipFully(in, indexLength - INDEX_HEADER_SIZE);
+            }
+            readDeltas(in);
+        } finally {
+            in.close();
+        }
+        mapSegments();
+    }
+
+    /**
+     * Reads deltas until the end of the index, stopping at a delta that an
+     * interrupted run left incomplete.
+     */
+    private void readDeltas(DataInputStream in) throws IOException {
+        while (true) {
+            byte[] delta;
+            try {
+                delta = new byte[in.readInt()];
+                in.readFully(delta);
+            } catch (EOFException e) {
+                return;
+            }
+
+            DataInputStream deltaIn = new DataInputStream(new ByteArrayInputStream(delta));
+            recordCount = deltaIn.readInt();
+            lastCompactionRun = deltaIn.readInt();
+            for (int i = 0, count = deltaIn.readInt(); i < count; i++) {
+                runDates.add(deltaIn.readLong());
+                Map<String, String> metadata = new LinkedHashMap<String, String>();
+                for (int j = 0, entries = deltaIn.readInt(); j < entries; j++) {
+                    metadata.put(deltaIn.readUTF(), deltaIn.readUTF());
+                }
+                runMetadata.add(metadata);
+            }
+            for (int i = 0, count = deltaIn.readInt(); i < count; i++) {
+                resultNames.add(deltaIn.readUTF());
+            }
+            for (int i = 0, count = deltaIn.readInt(); i < count; i++) {
+                String name = deltaIn.readUTF();
+                latestRecords.put(name, deltaIn.readInt());
+            }
+            indexLength += 4 + delta.length;
+        }
+    }
+
+    private void clear() {
+        generation = 0;
+        recordCount = 0;
+        lastCompactionRun = 0;
+        resultNames.clear();
+        runDates.clear();
+        runMetadata.clear();
+        latestRecords.clear();
+        segments.clear();
+        indexLength = 0;
+        loaded = true;
+    }
+
+    /**
+     * Appends the delta of one run to the index, first cutting off any
+     * incomplete delta left behind by an interrupted run.
+     */
+    private void appendDelta(int runId, int firstNewResultName, Map<String, Integer> updates)
+            throws IOException {
+        byte[] delta = encodeDelta(runId, firstNewResultName, updates);
+        File indexFile = indexFile();
+        boolean exists = indexFile.exists();
+        RandomAccessFile out = new RandomAccessFile(indexFile, "rw");
+        try {
+            if (!exists) {
+                out.setLength(0);
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(generation);
+                indexLength = INDEX_HEADER_SIZE;
+            }
+            out.setLength(indexLength);
+            out.seek(indexLength);
+            out.writeInt(delta.length);
+            out.write(delta);
+        } finally {
+            out.close();
+        }
+        indexLength += 4 + delta.length;
+    }
+
+    /**
+     * Writes the whole index as a single delta to a temporary file and
+     * renames it into place, so that readers never observe a partially
+     * written snapshot.
+     */
+    private void writeSnapshot() throws IOException {
+        byte[] delta = encodeDelta(0, 0, latestRecords);
+        File indexFile = indexFile();
+        File tmpFile = new File(directory, INDEX_FILE_NAME + ".tmp");
+        DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(tmpFile)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(generation);
+            out.writeInt(delta.length);
+            out.write(delta);
+        } finally {
+            out.close();
+        }
+        if (!tmpFile.renameTo(indexFile)) {
+            throw new IOException("Failed to rename " + tmpFile + " to " + indexFile);
+        }
+        indexLength = INDEX_HEADER_SIZE + 4 + delta.length;
+    }
+
+    /**
+     * Encodes the runs from {@code firstRunId}, the result names from
+     * {@code firstResultName}, and the given most recent records.
+     */
+    private byte[] encodeDelta(int firstRunId, int firstResultName,
+            Map<String, Integer> records) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(recordCount);
+        out.writeInt(lastCompactionRun);
+        out.writeInt(runDates.size() - firstRunId);
+        for (int runId = firstRunId; runId < runDates.size(); runId++) {
+            out.writeLong(runDates.get(runId));
+            Map<String, String> metadata = runMetadata.get(runId);
+            out.writeInt(metadata.size());
+            for (Map.Entry<String, String> entry : metadata.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeUTF(entry.getValue());
+            }
+        }
+        out.writeInt(resultNames.size() - firstResultName);
+        for (int i = firstResultName; i < resultNames.size(); i++) {
+            out.writeUTF(resultNames.get(i));
+        }
+        out.writeInt(records.size());
+        for (Map.Entry<String, Integer> entry : records.entrySet()) {
+            out.writeUTF(entry.getKey());
+            out.writeInt(entry.getValue());
+        }
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Appends the results of the JSON files that earlier versions wrote to
+     * the directory, oldest first, as runs dated by when each was written.
+     * Must be called with the exclusive lock held.
+     */
+    private void importLegacyResults() throws IOException {
+        for (File file : legacyResultFiles()) {
+            List<Outcome> outcomes = new ArrayList<Outcome>();
+            JsonReader in = new JsonReader(
+                    new InputStreamReader(new FileInputStream(file), Charsets.UTF_8));
+            try {
+                in.beginObject();
+                while (in.hasNext()) {
+                    outcomes.add(readLegacyOutcome(in.nextName(), in));
+                }
+                in.endObject();
+            } finally {
+                in.close();
+            }
+            appendLocked(file.lastModified(),
+                    Collections.singletonMap("importedFrom", file.getName()), outcomes);
+        }
+    }
+
+    private static Outcome readLegacyOutcome(String outcomeName, JsonReader in)
+            throws IOException {
+        Result result = null;
+        long wallTimeNanos = -1;
+        long cpuTimeNanos = -1;
+        in.beginObject();
+        while (in.hasNext()) {
+            String fieldName = in.nextName();
+            if (fieldName.equals("result")) {
+                result = Result.valueOf(in.nextString());
+            } else if (fieldName.equals("wallTimeNanos")) {
+                wallTimeNanos = in.nextLong();
+            } else if (fieldName.equals("cpuTimeNanos")) {
+                cpuTimeNanos = in.nextLong();
+            } else {
+                in.skipValue();
+            }
+        }
+        in.endObject();
+        if (result == null) {
+            throw new IOException("No result for " + outcomeName);
+        }
+        return new Outcome(outcomeName, result, Collections.<String>emptyList(),
+                wallTimeNanos, cpuTimeNanos, null);
+    }
+
+    /**
+     * Returns the JSON result files of earlier versions, oldest first.
+     */
+    private List<File> legacyResultFiles() {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return Collections.emptyList();
+        }
+        List<File> result = new ArrayList<File>();
+        for (File file : files) {
+            if (file.getName().endsWith(LEGACY_RESULTS_SUFFIX)) {
+                result.add(file);
+            }
+        }
+        Collections.sort(result, new Comparator<File>() {
+            @Override public int compare(File a, File b) {
+                return Long.compare(a.lastModified(), b.lastModified());
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Maps every segment of the current generation. This is done while the
+     * lock is held, so that a concurrent compaction can't delete a segment
+     * before it is mapped.
+     */
+    private void mapSegments() throws IOException {
+        segments.clear();
+        int segmentCount = (recordCount + RECORDS_PER_SEGMENT - 1) / RECORDS_PER_SEGMENT;
+        for (int index = 0; index < segmentCount; index++) {
+            RandomAccessFile file = new RandomAccessFile(segmentFile(generation, index), "r");
+            try {
+                segments.add(file.getChannel().map(
+                        FileChannel.MapMode.READ_ONLY, 0, file.length()));
+            } finally {
+                file.close();
+            }
+        }
+    }
+
+    private ByteBuffer segment(int index) throws IOException {
+        if (index >= segments.size()) {
+            throw new IOException("No segment " + index + " in generation " + generation);
+        }
+        return segments.get(index);
+    }
+
+    private File indexFile() {
+        return new File(directory, INDEX_FILE_NAME);
+    }
+
+    private File segmentFile(int generation, int index) {
+        return new File(directory, "history-" + generation + "-" + index + ".seg");
+    }
+
+    private static void skipFully(DataInputStream in, long count) throws IOException {
+        while (count > 0) {
+            int skipped = in.skipBytes((int) Math.min(count, Integer.MAX_VALUE));
+            if (skipped <= 0) {
+                throw new EOFException();
+            }
+            count -= skipped;
+        }
+    }
+
+    private static int nanosToMicros(long nanos) {
+        return nanos == -1 ? -1 : (int) Math.min(Integer.MAX_VALUE, nanos / 1000);
+    }
+
+    private static long microsToNanos(int micros) {
+        return micros == -1 ? -1 : micros * 1000L;
+    }
+
+    /**
+     * Appends records to the segments of a generation, starting a new segment
+     * file whenever the current one is full.
+     */
+    private class RecordWriter {
+        private final int generation;
+        private final ByteBuffer buffer = ByteBuffer.allocate(RECORD_SIZE * 4096);
+        private int recordCount;
+        private FileChannel channel;
+
+        RecordWriter(int generation, int recordCount) {
+            this.generation = generation;
+            this.recordCount = recordCount;
+        }
+
+        /**
+         * Writes a record and returns its record number.
+         */
+        int write(int previous, int runId, byte resultCode, int wallTimeMicros,
+                int cpuTimeMicros) throws IOException {
+            if (channel == null || recordCount % RECORDS_PER_SEGMENT == 0) {
+                openSegment();
+            }
+            if (!buffer.hasRemaining()) {
+                flush();
+            }
+            buffer.putInt(previous);
+            buffer.putInt(runId);
+            buffer.put(resultCode);
+            buffer.putInt(wallTimeMicros);
+            buffer.putInt(cpuTimeMicros);
+            return recordCount++;
+        }
+
+        /**
+         * Opens the segment that the next record belongs in, discarding any
+         * records past the end of the index left behind by an interrupted run.
+         */
+        private void openSegment() throws IOException {
+            close();
+            File file = segmentFile(generation, recordCount / RECORDS_PER_SEGMENT);
+            channel = new RandomAccessFile(file, "rw").getChannel();
+            long position = (long) (recordCount % RECORDS_PER_SEGMENT) * RECORD_SIZE;
+            channel.truncate(position);
+            channel.position(position);
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        void close() throws IOException {
+            if (channel != null) {
+                flush();
+                channel.close();
+                channel = null;
+            }
+        }
+    }
+
+    /**
+     * A previous result of an outcome.
+     */
+    public static final class Entry {
+        private final long date;
+        private final Map<String, String> runMetadata;
+        private final Result result;
+        private final long wallTimeNanos;
+        private final long cpuTimeNanos;
+
+        Entry(long date, Map<String, String> runMetadata, Result result, long wallTimeNanos,
+                long cpuTimeNanos) {
+            this.date = date;
+            this.runMetadata = Collections.unmodifiableMap(runMetadata);
+            this.result = result;
+            this.wallTimeNanos = wallTimeNanos;
+            this.cpuTimeNanos = cpuTimeNanos;
+        }
+
+        /**
+         * Returns the time the run that produced this result started.
+         */
+        public long getDate() {
+            return date;
+        }
+
+        /**
+         * Returns what the run that produced this result recorded about
+         * itself, such as the mode it ran in.
+         */
+        public Map<String, String> getRunMetadata() {
+            return runMetadata;
+        }
+
+        public Result getResult() {
+            return result;
+        }
+
+        /**
+         * Returns the wall time of the outcome at microsecond precision, or -1
+         * if it is not known.
+         */
+        public long getWallTimeNanos() {
+            return wallTimeNanos;
+        }
+
+        /**
+         * Returns the CPU time of the outcome at microsecond precision, or -1
+         * if it is not known.
+         */
+        public long getCpuTimeNanos() {
+            return cpuTimeNanos;
+        }
+    }
+}
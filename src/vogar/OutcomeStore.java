@@ -16,72 +16,75 @@
 
 package vogar;
 
-import com.google.gson.stream.JsonReader;
-import com.google.gson.stream.JsonWriter;
 import java.io.File;
-import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.text.SimpleDateFormat;
-import java.util.Arrays;
 import java.util.Collections;
-import java.util.Comparator;
 import java.util.Date;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.TimeZone;
-import vogar.commands.Mkdir;
-import vogar.commands.Rm;
 
+/**
+ * Annotates outcomes with their results from previous runs and records the
+ * results of this run, using an {@link OutcomeHistory} in the results
+ * directory.
+ */
 public final class OutcomeStore {
-    private static final String FILE_NAME_DATE_FORMAT = "yyyy-MM-dd'T'HH:mm:ssz";
-    private static final int PRESERVE_TOTAL = 10;
 
-    private static final Comparator<File> ORDER_BY_LAST_MODIFIED = new Comparator<File>() {
-        @Override public int compare(File a, File b) {
-            if (a.lastModified() != b.lastModified()) {
-                return a.lastModified() < b.lastModified() ? -1 : 1;
-            }
-            return 0;
-        }
-    };
+    /** The number of previous results that outcomes are annotated with. */
+    private static final int ANNOTATED_HISTORY_DEPTH = 10;
 
     private final Log log;
-    private final Mkdir mkdir;
-    private final Rm rm;
     private final File resultsDir;
     private final boolean recordResults;
     private final ExpectationStore expectationStore;
     private final Date date;
+    private final Map<String, String> runMetadata;
+    private final OutcomeHistory history;
 
-    public OutcomeStore(Log log, Mkdir mkdir, Rm rm, File resultsDir, boolean recordResults,
-            ExpectationStore expectationStore, Date date) {
+    /**
+     * @param runMetadata describes this run, such as the mode it ran in, and
+     *     is recorded with its results.
+     */
+    public OutcomeStore(Log log, File resultsDir, boolean recordResults,
+            ExpectationStore expectationStore, Date date, Map<String, String> runMetadata) {
         this.log = log;
-        this.mkdir = mkdir;
-        this.rm = rm;
         this.resultsDir = resultsDir;
         this.recordResults = recordResults;
         this.expectationStore = expectationStore;
         this.date = date;
+        this.runMetadata = runMetadata;
+        this.history = new OutcomeHistory(resultsDir);
     }
 
-    public Map<String, AnnotatedOutcome> read(Map<String, Outcome> outcomes) {
+    /**
+     * Annotates {@code outcomes} with their history.
+     *
+     * @param expectations the expectations the outcomes were judged by, by
+     *     outcome name. Outcomes not in it are looked up in the expectation
+     *     store, which needs their output.
+     */
+    public Map<String, AnnotatedOutcome> read(Map<String, Outcome> outcomes,
+            Map<String, Expectation> expectations) {
         Map<String, AnnotatedOutcome> result = new LinkedHashMap<String, AnnotatedOutcome>();
         for (Map.Entry<String, Outcome> entry : outcomes.entrySet()) {
             Outcome outcome = entry.getValue();
-            Expectation expectation = expectationStore.get(outcome);
+            Expectation expectation = expectations.get(entry.getKey());
+            if (expectation == null) {
+                expectation = expectationStore.get(outcome);
+            }
             result.put(entry.getKey(), new AnnotatedOutcome(outcome, expectation));
         }
 
         try {
-            File[] oldOutcomes = getOutcomeFiles();
-            log.verbose("parsing outcomes from " + oldOutcomes.length + " files");
-            for (File file : oldOutcomes) {
-                if (!file.getName().endsWith(".json")) {
-                    continue;
+            log.verbose("reading outcome history from " + resultsDir);
+            for (Map.Entry<String, AnnotatedOutcome> entry : result.entrySet()) {
+                for (OutcomeHistory.Entry previous
+                        : history.get(entry.getKey(), ANNOTATED_HISTORY_DEPTH)) {
+                    entry.getValue().add(previous.getDate(), new Outcome(entry.getKey(),
+                            previous.getResult(), Collections.<String>emptyList(),
+                            previous.getWallTimeNanos(), previous.getCpuTimeNanos(), null));
                 }
-
-                loadOutcomes(result, file, file.lastModified());
             }
         } catch (IOException e) {
             log.info("Failed to read outcomes from " + resultsDir, e);
@@ -90,88 +93,56 @@ public final class OutcomeStore {
         return result;
     }
 
-    private void loadOutcomes(Map<String, AnnotatedOutcome> map, File file, long fileDate)
-            throws IOException {
-        JsonReader in = new JsonReader(new FileReader(file));
-        in.beginObject();
-        while (in.hasNext()) {
-            String outcomeName = in.nextName();
-            AnnotatedOutcome annotatedOutcome = map.get(outcomeName);
-            if (annotatedOutcome == null) {
-                in.skipValue();
-                continue;
-            }
-
-            Result result = null;
-            in.beginObject();
-            while (in.hasNext()) {
-                String fieldName = in.nextName();
-                if (fieldName.equals("result")) {
-                    result = Result.valueOf(in.nextString());
-                } else {
-                    in.skipValue();
-                }
-            }
-            in.endObject();
-
-            annotatedOutcome.add(fileDate, new Outcome(outcomeName, result,
-                    Collections.<String>emptyList()));
+    /**
+     * Returns up to {@code limit} previous results of the named outcome, most
+     * recent first. Returns an empty list if the history cannot be read.
+     */
+    public List<OutcomeHistory.Entry> getHistory(String outcomeName, int limit) {
+        try {
+            return history.get(outcomeName, limit);
+        } catch (IOException e) {
+            log.verbose("Failed to read history of " + outcomeName + ": " + e);
+            return Collections.emptyList();
         }
-        in.endObject();
-        in.close();
     }
 
-    public void write(Map<String, Outcome> outcomes) {
-        if (!recordResults) {
-            return;
-        }
-
-        makeRoom();
-        File outputFile = getOutputFile();
+    /**
+     * Returns the most recent wall time of each outcome whose name starts
+     * with {@code prefix}, by outcome name. Returns an empty map if the
+     * history cannot be read.
+     */
+    public Map<String, Long> getLatestWallTimeNanos(String prefix) {
         try {
-            mkdir.mkdirs(outputFile.getParentFile());
-            JsonWriter out = new JsonWriter(new FileWriter(outputFile));
-            out.setIndent("  ");
-            out.beginObject();
-            for (Map.Entry<String, Outcome> entry : outcomes.entrySet()) {
-                out.name(entry.getKey());
-                out.beginObject();
-                out.name("result");
-                out.value(entry.getValue().getResult().toString());
-                out.endObject();
-            }
-            out.endObject();
-            out.close();
+            return history.getLatestWallTimeNanos(prefix);
         } catch (IOException e) {
-            log.info("Failed to write outcomes to " + outputFile, e);
+            log.verbose("Failed to read history of " + prefix + "*: " + e);
+            return Collections.emptyMap();
         }
     }
 
-    private File[] getOutcomeFiles() {
-        File[] result = resultsDir.listFiles();
-        if (result == null) {
-            return new File[0];
+    /**
+     * Returns the wall times of up to {@code limit} previous successful
+     * results of each outcome whose name starts with {@code prefix}, by
+     * outcome name. Returns an empty map if the history cannot be read.
+     */
+    public Map<String, List<Long>> getSuccessfulWallTimeNanos(String prefix, int limit) {
+        try {
+            return history.getSuccessfulWallTimeNanos(prefix, limit);
+        } catch (IOException e) {
+            log.verbose("Failed to read history of " + prefix + "*: " + e);
+            return Collections.emptyMap();
         }
-        Arrays.sort(result, ORDER_BY_LAST_MODIFIED);
-        return result;
     }
 
-    private File getOutputFile() {
-        SimpleDateFormat dateFormat = new SimpleDateFormat(FILE_NAME_DATE_FORMAT);
-        dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
-        dateFormat.setLenient(true);
-        String timestamp = dateFormat.format(date);
-        return new File(resultsDir, timestamp + ".json");
-    }
+    public void write(Map<String, Outcome> outcomes) {
+        if (!recordResults) {
+            return;
+        }
 
-    /**
-     * Removes the oldest result files until only (PRESERVE_TOTAL - 1) remain.
-     */
-    private void makeRoom() {
-        File[] outcomeFiles = getOutcomeFiles();
-        for (int i = 0; i <= (outcomeFiles.length - PRESERVE_TOTAL); i++) {
-            rm.file(outcomeFiles[i]);
-            log.verbose("garbage collected results file: " + outcomeFiles[i]);
+        try {
+            history.append(date.getTime(), runMetadata, outcomes.values());
+        } catch (IOException e) {
+            log.info("Failed to write outcomes to " + resultsDir, e);
         }
     }
 }
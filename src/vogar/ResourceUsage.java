@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package vogar;
+
+/**
+ * The runtime resources consumed by a single outcome, as sampled by the
+ * target process before and after the outcome ran. Shared between the host
+ * and the target.
+ *
+ * <p>The heap and thread deltas are always known and may be negative. The
+ * remaining counters are -1 when the target VM can't provide them.
+ */
+public final class ResourceUsage {
+
+    private final long heapDeltaBytes;
+    private final int threadDelta;
+    private final long gcCount;
+    private final long gcTimeMillis;
+    private final long allocatedBytes;
+
+    public ResourceUsage(long heapDeltaBytes, int threadDelta, long gcCount, long gcTimeMillis,
+            long allocatedBytes) {
+        this.heapDeltaBytes = heapDeltaBytes;
+        this.threadDelta = threadDelta;
+        this.gcCount = gcCount;
+        this.gcTimeMillis = gcTimeMillis;
+        this.allocatedBytes = allocatedBytes;
+    }
+
+    /**
+     * Returns the change in used heap across the outcome.
+     */
+    public long getHeapDeltaBytes() {
+        return heapDeltaBytes;
+    }
+
+    /**
+     * Returns the change in the number of live threads across the outcome.
+     */
+    public int getThreadDelta() {
+        return threadDelta;
+    }
+
+    public long getGcCount() {
+        return gcCount;
+    }
+
+    public long getGcTimeMillis() {
+        return gcTimeMillis;
+    }
+
+    /**
+     * Returns the bytes allocated by the thread running the outcome.
+     */
+    public long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    @Override public String toString() {
+        return "ResourceUsage[heapDeltaBytes=" + heapDeltaBytes
+                + " threadDelta=" + threadDelta
+                + " gcCount=" + gcCount
+                + " gcTimeMillis=" + gcTimeMillis
+                + " allocatedBytes=" + allocatedBytes + "]";
+    }
+}
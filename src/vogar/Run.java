@@ -25,7 +25,9 @@ import java.net.URL;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
 
@@ -71,6 +73,10 @@ public final class Run {
     public final Rm rm;
     public final int firstMonitorPort;
     public final int timeoutSeconds;
+    public final int outputHeadChars;
+    public final int outputTailChars;
+    /** Holds the complete output of outcomes whose output was truncated. */
+    public final File outputSpillDir;
     public final File javaHome;
     public final Integer debugPort;
     public final Language language;
@@ -91,6 +97,10 @@ public final class Run {
     public final List<String> targetArgs;
     public final boolean useBootClasspath;
     public final int largeTimeoutSeconds;
+    public final int stallTimeoutSeconds;
+    public final boolean adaptiveTimeouts;
+    public final int maxFailures;
+    public final int timeBudgetSeconds;
     public final RetrievedFilesFilter retrievedFiles;
     public final Driver driver;
     public final Mode mode;
@@ -99,12 +109,21 @@ public final class Run {
     public final XmlReportPrinter reportPrinter;
     public final JarSuggestions jarSuggestions;
     public final ClassFileIndex classFileIndex;
+    public final DotJavaFileCache dotJavaFileCache;
     public final OutcomeStore outcomeStore;
     public final TaskQueue taskQueue;
     public final RunnerType runnerType;
     public final Toolchain toolchain;
     public final boolean checkJni;
     public final boolean debugging;
+    public final int slowestOutcomes;
+    public final int threadLeakThreshold;
+    public final int retainedHeapThresholdKiB;
+    public final boolean gcBetweenTests;
+    public final int actionShards;
+    public final boolean rerunFlakyFailures;
+    public final double flakinessThreshold;
+    public final ImpactAnalyzer impactAnalyzer;
 
     public Run(Vogar vogar, Toolchain toolchain, Console console, Mkdir mkdir,
             AndroidSdk androidSdk, Rm rm, Target target, File runnerDir)
@@ -112,6 +131,8 @@ public final class Run {
         this.console = console;
 
         this.localTemp = new File("/tmp/vogar/" + UUID.randomUUID());
+        // Beside localTemp rather than in it, so that it outlives --clean-after.
+        this.outputSpillDir = new File(localTemp.getPath() + "-output");
         this.log = console;
 
         this.target = target;
@@ -140,7 +161,13 @@ public final class Run {
                     ? 1
                     : Vogar.NUM_PROCESSORS;
         this.timeoutSeconds = vogar.timeoutSeconds;
+        this.outputHeadChars = vogar.outputHeadChars;
+        this.outputTailChars = vogar.outputTailChars;
         this.smallTimeoutSeconds = vogar.timeoutSeconds;
+        this.stallTimeoutSeconds = vogar.stallTimeoutSeconds;
+        this.adaptiveTimeouts = vogar.adaptiveTimeouts;
+        this.maxFailures = vogar.failFast ? 1 : vogar.maxFailures;
+        this.timeBudgetSeconds = vogar.timeBudgetSeconds;
         this.sourcepath = vogar.sourcepath;
         this.resourceClasspath = Classpath.of(vogar.resourceClasspath);
         this.useBootClasspath = vogar.useBootClasspath;
@@ -158,7 +185,9 @@ public final class Run {
         this.androidSdk = androidSdk;
 
         expectationStore = ExpectationStore.parse(
-            console, vogar.expectationFiles, vogar.modeId, vogar.variant);
+            console, vogar.expectationFiles, vogar.modeId, vogar.variant,
+            new Md5Cache(log, "expectations", new HostFileCache(log, mkdir)),
+            localFile("expectations", "expectations.bin"));
         if (vogar.openBugsCommand != null) {
             expectationStore.loadBugStatuses(new CommandBugDatabase(log, vogar.openBugsCommand));
         }
@@ -175,15 +204,45 @@ public final class Run {
             classFileIndex.createIndex();
         }
 
+        this.dotJavaFileCache = new DotJavaFileCache(log, new File(vogar.vogarDir, "dotjavafiles"));
+
         this.retrievedFiles = new RetrievedFilesFilter();
-        this.reportPrinter = new XmlReportPrinter(xmlReportsDirectory, expectationStore, date);
+        this.reportPrinter = new XmlReportPrinter(
+                log, xmlReportsDirectory, expectationStore, date);
         this.jarSuggestions = new JarSuggestions();
-        this.outcomeStore = new OutcomeStore(log, mkdir, rm, resultsDir, recordResults,
-                expectationStore, date);
+        this.outcomeStore = new OutcomeStore(log, resultsDir, recordResults,
+                expectationStore, date, runMetadata(vogar));
         this.driver = new Driver(this);
         this.taskQueue = new TaskQueue(console, maxConcurrentActions);
         this.checkJni = vogar.checkJni;
         this.debugging = (vogar.debugPort != null) || vogar.debugApp;
+        this.slowestOutcomes = vogar.slowestOutcomes;
+        this.threadLeakThreshold = vogar.threadLeakThreshold;
+        this.retainedHeapThresholdKiB = vogar.retainedHeapThresholdKiB;
+        this.gcBetweenTests = vogar.gcBetweenTests;
+        this.actionShards = vogar.actionShards;
+        this.rerunFlakyFailures = vogar.rerunFlakyFailures;
+        this.flakinessThreshold = vogar.flakinessThreshold;
+        this.impactAnalyzer = new ImpactAnalyzer(log,
+                new Md5Cache(log, "classdeps", new HostFileCache(log, mkdir)),
+                localFile("classdeps"), resultsDir, vogar.changedSince, vogar.impactedBy);
+    }
+
+    /**
+     * Returns what is recorded about this run with its results.
+     */
+    private static Map<String, String> runMetadata(Vogar vogar) {
+        Map<String, String> result = new LinkedHashMap<String, String>();
+        result.put("mode", vogar.modeId.toString());
+        result.put("variant", vogar.variant.toString());
+        if (vogar.runnerType != null) {
+            result.put("runnerType", vogar.runnerType.toString());
+        }
+        String user = System.getProperty("user.name");
+        if (user != null) {
+            result.put("user", user);
+        }
+        return result;
     }
 
     private Mode createMode(ModeId modeId, Variant variant) {
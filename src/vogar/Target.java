@@ -93,6 +93,10 @@ public abstract class Target {
 
     public final Task rmTask(final File remote) {
         return new Task("rm " + remote) {
+            @Override public boolean isCleanup() {
+                return true;
+            }
+
             @Override protected Result execute() throws Exception {
                 rm(remote);
                 return Result.SUCCESS;
@@ -34,6 +34,7 @@ import vogar.android.DeviceFileCache;
 import vogar.android.DeviceFilesystem;
 import vogar.commands.Mkdir;
 import vogar.commands.Rm;
+import vogar.monitor.HostMonitor;
 import vogar.util.Strings;
 
 /**
@@ -76,6 +77,21 @@ public final class Vogar {
     @Option(names = { "--timeout" })
     int timeoutSeconds = 60; // default is one minute;
 
+    @Option(names = { "--stall-timeout" })
+    int stallTimeoutSeconds = 0;
+
+    @Option(names = { "--adaptive-timeouts" })
+    boolean adaptiveTimeouts = false;
+
+    @Option(names = { "--fail-fast" })
+    boolean failFast = false;
+
+    @Option(names = { "--max-failures" })
+    int maxFailures = 0;
+
+    @Option(names = { "--time-budget" })
+    int timeBudgetSeconds = 0;
+
     @Option(names = { "--first-monitor-port" })
     int firstMonitorPort = -1;
 
@@ -100,6 +116,15 @@ public final class Vogar {
     @Option(names = { "--stream" })
     boolean stream = true;
 
+    @Option(names = { "--async-console" })
+    boolean asyncConsole = true;
+
+    @Option(names = { "--output-head-chars" })
+    int outputHeadChars = HostMonitor.DEFAULT_OUTPUT_CHARS;
+
+    @Option(names = { "--output-tail-chars" })
+    int outputTailChars = HostMonitor.DEFAULT_OUTPUT_CHARS;
+
     @Option(names = { "--color" })
     private boolean color = true;
 
@@ -175,6 +200,18 @@ public final class Vogar {
     @Option(names = { "--results-dir" })
     File resultsDir = null;
 
+    @Option(names = { "--rerun-flaky-failures" })
+    boolean rerunFlakyFailures = false;
+
+    @Option(names = { "--flakiness-threshold" })
+    double flakinessThreshold = 0.2;
+
+    @Option(names = { "--changed-since" })
+    boolean changedSince = false;
+
+    @Option(names = { "--impacted-by" })
+    List<String> impactedBy = new ArrayList<String>();
+
     @Option(names = { "--suggest-classpaths" })
     boolean suggestClasspaths = false;
 
@@ -202,6 +239,21 @@ public final class Vogar {
     @Option(names = {"--runner-type"})
     RunnerType runnerType;
 
+    @Option(names = { "--slowest-outcomes" })
+    int slowestOutcomes = 10;
+
+    @Option(names = { "--thread-leak-threshold" })
+    int threadLeakThreshold = 0;
+
+    @Option(names = { "--retained-heap-threshold" })
+    int retainedHeapThresholdKiB = 0;
+
+    @Option(names = { "--gc-between-tests" })
+    boolean gcBetweenTests = false;
+
+    @Option(names = { "--action-shards" })
+    int actionShards = 1;
+
     @VisibleForTesting public Vogar() {}
 
     private void printUsage() {
@@ -253,6 +305,22 @@ public final class Vogar {
         System.out.println();
         System.out.println("  --stream: stream output as it is emitted.");
         System.out.println();
+        System.out.println("  --async-console: render console output on a thread of its own,");
+        System.out.println("      so that concurrent actions don't wait on the terminal. Status");
+        System.out.println("      lines that would be overwritten are shown at most "
+                + Console.RENDERER_FRAMES_PER_SECOND + " times a second.");
+        System.out.println("      Disable with --no-async-console.");
+        System.out.println();
+        System.out.println("  --output-head-chars <count>: characters kept from the start of each");
+        System.out.println("      outcome's output. Output between the head and the tail is");
+        System.out.println("      dropped from reports, and the complete output is saved to a");
+        System.out.println("      gzipped file named in its place.");
+        System.out.println("      Default is: " + outputHeadChars);
+        System.out.println();
+        System.out.println("  --output-tail-chars <count>: characters kept from the end of each");
+        System.out.println("      outcome's output.");
+        System.out.println("      Default is: " + outputTailChars);
+        System.out.println();
         System.out.println("  --benchmark: for use with dalvikvm, this dexes all files together,");
         System.out.println("      and is mandatory for running Caliper benchmarks, and a good idea");
         System.out.println("      for other performance sensitive code.");
@@ -270,6 +338,37 @@ public final class Vogar {
         System.out.println("      out in " + LARGE_TIMEOUT_MULTIPLIER + "x this timeout.");
         System.out.println("      Default is: " + timeoutSeconds);
         System.out.println();
+        System.out.println("  --stall-timeout <seconds>: abort an action whose target process");
+        System.out.println("      has used almost no CPU time and printed nothing for this long,");
+        System.out.println("      such as one that deadlocked, rather than waiting for --timeout.");
+        System.out.println("      The stalled outcome is reported as timed out, with a thread");
+        System.out.println("      dump. Specifying zero seconds or using --debug disables it.");
+        System.out.println("      Default is: " + stallTimeoutSeconds);
+        System.out.println();
+        System.out.println("  --adaptive-timeouts: time out tests that passed in previous runs");
+        System.out.println("      after " + Driver.ADAPTIVE_TIMEOUT_FACTOR
+                + "x the 99th percentile of their durations, plus "
+                + Driver.ADAPTIVE_TIMEOUT_FLOOR_SECONDS + " seconds,");
+        System.out.println("      rather than after --timeout, and report tests that take over "
+                + Driver.DURATION_REGRESSION_FACTOR + "x");
+        System.out.println("      that percentile. Adaptive timeouts are at most the 'large'");
+        System.out.println("      timeout.");
+        System.out.println("      Default is: " + adaptiveTimeouts);
+        System.out.println();
+        System.out.println("  --max-failures <N>: cancel the run once N outcomes have failed.");
+        System.out.println("      Running actions are stopped, the remaining actions are reported");
+        System.out.println("      as skipped, and the target is still cleaned up. Use 0 for no");
+        System.out.println("      limit.");
+        System.out.println("      Default is: " + maxFailures);
+        System.out.println();
+        System.out.println("  --fail-fast: cancel the run at the first failure, like");
+        System.out.println("      --max-failures 1.");
+        System.out.println("      Default is: " + failFast);
+        System.out.println();
+        System.out.println("  --time-budget <seconds>: cancel the run, like --max-failures does,");
+        System.out.println("      once it has run for this long. Use 0 for no limit.");
+        System.out.println("      Default is: " + timeBudgetSeconds);
+        System.out.println();
         System.out.println("  --xml-reports-directory <path>: directory to emit JUnit-style");
         System.out.println("      XML test results.");
         System.out.println();
@@ -293,6 +392,24 @@ public final class Vogar {
         System.out.println("  --results-dir <directory>: read and write (if --record-results used)");
         System.out.println("      results from and to this directory.");
         System.out.println();
+        System.out.println("  --rerun-flaky-failures: at the end of the run, rerun each outcome");
+        System.out.println("      that failed after passing in the previous run, if its recorded");
+        System.out.println("      results show it to be flaky. Each is rerun in a fresh VM and");
+        System.out.println("      reported as flaky or consistent.");
+        System.out.println("      Default is: " + rerunFlakyFailures);
+        System.out.println();
+        System.out.println("  --flakiness-threshold <rate>: the fraction of consecutive recorded");
+        System.out.println("      results that must differ for an outcome to be considered flaky.");
+        System.out.println("      Default is: " + flakinessThreshold);
+        System.out.println();
+        System.out.println("  --changed-since: only run the actions whose classes, or the classes");
+        System.out.println("      they depend on, changed since the last run that recorded");
+        System.out.println("      results. The first such run runs every action.");
+        System.out.println();
+        System.out.println("  --impacted-by <class>: only run the actions that depend on this");
+        System.out.println("      class, or on any class in a package given as 'java.util.*'. May");
+        System.out.println("      be repeated, and combined with --changed-since.");
+        System.out.println();
         System.out.println("  --runner-type <default|caliper|main|junit>: specify which runner to use.");
         System.out.println("      default: runs both JUnit tests and main() classes");
         System.out.println("      caliper: runs Caliper benchmarks only");
@@ -308,6 +425,36 @@ public final class Vogar {
         System.out.println();
         System.out.println("  --verbose: turn on persistent verbose output.");
         System.out.println();
+        System.out.println("  --slowest-outcomes <count>: list this many of the slowest outcomes,");
+        System.out.println("      by wall time on the target, at the end of the run. Use 0 to");
+        System.out.println("      disable.");
+        System.out.println("      Default is: " + slowestOutcomes);
+        System.out.println();
+        System.out.println("  --thread-leak-threshold <count>: warn about outcomes that leave at");
+        System.out.println("      least this many more live threads behind than they started");
+        System.out.println("      with. Use 0 to disable.");
+        System.out.println("      Default is: " + threadLeakThreshold);
+        System.out.println();
+        System.out.println("  --retained-heap-threshold <KiB>: warn about outcomes that grow the");
+        System.out.println("      used heap by at least this many KiB. The target collects");
+        System.out.println("      garbage around each outcome when this is enabled, which slows");
+        System.out.println("      it down.");
+        System.out.println("      Use 0 to disable.");
+        System.out.println("      Default is: " + retainedHeapThresholdKiB);
+        System.out.println();
+        System.out.println("  --gc-between-tests: collect garbage and run finalizers on the");
+        System.out.println("      target before every test, so that CloseGuard warnings and the");
+        System.out.println("      like are reported by the test that caused them. Otherwise");
+        System.out.println("      garbage is only collected between tests when the heap is");
+        System.out.println("      half full.");
+        System.out.println("      Default is: " + gcBetweenTests);
+        System.out.println();
+        System.out.println("  --action-shards <N>: split each package action into up to N shards");
+        System.out.println("      of consecutive classes, balanced by how long the classes took");
+        System.out.println("      last time, and run each shard in a VM of its own. This keeps");
+        System.out.println("      one large package from running alone at the end of the run.");
+        System.out.println("      Default is: " + actionShards);
+        System.out.println();
         System.out.println("  --check-jni: enable CheckJNI mode.");
         System.out.println("      See http://developer.android.com/training/articles/perf-jni.html.");
         System.out.println("      Default is: " + checkJni + ", but disabled for --benchmark.");
@@ -465,6 +612,11 @@ public final class Vogar {
             return false;
         }
 
+        if (outputHeadChars < 0 || outputTailChars < 0) {
+            System.out.println("Output limits must not be negative");
+            return false;
+        }
+
         if (xmlReportsDirectory != null && !xmlReportsDirectory.isDirectory()) {
             System.out.println("Invalid XML reports directory: " + xmlReportsDirectory);
             return false;
@@ -487,6 +639,9 @@ public final class Vogar {
         if (benchmark || debugPort != null) {
             timeoutSeconds = 0;
         }
+        if (benchmark || debugPort != null || debugApp) {
+            stallTimeoutSeconds = 0;
+        }
 
         if (firstMonitorPort == -1) {
             firstMonitorPort = modeId.isLocal() ? 8788 : 8787;
@@ -532,6 +687,36 @@ public final class Vogar {
             return false;
         }
 
+        if (stallTimeoutSeconds < 0) {
+            System.out.println("Invalid --stall-timeout: " + stallTimeoutSeconds);
+            return false;
+        }
+
+        if (maxFailures < 0) {
+            System.out.println("Invalid --max-failures: " + maxFailures);
+            return false;
+        }
+
+        if (timeBudgetSeconds < 0) {
+            System.out.println("Invalid --time-budget: " + timeBudgetSeconds);
+            return false;
+        }
+
+        if (actionShards < 1) {
+            System.out.println("Invalid --action-shards: " + actionShards);
+            return false;
+        }
+
+        if (modeId == ModeId.ACTIVITY && actionShards > 1) {
+            System.out.println("--action-shards cannot be used with --mode activity.");
+            return false;
+        }
+
+        if (modeId == ModeId.ACTIVITY && rerunFlakyFailures) {
+            System.out.println("--rerun-flaky-failures cannot be used with --mode activity.");
+            return false;
+        }
+
         if (debugApp && modeId != ModeId.ACTIVITY) {
             System.out.println("--debug-app can only be used in combination with --mode activity.");
             return false;
@@ -583,7 +768,18 @@ public final class Vogar {
         console.setAnsi(ansi);
         console.setIndent(indent);
         console.setVerbose(verbose);
+        console.setOutputLimits(outputHeadChars, outputTailChars);
+        if (asyncConsole) {
+            console.startRenderer();
+        }
+        try {
+            return run(console);
+        } finally {
+            console.stopRenderer();
+        }
+    }
 
+    private boolean run(Console console) throws IOException {
         Mkdir mkdir = new Mkdir(console);
         Rm rm = new Rm(console);
 
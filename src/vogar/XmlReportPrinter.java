@@ -22,20 +22,37 @@ import java.io.IOException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 import java.util.TimeZone;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
 import org.kxml2.io.KXmlSerializer;
+import vogar.util.Threads;
+import vogar.util.TimeUtilities;
 
 
 /**
  * Writes JUnit results to a series of XML files in a format consistent with
  * Ant's XMLJUnitResultFormatter.
  *
- * <p>Unlike Ant's formatter, this class does not report the execution time of
- * tests.
+ * <p>Execution times are the wall times measured on the target. Outcomes
+ * without a measured time, such as those that failed to compile, are reported
+ * as taking no time.
+ *
+ * <p>Reports are written as the run progresses. The suite of a test class is
+ * written on a background thread as soon as the action that runs the class
+ * finishes, and its outcomes are then released. Suites of main classes, which
+ * are named after their package and so may span actions, are written by
+ * {@link #finish}.
  *
  * TODO: unify this and com.google.coretests.XmlReportPrinter
  */
@@ -44,11 +61,22 @@ public class XmlReportPrinter {
     /** the XML namespace */
     private static final String ns = null;
 
+    private static final int WRITER_THREADS = 2;
+
+    private final Log log;
     private final File directory;
     private final ExpectationStore expectationStore;
     private final Date date;
 
-    public XmlReportPrinter(File directory, ExpectationStore expectationStore, Date date) {
+    /** Suites whose reports haven't been written yet. */
+    private final Map<String, Suite> pendingSuites = new LinkedHashMap<String, Suite>();
+    /** The number of reports written for each suite. */
+    private final Map<String, Integer> reportCounts = new HashMap<String, Integer>();
+    private ExecutorService writers;
+
+    public XmlReportPrinter(Log log, File directory, ExpectationStore expectationStore,
+            Date date) {
+        this.log = log;
         this.directory = directory;
         this.expectationStore = expectationStore;
         this.date = date;
@@ -73,63 +101,157 @@ public class XmlReportPrinter {
      * Populates the directory with the report data from the completed tests.
      */
     public int generateReports(Collection<Outcome> results) {
-        Map<String, Suite> suites = testsToSuites(results);
+        for (Outcome outcome : results) {
+            addOutcome(outcome, expectationStore.get(outcome));
+        }
+        return finish();
+    }
 
-        String timestamp = getGMTTimestamp();
+    /**
+     * Adds {@code outcome} to the report of its suite. Only the output of
+     * outcomes that don't match {@code expectation} is reported, so the
+     * output of the others isn't kept.
+     */
+    public synchronized void addOutcome(Outcome outcome, Expectation expectation) {
+        if (outcome.getResult() == Result.UNSUPPORTED) {
+            return;
+        }
 
-        for (Suite suite : suites.values()) {
-            String fileName = "TEST-" + suite.name + ".xml";
-            suite.printReport(timestamp, fileName);
+        String suiteName = outcome.getSuiteName();
+        Suite suite = pendingSuites.get(suiteName);
+        if (suite == null) {
+            suite = new Suite(suiteName);
+            pendingSuites.put(suiteName, suite);
         }
+        boolean matchesExpectation = expectation.matches(outcome);
+        suite.add(matchesExpectation ? outcome.withoutOutput() : outcome, matchesExpectation);
+    }
 
-        return suites.size();
+    /**
+     * Writes the reports of the test classes run by the named action, which
+     * won't produce any more outcomes.
+     */
+    public synchronized void actionFinished(String actionName) {
+        for (Iterator<Suite> i = pendingSuites.values().iterator(); i.hasNext(); ) {
+            Suite suite = i.next();
+            if (suite.isTestClass && isInAction(suite.name, actionName)) {
+                i.remove();
+                write(suite);
+            }
+        }
+    }
+
+    /**
+     * Returns true if the named class is the named action, or one of its
+     * nested classes, or is in the package the action names.
+     */
+    private static boolean isInAction(String className, String actionName) {
+        if (!className.startsWith(actionName)) {
+            return false;
+        }
+        if (className.length() == actionName.length()) {
+            return true;
+        }
+        char next = className.charAt(actionName.length());
+        return next == '.' || next == '$';
     }
 
-    private Map<String, Suite> testsToSuites(Collection<Outcome> outcomes) {
-        Map<String, Suite> result = new LinkedHashMap<String, Suite>();
-        for (Outcome outcome : outcomes) {
-            if (outcome.getResult() == Result.UNSUPPORTED) {
-                continue;
+    /**
+     * Writes every pending report and waits for all reports to be written.
+     *
+     * @return the number of reports written.
+     */
+    public int finish() {
+        ExecutorService writers;
+        int reports = 0;
+        synchronized (this) {
+            for (Suite suite : pendingSuites.values()) {
+                write(suite);
             }
+            pendingSuites.clear();
+            writers = this.writers;
+            this.writers = null;
+            for (int count : reportCounts.values()) {
+                reports += count;
+            }
+            reportCounts.clear();
+        }
 
-            String suiteName = outcome.getSuiteName();
-            Suite suite = result.get(suiteName);
-            if (suite == null) {
-                suite = new Suite(suiteName);
-                result.put(suiteName, suite);
+        if (writers != null) {
+            writers.shutdown();
+            try {
+                writers.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
             }
+        }
+        return reports;
+    }
 
-            suite.outcomes.add(outcome);
+    private void write(final Suite suite) {
+        // A suite that is reported twice, such as when it spans actions, gets a second file.
+        Integer count = reportCounts.get(suite.name);
+        final String fileName = count == null
+                ? "TEST-" + suite.name + ".xml"
+                : "TEST-" + suite.name + "-" + count + ".xml";
+        reportCounts.put(suite.name, count == null ? 1 : count + 1);
 
-            Expectation expectation = expectationStore.get(outcome);
-            if (!expectation.matches(outcome)) {
-                if (outcome.getResult() == Result.EXEC_FAILED) {
-                    suite.failuresCount++;
-                } else {
-                    suite.errorsCount++;
-                }
-            }
+        if (writers == null) {
+            writers = Threads.fixedThreadsExecutor(log, "xml-reports", WRITER_THREADS);
         }
-        return result;
+        writers.execute(new Runnable() {
+            @Override public void run() {
+                suite.printReport(getGMTTimestamp(), fileName);
+            }
+        });
+    }
+
+    /**
+     * Formats a duration as fractional seconds, like Ant does.
+     */
+    private static String formatSeconds(long nanos) {
+        return String.format(Locale.US, "%.3f", TimeUtilities.nsToS(nanos));
     }
 
     class Suite {
         private final String name;
         private final List<Outcome> outcomes = new ArrayList<Outcome>();
+        /** The outcomes that didn't match their expectations. */
+        private final Set<Outcome> unexpected =
+                Collections.newSetFromMap(new IdentityHashMap<Outcome, Boolean>());
+        /** True if this suite is a test class, rather than the package of main classes. */
+        private boolean isTestClass;
         private int failuresCount;
         private int errorsCount;
+        private long wallTimeNanos;
 
         Suite(String name) {
             this.name = name;
         }
 
+        void add(Outcome outcome, boolean matchesExpectation) {
+            outcomes.add(outcome);
+            isTestClass |= outcome.getName().indexOf('#') != -1;
+            if (outcome.getWallTimeNanos() != -1) {
+                wallTimeNanos += outcome.getWallTimeNanos();
+            }
+            if (!matchesExpectation) {
+                unexpected.add(outcome);
+                if (outcome.getResult() == Result.EXEC_FAILED) {
+                    failuresCount++;
+                } else {
+                    errorsCount++;
+                }
+            }
+        }
+
         private void print(KXmlSerializer serializer, String timestamp) throws IOException {
             serializer.startTag(ns, XmlReportConstants.TESTSUITE);
             serializer.attribute(ns, XmlReportConstants.ATTR_NAME, name);
             serializer.attribute(ns, XmlReportConstants.ATTR_TESTS, Integer.toString(outcomes.size()));
             serializer.attribute(ns, XmlReportConstants.ATTR_FAILURES, Integer.toString(failuresCount));
             serializer.attribute(ns, XmlReportConstants.ATTR_ERRORS, Integer.toString(errorsCount));
-            serializer.attribute(ns, XmlReportConstants.ATTR_TIME, "0");
+            serializer.attribute(ns, XmlReportConstants.ATTR_TIME, formatSeconds(wallTimeNanos));
             serializer.attribute(ns, XmlReportConstants.TIMESTAMP, timestamp);
             serializer.attribute(ns, XmlReportConstants.HOSTNAME, "localhost");
             serializer.startTag(ns, XmlReportConstants.PROPERTIES);
@@ -146,10 +268,10 @@ public class XmlReportPrinter {
             serializer.startTag(ns, XmlReportConstants.TESTCASE);
             serializer.attribute(ns, XmlReportConstants.ATTR_NAME, outcome.getTestName());
             serializer.attribute(ns, XmlReportConstants.ATTR_CLASSNAME, outcome.getSuiteName());
-            serializer.attribute(ns, XmlReportConstants.ATTR_TIME, "0");
+            serializer.attribute(ns, XmlReportConstants.ATTR_TIME,
+                    formatSeconds(Math.max(0, outcome.getWallTimeNanos())));
 
-            Expectation expectation = expectationStore.get(outcome);
-            if (!expectation.matches(outcome)) {
+            if (unexpected.contains(outcome)) {
                 String result;
                 switch (outcome.getResult()) {
                     case EXEC_FAILED:
@@ -21,6 +21,7 @@ import java.util.Collections;
 import java.util.LinkedHashSet;
 import java.util.Set;
 import vogar.Action;
+import vogar.ActionShard;
 import vogar.Classpath;
 import vogar.Mode;
 import vogar.Run;
@@ -47,10 +48,19 @@ public final class ActivityMode implements Mode {
         return Collections.<Task>singleton(new InstallApkTask(run, action, jar));
     }
 
-    @Override public Task executeActionTask(Action action, boolean useLargeTimeout) {
+    @Override public Task executeActionTask(Action action, boolean useLargeTimeout,
+            ActionShard shard) {
+        if (shard != null) {
+            throw new IllegalArgumentException("ActivityMode doesn't support sharding!");
+        }
         return new RunActivityTask(run, action, useLargeTimeout);
     }
 
+    @Override public Task rerunOutcomeTask(Action action, boolean useLargeTimeout,
+            String outcomeName) {
+        throw new IllegalArgumentException("ActivityMode doesn't support rerunning outcomes!");
+    }
+
     @Override public Set<Task> cleanupTasks(Action action) {
         Set<Task> result = new LinkedHashSet<Task>();
         result.add(run.target.rmTask(action.getUserDir()));
@@ -25,6 +25,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 import vogar.Action;
+import vogar.ActionShard;
 import vogar.Toolchain;
 import vogar.Variant;
 import vogar.Classpath;
@@ -70,8 +71,14 @@ public final class DeviceRuntime implements Mode {
         return result;
     }
 
-    @Override public Task executeActionTask(Action action, boolean useLargeTimeout) {
-        return new RunActionTask(run, action, useLargeTimeout);
+    @Override public Task executeActionTask(Action action, boolean useLargeTimeout,
+            ActionShard shard) {
+        return new RunActionTask(run, action, useLargeTimeout, shard);
+    }
+
+    @Override public Task rerunOutcomeTask(Action action, boolean useLargeTimeout,
+            String outcomeName) {
+        return RunActionTask.rerun(run, action, useLargeTimeout, outcomeName);
     }
 
     @Override public VmCommandBuilder newVmCommandBuilder(Action action, File workingDirectory) {
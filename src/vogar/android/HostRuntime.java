@@ -26,6 +26,7 @@ import java.util.List;
 import java.util.Set;
 
 import vogar.Action;
+import vogar.ActionShard;
 import vogar.Classpath;
 import vogar.Mode;
 import vogar.ModeId;
@@ -55,8 +56,14 @@ public final class HostRuntime implements Mode {
         this.variant = variant;
     }
 
-    @Override public Task executeActionTask(Action action, boolean useLargeTimeout) {
-        return new RunActionTask(run, action, useLargeTimeout);
+    @Override public Task executeActionTask(Action action, boolean useLargeTimeout,
+            ActionShard shard) {
+        return new RunActionTask(run, action, useLargeTimeout, shard);
+    }
+
+    @Override public Task rerunOutcomeTask(Action action, boolean useLargeTimeout,
+            String outcomeName) {
+        return RunActionTask.rerun(run, action, useLargeTimeout, outcomeName);
     }
 
     private File dalvikCache() {
@@ -29,6 +29,10 @@ public final class UninstallApkTask extends Task {
         this.name = name;
     }
 
+    @Override public boolean isCleanup() {
+        return true;
+    }
+
     @Override protected Result execute() throws Exception {
         androidSdk.uninstall(name);
         return Result.SUCCESS;
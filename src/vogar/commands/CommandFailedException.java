@@ -16,6 +16,7 @@
 
 package vogar.commands;
 
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -23,13 +24,34 @@ import java.util.List;
  */
 public class CommandFailedException extends RuntimeException {
 
+    /** The number of lines kept from each end of a failed command's output. */
+    static final int OUTPUT_LINES_KEPT = 1000;
+
     private final List<String> args;
     private final List<String> outputLines;
 
     public CommandFailedException(List<String> args, List<String> outputLines) {
-        super(formatMessage(args, outputLines));
+        super(formatMessage(args, bound(outputLines)));
         this.args = args;
-        this.outputLines = outputLines;
+        this.outputLines = bound(outputLines);
+    }
+
+    /**
+     * Returns the first and last lines of {@code outputLines}, with a line
+     * marking any that are omitted between them. Failures such as runaway
+     * compilers can print far more than anyone will read.
+     */
+    private static List<String> bound(List<String> outputLines) {
+        if (outputLines.size() <= 2 * OUTPUT_LINES_KEPT) {
+            return outputLines;
+        }
+        List<String> result = new ArrayList<String>(2 * OUTPUT_LINES_KEPT + 1);
+        result.addAll(outputLines.subList(0, OUTPUT_LINES_KEPT));
+        result.add("[vogar: " + (outputLines.size() - 2 * OUTPUT_LINES_KEPT)
+                + " lines omitted]");
+        result.addAll(outputLines.subList(
+                outputLines.size() - OUTPUT_LINES_KEPT, outputLines.size()));
+        return result;
     }
 
     public List<String> getArgs() {
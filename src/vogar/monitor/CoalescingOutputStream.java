@@ -0,0 +1,173 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package vogar.monitor;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Coalesces many small writes into few large ones. Bytes are held in a
+ * bounded buffer, which is written out when it fills, when it is flushed, and
+ * otherwise shortly after the first byte was buffered.
+ *
+ * <p>Open streams are also flushed when the process shuts down, so output
+ * written just before an exit isn't lost with it. Owners flush streams
+ * themselves after reporting a crash.
+ */
+final class CoalescingOutputStream extends OutputStream {
+
+    static final int DEFAULT_CAPACITY = 8 * 1024;
+    static final long FLUSH_DELAY_MILLIS = 20;
+
+    /** Guards the static state below. */
+    private static final Object LOCK = new Object();
+    private static final Set<CoalescingOutputStream> OPEN_STREAMS = new LinkedHashSet<>();
+    private static boolean flushScheduled;
+    private static Thread flusher;
+
+    private final OutputStream out;
+    private final byte[] buffer;
+    private int count;
+    private boolean closed;
+
+    CoalescingOutputStream(OutputStream out, int capacity) {
+        this.out = out;
+        this.buffer = new byte[capacity];
+        synchronized (LOCK) {
+            if (flusher == null) {
+                startFlusher();
+            }
+            OPEN_STREAMS.add(this);
+        }
+    }
+
+    @Override public void write(int b) throws IOException {
+        write(new byte[] { (byte) b }, 0, 1);
+    }
+
+    @Override public synchronized void write(byte[] bytes, int offset, int length)
+            throws IOException {
+        if (closed) {
+            throw new IOException("closed");
+        }
+        if (length > buffer.length - count) {
+            flushBuffer();
+            if (length > buffer.length) {
+                out.write(bytes, offset, length);
+                return;
+            }
+        }
+        if (count == 0) {
+            scheduleFlush();
+        }
+        System.arraycopy(bytes, offset, buffer, count, length);
+        count += length;
+    }
+
+    private void flushBuffer() throws IOException {
+        if (count > 0) {
+            out.write(buffer, 0, count);
+            count = 0;
+        }
+    }
+
+    @Override public synchronized void flush() throws IOException {
+        if (closed) {
+            return;
+        }
+        flushBuffer();
+        out.flush();
+    }
+
+    @Override public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        synchronized (LOCK) {
+            OPEN_STREAMS.remove(this);
+        }
+        try {
+            flush();
+        } finally {
+            closed = true;
+            out.close();
+        }
+    }
+
+    private static void scheduleFlush() {
+        synchronized (LOCK) {
+            if (!flushScheduled) {
+                flushScheduled = true;
+                LOCK.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Flushes every open stream, ignoring failures: this runs when the
+     * process is going down, and there's nobody left to report them to.
+     */
+    private static void flushAll() {
+        List<CoalescingOutputStream> streams;
+        synchronized (LOCK) {
+            streams = new ArrayList<>(OPEN_STREAMS);
+        }
+        for (CoalescingOutputStream stream : streams) {
+            try {
+                stream.flush();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    /**
+     * Starts the thread that flushes buffered bytes after a delay, and the
+     * hook that flushes them when the process exits.
+     */
+    private static void startFlusher() {
+        flusher = new Thread(new Runnable() {
+            @Override public void run() {
+                while (true) {
+                    try {
+                        synchronized (LOCK) {
+                            while (!flushScheduled) {
+                                LOCK.wait();
+                            }
+                            flushScheduled = false;
+                        }
+                        Thread.sleep(FLUSH_DELAY_MILLIS);
+                    } catch (InterruptedException e) {
+                        continue;
+                    }
+                    flushAll();
+                }
+            }
+        }, "OutputFlusher");
+        flusher.setDaemon(true);
+        flusher.start();
+
+        Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+            @Override public void run() {
+                flushAll();
+            }
+        }, "OutputFlusherShutdownHook"));
+    }
+}
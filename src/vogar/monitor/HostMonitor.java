@@ -16,8 +16,10 @@
 
 package vogar.monitor;
 
+import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import java.io.BufferedInputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
@@ -25,9 +27,12 @@ import java.net.ConnectException;
 import java.net.Socket;
 import java.net.SocketException;
 import java.nio.charset.Charset;
+import java.util.Map;
 import vogar.Log;
 import vogar.Outcome;
+import vogar.ResourceUsage;
 import vogar.Result;
+import vogar.util.BoundedOutputBuffer;
 import vogar.util.IoUtils;
 
 /**
@@ -37,13 +42,35 @@ import vogar.util.IoUtils;
 public final class HostMonitor {
     private static final Charset UTF8 = Charset.forName("UTF-8");
 
+    /** The default number of characters of output kept from each end of an outcome. */
+    public static final int DEFAULT_OUTPUT_CHARS = 256 * 1024;
+
     private Log log;
     private Handler handler;
     private final String marker = "//00xx";
+    private final int outputHeadChars;
+    private final int outputTailChars;
+    private final File spillDir;
 
     public HostMonitor(Log log, Handler handler) {
+        this(log, handler, DEFAULT_OUTPUT_CHARS, DEFAULT_OUTPUT_CHARS, null);
+    }
+
+    /**
+     * @param outputHeadChars the number of characters kept from the start of
+     *     each outcome's output.
+     * @param outputTailChars the number of characters kept from the end of
+     *     each outcome's output.
+     * @param spillDir the directory to write the complete output of outcomes
+     *     that exceed those limits to, or null to discard it.
+     */
+    public HostMonitor(Log log, Handler handler, int outputHeadChars, int outputTailChars,
+            File spillDir) {
         this.log = log;
         this.handler = handler;
+        this.outputHeadChars = outputHeadChars;
+        this.outputTailChars = outputTailChars;
+        this.spillDir = spillDir;
     }
 
     /**
@@ -101,46 +128,122 @@ public final class HostMonitor {
      * {"outcome"="java.util.FormatterMain"}
      * {"result"="SUCCESS"}
      * {"outcome"="java.util.FormatterTest#testBar" runner="vogar.target.junit.JUnitRunner"}
-     * {"result"="SUCCESS"}
+     * {"result"="SUCCESS" wallTimeNanos=1520334 cpuTimeNanos=1204117
+     *     resources={heapDeltaBytes=2048 threadDelta=0 gcCount=1 gcTimeMillis=3}}
+     * {"heartbeat"={"outcome"="java.util.FormatterTest#testBar" cpuTimeNanos=1204
+     *     idle=true threads={RUNNABLE=2 WAITING=3} threadDump="..."}}
      * {"completedNormally"=true}
      */
     private boolean followProcess(InterleavedReader reader) throws IOException {
         String currentOutcome = null;
-        StringBuilder output = new StringBuilder();
+        BoundedOutputBuffer output = null;
         boolean completedNormally = false;
 
         Object o;
-        while ((o = reader.read()) != null) {
-            if (o instanceof String) {
-                String text = (String) o;
-                if (currentOutcome != null) {
-                    output.append(text);
-                    handler.output(currentOutcome, text);
+        try {
+            while ((o = reader.read()) != null) {
+                if (o instanceof String) {
+                    String text = (String) o;
+                    if (currentOutcome != null) {
+                        output.append(text);
+                        handler.output(currentOutcome, text);
+                    } else {
+                        handler.print(text);
+                    }
+                } else if (o instanceof JsonObject) {
+                    JsonObject jsonObject = (JsonObject) o;
+                    if (jsonObject.get("outcome") != null) {
+                        if (output != null) {
+                            // The previous outcome never finished.
+                            output.close();
+                        }
+                        currentOutcome = jsonObject.get("outcome").getAsString();
+                        output = newOutputBuffer(currentOutcome);
+                        handler.output(currentOutcome, "");
+                        handler.start(currentOutcome);
+                    } else if (jsonObject.get("result") != null) {
+                        Result currentResult =
+                                Result.valueOf(jsonObject.get("result").getAsString());
+                        long wallTimeNanos = jsonObject.get("wallTimeNanos") != null
+                                ? jsonObject.get("wallTimeNanos").getAsLong()
+                                : -1;
+                        long cpuTimeNanos = jsonObject.get("cpuTimeNanos") != null
+                                ? jsonObject.get("cpuTimeNanos").getAsLong()
+                                : -1;
+                        ResourceUsage resourceUsage = jsonObject.get("resources") != null
+                                ? parseResourceUsage(jsonObject.getAsJsonObject("resources"))
+                                : null;
+                        if (output == null) {
+                            output = newOutputBuffer(currentOutcome);
+                        }
+                        output.close();
+                        handler.finish(new Outcome(currentOutcome, currentResult,
+                                output.toString(), wallTimeNanos, cpuTimeNanos, resourceUsage,
+                                output.getSpillFile()));
+                        output = null;
+                        currentOutcome = null;
+                    } else if (jsonObject.get("heartbeat") != null) {
+                        handleHeartbeat(jsonObject.getAsJsonObject("heartbeat"));
+                    } else if (jsonObject.get("completedNormally") != null) {
+                        completedNormally = jsonObject.get("completedNormally").getAsBoolean();
+                    }
                 } else {
-                    handler.print(text);
+                    throw new IllegalStateException("Unexpected object: " + o);
                 }
-            } else if (o instanceof JsonObject) {
-                JsonObject jsonObject = (JsonObject) o;
-                if (jsonObject.get("outcome") != null) {
-                    currentOutcome = jsonObject.get("outcome").getAsString();
-                    handler.output(currentOutcome, "");
-                    handler.start(currentOutcome);
-                } else if (jsonObject.get("result") != null) {
-                    Result currentResult = Result.valueOf(jsonObject.get("result").getAsString());
-                    handler.finish(new Outcome(currentOutcome, currentResult, output.toString()));
-                    output.delete(0, output.length());
-                    currentOutcome = null;
-                } else if (jsonObject.get("completedNormally") != null) {
-                    completedNormally = jsonObject.get("completedNormally").getAsBoolean();
-                }
-            } else {
-                throw new IllegalStateException("Unexpected object: " + o);
+            }
+        } finally {
+            // The target may die or the stream fail mid-outcome; don't leak the spill file.
+            if (output != null) {
+                output.close();
             }
         }
 
         return completedNormally;
     }
 
+    private void handleHeartbeat(JsonObject heartbeat) {
+        StringBuilder threadStates = new StringBuilder();
+        for (Map.Entry<String, JsonElement> entry
+                : heartbeat.getAsJsonObject("threads").entrySet()) {
+            if (threadStates.length() > 0) {
+                threadStates.append(", ");
+            }
+            threadStates.append(entry.getKey()).append('=').append(entry.getValue().getAsInt());
+        }
+        handler.heartbeat(
+                heartbeat.get("outcome") != null ? heartbeat.get("outcome").getAsString() : null,
+                getLong(heartbeat, "cpuTimeNanos"),
+                heartbeat.get("idle").getAsBoolean(),
+                threadStates.toString(),
+                heartbeat.get("threadDump") != null
+                        ? heartbeat.get("threadDump").getAsString()
+                        : null);
+    }
+
+    private BoundedOutputBuffer newOutputBuffer(String outcomeName) {
+        File spillFile = null;
+        if (spillDir != null) {
+            // Outcomes may repeat when an action is retried, so keep each file.
+            String prefix = outcomeName.replaceAll("[^\\w.#$-]", "_") + ".";
+            for (int i = 0; spillFile == null || spillFile.exists(); i++) {
+                spillFile = new File(spillDir, prefix + i + ".txt.gz");
+            }
+        }
+        return new BoundedOutputBuffer(outputHeadChars, outputTailChars, spillFile);
+    }
+
+    private static ResourceUsage parseResourceUsage(JsonObject jsonObject) {
+        return new ResourceUsage(
+                jsonObject.get("heapDeltaBytes").getAsLong(),
+                jsonObject.get("threadDelta").getAsInt(),
+                getLong(jsonObject, "gcCount"),
+                getLong(jsonObject, "gcTimeMillis"),
+                getLong(jsonObject, "allocatedBytes"));
+    }
+
+    private static long getLong(JsonObject jsonObject, String name) {
+        return jsonObject.get(name) != null ? jsonObject.get(name).getAsLong() : -1;
+    }
 
     /**
      * Handles updates on the outcomes of a target process.
@@ -166,5 +269,20 @@ public final class HostMonitor {
          * Receive a string to print immediately
          */
         void print(String string);
+
+        /**
+         * Receive notice that the target process is alive.
+         *
+         * @param outcomeName the outcome running on the target, or null.
+         * @param cpuTimeNanos the CPU time the target used since its last
+         *     heartbeat, or -1 if unknown.
+         * @param idle true if the target used too little CPU time to be
+         *     making progress.
+         * @param threadStates the number of target threads in each state,
+         *     like "RUNNABLE=1, WAITING=3".
+         * @param threadDump the stacks of the target's threads, or null.
+         */
+        void heartbeat(String outcomeName, long cpuTimeNanos, boolean idle,
+                String threadStates, String threadDump);
     }
 }
@@ -16,26 +16,37 @@
 
 package vogar.monitor;
 
-import com.google.gson.Gson;
-import com.google.gson.JsonObject;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.PrintStream;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.util.Map;
+import vogar.ResourceUsage;
 import vogar.Result;
 
 /**
  * Accepts a connection from the host process. Once connected, XML is sent over
  * raw sockets.
+ *
+ * <p>Events are encoded as JSON into a single reused buffer. Output between
+ * events may be coalesced into fewer, larger writes; it is always written out
+ * before the next event.
  */
 public class TargetMonitor {
 
     private static final int ACCEPT_TIMEOUT_MILLIS = 10 * 1000;
 
-    private final Gson gson = new Gson();
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
     private final String marker = "//00xx";
 
     private final PrintStream writer;
+    /** The event being encoded. Guarded by this. */
+    private final StringBuilder event = new StringBuilder(256);
+    private OutcomeListener outcomeListener;
+    /** The outcome started but not yet finished, or null. Guarded by this. */
+    private String currentOutcomeName;
 
     private TargetMonitor(PrintStream writer) {
         this.writer = writer;
@@ -45,14 +56,25 @@ public class TargetMonitor {
         return new TargetMonitor(printStream);
     }
 
+    /**
+     * Returns a monitor that writes to {@code out}, coalescing output so that
+     * tests that print in loops don't write to {@code out} for every print.
+     */
+    public static TargetMonitor forOutputStream(OutputStream out) {
+        return new TargetMonitor(new PrintStream(new CoalescingOutputStream(
+                out, CoalescingOutputStream.DEFAULT_CAPACITY)));
+    }
+
     public static TargetMonitor await(int port) {
         try {
             final ServerSocket serverSocket = new ServerSocket(port);
             serverSocket.setSoTimeout(ACCEPT_TIMEOUT_MILLIS);
             serverSocket.setReuseAddress(true);
             final Socket socket = serverSocket.accept();
-            return new TargetMonitor(new PrintStream(socket.getOutputStream())) {
-                @Override public void close() throws IOException {
+            return new TargetMonitor(new PrintStream(new CoalescingOutputStream(
+                    socket.getOutputStream(), CoalescingOutputStream.DEFAULT_CAPACITY))) {
+                @Override public synchronized void close() throws IOException {
+                    super.close();
                     socket.close();
                     serverSocket.close();
                 }
@@ -63,29 +85,231 @@ public class TargetMonitor {
         }
     }
 
-    public void outcomeStarted(String outcomeName) {
-        JsonObject jsonObject = new JsonObject();
-        jsonObject.addProperty("outcome", outcomeName);
-        writer.print(marker + gson.toJson(jsonObject) + "\n");
+    /**
+     * Sets the listener to tell of each outcome before it is started, or null
+     * for none.
+     */
+    public synchronized void setOutcomeListener(OutcomeListener outcomeListener) {
+        this.outcomeListener = outcomeListener;
     }
 
-    public void output(String text) {
+    public synchronized void outcomeStarted(String outcomeName) {
+        if (outcomeListener != null) {
+            outcomeListener.outcomeStarted(outcomeName);
+        }
+        currentOutcomeName = outcomeName;
+        beginEvent();
+        property("outcome", outcomeName);
+        endEvent();
+    }
+
+    public synchronized void output(String text) {
         writer.print(text);
     }
 
+    /**
+     * Copies events that another monitor wrote to a stream, such as a monitor
+     * created by {@link #forPrintStream}, into this monitor's stream.
+     */
+    public synchronized void writeEvents(byte[] events, int offset, int length) {
+        writer.write(events, offset, length);
+    }
+
     public void outcomeFinished(Result result) {
-        JsonObject jsonObject = new JsonObject();
-        jsonObject.addProperty("result", result.name());
-        writer.print(marker + gson.toJson(jsonObject) + "\n");
+        outcomeFinished(result, -1, -1);
+    }
+
+    /**
+     * @param wallTimeNanos the monotonic wall time taken by the outcome, or -1 if unknown.
+     * @param cpuTimeNanos the thread CPU time taken by the outcome, or -1 if unknown.
+     */
+    public void outcomeFinished(Result result, long wallTimeNanos, long cpuTimeNanos) {
+        outcomeFinished(result, wallTimeNanos, cpuTimeNanos, null);
+    }
+
+    /**
+     * @param resourceUsage the resources consumed by the outcome, or null if unknown.
+     */
+    public synchronized void outcomeFinished(Result result, long wallTimeNanos,
+            long cpuTimeNanos, ResourceUsage resourceUsage) {
+        currentOutcomeName = null;
+        beginEvent();
+        property("result", result.name());
+        if (wallTimeNanos != -1) {
+            property("wallTimeNanos", wallTimeNanos);
+        }
+        if (cpuTimeNanos != -1) {
+            property("cpuTimeNanos", cpuTimeNanos);
+        }
+        if (resourceUsage != null) {
+            name("resources");
+            event.append('{');
+            property("heapDeltaBytes", resourceUsage.getHeapDeltaBytes());
+            property("threadDelta", resourceUsage.getThreadDelta());
+            if (resourceUsage.getGcCount() != -1) {
+                property("gcCount", resourceUsage.getGcCount());
+            }
+            if (resourceUsage.getGcTimeMillis() != -1) {
+                property("gcTimeMillis", resourceUsage.getGcTimeMillis());
+            }
+            if (resourceUsage.getAllocatedBytes() != -1) {
+                property("allocatedBytes", resourceUsage.getAllocatedBytes());
+            }
+            event.append('}');
+        }
+        endEvent();
+    }
+
+    /**
+     * Tells the host that the target is still alive, and how busy it is.
+     *
+     * @param cpuTimeNanos the CPU time the process consumed since the last
+     *     heartbeat, or -1 if unknown.
+     * @param idle true if that CPU time is too little for the process to be
+     *     making progress.
+     * @param threadStates the number of live threads in each state.
+     * @param threadDump the stacks of the live threads, or null.
+     */
+    public synchronized void heartbeat(long cpuTimeNanos, boolean idle,
+            Map<Thread.State, Integer> threadStates, String threadDump) {
+        beginEvent();
+        name("heartbeat");
+        event.append('{');
+        if (currentOutcomeName != null) {
+            property("outcome", currentOutcomeName);
+        }
+        if (cpuTimeNanos != -1) {
+            property("cpuTimeNanos", cpuTimeNanos);
+        }
+        name("idle");
+        event.append(idle);
+        name("threads");
+        event.append('{');
+        for (Map.Entry<Thread.State, Integer> entry : threadStates.entrySet()) {
+            property(entry.getKey().name(), entry.getValue());
+        }
+        event.append('}');
+        if (threadDump != null) {
+            property("threadDump", threadDump);
+        }
+        event.append('}');
+        endEvent();
+    }
+
+    /**
+     * Writes out any buffered output and events, such as after reporting an
+     * error that may bring down the process.
+     */
+    public synchronized void flush() {
+        writer.flush();
     }
 
     public synchronized void close() throws IOException {
+        writer.flush();
         writer.close();
     }
 
-    public void completedNormally(boolean completedNormally) {
-        JsonObject jsonObject = new JsonObject();
-        jsonObject.addProperty("completedNormally", completedNormally);
-        writer.print(marker + gson.toJson(jsonObject) + "\n");
+    public synchronized void completedNormally(boolean completedNormally) {
+        beginEvent();
+        name("completedNormally");
+        event.append(completedNormally);
+        endEvent();
+    }
+
+    private void beginEvent() {
+        event.setLength(0);
+        event.append(marker).append('{');
+    }
+
+    /**
+     * Writes the event and flushes it, with any output before it, so that the
+     * host sees each outcome boundary as soon as it is reached.
+     */
+    private void endEvent() {
+        event.append("}\n");
+        writer.append(event);
+        writer.flush();
+    }
+
+    private void name(String name) {
+        char last = event.charAt(event.length() - 1);
+        if (last != '{') {
+            event.append(',');
+        }
+        string(name);
+        event.append(':');
+    }
+
+    private void property(String name, String value) {
+        name(name);
+        string(value);
+    }
+
+    private void property(String name, long value) {
+        name(name);
+        event.append(value);
+    }
+
+    /**
+     * Appends {@code value} as a JSON string, escaped exactly as Gson escapes
+     * it, so that the host sees the same bytes as it always has.
+     */
+    private void string(String value) {
+        event.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                case '\\':
+                    event.append('\\').append(c);
+                    break;
+                case '\t':
+                    event.append("\\t");
+                    break;
+                case '\b':
+                    event.append("\\b");
+                    break;
+                case '\n':
+                    event.append("\\n");
+                    break;
+                case '\r':
+                    event.append("\\r");
+                    break;
+                case '\f':
+                    event.append("\\f");
+                    break;
+                case '<':
+                case '>':
+                case '&':
+                case '=':
+                case '\'':
+                    unicodeEscape(c);
+                    break;
+                default:
+                    if (c <= 0x1f) {
+                        unicodeEscape(c);
+                    } else {
+                        event.append(c);
+                    }
+                    break;
+            }
+        }
+        event.append('"');
+    }
+
+    private void unicodeEscape(char c) {
+        event.append("\\u")
+                .append(HEX_DIGITS[(c >> 12) & 0xf])
+                .append(HEX_DIGITS[(c >> 8) & 0xf])
+                .append(HEX_DIGITS[(c >> 4) & 0xf])
+                .append(HEX_DIGITS[c & 0xf]);
+    }
+
+    /**
+     * Is told of outcomes as they start, such as to record progress that
+     * must outlive the process.
+     */
+    public interface OutcomeListener {
+        void outcomeStarted(String outcomeName);
     }
 }
@@ -57,6 +57,10 @@ public final class CaliperTargetRunner implements TargetRunner {
         ImmutableList<String> argList = builder.build();
         String[] arguments = argList.toArray(new String[argList.size()]);
         Result result = Result.EXEC_FAILED;
+        ResourceUsageSampler sampler = new ResourceUsageSampler();
+        OutcomeTimer timer = new OutcomeTimer();
+        sampler.start();
+        timer.start();
         try {
             PrintWriter stdout = new PrintWriter(System.out);
             PrintWriter stderr = new PrintWriter(System.err);
@@ -65,7 +69,10 @@ public final class CaliperTargetRunner implements TargetRunner {
         } catch (Exception ex) {
             ex.printStackTrace();
         }
-        monitor.outcomeFinished(result);
+        timer.stop();
+        sampler.stop();
+        monitor.outcomeFinished(result, timer.getWallTimeNanos(), timer.getCpuTimeNanos(),
+                sampler.getResourceUsage());
         return true;
     }
 }
@@ -23,27 +23,28 @@ import java.util.Set;
 
 class ClassFinder {
     /**
-     * Returns either a Set with the class represented by classOrPackageName as its only element, if
-     * classOrPackageName represents a class, or a Set containing all of the classes contained
-     * within the package represented by classOrPackageName, if it represents a package.
+     * Returns either a Set with the name of the class represented by classOrPackageName as its
+     * only element, if classOrPackageName represents a class, or a Set containing the names of all
+     * of the classes contained within the package represented by classOrPackageName, if it
+     * represents a package. The classes of a package aren't loaded.
      *
      * Throws an exception if it represents neither a class nor a package with at least one class.
      */
-    public Set<Class<?>> find(String classOrPackageName) {
+    public Set<String> find(String classOrPackageName) {
         try {
             // if no exception thrown, classOrPackageName must represent a class
-            return Collections.<Class<?>>singleton(Class.forName(classOrPackageName));
+            Class.forName(classOrPackageName);
+            return Collections.singleton(classOrPackageName);
         } catch (ClassNotFoundException e) {
         }
         // classOrPackageName might represent a package
         try {
-            Package aPackage = new ClassPathScanner().scan(classOrPackageName);
-            Set<Class<?>> classes = aPackage.getTopLevelClassesRecursive();
-            if (classes.isEmpty()) {
+            Set<String> classNames = new ClassPathScanner().scan(classOrPackageName);
+            if (classNames.isEmpty()) {
                 throw new IllegalArgumentException("No classes in package: " + classOrPackageName +
                         "; classpath is " + Arrays.toString(ClassPathScanner.getClassPath()));
             }
-            return classes;
+            return classNames;
         } catch (IOException eIO) {
             throw new RuntimeException(eIO);
         }
@@ -19,10 +19,11 @@ package vogar.target;
 import dalvik.system.DexFile;
 import java.io.File;
 import java.io.IOException;
-import java.util.Comparator;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Enumeration;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
@@ -31,45 +32,33 @@ import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 
 /**
- * Inspects the classpath to return the classes in a requested package. This
- * class doesn't yet traverse directories on the classpath.
+ * Inspects the classpath to return the classes in a requested package.
+ *
+ * <p>Each jar or dex file on the classpath is indexed by package once. The
+ * index is saved under {@code user.home}, which on a device is beside the
+ * pushed dex files, so that later processes needn't open the file at all.
+ * Directories are walked afresh each time.
  *
  * <p>Adapted from android.test.ClassPathPackageInfo. Unlike that class, this
  * runs on both Dalvik and Java VMs.
  */
 final class ClassPathScanner {
 
-    static final Comparator<Class<?>> ORDER_CLASS_BY_NAME = new Comparator<Class<?>>() {
-        @Override public int compare(Class<?> a, Class<?> b) {
-            return a.getName().compareTo(b.getName());
-        }
-    };
     private static final String DOT_CLASS = ".class";
 
+    /** Indexes built or read by this process, by classpath entry. */
+    private static final Map<File, PackageIndex> INDEXES =
+            Collections.synchronizedMap(new HashMap<File, PackageIndex>());
+
     private final String[] classPath;
     private final ClassFinder classFinder;
-
-    private static Map<String, DexFile> createDexFiles(String[] classPath) {
-        Map<String, DexFile> result = new HashMap<String, DexFile>();
-        for (String entry : classPath) {
-            File classPathEntry = new File(entry);
-            if (!classPathEntry.exists() || classPathEntry.isDirectory()) {
-                continue;
-            }
-
-            try {
-                result.put(classPathEntry.getName(), new DexFile(classPathEntry));
-            } catch (IOException ignore) {
-                // okay, presumably the dex file didn't contain any classes
-            }
-        }
-        return result;
-    }
+    /** The directory to save indexes in, or null to not save them. */
+    private final File indexDir;
 
     ClassPathScanner() {
         classPath = getClassPath();
         if ("Dalvik".equals(System.getProperty("java.vm.name"))) {
-            classFinder = new ApkClassFinder(createDexFiles(classPath));
+            classFinder = new ApkClassFinder();
         } else {
             // When running vogar tests under an IDE the classes are not held in a .jar file.
             // This system properties can be set to make it possible to run the vogar tests from an
@@ -80,188 +69,167 @@ final class ClassPathScanner {
                 classFinder = new JarClassFinder();
             }
         }
+        String userHome = System.getProperty("user.home");
+        indexDir = userHome != null && !userHome.isEmpty()
+                ? new File(userHome, ".vogar/package-index")
+                : null;
     }
 
     /**
-     * Returns a package describing the loadable classes whose package name is
-     * {@code packageName}.
+     * Returns the names of the top-level classes in the package {@code
+     * packageName} and its subpackages, in sorted order. The classes aren't
+     * loaded.
      */
-    public Package scan(String packageName) throws IOException {
-        Set<String> subpackageNames = new TreeSet<>();
+    public Set<String> scan(String packageName) throws IOException {
         Set<String> classNames = new TreeSet<>();
-        Set<Class<?>> topLevelClasses = new TreeSet<>(ORDER_CLASS_BY_NAME);
-        findClasses(packageName, classNames, subpackageNames);
-        for (String className : classNames) {
-            try {
-                topLevelClasses.add(Class.forName(className, false, getClass().getClassLoader()));
-            } catch (ClassNotFoundException e) {
-                throw new RuntimeException(e);
+        for (String entry : classPath) {
+            File entryFile = new File(entry);
+            if (!entryFile.exists()) {
+                continue;
+            }
+            if (entryFile.isDirectory()) {
+                classFinder.findInDirectory(entryFile, packageName, classNames);
+                continue;
+            }
+            PackageIndex index = getIndex(entryFile);
+            if (index != null) {
+                index.addClassNamesRecursive(packageName, classNames);
             }
         }
-        return new Package(this, subpackageNames, topLevelClasses);
+        return classNames;
     }
 
     /**
-     * Finds all classes and subpackages that are below the packageName and
-     * add them to the respective sets. Searches the package on the whole class
-     * path.
+     * Returns the index of {@code entry}, reading a saved index if there is a
+     * current one and otherwise building and saving it.
      */
-    private void findClasses(String packageName, Set<String> classNames,
-            Set<String> subpackageNames) throws IOException {
-        String packagePrefix = packageName + '.';
-        String pathPrefix = packagePrefix.replace('.', '/');
-        for (String entry : classPath) {
-            File entryFile = new File(entry);
-            if (entryFile.exists()) {
-                classFinder.find(entryFile, pathPrefix, packageName, classNames, subpackageNames);
+    private PackageIndex getIndex(File entry) throws IOException {
+        PackageIndex index = INDEXES.get(entry);
+        if (index != null && index.isCurrent(entry)) {
+            return index;
+        }
+
+        File indexFile = indexDir != null
+                ? new File(indexDir, entry.getName() + "-"
+                        + Integer.toHexString(entry.getAbsolutePath().hashCode()) + ".index")
+                : null;
+        index = null;
+        if (indexFile != null && indexFile.exists()) {
+            try {
+                index = PackageIndex.read(indexFile, entry);
+            } catch (IOException ignored) {
+                // unreadable; build it again
+            }
+        }
+        if (index == null) {
+            List<String> classNames = classFinder.listClassNames(entry);
+            if (classNames == null) {
+                return null;
+            }
+            index = PackageIndex.create(entry, classNames);
+            if (indexFile != null && (indexDir.isDirectory() || indexDir.mkdirs())) {
+                try {
+                    index.write(indexFile);
+                } catch (IOException ignored) {
+                    // the index is only a cache
+                }
             }
         }
+        INDEXES.put(entry, index);
+        return index;
     }
 
     interface ClassFinder {
-        void find(File classPathEntry, String pathPrefix, String packageName,
-                Set<String> classNames, Set<String> subpackageNames) throws IOException;
+        /**
+         * Returns the names of all classes in the jar or dex file {@code
+         * classPathEntry}, or null if it holds no classes.
+         */
+        List<String> listClassNames(File classPathEntry) throws IOException;
+
+        /**
+         * Adds the names of the top-level classes in the package {@code
+         * packageName} and its subpackages in the class directory {@code
+         * classPathEntry} to {@code classNames}.
+         */
+        void findInDirectory(File classPathEntry, String packageName, Set<String> classNames);
     }
 
     /**
-     * Finds all classes and subpackages that are below the packageName and
-     * add them to the respective sets. Searches the package in a single jar file.
+     * Lists the classes in jar files. Directories are skipped.
      */
     private static class JarClassFinder implements ClassFinder {
-        public void find(File classPathEntry, String pathPrefix, String packageName,
-                Set<String> classNames, Set<String> subpackageNames) throws IOException {
-            if (classPathEntry.isDirectory()) {
-                return;
-            }
-
-            Set<String> entryNames = getJarEntries(classPathEntry);
-            // check if the Jar contains the package.
-            if (!entryNames.contains(pathPrefix)) {
-                return;
-            }
-            int prefixLength = pathPrefix.length();
-            for (String entryName : entryNames) {
-                if (entryName.startsWith(pathPrefix)) {
+        @Override public List<String> listClassNames(File classPathEntry) throws IOException {
+            List<String> classNames = new ArrayList<>();
+            try (ZipFile zipFile = new ZipFile(classPathEntry)) {
+                for (Enumeration<? extends ZipEntry> e = zipFile.entries();
+                        e.hasMoreElements(); ) {
+                    String entryName = e.nextElement().getName();
                     if (entryName.endsWith(DOT_CLASS)) {
-                        // check if the class is in the package itself or in one of its
-                        // subpackages.
-                        int index = entryName.indexOf('/', prefixLength);
-                        if (index >= 0) {
-                            String p = entryName.substring(0, index).replace('/', '.');
-                            subpackageNames.add(p);
-                        } else if (isToplevelClass(entryName)) {
-                            classNames.add(getClassName(entryName).replace('/', '.'));
-                        }
+                        classNames.add(getClassName(entryName).replace('/', '.'));
                     }
                 }
             }
+            return classNames;
         }
 
-        /**
-         * Gets the class and package entries from a Jar.
-         */
-        private Set<String> getJarEntries(File jarFile) throws IOException {
-            Set<String> entryNames = new HashSet<>();
-            ZipFile zipFile = new ZipFile(jarFile);
-            for (Enumeration<? extends ZipEntry> e = zipFile.entries(); e.hasMoreElements(); ) {
-                String entryName = e.nextElement().getName();
-                if (!entryName.endsWith(DOT_CLASS)) {
-                    continue;
-                }
-
-                entryNames.add(entryName);
-
-                // add the entry name of the classes package, i.e. the entry name of
-                // the directory that the class is in. Used to quickly skip jar files
-                // if they do not contain a certain package.
-                //
-                // Also add parent packages so that a JAR that contains
-                // pkg1/pkg2/Foo.class will be marked as containing pkg1/ in addition
-                // to pkg1/pkg2/ and pkg1/pkg2/Foo.class.  We're still interested in
-                // JAR files that contains subpackages of a given package, even if
-                // an intermediate package contains no direct classes.
-                //
-                // Classes in the default package will cause a single package named
-                // "" to be added instead.
-                int lastIndex = entryName.lastIndexOf('/');
-                do {
-                    String packageName = entryName.substring(0, lastIndex + 1);
-                    entryNames.add(packageName);
-                    lastIndex = entryName.lastIndexOf('/', lastIndex - 1);
-                } while (lastIndex > 0);
-            }
-
-            return entryNames;
+        @Override public void findInDirectory(File classPathEntry, String packageName,
+                Set<String> classNames) {
         }
     }
 
     /**
-     * Finds all classes and subpackages that are below the packageName and
-     * add them to the respective sets. Searches the package from a class directory.
+     * Finds classes in class directories. Jar files are skipped.
      */
     private static class DirectoryClassFinder implements ClassFinder {
-        public void find(File classPathEntry, String pathPrefix, String packageName,
-                Set<String> classNames, Set<String> subpackageNames) throws IOException {
+        @Override public List<String> listClassNames(File classPathEntry) {
+            return null;
+        }
 
-            File subDir = new File(classPathEntry, pathPrefix);
-            if (subDir.exists() && subDir.isDirectory()) {
-                File[] files = subDir.listFiles();
-                if (files != null) {
-                    for (File subFile : files) {
-                        String fileName = subFile.getName();
-                        if (fileName.endsWith(DOT_CLASS)) {
-                            classNames.add(packageName + "." + getClassName(fileName));
-                        } else if (subFile.isDirectory()) {
-                            subpackageNames.add(packageName + "." + fileName);
-                        }
+        @Override public void findInDirectory(File classPathEntry, String packageName,
+                Set<String> classNames) {
+            File packageDir = new File(classPathEntry, packageName.replace('.', '/'));
+            File[] files = packageDir.listFiles();
+            if (files == null) {
+                return;
+            }
+            for (File file : files) {
+                String fileName = file.getName();
+                if (fileName.endsWith(DOT_CLASS)) {
+                    if (isToplevelClass(fileName)) {
+                        classNames.add(packageName + "." + getClassName(fileName));
                     }
+                } else if (file.isDirectory()) {
+                    findInDirectory(classPathEntry, packageName + "." + fileName, classNames);
                 }
             }
         }
     }
 
     /**
-     * Finds all classes and sub packages that are below the packageName and
-     * add them to the respective sets. Searches the package in a single APK.
+     * Lists the classes in dex files. Directories are skipped.
      *
      * <p>This class uses the Android-only class DexFile. This class will fail
      * to load on non-Android VMs.
      */
     private static class ApkClassFinder implements ClassFinder {
-        private final Map<String, DexFile> dexFiles;
-
-        ApkClassFinder(Map<String, DexFile> dexFiles) {
-            this.dexFiles = dexFiles;
-        }
-
-        public void find(File classPathEntry, String pathPrefix, String packageName,
-                Set<String> classNames, Set<String> subpackageNames) {
-            if (classPathEntry.isDirectory()) {
-                return;
+        @Override public List<String> listClassNames(File classPathEntry) {
+            DexFile dexFile;
+            try {
+                dexFile = new DexFile(classPathEntry);
+            } catch (IOException ignore) {
+                // okay, presumably the dex file didn't contain any classes
+                return null;
             }
-
-            DexFile dexFile = dexFiles.get(classPathEntry.getName());
-            if (dexFile == null) {
-                return;
+            List<String> classNames = Collections.list(dexFile.entries());
+            try {
+                dexFile.close();
+            } catch (IOException ignored) {
             }
-            Enumeration<String> apkClassNames = dexFile.entries();
-            while (apkClassNames.hasMoreElements()) {
-                String className = apkClassNames.nextElement();
-                if (!className.startsWith(packageName)) {
-                    continue;
-                }
+            return classNames;
+        }
 
-                String subPackageName = packageName;
-                int lastPackageSeparator = className.lastIndexOf('.');
-                if (lastPackageSeparator > 0) {
-                    subPackageName = className.substring(0, lastPackageSeparator);
-                }
-                if (subPackageName.length() > packageName.length()) {
-                    subpackageNames.add(subPackageName);
-                } else if (isToplevelClass(className)) {
-                    classNames.add(className);
-                }
-            }
+        @Override public void findInDirectory(File classPathEntry, String packageName,
+                Set<String> classNames) {
         }
     }
 
@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package vogar.target;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import vogar.monitor.TargetMonitor;
+
+/**
+ * Periodically tells the host how much CPU time the process used and what its
+ * threads are doing, so that the host can abort a process that has stalled
+ * without waiting for the action's full timeout.
+ *
+ * <p>A process that used less than {@link #IDLE_CPU_FRACTION} of a CPU since
+ * the last heartbeat is idle. Idle heartbeats carry a thread dump, so that if
+ * the host aborts the process it can report where it was stuck.
+ */
+final class Heartbeat implements Runnable {
+
+    static final double IDLE_CPU_FRACTION = 0.01;
+
+    /** The most characters of thread dump to send, so that many threads can't flood the host. */
+    private static final int MAX_THREAD_DUMP_CHARS = 64 * 1024;
+
+    private final TargetMonitor monitor;
+    private final long intervalNanos;
+    private Thread thread;
+
+    Heartbeat(TargetMonitor monitor, int intervalSeconds) {
+        this.monitor = monitor;
+        this.intervalNanos = TimeUnit.SECONDS.toNanos(intervalSeconds);
+    }
+
+    synchronized void start() {
+        thread = new Thread(this, "Heartbeat");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    synchronized void stop() {
+        if (thread != null) {
+            thread.interrupt();
+            thread = null;
+        }
+    }
+
+    @Override public void run() {
+        long lastCpuTimeNanos = OutcomeTimer.processCpuTimeNanos();
+        long lastNanoTime = System.nanoTime();
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(intervalNanos);
+            } catch (InterruptedException e) {
+                return;
+            }
+
+            long cpuTimeNanos = OutcomeTimer.processCpuTimeNanos();
+            long nanoTime = System.nanoTime();
+            long cpuDeltaNanos = (cpuTimeNanos == -1 || lastCpuTimeNanos == -1)
+                    ? -1
+                    : Math.max(cpuTimeNanos - lastCpuTimeNanos, 0);
+            // Without a CPU clock, there's no telling whether the process is idle.
+            boolean idle = cpuDeltaNanos != -1
+                    && cpuDeltaNanos < (nanoTime - lastNanoTime) * IDLE_CPU_FRACTION;
+            lastCpuTimeNanos = cpuTimeNanos;
+            lastNanoTime = nanoTime;
+
+            Map<Thread.State, Integer> threadStates = new EnumMap<>(Thread.State.class);
+            StringBuilder threadDump = idle ? new StringBuilder() : null;
+            for (Map.Entry<Thread, StackTraceElement[]> entry
+                    : Thread.getAllStackTraces().entrySet()) {
+                Thread liveThread = entry.getKey();
+                if (liveThread == Thread.currentThread()) {
+                    continue;
+                }
+                Thread.State state = liveThread.getState();
+                Integer count = threadStates.get(state);
+                threadStates.put(state, count != null ? count + 1 : 1);
+                if (threadDump != null && threadDump.length() < MAX_THREAD_DUMP_CHARS) {
+                    appendThread(threadDump, liveThread, state, entry.getValue());
+                }
+            }
+            if (threadDump != null && threadDump.length() > MAX_THREAD_DUMP_CHARS) {
+                threadDump.setLength(MAX_THREAD_DUMP_CHARS);
+                threadDump.append("...\n");
+            }
+
+            monitor.heartbeat(cpuDeltaNanos, idle, threadStates,
+                    threadDump != null ? threadDump.toString() : null);
+        }
+    }
+
+    private static void appendThread(StringBuilder out, Thread thread, Thread.State state,
+            StackTraceElement[] stackTrace) {
+        out.append('"').append(thread.getName()).append("\" ").append(state).append('\n');
+        for (StackTraceElement element : stackTrace) {
+            out.append("\tat ").append(element).append('\n');
+        }
+        out.append('\n');
+    }
+}
@@ -44,14 +44,22 @@ public final class MainTargetRunner implements TargetRunner {
 
     public boolean run() {
         monitor.outcomeStarted(mainClass.getName() + "#main");
+        ResourceUsageSampler sampler = new ResourceUsageSampler();
+        OutcomeTimer timer = new OutcomeTimer();
+        sampler.start();
+        timer.start();
+        Result result;
         try {
             main.invoke(null, new Object[] { args });
-            monitor.outcomeFinished(Result.SUCCESS);
+            result = Result.SUCCESS;
         } catch (Throwable ex) {
             ex.printStackTrace();
-            monitor.outcomeFinished(Result.EXEC_FAILED);
-        } finally {
+            result = Result.EXEC_FAILED;
         }
+        timer.stop();
+        sampler.stop();
+        monitor.outcomeFinished(result, timer.getWallTimeNanos(), timer.getCpuTimeNanos(),
+                sampler.getResourceUsage());
         return true;
     }
 }
@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package vogar.target;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import vogar.monitor.TargetMonitor;
+
+/**
+ * Gives each of a sequence of concurrently running test classes a monitor of
+ * its own, and writes their events to a shared monitor in sequence order.
+ *
+ * <p>The first unfinished channel writes straight through; the others are
+ * buffered until every channel before them has finished. So the shared
+ * monitor sees the same stream of events as if the classes had run one after
+ * another, and the host attributes outcomes and output correctly.
+ */
+final class OrderedMonitorChannels {
+
+    private final TargetMonitor monitor;
+    private final Channel[] channels;
+    private final TargetMonitor[] channelMonitors;
+    /** The index of the channel that writes straight through. */
+    private int head;
+    /** True once a channel finished abnormally; no later channel is written. */
+    private boolean stopped;
+
+    OrderedMonitorChannels(TargetMonitor monitor, int count) {
+        this.monitor = monitor;
+        this.channels = new Channel[count];
+        this.channelMonitors = new TargetMonitor[count];
+        for (int i = 0; i < count; i++) {
+            channels[i] = new Channel(i);
+            channelMonitors[i] = TargetMonitor.forPrintStream(new PrintStream(channels[i]));
+        }
+    }
+
+    /**
+     * Returns the monitor of the {@code index}th channel.
+     */
+    TargetMonitor get(int index) {
+        return channelMonitors[index];
+    }
+
+    /**
+     * Marks the {@code index}th channel as finished, and writes out any
+     * channels after it that it was holding back.
+     *
+     * @param completedNormally false if the process is about to be abandoned,
+     *     in which case nothing written to later channels is written out.
+     */
+    synchronized void finish(int index, boolean completedNormally) {
+        channels[index].finished = true;
+        if (!completedNormally) {
+            stopped = true;
+        }
+        while (head < channels.length && channels[head].finished && !stopped) {
+            head++;
+            if (head < channels.length) {
+                channels[head].writeBuffered();
+            }
+        }
+    }
+
+    private class Channel extends OutputStream {
+        private final int index;
+        private ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        private boolean finished;
+
+        Channel(int index) {
+            this.index = index;
+        }
+
+        @Override public void write(int b) {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override public void write(byte[] bytes, int offset, int length) {
+            synchronized (OrderedMonitorChannels.this) {
+                if (index == head && !stopped) {
+                    monitor.writeEvents(bytes, offset, length);
+                } else if (buffer != null) {
+                    buffer.write(bytes, offset, length);
+                }
+            }
+        }
+
+        /** Writes out what was buffered, and writes straight through from now on. */
+        void writeBuffered() {
+            monitor.writeEvents(buffer.toByteArray(), 0, buffer.size());
+            buffer = null;
+        }
+    }
+}
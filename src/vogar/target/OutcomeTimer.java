@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package vogar.target;
+
+import android.os.Debug;
+import android.os.Process;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the monotonic wall time and the thread CPU time taken by a single
+ * outcome.
+ *
+ * <p>CPU time is measured on the thread that calls {@link #start()} and
+ * {@link #stop()}.
+ */
+public final class OutcomeTimer {
+
+    private static final CpuClock CPU_CLOCK = "Dalvik".equals(System.getProperty("java.vm.name"))
+            ? new DalvikCpuClock()
+            : new JvmCpuClock();
+
+    private long startWallTimeNanos;
+    private long startCpuTimeNanos;
+    private long wallTimeNanos = -1;
+    private long cpuTimeNanos = -1;
+
+    public void start() {
+        wallTimeNanos = -1;
+        cpuTimeNanos = -1;
+        startCpuTimeNanos = currentThreadCpuTimeNanos();
+        startWallTimeNanos = System.nanoTime();
+    }
+
+    public void stop() {
+        wallTimeNanos = System.nanoTime() - startWallTimeNanos;
+        long endCpuTimeNanos = currentThreadCpuTimeNanos();
+        cpuTimeNanos = (startCpuTimeNanos == -1 || endCpuTimeNanos == -1)
+                ? -1
+                : endCpuTimeNanos - startCpuTimeNanos;
+    }
+
+    /**
+     * Returns the wall time of the last completed measurement, or -1 if
+     * nothing has been measured.
+     */
+    public long getWallTimeNanos() {
+        return wallTimeNanos;
+    }
+
+    /**
+     * Returns the CPU time of the last completed measurement, or -1 if the VM
+     * does not support thread CPU time measurement.
+     */
+    public long getCpuTimeNanos() {
+        return cpuTimeNanos;
+    }
+
+    /**
+     * Returns the CPU time consumed so far by the current thread, or -1 if the
+     * VM does not support thread CPU time measurement.
+     */
+    public static long currentThreadCpuTimeNanos() {
+        try {
+            return CPU_CLOCK.currentThreadCpuTimeNanos();
+        } catch (RuntimeException | LinkageError e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Returns the CPU time consumed so far by the threads of this process, or
+     * -1 if the VM does not support measuring it. The JVM only counts live
+     * threads, so the result may drop when a busy thread ends.
+     */
+    public static long processCpuTimeNanos() {
+        try {
+            return CPU_CLOCK.processCpuTimeNanos();
+        } catch (RuntimeException | LinkageError e) {
+            return -1;
+        }
+    }
+
+    private interface CpuClock {
+        long currentThreadCpuTimeNanos();
+        long processCpuTimeNanos();
+    }
+
+    private static class JvmCpuClock implements CpuClock {
+        private final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+
+        @Override public long currentThreadCpuTimeNanos() {
+            return threadMXBean.isCurrentThreadCpuTimeSupported()
+                    ? threadMXBean.getCurrentThreadCpuTime()
+                    : -1;
+        }
+
+        @Override public long processCpuTimeNanos() {
+            if (!threadMXBean.isThreadCpuTimeSupported()) {
+                return -1;
+            }
+            long result = 0;
+            for (long threadId : threadMXBean.getAllThreadIds()) {
+                long threadCpuTimeNanos = threadMXBean.getThreadCpuTime(threadId);
+                if (threadCpuTimeNanos != -1) { // -1 if the thread has ended
+                    result += threadCpuTimeNanos;
+                }
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Uses the Android-only class Debug. This class will fail to load on
+     * non-Android VMs.
+     */
+    private static class DalvikCpuClock implements CpuClock {
+        @Override public long currentThreadCpuTimeNanos() {
+            return Debug.threadCpuTimeNanos();
+        }
+
+        @Override public long processCpuTimeNanos() {
+            return TimeUnit.MILLISECONDS.toNanos(Process.getElapsedCpuTime());
+        }
+    }
+}
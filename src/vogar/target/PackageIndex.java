@@ -0,0 +1,170 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package vogar.target;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * The top-level classes of a single classpath entry, by package. An index is
+ * built once per entry and may be saved to a file, so that later processes
+ * can find a package's classes without opening the entry at all.
+ */
+final class PackageIndex {
+
+    private static final int MAGIC = 0x76504b49; // "vPKI"
+    private static final int VERSION = 1;
+
+    /** The length and modification time of the indexed entry. */
+    private final long length;
+    private final long lastModified;
+    /** Package names to the simple names of their top-level classes, sorted. */
+    private final SortedMap<String, List<String>> classNamesByPackage;
+
+    private PackageIndex(long length, long lastModified,
+            SortedMap<String, List<String>> classNamesByPackage) {
+        this.length = length;
+        this.lastModified = lastModified;
+        this.classNamesByPackage = classNamesByPackage;
+    }
+
+    /**
+     * Returns an index of {@code classNames}, the fully qualified names of
+     * classes in {@code entry}. Names of nested classes are skipped.
+     */
+    static PackageIndex create(File entry, Iterable<String> classNames) {
+        SortedMap<String, List<String>> classNamesByPackage = new TreeMap<>();
+        for (String className : classNames) {
+            if (className.indexOf('$') >= 0) {
+                continue;
+            }
+            int lastDot = className.lastIndexOf('.');
+            String packageName = lastDot == -1 ? "" : className.substring(0, lastDot);
+            List<String> simpleNames = classNamesByPackage.get(packageName);
+            if (simpleNames == null) {
+                simpleNames = new ArrayList<>();
+                classNamesByPackage.put(packageName, simpleNames);
+            }
+            simpleNames.add(className.substring(lastDot + 1));
+        }
+        return new PackageIndex(entry.length(), entry.lastModified(), classNamesByPackage);
+    }
+
+    /**
+     * Returns true if this index is of {@code entry} as it is now.
+     */
+    boolean isCurrent(File entry) {
+        return length == entry.length() && lastModified == entry.lastModified();
+    }
+
+    /**
+     * Adds the fully qualified names of the top-level classes in {@code
+     * packageName} and its subpackages to {@code result}.
+     */
+    void addClassNamesRecursive(String packageName, Collection<String> result) {
+        // Subpackages sort after their package, but so may packages that merely
+        // share its prefix, like "java.io2" after "java.io".
+        String subpackagePrefix = packageName + ".";
+        for (Map.Entry<String, List<String>> entry
+                : classNamesByPackage.tailMap(packageName).entrySet()) {
+            String name = entry.getKey();
+            if (!name.startsWith(packageName)) {
+                break;
+            }
+            if (!name.equals(packageName) && !name.startsWith(subpackagePrefix)) {
+                continue;
+            }
+            String classPrefix = name.isEmpty() ? "" : name + ".";
+            for (String simpleName : entry.getValue()) {
+                result.add(classPrefix + simpleName);
+            }
+        }
+    }
+
+    /**
+     * Returns the index saved in {@code file} if it is an index of {@code
+     * entry} as it is now, or null if it isn't.
+     */
+    static PackageIndex read(File file, File entry) throws IOException {
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return null;
+            }
+            long length = in.readLong();
+            long lastModified = in.readLong();
+            if (length != entry.length() || lastModified != entry.lastModified()) {
+                return null;
+            }
+            SortedMap<String, List<String>> classNamesByPackage = new TreeMap<>();
+            int packageCount = in.readInt();
+            for (int i = 0; i < packageCount; i++) {
+                String packageName = in.readUTF();
+                int classCount = in.readInt();
+                List<String> simpleNames = new ArrayList<>(classCount);
+                for (int j = 0; j < classCount; j++) {
+                    simpleNames.add(in.readUTF());
+                }
+                classNamesByPackage.put(packageName, simpleNames);
+            }
+            return new PackageIndex(length, lastModified, classNamesByPackage);
+        }
+    }
+
+    /**
+     * Saves this index to {@code file}. The index is written to a temporary
+     * file that is then renamed, so that processes reading the file
+     * concurrently never see a partial index.
+     */
+    void write(File file) throws IOException {
+        File temp = File.createTempFile(file.getName(), ".tmp", file.getParentFile());
+        try {
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(temp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(length);
+                out.writeLong(lastModified);
+                out.writeInt(classNamesByPackage.size());
+                for (Map.Entry<String, List<String>> entry : classNamesByPackage.entrySet()) {
+                    out.writeUTF(entry.getKey());
+                    out.writeInt(entry.getValue().size());
+                    for (String simpleName : entry.getValue()) {
+                        out.writeUTF(simpleName);
+                    }
+                }
+            }
+            if (!temp.renameTo(file)) {
+                throw new IOException("Failed to rename " + temp + " to " + file);
+            }
+        } finally {
+            temp.delete();
+        }
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package vogar.target;
+
+import com.google.common.base.Charsets;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import vogar.monitor.TargetMonitor;
+
+/**
+ * A file on the target recording which class an action's runner started last,
+ * and which outcomes it started since. Each record is written straight to the
+ * file, so it survives the VM dying.
+ *
+ * <p>When the host restarts an action whose VM died, the new runner reads the
+ * journal to resume at the class that was running, rather than rediscovering
+ * every class before it. If the VM died before that class started any
+ * outcome, the class itself is what kills the VM, and it is quarantined.
+ */
+public final class ProgressJournal implements TargetMonitor.OutcomeListener {
+
+    private static final String CLASS = "class ";
+    private static final String OUTCOME = "outcome ";
+
+    private final OutputStream out;
+    /** The class the previous runner started last, or null. */
+    private final String lastClassName;
+    /** The outcome the previous runner started last in that class, or null. */
+    private final String lastOutcomeName;
+
+    private ProgressJournal(OutputStream out, String lastClassName, String lastOutcomeName) {
+        this.out = out;
+        this.lastClassName = lastClassName;
+        this.lastOutcomeName = lastOutcomeName;
+    }
+
+    /**
+     * Opens the journal in {@code file}.
+     *
+     * @param resume true to read what a previous runner of the same action
+     *     recorded and append to it; false to start a new journal.
+     */
+    static ProgressJournal open(File file, boolean resume) throws IOException {
+        String lastClassName = null;
+        String lastOutcomeName = null;
+        if (resume) {
+            try (BufferedReader in = new BufferedReader(
+                    new InputStreamReader(new FileInputStream(file), Charsets.UTF_8))) {
+                String line;
+                while ((line = in.readLine()) != null) {
+                    if (line.startsWith(CLASS)) {
+                        lastClassName = line.substring(CLASS.length());
+                        lastOutcomeName = null;
+                    } else if (line.startsWith(OUTCOME)) {
+                        lastOutcomeName = line.substring(OUTCOME.length());
+                    }
+                }
+            } catch (FileNotFoundException ignored) {
+                // the previous runner died before it opened the journal
+            }
+        }
+        return new ProgressJournal(new FileOutputStream(file, resume),
+                lastClassName, lastOutcomeName);
+    }
+
+    /**
+     * Returns true if the journal in {@code file} records that a runner
+     * started a class. Only then can a restarted runner tell which class
+     * killed the VM.
+     */
+    public static boolean recordsStartedClass(File file) throws IOException {
+        try (BufferedReader in = new BufferedReader(
+                new InputStreamReader(new FileInputStream(file), Charsets.UTF_8))) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.startsWith(CLASS)) {
+                    return true;
+                }
+            }
+            return false;
+        } catch (FileNotFoundException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Returns the class that the previous runner started last, or null if it
+     * started none.
+     */
+    String getLastClassName() {
+        return lastClassName;
+    }
+
+    /**
+     * Returns the last outcome that the previous runner started in the class
+     * it started last, or null if it started none there.
+     */
+    String getLastOutcomeName() {
+        return lastOutcomeName;
+    }
+
+    void classStarted(String className) {
+        write(CLASS + className);
+    }
+
+    @Override public void outcomeStarted(String outcomeName) {
+        write(OUTCOME + outcomeName);
+    }
+
+    private synchronized void write(String record) {
+        try {
+            out.write((record + "\n").getBytes(Charsets.UTF_8));
+        } catch (IOException ignored) {
+            // the journal only speeds up restarts
+        }
+    }
+
+    synchronized void close() {
+        try {
+            out.close();
+        } catch (IOException ignored) {
+        }
+    }
+}
@@ -0,0 +1,222 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package vogar.target;
+
+import android.os.Debug;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import vogar.ResourceUsage;
+
+/**
+ * Samples cheap runtime counters before and after an outcome to work out
+ * which outcome is responsible for heap growth, leaked threads or excessive
+ * garbage collection.
+ *
+ * <p>The allocated bytes are counted on the thread that calls {@link #start()}
+ * and {@link #stop()}.
+ */
+public final class ResourceUsageSampler {
+
+    private static final Counters COUNTERS = "Dalvik".equals(System.getProperty("java.vm.name"))
+            ? new DalvikCounters()
+            : new JvmCounters();
+
+    /**
+     * True to collect garbage before sampling the heap, so that the heap delta
+     * reflects retained objects rather than garbage.
+     */
+    private static volatile boolean collectGarbage;
+
+    private long startHeapBytes;
+    private int startThreads;
+    private long startGcCount;
+    private long startGcTimeMillis;
+    private long startAllocatedBytes;
+    private ResourceUsage resourceUsage;
+
+    /**
+     * Configures all samplers in this process to collect garbage before
+     * sampling the heap. This makes sampling much more expensive.
+     */
+    public static void setCollectGarbage(boolean collectGarbage) {
+        ResourceUsageSampler.collectGarbage = collectGarbage;
+    }
+
+    public void start() {
+        resourceUsage = null;
+        startAllocatedBytes = currentThreadAllocatedBytes();
+        startGcCount = gcCount();
+        startGcTimeMillis = gcTimeMillis();
+        startThreads = threadCount();
+        startHeapBytes = usedHeapBytes();
+    }
+
+    public void stop() {
+        long heapBytes = usedHeapBytes();
+        int threads = threadCount();
+        long gcCount = gcCount();
+        long gcTimeMillis = gcTimeMillis();
+        long allocatedBytes = currentThreadAllocatedBytes();
+        resourceUsage = new ResourceUsage(
+                heapBytes - startHeapBytes,
+                threads - startThreads,
+                delta(startGcCount, gcCount),
+                delta(startGcTimeMillis, gcTimeMillis),
+                allocatedBytes == -1 || startAllocatedBytes == -1
+                        ? -1
+                        : allocatedBytes - startAllocatedBytes);
+    }
+
+    /**
+     * Returns the resources used between the last calls to {@link #start()}
+     * and {@link #stop()}, or null if nothing has been sampled.
+     */
+    public ResourceUsage getResourceUsage() {
+        return resourceUsage;
+    }
+
+    /**
+     * Returns the number of bytes allocated so far by the current thread, or
+     * -1 if the VM doesn't count allocations per thread.
+     */
+    public static long currentThreadAllocatedBytes() {
+        try {
+            return COUNTERS.currentThreadAllocatedBytes();
+        } catch (RuntimeException | LinkageError e) {
+            return -1;
+        }
+    }
+
+    private static long delta(long start, long end) {
+        return start == -1 || end == -1 ? -1 : end - start;
+    }
+
+    private static long usedHeapBytes() {
+        Runtime runtime = Runtime.getRuntime();
+        if (collectGarbage) {
+            runtime.gc();
+            runtime.runFinalization();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static int threadCount() {
+        try {
+            return COUNTERS.threadCount();
+        } catch (RuntimeException | LinkageError e) {
+            return Thread.activeCount();
+        }
+    }
+
+    private static long gcCount() {
+        try {
+            return COUNTERS.gcCount();
+        } catch (RuntimeException | LinkageError e) {
+            return -1;
+        }
+    }
+
+    private static long gcTimeMillis() {
+        try {
+            return COUNTERS.gcTimeMillis();
+        } catch (RuntimeException | LinkageError e) {
+            return -1;
+        }
+    }
+
+    private interface Counters {
+        int threadCount();
+        long gcCount();
+        long gcTimeMillis();
+        long currentThreadAllocatedBytes();
+    }
+
+    private static class JvmCounters implements Counters {
+        private final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+
+        @Override public int threadCount() {
+            return threadMXBean.getThreadCount();
+        }
+
+        @Override public long gcCount() {
+            long result = 0;
+            for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+                long count = bean.getCollectionCount();
+                if (count != -1) {
+                    result += count;
+                }
+            }
+            return result;
+        }
+
+        @Override public long gcTimeMillis() {
+            long result = 0;
+            for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+                long time = bean.getCollectionTime();
+                if (time != -1) {
+                    result += time;
+                }
+            }
+            return result;
+        }
+
+        @Override public long currentThreadAllocatedBytes() {
+            if (!(threadMXBean instanceof com.sun.management.ThreadMXBean)) {
+                return -1;
+            }
+            com.sun.management.ThreadMXBean sunThreadMXBean =
+                    (com.sun.management.ThreadMXBean) threadMXBean;
+            return sunThreadMXBean.isThreadAllocatedMemoryEnabled()
+                    ? sunThreadMXBean.getThreadAllocatedBytes(Thread.currentThread().getId())
+                    : -1;
+        }
+    }
+
+    /**
+     * Uses the Android-only class Debug. This class will fail to load on
+     * non-Android VMs.
+     */
+    private static class DalvikCounters implements Counters {
+        @Override public int threadCount() {
+            ThreadGroup group = Thread.currentThread().getThreadGroup();
+            while (group.getParent() != null) {
+                group = group.getParent();
+            }
+            return group.activeCount();
+        }
+
+        @Override public long gcCount() {
+            return parseRuntimeStat("art.gc.gc-count");
+        }
+
+        @Override public long gcTimeMillis() {
+            return parseRuntimeStat("art.gc.gc-time");
+        }
+
+        @Override public long currentThreadAllocatedBytes() {
+            // Per-thread allocation counting on Android requires enabling
+            // allocation tracking, which is too expensive to leave on.
+            return -1;
+        }
+
+        private static long parseRuntimeStat(String name) {
+            String value = Debug.getRuntimeStat(name);
+            return value != null ? Long.parseLong(value) : -1;
+        }
+    }
+}
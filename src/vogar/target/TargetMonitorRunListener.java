@@ -30,16 +30,34 @@ import vogar.target.junit.JUnitUtils;
 public class TargetMonitorRunListener extends RunListener {
 
     private final TargetMonitor monitor;
+    private final OutcomeTimer timer;
+    private final ResourceUsageSampler sampler;
     private Failure failure;
 
     public TargetMonitorRunListener(TargetMonitor monitor) {
+        this(monitor, new OutcomeTimer(), new ResourceUsageSampler());
+    }
+
+    /**
+     * @param timer the timer used to measure each test; shared with anything
+     *     that runs the tests on a different thread so that it can account
+     *     the CPU time used there.
+     * @param sampler the sampler of each test's resource usage; shared in the
+     *     same way as the timer.
+     */
+    public TargetMonitorRunListener(TargetMonitor monitor, OutcomeTimer timer,
+            ResourceUsageSampler sampler) {
         this.monitor = monitor;
+        this.timer = timer;
+        this.sampler = sampler;
     }
 
     @Override
     public void testStarted(Description description) throws Exception {
         failure = null;
         monitor.outcomeStarted(JUnitUtils.getTestName(description));
+        sampler.start();
+        timer.start();
     }
 
     @Override
@@ -49,14 +67,18 @@ public class TargetMonitorRunListener extends RunListener {
 
     @Override
     public void testFinished(Description description) throws Exception {
+        timer.stop();
+        sampler.stop();
         if (failure == null) {
-            monitor.outcomeFinished(Result.SUCCESS);
+            monitor.outcomeFinished(Result.SUCCESS, timer.getWallTimeNanos(),
+                    timer.getCpuTimeNanos(), sampler.getResourceUsage());
         } else {
             @SuppressWarnings("ThrowableResultOfMethodCallIgnored")
             Throwable thrown = failure.getException();
             prepareForDisplay(thrown);
             thrown.printStackTrace(System.out);
-            monitor.outcomeFinished(Result.EXEC_FAILED);
+            monitor.outcomeFinished(Result.EXEC_FAILED, timer.getWallTimeNanos(),
+                    timer.getCpuTimeNanos(), sampler.getResourceUsage());
         }
     }
 
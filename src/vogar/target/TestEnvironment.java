@@ -23,10 +23,15 @@ import java.net.Authenticator;
 import java.net.CookieHandler;
 import java.net.ResponseCache;
 import java.text.DateFormat;
+import java.util.Enumeration;
 import java.util.Locale;
 import java.util.HashMap;
+import java.util.Objects;
+import java.util.Properties;
 import java.util.TimeZone;
 import java.util.logging.ConsoleHandler;
+import java.util.logging.Handler;
+import java.util.logging.Level;
 import java.util.logging.LogManager;
 import java.util.logging.Logger;
 import java.util.prefs.BackingStoreException;
@@ -39,9 +44,31 @@ import vogar.util.IoUtils;
 /**
  * This class resets the VM to a relatively pristine state. Useful to defend
  * against tests that muck with system properties and other global state.
+ *
+ * <p>Resets run before every test, so most of them check whether the state
+ * they restore has changed since the last reset, and leave it alone if it
+ * hasn't. The checks are much cheaper than the resets, which on devices touch
+ * the disk.
  */
 public final class TestEnvironment {
 
+    /**
+     * Garbage is collected between tests once this fraction of the maximum
+     * heap is in use, so that a memory-hungry test doesn't leave its garbage
+     * to the next.
+     */
+    private static final double COLLECT_GARBAGE_HEAP_FRACTION = 0.5;
+
+    private static final String DEFAULT_TIME_ZONE = "America/Los_Angeles";
+
+    private final boolean collectGarbage;
+
+    /** The system properties as of the last reset, or null before the first reset. */
+    private Properties cleanProperties;
+    private Properties cleanPropertiesInstance;
+    private Handler cleanRootHandler;
+    private Level cleanRootLevel;
+
     private final HostnameVerifier defaultHostnameVerifier;
     private final SSLSocketFactory defaultSSLSocketFactory;
 
@@ -67,7 +94,14 @@ public final class TestEnvironment {
 
     private final String tmpDir;
 
-    public TestEnvironment() {
+    /**
+     * @param collectGarbage true to collect garbage and run finalizers between
+     *     every test, which forces CloseGuard warnings and the like out of the
+     *     test that caused them. Otherwise garbage is only collected when the
+     *     heap is filling up.
+     */
+    public TestEnvironment(boolean collectGarbage) {
+        this.collectGarbage = collectGarbage;
         this.tmpDir = System.getProperty("java.io.tmpdir");
         if (tmpDir == null || tmpDir.length() == 0) {
             throw new AssertionError("tmpDir is null or empty: " + tmpDir);
@@ -102,6 +136,71 @@ public final class TestEnvironment {
     }
 
     public void reset() {
+        if (cleanProperties == null
+                || System.getProperties() != cleanPropertiesInstance
+                || !cleanProperties.equals(System.getProperties())) {
+            resetProperties();
+        }
+
+        // Localization
+        if (!Locale.US.equals(Locale.getDefault())) {
+            Locale.setDefault(Locale.US);
+        }
+        if (!DEFAULT_TIME_ZONE.equals(TimeZone.getDefault().getID())) {
+            TimeZone.setDefault(TimeZone.getTimeZone(DEFAULT_TIME_ZONE));
+        }
+        if (hasDateFormatIs24Hour()
+                && !Objects.equals(getDateFormatIs24Hour(), defaultDateFormatIs24Hour)) {
+            setDateFormatIs24Hour(defaultDateFormatIs24Hour);
+        }
+
+        // Preferences
+        // Temporarily silence the java.util.prefs logger, which otherwise emits
+        // an unactionable warning. See RI bug 4751540.
+        Logger loggerToMute = Logger.getLogger("java.util.prefs");
+        boolean usedParentHandlers = loggerToMute.getUseParentHandlers();
+        loggerToMute.setUseParentHandlers(false);
+        try {
+            // resetPreferences(Preferences.systemRoot());
+            if (isPreferencesDirty(Preferences.userRoot())) {
+                resetPreferences(Preferences.userRoot());
+            }
+        } finally {
+            loggerToMute.setUseParentHandlers(usedParentHandlers);
+        }
+
+        // HttpURLConnection
+        Authenticator.setDefault(null);
+        if (CookieHandler.getDefault() != null) {
+            CookieHandler.setDefault(null);
+        }
+        if (ResponseCache.getDefault() != null) {
+            ResponseCache.setDefault(null);
+        }
+        if (HttpsURLConnection.getDefaultHostnameVerifier() != defaultHostnameVerifier) {
+            HttpsURLConnection.setDefaultHostnameVerifier(defaultHostnameVerifier);
+        }
+        if (HttpsURLConnection.getDefaultSSLSocketFactory() != defaultSSLSocketFactory) {
+            HttpsURLConnection.setDefaultSSLSocketFactory(defaultSSLSocketFactory);
+        }
+
+        // Logging
+        if (cleanRootHandler == null || isLoggingDirty()) {
+            LogManager.getLogManager().reset();
+            Logger rootLogger = Logger.getLogger("");
+            cleanRootHandler = new ConsoleHandler();
+            rootLogger.addHandler(cleanRootHandler);
+            cleanRootLevel = rootLogger.getLevel();
+        }
+
+        // Cleanup to force CloseGuard warnings etc
+        if (collectGarbage || isHeapFillingUp()) {
+            System.gc();
+            System.runFinalization();
+        }
+    }
+
+    private void resetProperties() {
         // Reset system properties.
         System.setProperties(null);
 
@@ -142,40 +241,55 @@ public final class TestEnvironment {
             System.setProperty("user.home", userHome);
         }
 
-        // Localization
-        Locale.setDefault(Locale.US);
-        TimeZone.setDefault(TimeZone.getTimeZone("America/Los_Angeles"));
-        if (hasDateFormatIs24Hour()) {
-            setDateFormatIs24Hour(defaultDateFormatIs24Hour);
-        }
+        cleanPropertiesInstance = System.getProperties();
+        cleanProperties = (Properties) cleanPropertiesInstance.clone();
+    }
 
-        // Preferences
-        // Temporarily silence the java.util.prefs logger, which otherwise emits
-        // an unactionable warning. See RI bug 4751540.
-        Logger loggerToMute = Logger.getLogger("java.util.prefs");
-        boolean usedParentHandlers = loggerToMute.getUseParentHandlers();
-        loggerToMute.setUseParentHandlers(false);
+    /**
+     * Returns true if {@code root} has any children or keys. Unlike a reset,
+     * this doesn't sync with the backing store.
+     */
+    private static boolean isPreferencesDirty(Preferences root) {
         try {
-            // resetPreferences(Preferences.systemRoot());
-            resetPreferences(Preferences.userRoot());
-        } finally {
-            loggerToMute.setUseParentHandlers(usedParentHandlers);
+            return root.childrenNames().length != 0 || root.keys().length != 0;
+        } catch (BackingStoreException e) {
+            // Preferences is probably not working. It's not really supported on Android.
+            return false;
         }
+    }
 
-        // HttpURLConnection
-        Authenticator.setDefault(null);
-        CookieHandler.setDefault(null);
-        ResponseCache.setDefault(null);
-        HttpsURLConnection.setDefaultHostnameVerifier(defaultHostnameVerifier);
-        HttpsURLConnection.setDefaultSSLSocketFactory(defaultSSLSocketFactory);
+    /**
+     * Returns true if any logger was configured since the last reset, which
+     * leaves only the root logger with a level or handlers.
+     */
+    private boolean isLoggingDirty() {
+        Logger rootLogger = Logger.getLogger("");
+        Handler[] rootHandlers = rootLogger.getHandlers();
+        if (rootHandlers.length != 1 || rootHandlers[0] != cleanRootHandler
+                || rootLogger.getLevel() != cleanRootLevel
+                || rootLogger.getFilter() != null) {
+            return true;
+        }
 
-        // Logging
-        LogManager.getLogManager().reset();
-        Logger.getLogger("").addHandler(new ConsoleHandler());
+        LogManager logManager = LogManager.getLogManager();
+        for (Enumeration<String> names = logManager.getLoggerNames();
+                names.hasMoreElements(); ) {
+            Logger logger = logManager.getLogger(names.nextElement());
+            if (logger != null && logger != rootLogger
+                    && (logger.getLevel() != null
+                            || logger.getHandlers().length != 0
+                            || !logger.getUseParentHandlers()
+                            || logger.getFilter() != null)) {
+                return true;
+            }
+        }
+        return false;
+    }
 
-        // Cleanup to force CloseGuard warnings etc
-        System.gc();
-        System.runFinalization();
+    private static boolean isHeapFillingUp() {
+        Runtime runtime = Runtime.getRuntime();
+        long used = runtime.totalMemory() - runtime.freeMemory();
+        return used > runtime.maxMemory() * COLLECT_GARBAGE_HEAP_FRACTION;
     }
 
     private static void resetPreferences(Preferences root) {
@@ -18,16 +18,23 @@ package vogar.target;
 
 import com.google.common.annotations.VisibleForTesting;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.PrintStream;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicReference;
 import javax.annotation.Nullable;
 import vogar.Result;
@@ -35,6 +42,7 @@ import vogar.RunnerType;
 import vogar.TestProperties;
 import vogar.monitor.TargetMonitor;
 import vogar.target.junit.JUnitRunnerFactory;
+import vogar.target.junit.TimeoutAndAbortRunRule;
 
 /**
  * Runs an action, in process on the target.
@@ -49,17 +57,48 @@ public final class TestRunner {
     /** use an atomic reference so the runner can null it out when it is encountered. */
     private final AtomicReference<String> skipPastReference;
     private final int timeoutSeconds;
+    private final boolean measureRetainedHeap;
+    private final boolean collectGarbageBetweenTests;
+    private final Map<String, Integer> testTimeoutSeconds;
+    /** True to run the classes of a package concurrently. */
+    private final boolean parallelClasses;
+    /** Classes that must not run concurrently with others, such as those changing globals. */
+    private final Set<String> serialClasses;
+    /** The file to journal progress in, or null for no journal. */
+    private final File journalFile;
+    /** True if this runner restarts an action whose previous runner died. */
+    private final boolean resume;
+    /** The first class of a package to run, or null to start at its first class. */
+    private final String classesFrom;
+    /** The class of a package to stop before, or null to run to its last class. */
+    private final String classesBefore;
+    /** How often to tell the host that this process is alive, or 0 to not. */
+    private final int heartbeatSeconds;
+    /** The monitor that output from the current thread belongs to, or null for the main one. */
+    private final InheritableThreadLocal<TargetMonitor> outputMonitor =
+            new InheritableThreadLocal<>();
 
     private final RunnerFactory runnerFactory;
     private final String[] args;
     private boolean useSocketMonitor;
 
     public TestRunner(Properties properties, List<String> argsList) {
-        qualifiedClassOrPackageName = properties.getProperty(TestProperties.TEST_CLASS_OR_PACKAGE);
+        String qualifiedClassOrPackageName =
+                properties.getProperty(TestProperties.TEST_CLASS_OR_PACKAGE);
         timeoutSeconds = Integer.parseInt(properties.getProperty(TestProperties.TIMEOUT));
 
         int monitorPort = Integer.parseInt(properties.getProperty(TestProperties.MONITOR_PORT));
         String skipPast = null;
+        boolean measureRetainedHeap = false;
+        boolean collectGarbageBetweenTests = false;
+        Map<String, Integer> testTimeoutSeconds = new HashMap<>();
+        boolean parallelClasses = false;
+        Set<String> serialClasses = new HashSet<>();
+        File journalFile = null;
+        boolean resume = false;
+        String classesFrom = null;
+        String classesBefore = null;
+        int heartbeatSeconds = 0;
 
         for (Iterator<String> i = argsList.iterator(); i.hasNext(); ) {
             String arg = i.next();
@@ -68,11 +107,64 @@ public final class TestRunner {
                 monitorPort = Integer.parseInt(i.next());
                 i.remove();
             }
+            if (arg.equals("--outcome")) {
+                // Run only the named class or test, like a.FooTest#testBar.
+                i.remove();
+                qualifiedClassOrPackageName = i.next();
+                i.remove();
+            }
             if (arg.equals("--skipPast")) {
                 i.remove();
                 skipPast = i.next();
                 i.remove();
             }
+            if (arg.equals("--measureRetainedHeap")) {
+                i.remove();
+                measureRetainedHeap = true;
+            }
+            if (arg.equals("--gcBetweenTests")) {
+                i.remove();
+                collectGarbageBetweenTests = true;
+            }
+            if (arg.equals("--testTimeouts")) {
+                // The value is a properties file of seconds by test name.
+                i.remove();
+                testTimeoutSeconds.putAll(loadTestTimeouts(new File(i.next())));
+                i.remove();
+            }
+            if (arg.equals("--parallelClasses")) {
+                i.remove();
+                parallelClasses = true;
+            }
+            if (arg.equals("--serialClass")) {
+                i.remove();
+                serialClasses.add(i.next());
+                i.remove();
+            }
+            if (arg.equals("--journal")) {
+                i.remove();
+                journalFile = new File(i.next());
+                i.remove();
+            }
+            if (arg.equals("--resume")) {
+                i.remove();
+                resume = true;
+            }
+            if (arg.equals("--classesFrom")) {
+                i.remove();
+                classesFrom = i.next();
+                i.remove();
+            }
+            if (arg.equals("--classesBefore")) {
+                i.remove();
+                classesBefore = i.next();
+                i.remove();
+            }
+            if (arg.equals("--heartbeatSeconds")) {
+                i.remove();
+                heartbeatSeconds = Integer.parseInt(i.next());
+                i.remove();
+            }
         }
 
         // Select the RunnerFactory instances to use based on the selected runner type.
@@ -90,11 +182,36 @@ public final class TestRunner {
         }
         runnerFactory = new CompositeRunnerFactory(runnerFactories);
 
+        this.qualifiedClassOrPackageName = qualifiedClassOrPackageName;
         this.monitorPort = monitorPort;
         this.skipPastReference = new AtomicReference<>(skipPast);
+        this.measureRetainedHeap = measureRetainedHeap;
+        this.collectGarbageBetweenTests = collectGarbageBetweenTests;
+        this.testTimeoutSeconds = testTimeoutSeconds;
+        this.parallelClasses = parallelClasses;
+        this.serialClasses = serialClasses;
+        this.journalFile = journalFile;
+        this.resume = resume;
+        this.classesFrom = classesFrom;
+        this.classesBefore = classesBefore;
+        this.heartbeatSeconds = heartbeatSeconds;
         this.args = argsList.toArray(new String[argsList.size()]);
     }
 
+    private static Map<String, Integer> loadTestTimeouts(File file) {
+        Properties properties = new Properties();
+        try (InputStream in = new FileInputStream(file)) {
+            properties.load(in);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to read test timeouts from " + file, e);
+        }
+        Map<String, Integer> result = new HashMap<>();
+        for (String testName : properties.stringPropertyNames()) {
+            result.put(testName, Integer.parseInt(properties.getProperty(testName)));
+        }
+        return result;
+    }
+
     /**
      * Load the properties that were either encapsulated in the APK (if using
      * {@link vogar.android.ActivityMode}), or encapsulated in the JAR compiled by Vogar (in other
@@ -139,29 +256,61 @@ public final class TestRunner {
     }
 
     public void run() throws IOException {
+        ResourceUsageSampler.setCollectGarbage(measureRetainedHeap);
+        TimeoutAndAbortRunRule.setTestTimeouts(testTimeoutSeconds);
+
         final TargetMonitor monitor = useSocketMonitor
                 ? TargetMonitor.await(monitorPort)
-                : TargetMonitor.forPrintStream(System.out);
+                : TargetMonitor.forOutputStream(System.out);
 
         PrintStream monitorPrintStream = new PrintStreamDecorator(System.out) {
             @Override public void print(String str) {
-                monitor.output(str != null ? str : "null");
+                TargetMonitor threadMonitor = outputMonitor.get();
+                (threadMonitor != null ? threadMonitor : monitor)
+                        .output(str != null ? str : "null");
             }
         };
         System.setOut(monitorPrintStream);
         System.setErr(monitorPrintStream);
 
+        ProgressJournal journal = null;
+        if (journalFile != null) {
+            try {
+                journal = ProgressJournal.open(journalFile, resume);
+                monitor.setOutcomeListener(journal);
+            } catch (IOException e) {
+                // run without a journal; restarts just take longer
+            }
+        }
+
+        Heartbeat heartbeat = null;
+        if (heartbeatSeconds > 0) {
+            heartbeat = new Heartbeat(monitor, heartbeatSeconds);
+            heartbeat.start();
+        }
+
         try {
-            run(monitor);
+            run(monitor, journal);
         } catch (Throwable internalError) {
             internalError.printStackTrace(monitorPrintStream);
+            // Get the error out before anything else can go wrong.
+            monitor.flush();
         } finally {
+            if (heartbeat != null) {
+                heartbeat.stop();
+            }
             monitor.close();
+            if (journal != null) {
+                journal.close();
+            }
         }
     }
 
-    private void run(final TargetMonitor monitor) {
-        TestEnvironment testEnvironment = new TestEnvironment();
+    /**
+     * @param journal the journal to record progress in, or null for none.
+     */
+    private void run(final TargetMonitor monitor, ProgressJournal journal) {
+        TestEnvironment testEnvironment = new TestEnvironment(collectGarbageBetweenTests);
         testEnvironment.reset();
 
         String classOrPackageName;
@@ -179,50 +328,213 @@ public final class TestRunner {
             qualification = null;
         }
 
-        Set<Class<?>> classes = new ClassFinder().find(classOrPackageName);
+        Set<String> classNames = new ClassFinder().find(classOrPackageName);
 
         // if there is more than one class in the set, this must be a package. Since we're
         // running everything in the package already, remove any class called AllTests.
-        if (classes.size() > 1) {
-            Set<Class<?>> toRemove = new HashSet<>();
-            for (Class<?> klass : classes) {
-                if (klass.getName().endsWith(".AllTests")) {
-                    toRemove.add(klass);
+        if (classNames.size() > 1) {
+            Set<String> toRemove = new HashSet<>();
+            for (String className : classNames) {
+                if (className.endsWith(".AllTests")) {
+                    toRemove.add(className);
                 }
             }
-            classes.removeAll(toRemove);
+            classNames.removeAll(toRemove);
         }
 
-
-        for (Class<?> klass : classes) {
-            TargetRunner targetRunner;
-            try {
-                targetRunner = runnerFactory.newRunner(monitor, qualification, klass,
-                        skipPastReference, testEnvironment, timeoutSeconds, args);
-            } catch (RuntimeException e) {
-                monitor.outcomeStarted(klass.getName());
-                e.printStackTrace();
-                monitor.outcomeFinished(Result.ERROR);
-                return;
+        // When the action is sharded, run only this shard's range of classes.
+        List<String> classNameList = new ArrayList<>();
+        for (String className : classNames) {
+            if ((classesFrom == null || className.compareTo(classesFrom) >= 0)
+                    && (classesBefore == null || className.compareTo(classesBefore) < 0)) {
+                classNameList.add(className);
             }
-
-            if (targetRunner == null) {
-                monitor.outcomeStarted(klass.getName());
-                System.out.println("Skipping " + klass.getName()
-                        + ": no associated runner class");
-                monitor.outcomeFinished(Result.UNSUPPORTED);
-                continue;
+        }
+        int first = 0;
+        String resumeClassName = journal != null ? journal.getLastClassName() : null;
+        if (resumeClassName != null && classNameList.contains(resumeClassName)) {
+            first = resumeFrom(monitor, journal, classNameList);
+        } else if (parallelClasses && classNameList.size() > 1
+                && skipPastReference.get() == null) {
+            // Parallel classes aren't journaled, as they don't start one after another.
+            if (runInParallel(monitor, classNameList, qualification, testEnvironment)) {
+                monitor.completedNormally(true);
             }
+            return;
+        }
 
-            boolean completedNormally = targetRunner.run();
-            if (!completedNormally) {
+        for (int i = first; i < classNameList.size(); i++) {
+            String className = classNameList.get(i);
+            if (journal != null) {
+                journal.classStarted(className);
+            }
+            if (!runClass(monitor, className, qualification, testEnvironment)) {
                 return; // let the caller start another process
             }
+            if (className.equals(resumeClassName)) {
+                // Whatever the previous runner started last was in this class.
+                skipPastReference.set(null);
+            }
         }
 
         monitor.completedNormally(true);
     }
 
+    /**
+     * Resumes from the class that the previous runner started last, skipping
+     * the classes before it without loading them. That class is skipped too
+     * if it can't be resumed part way: if the VM died loading or initializing
+     * it, before any of its outcomes started, it is reported as an error and
+     * quarantined, so that it can't kill the VM again.
+     *
+     * @return the index in {@code classNames} of the first class to run.
+     */
+    private int resumeFrom(TargetMonitor monitor, ProgressJournal journal,
+            List<String> classNames) {
+        String className = journal.getLastClassName();
+        String outcomeName = journal.getLastOutcomeName();
+        int index = classNames.indexOf(className);
+        if (outcomeName == null) {
+            monitor.outcomeStarted(className);
+            System.out.println("Quarantined " + className + ": the VM died or timed out"
+                    + " while loading or initializing it, before any of its tests started");
+            monitor.outcomeFinished(Result.ERROR);
+        } else if (outcomeName.equals(className)
+                || outcomeName.equals(className + "#main")) {
+            // The class's single outcome started; only a JUnit class can be resumed part way.
+        } else {
+            return index;
+        }
+        skipPastReference.set(null);
+        return index + 1;
+    }
+
+    /**
+     * Loads the class {@code className} and runs its tests, reporting them to
+     * {@code monitor}. A class that can't be loaded is reported as an error.
+     *
+     * @param testEnvironment the environment to reset between tests, or null
+     *     to leave it alone.
+     * @return false if the process should be abandoned.
+     */
+    private boolean runClass(TargetMonitor monitor, String className, String qualification,
+            TestEnvironment testEnvironment) {
+        Class<?> klass;
+        try {
+            klass = Class.forName(className, false, TestRunner.class.getClassLoader());
+        } catch (ClassNotFoundException | LinkageError e) {
+            monitor.outcomeStarted(className);
+            e.printStackTrace();
+            monitor.outcomeFinished(Result.ERROR);
+            return true;
+        }
+
+        TargetRunner targetRunner;
+        try {
+            targetRunner = runnerFactory.newRunner(monitor, qualification, klass,
+                    skipPastReference, testEnvironment, timeoutSeconds, args);
+        } catch (RuntimeException e) {
+            monitor.outcomeStarted(klass.getName());
+            e.printStackTrace();
+            monitor.outcomeFinished(Result.ERROR);
+            return false;
+        }
+
+        if (targetRunner == null) {
+            monitor.outcomeStarted(klass.getName());
+            System.out.println("Skipping " + klass.getName()
+                    + ": no associated runner class");
+            monitor.outcomeFinished(Result.UNSUPPORTED);
+            return true;
+        }
+
+        return targetRunner.run();
+    }
+
+    /**
+     * Runs the classes {@code classNames} concurrently on a fork/join pool, except for the
+     * serial classes, each of which runs alone once the classes before it are
+     * done. The environment is reset before each serial class and each run of
+     * concurrent classes, but not between their tests.
+     *
+     * <p>Each class reports to a channel of its own, and the channels are
+     * written to {@code monitor} in class order, so the host sees the same
+     * events as if the classes had run one after another.
+     *
+     * @return false if the process should be abandoned.
+     */
+    private boolean runInParallel(TargetMonitor monitor, List<String> classNames,
+            String qualification, TestEnvironment testEnvironment) {
+        OrderedMonitorChannels channels = new OrderedMonitorChannels(monitor, classNames.size());
+        ForkJoinPool pool = new ForkJoinPool();
+        List<Future<Boolean>> results = new ArrayList<>();
+        try {
+            int firstUnfinished = 0;
+            for (int i = 0; i <= classNames.size(); i++) {
+                boolean serial = i == classNames.size()
+                        || serialClasses.contains(classNames.get(i));
+                if (!serial) {
+                    if (i == firstUnfinished) {
+                        testEnvironment.reset();
+                    }
+                    results.add(pool.submit(
+                            newClassTask(channels, i, classNames.get(i), qualification)));
+                    continue;
+                }
+
+                for (int j = firstUnfinished; j < i; j++) {
+                    if (!results.get(j).get()) {
+                        return false;
+                    }
+                }
+                if (i == classNames.size()) {
+                    return true;
+                }
+
+                results.add(null);
+                testEnvironment.reset();
+                outputMonitor.set(channels.get(i));
+                boolean completedNormally = false;
+                try {
+                    completedNormally = runClass(
+                            channels.get(i), classNames.get(i), qualification, testEnvironment);
+                } finally {
+                    outputMonitor.remove();
+                    channels.finish(i, completedNormally);
+                }
+                if (!completedNormally) {
+                    return false;
+                }
+                firstUnfinished = i + 1;
+            }
+            throw new AssertionError();
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private Callable<Boolean> newClassTask(final OrderedMonitorChannels channels,
+            final int index, final String className, final String qualification) {
+        return new Callable<Boolean>() {
+            @Override public Boolean call() {
+                outputMonitor.set(channels.get(index));
+                boolean completedNormally = false;
+                try {
+                    completedNormally = runClass(channels.get(index), className, qualification,
+                            null);
+                    return completedNormally;
+                } finally {
+                    outputMonitor.remove();
+                    channels.finish(index, completedNormally);
+                }
+            }
+        };
+    }
+
     public static void main(String[] args) throws IOException {
         new TestRunner(loadProperties(), new ArrayList<>(Arrays.asList(args))).run();
         System.exit(0);
@@ -0,0 +1,179 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package vogar.target;
+
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Interrupts threads that overrun their deadlines. A single daemon thread
+ * watches all deadlines, so the watched work runs on its own thread and
+ * watching it costs no more than a queue insertion.
+ *
+ * <p>A thread that ignores the interrupt can be given a grace period, after
+ * which the watchdog hands its stack to an {@link UnresponsiveHandler}.
+ */
+public final class Watchdog {
+
+    private static final Watchdog INSTANCE = new Watchdog();
+
+    private final PriorityQueue<Deadline> deadlines = new PriorityQueue<>();
+    private Thread thread;
+
+    public static Watchdog getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Told of a watched thread that is still running its grace period after
+     * it was interrupted.
+     */
+    public interface UnresponsiveHandler {
+        /**
+         * @param stackTrace the thread's stack when its deadline expired.
+         */
+        void unresponsive(Thread thread, StackTraceElement[] stackTrace);
+    }
+
+    /**
+     * Starts watching the calling thread. If the returned deadline isn't
+     * cancelled within {@code timeoutNanos}, the thread's stack is captured
+     * and the thread is interrupted.
+     */
+    public Deadline watch(long timeoutNanos) {
+        return watch(timeoutNanos, 0, null);
+    }
+
+    /**
+     * Like {@link #watch(long)}, but if the deadline still isn't cancelled
+     * {@code graceNanos} after the thread was interrupted, {@code handler}
+     * is told on the watchdog's thread.
+     *
+     * @param handler the handler of an unresponsive thread, or null for none.
+     */
+    public Deadline watch(long timeoutNanos, long graceNanos, UnresponsiveHandler handler) {
+        Deadline deadline = new Deadline(Thread.currentThread(),
+                System.nanoTime() + timeoutNanos, graceNanos, handler);
+        synchronized (this) {
+            if (thread == null) {
+                thread = new Thread(new Runnable() {
+                    @Override public void run() {
+                        watchLoop();
+                    }
+                }, "Watchdog");
+                thread.setDaemon(true);
+                thread.start();
+            }
+            deadlines.add(deadline);
+            if (deadlines.peek() == deadline) {
+                notifyAll();
+            }
+        }
+        return deadline;
+    }
+
+    private void watchLoop() {
+        while (true) {
+            Deadline unresponsive;
+            synchronized (this) {
+                unresponsive = awaitUnresponsive();
+            }
+            // Tell the handler without the lock, as it may take a while or end the process.
+            unresponsive.handler.unresponsive(unresponsive.thread, unresponsive.stackTrace);
+        }
+    }
+
+    /**
+     * Expires deadlines as they come due, until one that has a handler is
+     * still running at the end of its grace period, and returns that one.
+     */
+    private Deadline awaitUnresponsive() {
+        while (true) {
+            Deadline first = deadlines.peek();
+            try {
+                if (first == null) {
+                    wait();
+                    continue;
+                }
+                long remainingNanos = first.nanoTime - System.nanoTime();
+                if (remainingNanos > 0) {
+                    TimeUnit.NANOSECONDS.timedWait(this, remainingNanos);
+                    continue;
+                }
+            } catch (InterruptedException ignored) {
+                continue;
+            }
+
+            deadlines.poll();
+            if (first.stackTrace != null) {
+                return first;
+            }
+            // Expire while holding the lock, so that a cancelled deadline never interrupts.
+            first.stackTrace = first.thread.getStackTrace();
+            first.thread.interrupt();
+            if (first.handler != null) {
+                first.nanoTime += first.graceNanos;
+                deadlines.add(first);
+            }
+        }
+    }
+
+    public final class Deadline implements Comparable<Deadline> {
+        private final Thread thread;
+        /** When the deadline expires, and after that when its grace period ends. */
+        private long nanoTime;
+        private final long graceNanos;
+        private final UnresponsiveHandler handler;
+        private volatile StackTraceElement[] stackTrace;
+
+        private Deadline(Thread thread, long nanoTime, long graceNanos,
+                UnresponsiveHandler handler) {
+            this.thread = thread;
+            this.nanoTime = nanoTime;
+            this.graceNanos = graceNanos;
+            this.handler = handler;
+        }
+
+        /**
+         * Stops watching this deadline. Once this returns, the watched thread
+         * won't be interrupted on its account, nor reported as unresponsive
+         * unless its grace period had already run out.
+         */
+        public void cancel() {
+            synchronized (Watchdog.this) {
+                deadlines.remove(this);
+            }
+        }
+
+        public boolean hasExpired() {
+            return stackTrace != null;
+        }
+
+        /**
+         * Returns the stack of the watched thread when the deadline expired, or
+         * null if it hasn't expired.
+         */
+        public StackTraceElement[] getStackTrace() {
+            return stackTrace;
+        }
+
+        @Override public int compareTo(Deadline other) {
+            long difference = nanoTime - other.nanoTime;
+            return difference < 0 ? -1 : (difference > 0 ? 1 : 0);
+        }
+    }
+}
@@ -54,7 +54,7 @@ public abstract class ApplyGlobalRulesBlockJUnit4ClassRunner extends BlockJUnit4
     protected Statement methodBlock(FrameworkMethod method) {
         // Override to apply any global TestRules.
         Statement statement = super.methodBlock(method);
-        statement = testRule.apply(statement, getDescription());
+        statement = testRule.apply(statement, describeChild(method));
         return statement;
     }
 }
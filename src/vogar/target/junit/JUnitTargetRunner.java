@@ -23,6 +23,8 @@ import org.junit.runner.manipulation.NoTestsRemainException;
 import org.junit.runner.manipulation.Sorter;
 import org.junit.runners.model.RunnerBuilder;
 import vogar.monitor.TargetMonitor;
+import vogar.target.OutcomeTimer;
+import vogar.target.ResourceUsageSampler;
 import vogar.target.SkipPastFilter;
 import vogar.target.TargetMonitorRunListener;
 import vogar.target.TargetRunner;
@@ -43,6 +45,8 @@ public final class JUnitTargetRunner implements TargetRunner {
     private final TestEnvironment testEnvironment;
     private final Class<?> testClass;
     private final RunnerParams runnerParams;
+    private final OutcomeTimer timer = new OutcomeTimer();
+    private final ResourceUsageSampler sampler = new ResourceUsageSampler();
 
     public JUnitTargetRunner(TargetMonitor monitor, AtomicReference<String> skipPastReference,
                              TestEnvironment testEnvironment,
@@ -53,7 +57,7 @@ public final class JUnitTargetRunner implements TargetRunner {
         this.testEnvironment = testEnvironment;
         this.testClass = testClass;
 
-        TimeoutAndAbortRunRule timeoutRule = new TimeoutAndAbortRunRule(timeoutSeconds);
+        TimeoutAndAbortRunRule timeoutRule = new TimeoutAndAbortRunRule(timeoutSeconds, monitor);
         runnerParams = new RunnerParams(qualification, args, timeoutRule);
     }
 
@@ -81,10 +85,12 @@ public final class JUnitTargetRunner implements TargetRunner {
         try {
             JUnitCore core = new JUnitCore();
             // The TestEnvironmentRunListener resets static state between tests.
-            core.addListener(new TestEnvironmentRunListener(testEnvironment));
+            if (testEnvironment != null) {
+                core.addListener(new TestEnvironmentRunListener(testEnvironment));
+            }
             // The TargetMonitorRunListener sends the result of the tests back to the main Vogar
             // process.
-            core.addListener(new TargetMonitorRunListener(monitor));
+            core.addListener(new TargetMonitorRunListener(monitor, timer, sampler));
             core.run(runner);
         } catch (VmIsUnstableException e) {
             // If a test reports that the VM is unstable then inform the caller so that the
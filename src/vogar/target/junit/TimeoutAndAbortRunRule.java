@@ -16,79 +16,113 @@
 
 package vogar.target.junit;
 
-import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.Collections;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
-import java.util.concurrent.atomic.AtomicReference;
 import org.junit.rules.TestRule;
 import org.junit.runner.Description;
 import org.junit.runners.model.Statement;
-import vogar.util.Threads;
+import vogar.Result;
+import vogar.monitor.TargetMonitor;
+import vogar.target.Watchdog;
 
 /**
  * Times a test out and then aborts the test run.
+ *
+ * <p>Tests run on the calling thread, watched by the shared {@link Watchdog}.
+ * A test that is still running {@link #GRACE_PERIOD_SECONDS} after it was
+ * interrupted is reported with the stack it timed out in, and the process is
+ * ended, as there's no other way to stop it.
  */
 public class TimeoutAndAbortRunRule implements TestRule {
 
-    private final ExecutorService executor = Executors.newCachedThreadPool(
-            Threads.daemonThreadFactory(getClass().getName()));
+    static final int GRACE_PERIOD_SECONDS = 10;
+
+    /** Timeouts that override the default for specific tests, by test name. */
+    private static volatile Map<String, Integer> testTimeoutSeconds = Collections.emptyMap();
 
     private final int timeoutSeconds;
+    private final Watchdog.UnresponsiveHandler unresponsiveHandler;
 
     /**
      * @param timeoutSeconds the timeout in seconds, if 0 then never times out.
+     * @param monitor the monitor to report a test that ignores its timeout to.
      */
-    public TimeoutAndAbortRunRule(int timeoutSeconds) {
+    public TimeoutAndAbortRunRule(int timeoutSeconds, final TargetMonitor monitor) {
         this.timeoutSeconds = timeoutSeconds;
+        this.unresponsiveHandler = new Watchdog.UnresponsiveHandler() {
+            @Override public void unresponsive(Thread thread, StackTraceElement[] stackTrace) {
+                reportUnresponsive(monitor, stackTrace);
+                System.exit(1);
+            }
+        };
+    }
+
+    /**
+     * Configures the timeouts of specific tests in this process, such as those
+     * tagged as large in the expectations.
+     *
+     * @param testTimeoutSeconds timeouts in seconds, by test name in
+     *     {@code <class>#<method>} format.
+     */
+    public static void setTestTimeouts(Map<String, Integer> testTimeoutSeconds) {
+        TimeoutAndAbortRunRule.testTimeoutSeconds = testTimeoutSeconds;
     }
 
     @Override
     public Statement apply(final Statement base, Description description) {
+        final int timeoutSeconds = getTimeoutSeconds(description);
         return new Statement() {
             @Override
             public void evaluate() throws Throwable {
-                runWithTimeout(base);
+                runWithTimeout(base, timeoutSeconds, unresponsiveHandler);
             }
         };
     }
 
+    private int getTimeoutSeconds(Description description) {
+        if (timeoutSeconds == 0) {
+            return 0;
+        }
+        Integer override = testTimeoutSeconds.get(JUnitUtils.getTestName(description));
+        return override != null ? override : timeoutSeconds;
+    }
+
     /**
-     * Runs the test on another thread. If the test completes before the
+     * Runs the test on the calling thread. If the test completes before the
      * timeout, this reports the result normally. But if the test times out,
-     * this reports the timeout stack trace and begins the process of killing
-     * this no-longer-trustworthy process.
+     * it is interrupted, and this reports the timeout stack trace and begins
+     * the process of killing this no-longer-trustworthy process.
      */
-    private void runWithTimeout(final Statement base) throws Throwable {
-        // Start the test on a background thread.
-        final AtomicReference<Thread> executingThreadReference = new AtomicReference<>();
-        Future<Throwable> result = executor.submit(new Callable<Throwable>() {
-            public Throwable call() throws Exception {
-                executingThreadReference.set(Thread.currentThread());
-                try {
-                    base.evaluate();
-                    return null;
-                } catch (Throwable throwable) {
-                    return throwable;
-                }
-            }
-        });
+    private static void runWithTimeout(Statement base, int timeoutSeconds,
+            Watchdog.UnresponsiveHandler unresponsiveHandler) throws Throwable {
+        if (timeoutSeconds == 0) {
+            base.evaluate();
+            return;
+        }
 
-        // Wait until either the result arrives or the test times out.
-        Throwable thrown;
+        Watchdog.Deadline deadline = Watchdog.getInstance().watch(
+                TimeUnit.SECONDS.toNanos(timeoutSeconds),
+                TimeUnit.SECONDS.toNanos(GRACE_PERIOD_SECONDS), unresponsiveHandler);
+        Throwable thrown = null;
         try {
-            thrown = getThrowable(result);
-        } catch (TimeoutException e) {
-            Thread executingThread = executingThreadReference.get();
-            if (executingThread != null) {
-                executingThread.interrupt();
-                e.setStackTrace(executingThread.getStackTrace());
-            }
+            base.evaluate();
+        } catch (Throwable throwable) {
+            thrown = throwable;
+        } finally {
+            deadline.cancel();
+        }
+
+        if (deadline.hasExpired()) {
+            // Don't let the interrupt leak into whatever runs next on this thread.
+            Thread.interrupted();
+            TimeoutException e = new TimeoutException();
+            e.setStackTrace(deadline.getStackTrace());
             // Wrap it in an exception that will cause the current run to be aborted.
-            thrown = new VmIsUnstableException(e);
+            throw new VmIsUnstableException(e);
         }
 
         if (thrown != null) {
@@ -96,14 +130,18 @@ public class TimeoutAndAbortRunRule implements TestRule {
         }
     }
 
-    @SuppressWarnings("ThrowableResultOfMethodCallIgnored")
-    private Throwable getThrowable(Future<Throwable> result)
-            throws InterruptedException, ExecutionException, TimeoutException {
-        Throwable thrown;
-        thrown = timeoutSeconds == 0
-                ? result.get()
-                : result.get(timeoutSeconds, TimeUnit.SECONDS);
-        return thrown;
+    /**
+     * Reports the running test as timed out in {@code stackTrace}, as it
+     * would have been had it stopped when interrupted.
+     */
+    static void reportUnresponsive(TargetMonitor monitor, StackTraceElement[] stackTrace) {
+        TimeoutException e = new TimeoutException("Still running " + GRACE_PERIOD_SECONDS
+                + "s after it was interrupted");
+        e.setStackTrace(stackTrace);
+        StringWriter stackTraceWriter = new StringWriter();
+        e.printStackTrace(new PrintWriter(stackTraceWriter));
+        monitor.output(stackTraceWriter.toString());
+        monitor.outcomeFinished(Result.EXEC_FAILED);
+        monitor.flush();
     }
 }
-
@@ -17,18 +17,40 @@
 package vogar.tasks;
 
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.Properties;
 import vogar.Action;
 import vogar.Result;
 import vogar.Target;
 
 public final class PrepareUserDirTask extends Task {
+    /**
+     * The file in the action's user dir that holds the timeouts of outcomes
+     * that override the action's timeout, in seconds by outcome name.
+     */
+    public static final String TIMEOUTS_FILE = "vogar-timeouts.properties";
+
     private final Target target;
     private final Action action;
+    private final Map<String, Integer> outcomeTimeoutSeconds;
+    private final File localTimeoutsFile;
 
-    public PrepareUserDirTask(Target target, Action action) {
+    /**
+     * @param outcomeTimeoutSeconds the timeouts to write to the action's
+     *     timeouts file, or empty for no timeouts file.
+     * @param localTimeoutsFile where to write the timeouts file on the host
+     *     before pushing it to the target.
+     */
+    public PrepareUserDirTask(Target target, Action action,
+            Map<String, Integer> outcomeTimeoutSeconds, File localTimeoutsFile) {
         super("prepare " + action.getUserDir());
         this.target = target;
         this.action = action;
+        this.outcomeTimeoutSeconds = outcomeTimeoutSeconds;
+        this.localTimeoutsFile = localTimeoutsFile;
     }
 
     @Override protected Result execute() throws Exception {
@@ -38,6 +60,21 @@ public final class PrepareUserDirTask extends Task {
         if (resourcesDirectory != null) {
             target.push(resourcesDirectory, userDir);
         }
+        if (!outcomeTimeoutSeconds.isEmpty()) {
+            writeTimeoutsFile();
+            target.push(localTimeoutsFile, new File(userDir, TIMEOUTS_FILE));
+        }
         return Result.SUCCESS;
     }
+
+    private void writeTimeoutsFile() throws IOException {
+        Properties properties = new Properties();
+        for (Map.Entry<String, Integer> entry : outcomeTimeoutSeconds.entrySet()) {
+            properties.setProperty(entry.getKey(), Integer.toString(entry.getValue()));
+        }
+        localTimeoutsFile.getParentFile().mkdirs();
+        try (OutputStream out = new FileOutputStream(localTimeoutsFile)) {
+            properties.store(out, "timeouts in seconds by outcome name");
+        }
+    }
 }
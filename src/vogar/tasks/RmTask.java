@@ -30,6 +30,10 @@ public final class RmTask extends Task {
         this.file = file;
     }
 
+    @Override public boolean isCleanup() {
+        return true;
+    }
+
     @Override protected Result execute() throws Exception {
         rm.file(file);
         return Result.SUCCESS;
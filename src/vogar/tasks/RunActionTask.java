@@ -18,15 +18,20 @@ package vogar.tasks;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
 import vogar.Action;
+import vogar.ActionShard;
 import vogar.Classpath;
 import vogar.Outcome;
 import vogar.Result;
 import vogar.Run;
 import vogar.RunnerType;
 import vogar.commands.Command;
+import vogar.commands.CommandFailedException;
 import vogar.commands.VmCommandBuilder;
 import vogar.monitor.HostMonitor;
+import vogar.target.ProgressJournal;
 import vogar.target.TestRunner;
 
 /**
@@ -44,23 +49,70 @@ public class RunActionTask extends Task implements HostMonitor.Handler {
         }
     };
 
+    /** The file in the action's user dir in which the target journals its progress. */
+    private static final String JOURNAL_FILE = "vogar-journal";
+
     protected final Run run;
     private final int timeoutSeconds;
+    /** How long the target may go without CPU progress or output, or 0 for no limit. */
+    private final int stallTimeoutSeconds;
+    /** Timeouts of outcomes that override the action's timeout, by outcome name. */
+    private final Map<String, Integer> outcomeTimeoutSeconds;
     private final Action action;
     private final String actionName;
-    private Command currentCommand;
+    /** The part of the action to run, or null to run all of it. */
+    private final ActionShard shard;
+    /** The only outcome to run, or null to run the action's outcomes. */
+    private final String onlyOutcome;
+    /** The running command, or null. Read by cancel() and finish() on other threads. */
+    private volatile Command currentCommand;
+    /** True if the next command restarts the action after its VM died. */
+    private boolean resume;
     private String lastStartedOutcome;
     private String lastFinishedOutcome;
+    /** Aborts the current command if it stalls. */
+    private final StallDetector stallDetector;
+    /** True once the run has been cancelled, after which no command is started. */
+    private volatile boolean cancelled;
 
     public RunActionTask(Run run, Action action, boolean useLargeTimeout) {
-        super("run " + action.getName());
+        this(run, action, useLargeTimeout, null);
+    }
+
+    public RunActionTask(Run run, Action action, boolean useLargeTimeout, ActionShard shard) {
+        this("run " + action.getName() + (shard != null ? " (" + shard + ")" : ""),
+                run, action, useLargeTimeout, shard, null);
+    }
+
+    /**
+     * Returns a task that runs only the named outcome of {@code action}, in
+     * the action's jar and user dir.
+     */
+    public static RunActionTask rerun(Run run, Action action, boolean useLargeTimeout,
+            String outcomeName) {
+        // An outcome named for its action is all of the action.
+        return new RunActionTask("rerun " + outcomeName, run, action, useLargeTimeout, null,
+                outcomeName.equals(action.getName()) ? null : outcomeName);
+    }
+
+    private RunActionTask(String name, Run run, Action action, boolean useLargeTimeout,
+            ActionShard shard, String onlyOutcome) {
+        super(name);
         this.run = run;
         this.action = action;
         this.actionName = action.getName();
+        this.shard = shard;
+        this.onlyOutcome = onlyOutcome;
 
         this.timeoutSeconds = useLargeTimeout
                 ? run.largeTimeoutSeconds
                 : run.smallTimeoutSeconds;
+        // Caliper measures in child processes, leaving the runner idle while it works.
+        this.stallTimeoutSeconds = run.runnerType.supportsCaliper()
+                ? 0
+                : run.stallTimeoutSeconds;
+        this.stallDetector = new StallDetector(stallTimeoutSeconds);
+        this.outcomeTimeoutSeconds = run.driver.getOutcomeTimeouts(action, timeoutSeconds);
     }
 
     @Override public boolean isAction() {
@@ -68,26 +120,37 @@ public class RunActionTask extends Task implements HostMonitor.Handler {
     }
 
     @Override protected Result execute() throws Exception {
+        try {
+            return runAction();
+        } finally {
+            run.driver.actionFinished(actionName);
+        }
+    }
+
+    private Result runAction() throws Exception {
         run.console.action(actionName);
 
+        String skipPast = null;
+        boolean restartedWithoutOutcomes = false;
         while (true) {
-            /*
-             * If the target process failed midway through a set of
-             * outcomes, that's okay. We pickup right after the first
-             * outcome that wasn't completed.
-             */
-            String skipPast = lastStartedOutcome;
-            lastStartedOutcome = null;
-
+            if (cancelled) {
+                return Result.UNSUPPORTED;
+            }
             currentCommand = createActionCommand(action, skipPast, monitorPort(-1));
+            stallDetector.reset(System.nanoTime());
             try {
                 currentCommand.start();
+                if (cancelled) {
+                    // cancel() may have missed the command while it was starting
+                    return Result.UNSUPPORTED;
+                }
 
                 if (timeoutSeconds != 0) {
                     currentCommand.scheduleTimeout(timeoutSeconds);
                 }
 
-                HostMonitor hostMonitor = new HostMonitor(run.console, this);
+                HostMonitor hostMonitor = new HostMonitor(run.console, this,
+                        run.outputHeadChars, run.outputTailChars, run.outputSpillDir);
                 boolean completedNormally = useSocketMonitor()
                         ? hostMonitor.attach(monitorPort(run.firstMonitorPort))
                         : hostMonitor.followStream(currentCommand.getInputStream());
@@ -95,15 +158,39 @@ public class RunActionTask extends Task implements HostMonitor.Handler {
                 if (completedNormally) {
                     return Result.SUCCESS;
                 }
+                if (cancelled) {
+                    return cancelledResult();
+                }
 
                 String earlyResultOutcome;
                 boolean giveUp;
 
-                if (lastStartedOutcome == null || lastStartedOutcome.equals(actionName)) {
+                /*
+                 * If the target process failed midway through a set of
+                 * outcomes, that's okay. We pickup right after the first
+                 * outcome that wasn't completed. The target's journal tells
+                 * the restarted runner where that is.
+                 */
+                resume = true;
+                if (lastStartedOutcome == null && !restartedWithoutOutcomes
+                        && journalRecordsStartedClass()) {
+                    // The VM died before starting any outcome, perhaps while loading a class.
+                    // Restart once: from the journal, the runner can tell which class and
+                    // quarantine it.
+                    run.console.verbose("action " + action + " did not complete normally "
+                            + "before starting an outcome; restarting");
+                    restartedWithoutOutcomes = true;
+                    continue;
+                }
+                restartedWithoutOutcomes = false;
+                skipPast = lastStartedOutcome;
+                lastStartedOutcome = null;
+
+                if (skipPast == null || skipPast.equals(actionName)) {
                     earlyResultOutcome = actionName;
                     giveUp = true;
-                } else if (!lastStartedOutcome.equals(lastFinishedOutcome)) {
-                    earlyResultOutcome = lastStartedOutcome;
+                } else if (!skipPast.equals(lastFinishedOutcome)) {
+                    earlyResultOutcome = skipPast;
                     giveUp = false;
                 } else {
                     continue;
@@ -112,14 +199,20 @@ public class RunActionTask extends Task implements HostMonitor.Handler {
                 run.driver.addEarlyResult(new Outcome(earlyResultOutcome, Result.ERROR,
                         "Action " + action + " did not complete normally.\n"
                                 + "timedOut=" + currentCommand.timedOut() + "\n"
-                                + "lastStartedOutcome=" + lastStartedOutcome + "\n"
+                                + "lastStartedOutcome=" + skipPast + "\n"
                                 + "lastFinishedOutcome=" + lastFinishedOutcome + "\n"
-                                + "command=" + currentCommand));
+                                + "command=" + currentCommand
+                                + (stallDetector.hasStalled()
+                                        ? "\n" + stallDetector.getReport()
+                                        : "")));
 
                 if (giveUp) {
                     return Result.ERROR;
                 }
             } catch (IOException e) {
+                if (cancelled) {
+                    return cancelledResult();
+                }
                 // if the monitor breaks, assume the worst and don't retry
                 run.driver.addEarlyResult(new Outcome(actionName, Result.ERROR, e));
                 return Result.ERROR;
@@ -130,6 +223,61 @@ public class RunActionTask extends Task implements HostMonitor.Handler {
         }
     }
 
+    /**
+     * Destroys the running command, so that the action stops without being
+     * restarted.
+     */
+    @Override protected void cancel() {
+        cancelled = true;
+        Command command = currentCommand;
+        if (command != null) {
+            try {
+                command.destroy();
+            } catch (IllegalStateException notStartedYet) {
+                // runAction() checks for cancellation once it has started
+            }
+        }
+    }
+
+    /**
+     * Returns the file on the target in which the runner journals its progress.
+     */
+    private File journalFile() {
+        // Shards of an action share its user dir, but each needs a journal of its own.
+        String name = shard != null ? JOURNAL_FILE + "-" + shard.getIndex() : JOURNAL_FILE;
+        return new File(action.getUserDir(), name);
+    }
+
+    /**
+     * Returns true if the target's journal records that the runner started a
+     * class. If it doesn't, the VM died before running any test code, and
+     * restarting it would only fail the same way.
+     */
+    private boolean journalRecordsStartedClass() {
+        File journal = journalFile();
+        File local = run.localFile(action, journal.getName());
+        try {
+            local.getParentFile().mkdirs();
+            local.delete();
+            run.target.pull(journal, local);
+            return ProgressJournal.recordsStartedClass(local);
+        } catch (CommandFailedException | IOException e) {
+            // the runner died before it opened the journal
+            return false;
+        }
+    }
+
+    /**
+     * Reports the outcome that the cancelled command was running as skipped.
+     */
+    private Result cancelledResult() {
+        if (lastStartedOutcome != null && !lastStartedOutcome.equals(lastFinishedOutcome)) {
+            run.driver.addEarlyResult(new Outcome(lastStartedOutcome, Result.UNSUPPORTED,
+                    "Cancelled before it finished"));
+        }
+        return Result.UNSUPPORTED;
+    }
+
     /**
      * Create the command that executes the action.
      *
@@ -151,6 +299,44 @@ public class RunActionTask extends Task implements HostMonitor.Handler {
         if (skipPast != null) {
             vmCommandBuilder.args("--skipPast", skipPast);
         }
+        if (onlyOutcome != null) {
+            vmCommandBuilder.args("--outcome", onlyOutcome);
+        }
+        if (shard != null) {
+            if (shard.getFirstClass() != null) {
+                vmCommandBuilder.args("--classesFrom", shard.getFirstClass());
+            }
+            if (shard.getEndClass() != null) {
+                vmCommandBuilder.args("--classesBefore", shard.getEndClass());
+            }
+        }
+        vmCommandBuilder.args("--journal", journalFile().getPath());
+        if (resume) {
+            vmCommandBuilder.args("--resume");
+        }
+        if (stallTimeoutSeconds != 0) {
+            // Beat often enough that a stall is noticed soon after the limit.
+            vmCommandBuilder.args("--heartbeatSeconds",
+                    Integer.toString(Math.max(stallTimeoutSeconds / 4, 1)));
+        }
+        if (run.retainedHeapThresholdKiB > 0) {
+            vmCommandBuilder.args("--measureRetainedHeap");
+        }
+        if (run.gcBetweenTests) {
+            vmCommandBuilder.args("--gcBetweenTests");
+        }
+        if (!outcomeTimeoutSeconds.isEmpty()) {
+            // PrepareUserDirTask wrote the same timeouts to the action's user dir.
+            vmCommandBuilder.args("--testTimeouts",
+                    new File(workingDirectory, PrepareUserDirTask.TIMEOUTS_FILE).getPath());
+        }
+        Set<String> serialClasses = run.driver.getSerialClasses(action);
+        if (serialClasses != null) {
+            vmCommandBuilder.args("--parallelClasses");
+            for (String serialClass : serialClasses) {
+                vmCommandBuilder.args("--serialClass", serialClass);
+            }
+        }
 
         // Forward specific parameters to Caliper.
         if (run.runnerType.supportsCaliper()) {
@@ -193,6 +379,7 @@ public class RunActionTask extends Task implements HostMonitor.Handler {
     @Override public void start(String outcomeName) {
         outcomeName = toQualifiedOutcomeName(outcomeName);
         lastStartedOutcome = outcomeName;
+        stallDetector.progress(System.nanoTime());
         if (run.runnerType.supportsCaliper()) {
             run.console.verbose("running " + outcomeName + " with unlimited timeout");
             Command command = currentCommand;
@@ -202,24 +389,31 @@ public class RunActionTask extends Task implements HostMonitor.Handler {
             run.driver.recordResults = false;
         } else {
             run.driver.recordResults = true;
+            Integer outcomeTimeout = outcomeTimeoutSeconds.get(outcomeName);
+            Command command = currentCommand;
+            if (command != null && outcomeTimeout != null && !stallDetector.hasStalled()) {
+                // Give the outcome its own timeout, until it finishes.
+                command.scheduleTimeout(outcomeTimeout);
+            }
         }
     }
 
     @Override public void output(String outcomeName, String output) {
+        stallDetector.progress(System.nanoTime());
         outcomeName = toQualifiedOutcomeName(outcomeName);
         run.console.outcome(outcomeName);
         run.console.streamOutput(outcomeName, output);
     }
 
     @Override public void finish(Outcome outcome) {
+        stallDetector.progress(System.nanoTime());
         Command command = currentCommand;
-        if (command != null && timeoutSeconds != 0) {
+        // An aborted command keeps its expired timeout, so it is killed.
+        if (command != null && timeoutSeconds != 0 && !stallDetector.hasStalled()) {
             command.scheduleTimeout(timeoutSeconds);
         }
         lastFinishedOutcome = toQualifiedOutcomeName(outcome.getName());
-        // TODO: support flexible timeouts for JUnit tests
-        run.driver.recordOutcome(new Outcome(lastFinishedOutcome, outcome.getResult(),
-                outcome.getOutputLines()));
+        run.driver.recordOutcome(new Outcome(lastFinishedOutcome, outcome));
     }
 
     /**
@@ -237,6 +431,27 @@ public class RunActionTask extends Task implements HostMonitor.Handler {
     }
 
     @Override public void print(String string) {
+        stallDetector.progress(System.nanoTime());
         run.console.streamOutput(string);
     }
+
+    /**
+     * Aborts the current command if it has been idle, with no output, for
+     * longer than the stall timeout. The command is aborted by timing it out,
+     * so the outcome it stalled in is reported as timed out.
+     */
+    @Override public void heartbeat(String outcomeName, long cpuTimeNanos, boolean idle,
+            String threadStates, String threadDump) {
+        Command command = currentCommand;
+        if (command == null) {
+            return;
+        }
+        if (stallDetector.heartbeat(System.nanoTime(), idle,
+                outcomeName != null ? toQualifiedOutcomeName(outcomeName) : null,
+                threadStates, threadDump)) {
+            run.console.verbose("aborting " + actionName + ": "
+                    + stallDetector.getReport().split("\n", 2)[0]);
+            command.scheduleTimeout(0);
+        }
+    }
 }
@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package vogar.tasks;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tells from the target's heartbeats whether a command has stalled: gone
+ * longer than the stall timeout without using CPU time or producing output.
+ */
+final class StallDetector {
+
+    private final int stallTimeoutSeconds;
+    /** When the command last used CPU time or produced output. */
+    private long lastProgressNanoTime;
+    /** Why the command stalled, or null if it hasn't. */
+    private String report;
+
+    /**
+     * @param stallTimeoutSeconds how long the command may go without progress,
+     *     or 0 for no limit.
+     */
+    StallDetector(int stallTimeoutSeconds) {
+        this.stallTimeoutSeconds = stallTimeoutSeconds;
+    }
+
+    /**
+     * Starts watching a new command.
+     */
+    synchronized void reset(long nanoTime) {
+        lastProgressNanoTime = nanoTime;
+        report = null;
+    }
+
+    /**
+     * Records that the command made progress, such as by producing output.
+     */
+    synchronized void progress(long nanoTime) {
+        lastProgressNanoTime = nanoTime;
+    }
+
+    /**
+     * Records a heartbeat from the target.
+     *
+     * @param outcomeName the outcome the target is running, or null.
+     * @return true if this heartbeat showed the command to have stalled for
+     *     the first time.
+     */
+    synchronized boolean heartbeat(long nanoTime, boolean idle, String outcomeName,
+            String threadStates, String threadDump) {
+        if (!idle) {
+            lastProgressNanoTime = nanoTime;
+            return false;
+        }
+        long stalledSeconds = TimeUnit.NANOSECONDS.toSeconds(nanoTime - lastProgressNanoTime);
+        if (report != null || stallTimeoutSeconds == 0 || stalledSeconds < stallTimeoutSeconds) {
+            return false;
+        }
+
+        report = "Stalled for " + stalledSeconds + "s with no CPU progress or output"
+                + (outcomeName != null ? " in " + outcomeName : "")
+                + "\nthreads: " + threadStates
+                + (threadDump != null ? "\n\n" + threadDump : "");
+        return true;
+    }
+
+    synchronized boolean hasStalled() {
+        return report != null;
+    }
+
+    /**
+     * Returns why the command stalled, or null if it hasn't.
+     */
+    synchronized String getReport() {
+        return report;
+    }
+}
@@ -46,6 +46,14 @@ public abstract class Task {
         return false;
     }
 
+    /**
+     * Returns true if this task cleans up after other tasks. Cleanup tasks
+     * still run once their queue has been cancelled.
+     */
+    public boolean isCleanup() {
+        return false;
+    }
+
     public Task after(Task prerequisite) {
         tasksThatMustFinishFirst.add(prerequisite);
         return this;
@@ -80,8 +88,33 @@ public abstract class Task {
         return true;
     }
 
+    /**
+     * Returns true if every prerequisite of this task has finished, whether
+     * or not it succeeded.
+     */
+    final boolean prerequisitesFinished() {
+        for (Task task : tasksThatMustFinishFirst) {
+            if (task.result == null) {
+                return false;
+            }
+        }
+        for (Task task : tasksThatMustFinishSuccessfullyFirst) {
+            if (task.result == null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     protected abstract Result execute() throws Exception;
 
+    /**
+     * Asks this running task to stop soon, such as by destroying the process
+     * it is waiting on. Called on a thread other than the one running it.
+     */
+    protected void cancel() {
+    }
+
     final void run(Console console) {
         if (result != null) {
             throw new IllegalStateException();
@@ -19,8 +19,10 @@ package vogar.tasks;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.TimeUnit;
 import vogar.Console;
@@ -40,6 +42,13 @@ public final class TaskQueue {
     private final LinkedList<Task> runnableActions = new LinkedList<Task>();
     private final LinkedList<Task> runnableTasks = new LinkedList<Task>();
     private final List<Task> failedTasks = new ArrayList<Task>();
+    private final Set<Task> runningTaskSet = new LinkedHashSet<Task>();
+    /** Why the queue was cancelled, or null if it wasn't. */
+    private String cancelReason;
+    /** True while more tasks may be enqueued by another thread. */
+    private boolean open;
+    /** The number of tasks printed so far. */
+    private int printedTaskCount;
 
     public TaskQueue(Console console, int maxConcurrentActions) {
         this.console = console;
@@ -51,10 +60,69 @@ public final class TaskQueue {
      */
     public synchronized void enqueue(Task task) {
         tasks.add(task);
+        promoteBlockedTasks();
     }
 
-    public void enqueueAll(Collection<Task> tasks) {
+    public synchronized void enqueueAll(Collection<Task> tasks) {
         this.tasks.addAll(tasks);
+        promoteBlockedTasks();
+    }
+
+    /**
+     * Keeps {@link #runTasks} running, even when it has run out of tasks,
+     * until {@link #close} is called. This allows tasks to be enqueued while
+     * the queue is running.
+     */
+    public synchronized void holdOpen() {
+        open = true;
+    }
+
+    /**
+     * Signals that no more tasks will be enqueued, so that {@link #runTasks}
+     * returns once the tasks it has are done.
+     */
+    public synchronized void close() {
+        open = false;
+        notifyAll();
+    }
+
+    /**
+     * Stops running all but cleanup tasks. Tasks that haven't started are
+     * skipped as they become runnable, including tasks enqueued later, and
+     * running tasks are asked to stop. Tasks that depend on the success of a
+     * skipped task never run.
+     */
+    public void cancel(String reason) {
+        final List<Task> running;
+        synchronized (this) {
+            if (cancelReason != null) {
+                return;
+            }
+            cancelReason = reason;
+            running = new ArrayList<Task>(runningTaskSet);
+            promoteBlockedTasks();
+        }
+        console.warn("Cancelling the remaining tasks: " + reason);
+        // Stop tasks on another thread: the caller may be one of them, or stopping one may
+        // wait on the caller, such as for a dying process's output to be read.
+        Thread canceller = new Thread(new Runnable() {
+            @Override public void run() {
+                for (Task task : running) {
+                    if (!task.isCleanup()) {
+                        task.cancel();
+                    }
+                }
+            }
+        }, "TaskQueue-cancel");
+        canceller.setDaemon(true);
+        canceller.start();
+    }
+
+    /**
+     * Returns why the queue was cancelled, or null if it wasn't.
+     */
+    public synchronized String getCancelReason() {
+        return cancelReason;
     }
 
     public synchronized List<Task> getTasks() {
@@ -83,14 +151,21 @@ public final class TaskQueue {
     }
 
     public void printTasks() {
+        printTasks(getTasks());
+    }
+
+    /**
+     * Prints {@code tasks} and what they depend on, numbering them after the
+     * tasks printed before.
+     */
+    public synchronized void printTasks(Collection<Task> tasks) {
         if (!console.isVerbose()) {
             return;
         }
 
-        int i = 0;
         for (Task task : tasks) {
             StringBuilder message = new StringBuilder()
-                    .append("Task ").append(i++).append(": ").append(task);
+                    .append("Task ").append(printedTaskCount++).append(": ").append(task);
             for (Task blocker : task.tasksThatMustFinishFirst) {
                 message.append("\n  depends on completed task: ").append(blocker);
             }
@@ -162,11 +237,21 @@ public final class TaskQueue {
                 task = runnableTasks.poll();
             }
 
+            if (task != null && cancelReason != null && !task.isCleanup()) {
+                skip(task);
+                promoteBlockedTasks();
+                if (isExhausted()) {
+                    notifyAll();
+                }
+                continue;
+            }
+
             if (task != null) {
                 runningTasks++;
                 if (task.isAction()) {
                     runningActions++;
                 }
+                runningTaskSet.add(task);
                 return task;
             }
 
@@ -183,9 +268,12 @@ public final class TaskQueue {
     }
 
     private synchronized void doneTask(Task task) {
-        if (task.result != Result.SUCCESS) {
+        // Tasks cancelled while running report that they didn't run.
+        if (task.result != Result.SUCCESS
+                && (cancelReason == null || task.result != Result.UNSUPPORTED)) {
             failedTasks.add(task);
         }
+        runningTaskSet.remove(task);
         runningTasks--;
         if (task.isAction()) {
             runningActions--;
@@ -197,24 +285,48 @@ public final class TaskQueue {
     }
 
     private synchronized void promoteBlockedTasks() {
-        for (Iterator<Task> it = tasks.iterator(); it.hasNext(); ) {
-            Task potentiallyUnblocked = it.next();
-            if (potentiallyUnblocked.isRunnable()) {
-                it.remove();
-                if (potentiallyUnblocked.isAction()) {
-                    runnableActions.add(potentiallyUnblocked);
-                } else {
-                    runnableTasks.add(potentiallyUnblocked);
+        boolean skippedAny;
+        do {
+            skippedAny = false;
+            for (Iterator<Task> it = tasks.iterator(); it.hasNext(); ) {
+                Task potentiallyUnblocked = it.next();
+                if (cancelReason != null && !potentiallyUnblocked.isCleanup()
+                        && potentiallyUnblocked.prerequisitesFinished()) {
+                    // Also skip tasks that failed prerequisites would block forever, so
+                    // that cleanup tasks waiting on them run. Skipping one may settle
+                    // tasks already passed over, so look again.
+                    it.remove();
+                    skip(potentiallyUnblocked);
+                    skippedAny = true;
+                    notifyAll();
+                } else if (potentiallyUnblocked.isRunnable()) {
+                    it.remove();
+                    if (potentiallyUnblocked.isAction()) {
+                        runnableActions.add(potentiallyUnblocked);
+                    } else {
+                        runnableTasks.add(potentiallyUnblocked);
+                    }
+                    notifyAll();
                 }
-                notifyAll();
             }
-        }
+        } while (skippedAny);
+    }
+
+    /**
+     * Marks a task that won't run because the queue was cancelled as finished,
+     * so that the cleanup tasks after it can run.
+     */
+    private void skip(Task task) {
+        task.result = Result.UNSUPPORTED;
+        console.verbose("skipped " + task);
     }
 
     /**
-     * Returns true if there are no tasks to run and no tasks currently running.
+     * Returns true if there are no tasks to run, no tasks currently running,
+     * and no more tasks to come.
      */
     private boolean isExhausted() {
-        return runnableTasks.isEmpty() && runnableActions.isEmpty() && runningTasks == 0;
+        return runnableTasks.isEmpty() && runnableActions.isEmpty() && runningTasks == 0
+                && !open;
     }
 }
@@ -0,0 +1,186 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package vogar.util;
+
+import com.google.common.base.Charsets;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Captures output in bounded memory. The first {@code headChars} and the last
+ * {@code tailChars} characters are kept; anything between them is dropped.
+ *
+ * <p>If a spill file is given, the complete output is written to it, gzipped,
+ * once the output outgrows memory. The file is only created if needed.
+ */
+public final class BoundedOutputBuffer {
+
+    private final int headChars;
+    private final StringBuilder head = new StringBuilder();
+    /** A ring buffer of the most recent characters after the head. */
+    private final char[] tail;
+    private int tailStart;
+    private int tailLength;
+    private long length;
+
+    private final File spillFile;
+    private Writer spill;
+    private boolean spillFailed;
+
+    /**
+     * @param spillFile the file to write the complete output to if it is
+     *     truncated, or null to discard it.
+     */
+    public BoundedOutputBuffer(int headChars, int tailChars, File spillFile) {
+        this.headChars = headChars;
+        this.tail = new char[tailChars];
+        this.spillFile = spillFile;
+    }
+
+    public void append(CharSequence text) {
+        if (length + text.length() > (long) headChars + tail.length && spill == null) {
+            startSpill();
+        }
+        length += text.length();
+        if (spill != null) {
+            try {
+                spill.append(text);
+            } catch (IOException e) {
+                abandonSpill();
+            }
+        }
+
+        int i = 0;
+        if (head.length() < headChars) {
+            i = Math.min(headChars - head.length(), text.length());
+            head.append(text, 0, i);
+        }
+        if (tail.length == 0) {
+            return;
+        }
+        if (text.length() - i > tail.length) {
+            i = text.length() - tail.length; // only the last tail.length characters are kept
+        }
+        for (; i < text.length(); i++) {
+            int end = (tailStart + tailLength) % tail.length;
+            tail[end] = text.charAt(i);
+            if (tailLength < tail.length) {
+                tailLength++;
+            } else {
+                tailStart = (tailStart + 1) % tail.length;
+            }
+        }
+    }
+
+    /**
+     * Starts writing to the spill file, beginning with everything captured so
+     * far. Nothing has been dropped yet, so that is the complete output.
+     */
+    private void startSpill() {
+        if (spillFile == null || spillFailed) {
+            return;
+        }
+        try {
+            spillFile.getParentFile().mkdirs();
+            spill = new BufferedWriter(new OutputStreamWriter(
+                    new GZIPOutputStream(new FileOutputStream(spillFile)), Charsets.UTF_8));
+            spill.append(head);
+            appendTail(spill);
+        } catch (IOException e) {
+            abandonSpill();
+        }
+    }
+
+    private void abandonSpill() {
+        spillFailed = true;
+        if (spill != null) {
+            try {
+                spill.close();
+            } catch (IOException ignored) {
+            }
+            spill = null;
+        }
+        spillFile.delete();
+    }
+
+    /**
+     * Finishes writing the spill file, if there is one.
+     */
+    public void close() {
+        if (spill != null) {
+            try {
+                spill.close();
+            } catch (IOException e) {
+                abandonSpill();
+            }
+            spill = null;
+        }
+    }
+
+    /**
+     * Returns the number of characters appended, including those dropped.
+     */
+    public long length() {
+        return length;
+    }
+
+    public boolean isTruncated() {
+        return length > head.length() + tailLength;
+    }
+
+    /**
+     * Returns the file holding the complete output, or null if the output
+     * wasn't truncated or couldn't be written.
+     */
+    public File getSpillFile() {
+        return isTruncated() && !spillFailed && spillFile != null ? spillFile : null;
+    }
+
+    /**
+     * Returns the captured output. If characters were dropped, a line saying
+     * how many, and where to find them, marks the gap.
+     */
+    @Override public String toString() {
+        StringBuilder result = new StringBuilder(head.length() + tailLength + 100);
+        result.append(head);
+        if (isTruncated()) {
+            long omitted = length - head.length() - tailLength;
+            result.append("\n[vogar: ").append(omitted).append(" characters omitted");
+            if (getSpillFile() != null) {
+                result.append("; full output in ").append(spillFile);
+            }
+            result.append("]\n");
+        }
+        try {
+            appendTail(result);
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+        return result.toString();
+    }
+
+    private void appendTail(Appendable out) throws IOException {
+        int firstPart = Math.min(tailLength, tail.length - tailStart);
+        out.append(new String(tail, tailStart, firstPart));
+        out.append(new String(tail, 0, tailLength - firstPart));
+    }
+}
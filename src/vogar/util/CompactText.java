@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package vogar.util;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Text held as UTF-8 bytes, compressed if it is long. Equal texts share a
+ * single instance, which matters when thousands of outcomes print the same
+ * stack trace.
+ */
+public final class CompactText {
+
+    /** Texts of at least this many bytes are compressed. */
+    static final int COMPRESSION_THRESHOLD = 512;
+
+    public static final CompactText EMPTY = new CompactText(new byte[0], -1, 1);
+
+    private static final Interner<CompactText> INTERNER = Interners.newWeakInterner();
+
+    private static final ThreadLocal<Deflater> DEFLATER = new ThreadLocal<Deflater>() {
+        @Override protected Deflater initialValue() {
+            return new Deflater(Deflater.BEST_SPEED);
+        }
+    };
+
+    private static final ThreadLocal<Inflater> INFLATER = new ThreadLocal<Inflater>() {
+        @Override protected Inflater initialValue() {
+            return new Inflater();
+        }
+    };
+
+    private final byte[] bytes;
+    /** The length of the uncompressed text in bytes, or -1 if it isn't compressed. */
+    private final int uncompressedLength;
+    private final int hashCode;
+
+    private CompactText(byte[] bytes, int uncompressedLength, int hashCode) {
+        this.bytes = bytes;
+        this.uncompressedLength = uncompressedLength;
+        this.hashCode = hashCode;
+    }
+
+    public static CompactText of(String text) {
+        if (text.isEmpty()) {
+            return EMPTY;
+        }
+        byte[] utf8 = text.getBytes(Charsets.UTF_8);
+        int hashCode = Arrays.hashCode(utf8);
+        CompactText result = utf8.length < COMPRESSION_THRESHOLD
+                ? new CompactText(utf8, -1, hashCode)
+                : new CompactText(deflate(utf8), utf8.length, hashCode);
+        return INTERNER.intern(result);
+    }
+
+    private static byte[] deflate(byte[] input) {
+        Deflater deflater = DEFLATER.get();
+        deflater.reset();
+        deflater.setInput(input);
+        deflater.finish();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(input.length / 4);
+        byte[] buffer = new byte[4096];
+        while (!deflater.finished()) {
+            out.write(buffer, 0, deflater.deflate(buffer));
+        }
+        return out.toByteArray();
+    }
+
+    private byte[] inflate() {
+        Inflater inflater = INFLATER.get();
+        inflater.reset();
+        inflater.setInput(bytes);
+        byte[] result = new byte[uncompressedLength];
+        try {
+            int length = 0;
+            while (length < result.length) {
+                int count = inflater.inflate(result, length, result.length - length);
+                if (count == 0 && (inflater.finished() || inflater.needsInput())) {
+                    throw new DataFormatException("truncated");
+                }
+                length += count;
+            }
+        } catch (DataFormatException e) {
+            throw new AssertionError(e);
+        }
+        return result;
+    }
+
+    @Override public boolean equals(Object o) {
+        if (o == this) {
+            return true;
+        }
+        if (!(o instanceof CompactText)) {
+            return false;
+        }
+        CompactText other = (CompactText) o;
+        return hashCode == other.hashCode
+                && uncompressedLength == other.uncompressedLength
+                && Arrays.equals(bytes, other.bytes);
+    }
+
+    @Override public int hashCode() {
+        return hashCode;
+    }
+
+    @Override public String toString() {
+        return new String(uncompressedLength == -1 ? bytes : inflate(), Charsets.UTF_8);
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package vogar.util;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Renders console events on a thread of its own, so that the threads that
+ * produce output don't wait for each other or for the terminal.
+ *
+ * <p>Events are held in a lock-free queue. When the queue is full, producers
+ * wait for the renderer to catch up. Status events, which are overwritten by
+ * whatever is printed next, are coalesced: only the latest is rendered, and
+ * no more often than the frame rate.
+ */
+public final class ConsoleRenderer {
+
+    private final Queue<Event> queue = new ConcurrentLinkedQueue<Event>();
+    private final AtomicInteger size = new AtomicInteger();
+    private final int capacity;
+    private final long frameNanos;
+    private final Thread thread;
+    private volatile boolean idle;
+    private volatile boolean stopping;
+
+    public ConsoleRenderer(int capacity, int framesPerSecond) {
+        this.capacity = capacity;
+        this.frameNanos = TimeUnit.SECONDS.toNanos(1) / framesPerSecond;
+        this.thread = new Thread(new Runnable() {
+            @Override public void run() {
+                renderLoop();
+            }
+        }, "ConsoleRenderer");
+        this.thread.setDaemon(true);
+    }
+
+    public void start() {
+        thread.start();
+    }
+
+    /**
+     * Returns true if the calling thread is the renderer's own thread, which
+     * should render directly rather than submit events.
+     */
+    public boolean isRendererThread() {
+        return Thread.currentThread() == thread;
+    }
+
+    /**
+     * Queues {@code event} to be rendered after all previously submitted
+     * events.
+     *
+     * @param status true if the event only shows status that is overwritten
+     *     by the next event, so that it may be skipped if another event
+     *     follows it closely.
+     */
+    public void submit(Runnable event, boolean status) {
+        while (true) {
+            int n = size.get();
+            if (n < capacity && size.compareAndSet(n, n + 1)) {
+                break;
+            }
+            if (n >= capacity) {
+                LockSupport.unpark(thread);
+                LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(100));
+            }
+        }
+        queue.add(new Event(event, status));
+        if (idle && !status) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    /**
+     * Renders all submitted events and then stops the renderer thread.
+     */
+    public void stop() {
+        stopping = true;
+        LockSupport.unpark(thread);
+        boolean interrupted = false;
+        while (thread.isAlive()) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void renderLoop() {
+        Event pendingStatus = null;
+        long nextFrame = System.nanoTime();
+        while (true) {
+            Event event = queue.poll();
+            if (event != null) {
+                size.decrementAndGet();
+                if (event.status) {
+                    pendingStatus = event;
+                } else {
+                    // Whatever this prints overwrites the pending status.
+                    pendingStatus = null;
+                    render(event);
+                }
+                continue;
+            }
+
+            long now = System.nanoTime();
+            if (pendingStatus != null && (now - nextFrame >= 0 || stopping)) {
+                render(pendingStatus);
+                pendingStatus = null;
+                nextFrame = now + frameNanos;
+            }
+            if (stopping && queue.isEmpty()) {
+                return;
+            }
+
+            idle = true;
+            if (queue.isEmpty()) {
+                LockSupport.parkNanos(pendingStatus != null
+                        ? Math.max(nextFrame - now, 0)
+                        : frameNanos);
+            }
+            idle = false;
+        }
+    }
+
+    private void render(Event event) {
+        try {
+            event.runnable.run();
+        } catch (Throwable t) {
+            // Keep rendering; a broken event shouldn't silence the console.
+            t.printStackTrace();
+        }
+    }
+
+    private static class Event {
+        final Runnable runnable;
+        final boolean status;
+
+        Event(Runnable runnable, boolean status) {
+            this.runnable = runnable;
+            this.status = status;
+        }
+    }
+}
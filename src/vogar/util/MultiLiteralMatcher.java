@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package vogar.util;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Finds which of a set of literal strings occur in a text, in a single pass
+ * over the text regardless of how many literals there are. This is an
+ * Aho-Corasick automaton.
+ */
+public final class MultiLiteralMatcher {
+
+    /** The characters labelling each node's outgoing edges, sorted. */
+    private final char[][] edgeChars;
+    /** The node each edge leads to, parallel to {@link #edgeChars}. */
+    private final int[][] edgeTargets;
+    /** The node for the longest proper suffix of each node that is also in the trie. */
+    private final int[] failures;
+    /** The indices of the literals that end at each node, including through failures. */
+    private final int[][] matches;
+
+    public MultiLiteralMatcher(List<String> literals) {
+        // Build a trie of the literals.
+        List<Map<Character, Integer>> edges = new ArrayList<Map<Character, Integer>>();
+        List<List<Integer>> nodeMatches = new ArrayList<List<Integer>>();
+        edges.add(new TreeMap<Character, Integer>());
+        nodeMatches.add(new ArrayList<Integer>());
+        for (int i = 0; i < literals.size(); i++) {
+            int node = 0;
+            for (char c : literals.get(i).toCharArray()) {
+                Integer next = edges.get(node).get(c);
+                if (next == null) {
+                    next = edges.size();
+                    edges.add(new TreeMap<Character, Integer>());
+                    nodeMatches.add(new ArrayList<Integer>());
+                    edges.get(node).put(c, next);
+                }
+                node = next;
+            }
+            nodeMatches.get(node).add(i);
+        }
+
+        int nodeCount = edges.size();
+        edgeChars = new char[nodeCount][];
+        edgeTargets = new int[nodeCount][];
+        for (int node = 0; node < nodeCount; node++) {
+            Map<Character, Integer> nodeEdges = edges.get(node);
+            edgeChars[node] = new char[nodeEdges.size()];
+            edgeTargets[node] = new int[nodeEdges.size()];
+            int i = 0;
+            for (Map.Entry<Character, Integer> edge : nodeEdges.entrySet()) {
+                edgeChars[node][i] = edge.getKey();
+                edgeTargets[node][i] = edge.getValue();
+                i++;
+            }
+        }
+
+        // Link each node to its longest proper suffix, breadth first so that
+        // shallower nodes are linked before the nodes that depend on them.
+        failures = new int[nodeCount];
+        Deque<Integer> queue = new ArrayDeque<Integer>();
+        for (int child : edgeTargets[0]) {
+            queue.add(child);
+        }
+        while (!queue.isEmpty()) {
+            int node = queue.remove();
+            for (int i = 0; i < edgeChars[node].length; i++) {
+                char c = edgeChars[node][i];
+                int child = edgeTargets[node][i];
+                int failure = failures[node];
+                int next;
+                while ((next = step(failure, c)) == -1 && failure != 0) {
+                    failure = failures[failure];
+                }
+                failures[child] = next != -1 ? next : 0;
+                nodeMatches.get(child).addAll(nodeMatches.get(failures[child]));
+                queue.add(child);
+            }
+        }
+
+        matches = new int[nodeCount][];
+        for (int node = 0; node < nodeCount; node++) {
+            List<Integer> list = nodeMatches.get(node);
+            matches[node] = new int[list.size()];
+            for (int i = 0; i < list.size(); i++) {
+                matches[node][i] = list.get(i);
+            }
+        }
+    }
+
+    /**
+     * Returns the indices of the literals that occur in {@code text}.
+     */
+    public BitSet findAll(CharSequence text) {
+        BitSet result = new BitSet();
+        int node = 0;
+        for (int i = 0, length = text.length(); i < length; i++) {
+            char c = text.charAt(i);
+            int next;
+            while ((next = step(node, c)) == -1 && node != 0) {
+                node = failures[node];
+            }
+            node = next != -1 ? next : 0;
+            for (int match : matches[node]) {
+                result.set(match);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the node reached from {@code node} along the edge labelled
+     * {@code c}, or -1 if there is no such edge.
+     */
+    private int step(int node, char c) {
+        int index = Arrays.binarySearch(edgeChars[node], c);
+        return index >= 0 ? edgeTargets[node][index] : -1;
+    }
+}
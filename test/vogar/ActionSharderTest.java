@@ -0,0 +1,176 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package vogar;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import vogar.testing.RecordingLog;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(JUnit4.class)
+public class ActionSharderTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testShardsCoverEveryClassOnce() throws IOException {
+        for (int classCount = 2; classCount <= 9; classCount++) {
+            File classes = temporaryFolder.newFolder();
+            List<String> classNames = new ArrayList<>();
+            for (int i = 0; i < classCount; i++) {
+                // Nested packages sort among the classes of the package.
+                String className = i % 3 == 2 ? "p.sub.C" + i : "p.C" + i;
+                addClass(classes, className);
+                classNames.add(className);
+            }
+            addClass(classes, "p.AllTests");
+            addClass(classes, "pp.Other");
+            Collections.sort(classNames);
+
+            for (int maxShards = 2; maxShards <= 5; maxShards++) {
+                List<ActionShard> shards =
+                        sharder(classes, store(), maxShards).shard(packageAction("p"));
+                assertEquals(Math.min(maxShards, classCount), shards.size());
+                assertNull(shards.get(0).getFirstClass());
+                assertNull(shards.get(shards.size() - 1).getEndClass());
+
+                for (String className : classNames) {
+                    int matches = 0;
+                    for (ActionShard shard : shards) {
+                        if (inRange(className, shard)) {
+                            assertTrue(className, shard.getIndex() >= matches);
+                            matches++;
+                        }
+                    }
+                    assertEquals(className + " in " + shards, 1, matches);
+                }
+                for (int k = 0; k < shards.size(); k++) {
+                    assertEquals(k, shards.get(k).getIndex());
+                    if (k > 0) {
+                        assertEquals(shards.get(k - 1).getEndClass(),
+                                shards.get(k).getFirstClass());
+                        assertTrue(classNames.contains(shards.get(k).getFirstClass()));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testShardsBalancedByWallTime() throws IOException {
+        File classes = temporaryFolder.newFolder();
+        for (String className : new String[] { "p.A", "p.B", "p.C", "p.D", "p.E" }) {
+            addClass(classes, className);
+        }
+
+        // Without history, every class weighs the same.
+        List<ActionShard> shards = sharder(classes, store(), 2).shard(packageAction("p"));
+        assertEquals("p.C", shards.get(0).getEndClass());
+
+        // One slow class gets a shard to itself.
+        Map<String, Outcome> outcomes = new LinkedHashMap<>();
+        addOutcome(outcomes, "p.A#testOne", 50000000);
+        addOutcome(outcomes, "p.A#testTwo", 40000000);
+        addOutcome(outcomes, "p.B#test", 10000000);
+        addOutcome(outcomes, "p.C$Inner#test", 10000000);
+        addOutcome(outcomes, "p.D#test", 10000000);
+        OutcomeStore store = store();
+        store.write(outcomes);
+        shards = sharder(classes, store, 2).shard(packageAction("p"));
+        assertEquals(2, shards.size());
+        assertEquals("p.B", shards.get(0).getEndClass());
+
+        // Classes without history weigh as much as the average class with it,
+        // so here p.D and p.E weigh 40ms each.
+        outcomes.clear();
+        addOutcome(outcomes, "p.A#test", 10000000);
+        addOutcome(outcomes, "p.B#test", 10000000);
+        addOutcome(outcomes, "p.C#test", 100000000);
+        store = store();
+        store.write(outcomes);
+        shards = sharder(classes, store, 2).shard(packageAction("p"));
+        assertEquals("p.D", shards.get(0).getEndClass());
+    }
+
+    @Test
+    public void testNotSharded() throws IOException {
+        File classes = temporaryFolder.newFolder();
+        addClass(classes, "p.A");
+        addClass(classes, "p.B");
+        addClass(classes, "q.A");
+
+        assertTrue(sharder(classes, store(), 1).shard(packageAction("p")).isEmpty());
+        assertTrue(sharder(classes, store(), 4).shard(packageAction("q")).isEmpty());
+        assertTrue(sharder(classes, store(), 4).shard(packageAction("p.A")).isEmpty());
+        assertTrue(sharder(classes, store(), 4).shard(packageAction("p.A#test")).isEmpty());
+        assertTrue(sharder(classes, store(), 4).shard(new Action("p", "p", null, null,
+                new File(classes, "p/A.java"))).isEmpty());
+    }
+
+    /**
+     * Returns true if the target would run {@code className} in
+     * {@code shard}, using the same comparison as the target.
+     */
+    private static boolean inRange(String className, ActionShard shard) {
+        return (shard.getFirstClass() == null || className.compareTo(shard.getFirstClass()) >= 0)
+                && (shard.getEndClass() == null || className.compareTo(shard.getEndClass()) < 0);
+    }
+
+    private static void addClass(File classes, String className) throws IOException {
+        File file = new File(classes, className.replace('.', '/') + ".class");
+        file.getParentFile().mkdirs();
+        file.createNewFile();
+    }
+
+    private static void addOutcome(Map<String, Outcome> outcomes, String name,
+            long wallTimeNanos) {
+        outcomes.put(name, new Outcome(name, Result.SUCCESS, Collections.<String>emptyList(),
+                wallTimeNanos, -1, null));
+    }
+
+    private static Action packageAction(String name) {
+        return new Action(name, name, null, null, null);
+    }
+
+    private ActionSharder sharder(File classes, OutcomeStore store, int maxShards) {
+        return new ActionSharder(new RecordingLog(), Classpath.of(classes), store, maxShards);
+    }
+
+    private OutcomeStore store() throws IOException {
+        RecordingLog log = new RecordingLog();
+        return new OutcomeStore(log, temporaryFolder.newFolder(), true,
+                ExpectationStore.parse(log, Collections.<File>emptySet(), ModeId.JVM,
+                        Variant.DEFAULT),
+                new Date(), Collections.<String, String>emptyMap());
+    }
+}
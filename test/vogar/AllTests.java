@@ -23,7 +23,13 @@ import vogar.android.AllAndroidTests;
 import vogar.android.DeviceRuntimeAdbTargetTest;
 import vogar.android.DeviceRuntimeSshTargetTest;
 import vogar.android.HostRuntimeLocalTargetTest;
+import vogar.monitor.HostMonitorTest;
+import vogar.monitor.TargetMonitorTest;
 import vogar.target.AllTargetTests;
+import vogar.tasks.StallDetectorTest;
+import vogar.tasks.TaskQueueTest;
+import vogar.util.BoundedOutputBufferTest;
+import vogar.util.MultiLiteralMatcherTest;
 
 /**
  * Run the selection of tests that we know work.
@@ -34,7 +40,24 @@ import vogar.target.AllTargetTests;
 @SuiteClasses({
         AllAndroidTests.class,
         AllTargetTests.class,
+        ActionSharderTest.class,
+        BoundedOutputBufferTest.class,
+        ClassFileIndexTest.class,
+        DotJavaFileCacheTest.class,
+        DotJavaFileTest.class,
+        DurationEnvelopesTest.class,
+        ExpectationStoreTest.class,
+        FlakinessAnalyzerTest.class,
+        HostMonitorTest.class,
+        ImpactAnalyzerTest.class,
+        MultiLiteralMatcherTest.class,
+        OutcomeHistoryTest.class,
+        OutcomeTest.class,
         ScriptBuilderEscapingTest.class,
+        StallDetectorTest.class,
+        TargetMonitorTest.class,
+        TaskQueueTest.class,
+        XmlReportPrinterTest.class,
 })
 @RunWith(Suite.class)
 public class AllTests {
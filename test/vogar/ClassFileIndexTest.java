@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package vogar;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import vogar.commands.Mkdir;
+import vogar.testing.RecordingLog;
+
+import static org.junit.Assert.assertEquals;
+
+@RunWith(JUnit4.class)
+public class ClassFileIndexTest {
+
+    private static final long DAY_MILLIS = 86400000;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private final RecordingLog log = new RecordingLog();
+
+    @Test
+    public void testWriteOpenAndLookUp() throws IOException {
+        File a = writeJar("a", "com/", "com/foo/", "com/foo/Bar.class");
+        File b = writeJar("b", "com/", "com/foo/", "com/foo/Qux.class", "org/", "org/Baz.class");
+        File indexFile = new File(temporaryFolder.getRoot(), "index/classfileindex");
+
+        // The first index is written and then mapped; the second opens it.
+        for (int i = 0; i < 2; i++) {
+            ClassFileIndex index = newIndex(indexFile);
+            index.createIndex();
+            assertEquals(files(a, b),
+                    index.suggestClasspaths("error: package com.foo does not exist"));
+            assertEquals(files(a),
+                    index.suggestClasspaths("java.lang.ClassNotFoundException: com.foo.Bar"));
+            assertEquals(files(b), index.suggestClasspaths(
+                    "NoClassDefFoundError: Could not initialize class org.Baz\n\tat x"));
+            assertEquals(files(), index.suggestClasspaths(
+                    "java.lang.ClassNotFoundException: com.foo.Missing"));
+            assertEquals(files(), index.suggestClasspaths("no failure here"));
+        }
+    }
+
+    @Test
+    public void testUnchangedJarsAreReused() throws IOException {
+        File a = writeJar("a", "com/", "com/foo/Bar.class");
+        File b = writeJar("b", "org/", "org/Baz.class");
+        File indexFile = new File(temporaryFolder.getRoot(), "index/classfileindex");
+        newIndex(indexFile).createIndex();
+
+        // Jar a keeps its path, length and modification time, so it isn't read again.
+        long aLastModified = a.lastModified();
+        long aLength = a.length();
+        writeJar("a", "com/", "com/foo/Bap.class");
+        a.setLastModified(aLastModified);
+        assertEquals(aLength, a.length());
+        // Jar b changes, so it is read again.
+        writeJar("b", "org/", "org/Bat.class");
+        b.setLastModified(b.lastModified() - DAY_MILLIS);
+        indexFile.setLastModified(System.currentTimeMillis() - 2 * DAY_MILLIS);
+
+        ClassFileIndex index = newIndex(indexFile);
+        index.createIndex();
+        assertEquals(files(a), index.suggestClasspaths("ClassNotFoundException: com.foo.Bar"));
+        assertEquals(files(), index.suggestClasspaths("ClassNotFoundException: com.foo.Bap"));
+        assertEquals(files(b), index.suggestClasspaths("ClassNotFoundException: org.Bat"));
+        assertEquals(files(), index.suggestClasspaths("ClassNotFoundException: org.Baz"));
+    }
+
+    @Test
+    public void testMissingNames() {
+        assertEquals(names("a.b", "c.d", "e.F", "g.H"), ClassFileIndex.missingNames(
+                "Foo.java:1: package a.b does not exist; package c.d does not exist\n"
+                + "import e.F; import g.H;\n"));
+        assertEquals(names("a.B", "c.D"), ClassFileIndex.missingNames(
+                "java.lang.ClassNotFoundException: a.B\n"
+                + "Caused by: java.lang.NoClassDefFoundError: Could not initialize class c.D"));
+        assertEquals(names("a.B"), ClassFileIndex.missingNames(
+                "ClassNotFoundException: a.B ClassNotFoundException: a.B"));
+    }
+
+    @Test
+    public void testMissingNamesWithoutTerminator() {
+        assertEquals(names(), ClassFileIndex.missingNames("package a.b\n does not exist"));
+        assertEquals(names("c.d"), ClassFileIndex.missingNames(
+                "import a.b\npackage c.d does not exist\nimport e.f"));
+        assertEquals(names(), ClassFileIndex.missingNames("ClassNotFoundException: "));
+    }
+
+    private ClassFileIndex newIndex(File indexFile) {
+        return new ClassFileIndex(log, new Mkdir(log),
+                Collections.singletonList(temporaryFolder.getRoot()), indexFile);
+    }
+
+    /** Writes a jar named classes.jar, which the index looks for, in {@code dir}. */
+    private File writeJar(String dir, String... entryNames) throws IOException {
+        File file = new File(temporaryFolder.getRoot(), dir + "/classes.jar");
+        file.getParentFile().mkdirs();
+        try (JarOutputStream out = new JarOutputStream(new FileOutputStream(file))) {
+            for (String entryName : entryNames) {
+                JarEntry entry = new JarEntry(entryName);
+                entry.setTime(0);
+                out.putNextEntry(entry);
+                out.closeEntry();
+            }
+        }
+        return file;
+    }
+
+    private static Set<File> files(File... files) {
+        return new HashSet<File>(Arrays.asList(files));
+    }
+
+    private static Set<String> names(String... names) {
+        return new LinkedHashSet<String>(Arrays.asList(names));
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package vogar;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import java.io.File;
+import java.io.IOException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import vogar.testing.RecordingLog;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(JUnit4.class)
+public class DotJavaFileCacheTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testUnchangedFilesReadFromCache() throws IOException {
+        File cacheFile = new File(temporaryFolder.getRoot(), "cache/dotjavafiles");
+        File javaFile = write("Foo.java", "package aaa;\nclass Foo {}\n");
+        DotJavaFileCache cache = new DotJavaFileCache(new RecordingLog(), cacheFile);
+        assertEquals("aaa.Foo", cache.parse(javaFile).getClassName());
+        cache.write();
+        assertTrue(cacheFile.exists());
+
+        // Same length and modification time, so the cached header is used.
+        long lastModified = javaFile.lastModified();
+        Files.write("package bbb;\nclass Foo {}\n", javaFile, Charsets.UTF_8);
+        javaFile.setLastModified(lastModified);
+        assertEquals("aaa.Foo", new DotJavaFileCache(new RecordingLog(), cacheFile)
+                .parse(javaFile).getClassName());
+
+        // A new modification time means the file is read again.
+        javaFile.setLastModified(lastModified + 2000);
+        assertEquals("bbb.Foo", new DotJavaFileCache(new RecordingLog(), cacheFile)
+                .parse(javaFile).getClassName());
+    }
+
+    @Test
+    public void testJtregFlagCached() throws IOException {
+        File cacheFile = new File(temporaryFolder.getRoot(), "dotjavafiles");
+        File javaFile = write("Bar.java", "/* @test */\nclass Bar {}\n");
+        DotJavaFileCache cache = new DotJavaFileCache(new RecordingLog(), cacheFile);
+        cache.parse(javaFile);
+        cache.write();
+
+        DotJavaFile cached = new DotJavaFileCache(new RecordingLog(), cacheFile).parse(javaFile);
+        assertEquals("Bar", cached.getClassName());
+        assertTrue(cached.isJtreg());
+    }
+
+    @Test
+    public void testUnreadableCacheDiscarded() throws IOException {
+        File cacheFile = write("dotjavafiles", "not a cache");
+        File javaFile = write("Baz.java", "package ccc;\nclass Baz {}\n");
+        DotJavaFileCache cache = new DotJavaFileCache(new RecordingLog(), cacheFile);
+        DotJavaFile dotJavaFile = cache.parse(javaFile);
+        assertEquals("ccc.Baz", dotJavaFile.getClassName());
+        assertFalse(dotJavaFile.isJtreg());
+
+        cache.write();
+        assertEquals("ccc.Baz", new DotJavaFileCache(new RecordingLog(), cacheFile)
+                .parse(javaFile).getClassName());
+    }
+
+    private File write(String name, String content) throws IOException {
+        File file = new File(temporaryFolder.getRoot(), name);
+        Files.write(content, file, Charsets.UTF_8);
+        return file;
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package vogar;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import java.io.File;
+import java.io.IOException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@RunWith(JUnit4.class)
+public class DotJavaFileTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testPackageAndClass() throws IOException {
+        DotJavaFile dotJavaFile = DotJavaFile.parse(write("Foo.java",
+                "/*\n"
+                + " * This class is licensed; package names.* are not;\n"
+                + " */\n"
+                + "// package commented.out;\n"
+                + "package a.b;\n"
+                + "\n"
+                + "import java.util.List;\n"
+                + "\n"
+                + "public final class Foo {\n"
+                + "    public static void main(String[] args) {}\n"
+                + "}\n"));
+        assertEquals("a.b.Foo", dotJavaFile.getClassName());
+        assertEquals("a.b.Foo", dotJavaFile.getActionName());
+        assertFalse(dotJavaFile.isJtreg());
+    }
+
+    @Test
+    public void testDefaultPackage() throws IOException {
+        DotJavaFile dotJavaFile = DotJavaFile.parse(write("Main.java",
+                "class Main {\n"
+                + "    public static void main(String[] args) {}\n"
+                + "}\n"));
+        assertEquals("Main", dotJavaFile.getClassName());
+    }
+
+    @Test
+    public void testJtregTag() throws IOException {
+        DotJavaFile dotJavaFile = DotJavaFile.parse(write("Bar.java",
+                "/*\n"
+                + " * @test\n"
+                + " * @summary checks something\n"
+                + " */\n"
+                + "package c;\n"
+                + "public class Bar {\n"
+                + "}\n"));
+        assertEquals("c.Bar", dotJavaFile.getClassName());
+        assertTrue(dotJavaFile.isJtreg());
+    }
+
+    @Test
+    public void testTagsAfterTypeDeclarationIgnored() throws IOException {
+        DotJavaFile dotJavaFile = DotJavaFile.parse(write("Baz.java",
+                "package d;\n"
+                + "interface Baz {\n"
+                + "    /* @test */\n"
+                + "}\n"));
+        assertEquals("d.Baz", dotJavaFile.getClassName());
+        assertFalse(dotJavaFile.isJtreg());
+    }
+
+    @Test
+    public void testNoTypeDeclaration() throws IOException {
+        try {
+            DotJavaFile.parse(write("package-info.java",
+                    "/** The class of things. */\n"
+                    + "package e;\n"));
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    private File write(String name, String content) throws IOException {
+        File file = new File(temporaryFolder.getRoot(), name);
+        Files.write(content, file, Charsets.UTF_8);
+        return file;
+    }
+}
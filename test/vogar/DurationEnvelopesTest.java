@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package vogar;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import vogar.testing.RecordingLog;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+@RunWith(JUnit4.class)
+public class DurationEnvelopesTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private final List<List<Outcome>> runs = new ArrayList<List<Outcome>>();
+
+    @Test
+    public void testEnvelopeIs99thPercentile() throws IOException {
+        for (int i = 1; i <= 100; i++) {
+            record(i - 1, "a.B#many", Result.SUCCESS, i);
+        }
+        record(0, "a.B#few", Result.SUCCESS, 7);
+        record(1, "a.B#few", Result.SUCCESS, 9);
+        record(2, "a.B#few", Result.SUCCESS, 8);
+        DurationEnvelopes envelopes = newDurationEnvelopes();
+        assertEquals(99000L, (long) envelopes.get("a.B#many"));
+        assertEquals(9000L, (long) envelopes.get("a.B#few"));
+    }
+
+    @Test
+    public void testOutcomesWithFewSuccessesHaveNoEnvelope() throws IOException {
+        for (int i = 0; i < DurationEnvelopes.MIN_SAMPLES - 1; i++) {
+            record(i, "a.B#c", Result.SUCCESS, 5);
+        }
+        record(DurationEnvelopes.MIN_SAMPLES - 1, "a.B#c", Result.EXEC_FAILED, 5);
+        record(DurationEnvelopes.MIN_SAMPLES, "a.B#c", Result.EXEC_TIMEOUT, 5);
+        for (int i = 0; i < DurationEnvelopes.MIN_SAMPLES; i++) {
+            record(i, "a.B#d", Result.SUCCESS, 5);
+        }
+        DurationEnvelopes envelopes = newDurationEnvelopes();
+        assertNull(envelopes.get("a.B#c"));
+        assertEquals(5000L, (long) envelopes.get("a.B#d"));
+    }
+
+    @Test
+    public void testReadFindsOnlyTheActionsOutcomes() throws IOException {
+        String[] names = { "a.Foo", "a.Foo#test", "a.Foo$Inner#test", "a.Foo.Bar#test",
+                "a.FooBar#test", "a.Fo#test", "a.Fop#test", "b.Foo#test" };
+        for (int i = 0; i < DurationEnvelopes.MIN_SAMPLES; i++) {
+            for (String name : names) {
+                record(i, name, Result.SUCCESS, 5);
+            }
+        }
+        Map<String, Long> expected = new HashMap<String, Long>();
+        expected.put("a.Foo", 5000L);
+        expected.put("a.Foo#test", 5000L);
+        expected.put("a.Foo$Inner#test", 5000L);
+        expected.put("a.Foo.Bar#test", 5000L);
+        assertEquals(expected, newDurationEnvelopes().read("a.Foo"));
+        assertEquals(Collections.singletonMap("a.FooBar#test", 5000L),
+                newDurationEnvelopes().read("a.FooBar"));
+        assertEquals(Collections.<String, Long>emptyMap(), newDurationEnvelopes().read("c"));
+    }
+
+    @Test
+    public void testAdaptiveTimeout() {
+        long second = TimeUnit.SECONDS.toNanos(1);
+        assertEquals(1 + Driver.ADAPTIVE_TIMEOUT_FLOOR_SECONDS,
+                Driver.adaptiveTimeoutSeconds(0, 600));
+        assertEquals(1 + Driver.ADAPTIVE_TIMEOUT_FLOOR_SECONDS,
+                Driver.adaptiveTimeoutSeconds(second / Driver.ADAPTIVE_TIMEOUT_FACTOR - 1, 600));
+        assertEquals(2 * Driver.ADAPTIVE_TIMEOUT_FACTOR + 1
+                + Driver.ADAPTIVE_TIMEOUT_FLOOR_SECONDS,
+                Driver.adaptiveTimeoutSeconds(2 * second, 600));
+        assertEquals(600, Driver.adaptiveTimeoutSeconds(1000 * second, 600));
+    }
+
+    /**
+     * Records that {@code outcomeName} took {@code wallTimeMicros} in the
+     * given run. The history keeps microseconds.
+     */
+    private void record(int run, String outcomeName, Result result, long wallTimeMicros) {
+        while (runs.size() <= run) {
+            runs.add(new ArrayList<Outcome>());
+        }
+        runs.get(run).add(new Outcome(outcomeName, result, "", wallTimeMicros * 1000, -1, null));
+    }
+
+    private DurationEnvelopes newDurationEnvelopes() throws IOException {
+        if (!runs.isEmpty()) {
+            OutcomeHistory history = new OutcomeHistory(temporaryFolder.getRoot());
+            for (int run = 0; run < runs.size(); run++) {
+                history.append(run, runs.get(run));
+            }
+            runs.clear();
+        }
+        return new DurationEnvelopes(new OutcomeStore(new RecordingLog(),
+                temporaryFolder.getRoot(), false, null, new Date(),
+                Collections.<String, String>emptyMap()));
+    }
+}
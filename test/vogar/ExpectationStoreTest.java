@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package vogar;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import vogar.testing.RecordingLog;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@RunWith(JUnit4.class)
+public class ExpectationStoreTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testMalformedPatternReportedAgainstFile() throws IOException {
+        File file = write("[{\"name\": \"a.B#c\", \"pattern\": \".*(unclosed.*\"}]");
+        try {
+            parse(file);
+            fail();
+        } catch (IllegalArgumentException expected) {
+            assertTrue(expected.getMessage(), expected.getMessage().contains("a.B#c"));
+            assertTrue(expected.getMessage(), expected.getMessage().contains(file.getPath()));
+        }
+    }
+
+    @Test
+    public void testPatternsMatch() throws IOException {
+        ExpectationStore store = parse(write("["
+                + "{\"name\": \"a.B#c\", \"result\": \"EXEC_FAILED\", \"pattern\": \".*b+d.*\"},"
+                + "{\"name\": \"a.B#d\", \"result\": \"EXEC_FAILED\", \"substring\": \"(b\"}"
+                + "]"));
+        assertTrue(store.get("a.B#c").matches(new Outcome("a.B#c", Result.EXEC_FAILED,
+                "abbd\ne")));
+        assertTrue(store.get("a.B#d").matches(new Outcome("a.B#d", Result.EXEC_FAILED,
+                "a(b\ne")));
+        assertEquals(Expectation.SUCCESS, store.get("a.B#e"));
+    }
+
+    @Test
+    public void testFailuresTriedInDeclarationOrder() throws IOException {
+        ExpectationStore store = parse(write("["
+                + failure("literal", "\"substring\": \"boom\"") + ","
+                + failure("regex", "\"pattern\": \".*b[o]+m.*\"") + ","
+                + failure("shorter", "\"substring\": \"bo\"") + ","
+                + failure("anything", "\"pattern\": \"(?s).*\"")
+                + "]"));
+        assertEquals("literal", failureFor(store, "x\nboom\ny"));
+        assertEquals("regex", failureFor(store, "bom"));
+        assertEquals("shorter", failureFor(store, "bob"));
+        assertEquals("anything", failureFor(store, "nothing in common"));
+    }
+
+    @Test
+    public void testAlwaysCandidateBeforeLiteral() throws IOException {
+        ExpectationStore store = parse(write("["
+                + failure("regex", "\"pattern\": \".*b[o]+m.*\"") + ","
+                + failure("literal", "\"substring\": \"boom\"")
+                + "]"));
+        assertEquals("regex", failureFor(store, "boom"));
+    }
+
+    @Test
+    public void testNameBeforeFailureBeforePackage() throws IOException {
+        ExpectationStore store = parse(write("["
+                + "{\"name\": \"a.B#c\", \"description\": \"exact\"},"
+                + "{\"name\": \"a.B\", \"description\": \"class\"},"
+                + failure("failure", "\"substring\": \"boom\"")
+                + "]"));
+        assertEquals("exact", store.get(failed("a.B#c", "boom")).getDescription());
+        assertEquals("failure", store.get(failed("a.B#d", "boom")).getDescription());
+        assertEquals("class", store.get(failed("a.B#d", "bang")).getDescription());
+        assertEquals(Expectation.SUCCESS, store.get(failed("a.C#d", "bang")));
+    }
+
+    @Test
+    public void testNameLookupMatchesLinearSearch() throws IOException {
+        List<String> names = Arrays.asList(
+                "a", "a.b", "a.b.C", "a.b.C#m", "a.bc", "x.Y#z");
+        StringBuilder json = new StringBuilder("[");
+        for (String name : names) {
+            json.append(json.length() > 1 ? "," : "")
+                    .append("{\"name\": \"").append(name)
+                    .append("\", \"description\": \"").append(name).append("\"}");
+        }
+        ExpectationStore store = parse(write(json.append("]").toString()));
+
+        for (String name : Arrays.asList("a", "a.b.C#m", "a.b.C#n", "a.b.Cd", "a.b.D",
+                "a.b.C$Inner#m", "a.bc.X", "a.bcd", "ab", "a#m", "x.Y", "x.Y#z", "x.Y#zz",
+                "b", "")) {
+            String expected = linearGetByNameOrPackage(names, name);
+            Expectation actual = store.get(name);
+            assertEquals(name, expected != null ? expected : "",
+                    actual == Expectation.SUCCESS ? "" : actual.getDescription());
+        }
+    }
+
+    /** The search that the name trie replaced. */
+    private static String linearGetByNameOrPackage(List<String> names, String name) {
+        while (true) {
+            if (names.contains(name)) {
+                return name;
+            }
+            int dotOrHash = Math.max(name.lastIndexOf('.'), name.lastIndexOf('#'));
+            if (dotOrHash == -1) {
+                return null;
+            }
+            name = name.substring(0, dotOrHash);
+        }
+    }
+
+    private static String failure(String description, String pattern) {
+        return "{\"failure\": \"" + description + "\", \"result\": \"EXEC_FAILED\", "
+                + pattern + ", \"description\": \"" + description + "\"}";
+    }
+
+    private static String failureFor(ExpectationStore store, String output) {
+        return store.get(failed("a.B#c", output)).getDescription();
+    }
+
+    private static Outcome failed(String name, String output) {
+        return new Outcome(name, Result.EXEC_FAILED, output);
+    }
+
+    private File write(String content) throws IOException {
+        File file = temporaryFolder.newFile("expectations.txt");
+        Files.write(content, file, Charsets.UTF_8);
+        return file;
+    }
+
+    private static ExpectationStore parse(File file) throws IOException {
+        return ExpectationStore.parse(new RecordingLog(), Collections.singleton(file),
+                ModeId.JVM, Variant.DEFAULT);
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package vogar;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(JUnit4.class)
+public class FlakinessAnalyzerTest {
+
+    private static final Outcome FAILURE = new Outcome("a", Result.EXEC_FAILED, "failed");
+
+    @Test
+    public void testTransitionRate() {
+        assertEquals(0.0, FlakinessAnalyzer.transitionRate(history("")), 0);
+        assertEquals(0.0, FlakinessAnalyzer.transitionRate(history("P")), 0);
+        assertEquals(0.0, FlakinessAnalyzer.transitionRate(history("PPPP")), 0);
+        assertEquals(0.0, FlakinessAnalyzer.transitionRate(history("FFFF")), 0);
+        assertEquals(1.0, FlakinessAnalyzer.transitionRate(history("PFPF")), 0);
+        assertEquals(0.25, FlakinessAnalyzer.transitionRate(history("PPPFF")), 0);
+    }
+
+    @Test
+    public void testThreshold() {
+        // One transition in four pairs.
+        List<OutcomeHistory.Entry> history = history("PPPFF");
+        assertTrue(new FlakinessAnalyzer(0.25).shouldRerun(FAILURE, history));
+        assertFalse(new FlakinessAnalyzer(0.3).shouldRerun(FAILURE, history));
+    }
+
+    @Test
+    public void testMinimumHistory() {
+        assertFalse(new FlakinessAnalyzer(0).shouldRerun(FAILURE, history("PFP")));
+        assertTrue(new FlakinessAnalyzer(0).shouldRerun(FAILURE, history("PFPF")));
+    }
+
+    @Test
+    public void testOnlyNewFailuresAreRerun() {
+        FlakinessAnalyzer analyzer = new FlakinessAnalyzer(0);
+        // It failed last time too, so this failure isn't new.
+        assertFalse(analyzer.shouldRerun(FAILURE, history("FPFP")));
+        assertFalse(analyzer.shouldRerun(
+                new Outcome("a", Result.SUCCESS, "passed"), history("PFPF")));
+    }
+
+    /**
+     * Returns a history with a passing result for each 'P' and a failing one
+     * for each 'F', most recent first.
+     */
+    private static List<OutcomeHistory.Entry> history(String results) {
+        List<OutcomeHistory.Entry> history = new ArrayList<>();
+        for (int i = 0; i < results.length(); i++) {
+            Result result = results.charAt(i) == 'P' ? Result.SUCCESS : Result.EXEC_FAILED;
+            history.add(new OutcomeHistory.Entry(results.length() - i,
+                    Collections.<String, String>emptyMap(), result, -1, -1));
+        }
+        return history;
+    }
+}
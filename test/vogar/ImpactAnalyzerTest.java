@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package vogar;
+
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Files;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import vogar.testing.RecordingLog;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(JUnit4.class)
+public class ImpactAnalyzerTest {
+
+    /** The action's class, which refers to {@link Middle}. */
+    static class Root {
+        Middle middle;
+    }
+
+    /** A classpath class that refers to {@link Leaf}. */
+    static class Middle {
+        Leaf leaf() {
+            return null;
+        }
+    }
+
+    /** A classpath class that is only reachable through {@link Middle}. */
+    static class Leaf {}
+
+    /** A classpath class that the action doesn't refer to. */
+    static class Unrelated {}
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File classpathDir;
+    private File resultsDir;
+    private File actionJar;
+    private Action action;
+
+    @Before
+    public void setUp() throws IOException {
+        classpathDir = temporaryFolder.newFolder("classpath");
+        resultsDir = temporaryFolder.newFolder("results");
+        for (Class<?> c : Arrays.asList(Middle.class, Leaf.class, Unrelated.class)) {
+            File file = new File(classpathDir, c.getName().replace('.', '/') + ".class");
+            file.getParentFile().mkdirs();
+            Files.write(classBytes(c), file);
+        }
+
+        actionJar = temporaryFolder.newFile("action.jar");
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(actionJar))) {
+            out.putNextEntry(new ZipEntry(Root.class.getName().replace('.', '/') + ".class"));
+            out.write(classBytes(Root.class));
+            out.closeEntry();
+        }
+        action = new Action("vogar.Root", Root.class.getName(), null, null, null);
+    }
+
+    @Test
+    public void testDependenciesAreWalkedTransitively() throws IOException {
+        assertTrue(isImpactedBy(Leaf.class.getName()));
+        assertTrue(isImpactedBy(Middle.class.getName()));
+        assertFalse(isImpactedBy(Unrelated.class.getName()));
+    }
+
+    @Test
+    public void testPackagesMatchByPrefix() throws IOException {
+        assertTrue(isImpactedBy("vogar.*"));
+        assertFalse(isImpactedBy("vogar.android.*"));
+        // A package's name must match in full, not just as a prefix of another.
+        assertFalse(isImpactedBy("voga.*"));
+    }
+
+    @Test
+    public void testFingerprintRoundTrip() throws IOException {
+        ImpactAnalyzer first = newChangedSinceAnalyzer();
+        assertTrue(first.isImpacted(action, actionJar));
+        Set<String> ran = Collections.singleton(action.getName());
+        first.writeFingerprints(ran, ran);
+
+        assertFalse(newChangedSinceAnalyzer().isImpacted(action, actionJar));
+
+        // Changing a class that the action depends on indirectly changes its fingerprint.
+        Files.write(classBytes(Unrelated.class),
+                new File(classpathDir, Leaf.class.getName().replace('.', '/') + ".class"));
+        assertTrue(newChangedSinceAnalyzer().isImpacted(action, actionJar));
+    }
+
+    @Test
+    public void testFailingActionIsSelectedAgain() throws IOException {
+        ImpactAnalyzer first = newChangedSinceAnalyzer();
+        assertTrue(first.isImpacted(action, actionJar));
+        first.writeFingerprints(Collections.<String>emptySet(),
+                Collections.singleton(action.getName()));
+
+        assertTrue(newChangedSinceAnalyzer().isImpacted(action, actionJar));
+    }
+
+    private boolean isImpactedBy(String changed) throws IOException {
+        ImpactAnalyzer analyzer = newAnalyzer(false, Collections.singletonList(changed));
+        return analyzer.isImpacted(action, actionJar);
+    }
+
+    private ImpactAnalyzer newChangedSinceAnalyzer() throws IOException {
+        return newAnalyzer(true, Collections.<String>emptyList());
+    }
+
+    private ImpactAnalyzer newAnalyzer(boolean changedSince, List<String> impactedBy)
+            throws IOException {
+        ImpactAnalyzer analyzer = new ImpactAnalyzer(new RecordingLog(), null,
+                temporaryFolder.getRoot(), resultsDir, changedSince, impactedBy);
+        analyzer.indexClasspath(Classpath.of(classpathDir));
+        return analyzer;
+    }
+
+    private static byte[] classBytes(Class<?> c) throws IOException {
+        String resource = "/" + c.getName().replace('.', '/') + ".class";
+        try (InputStream in = c.getResourceAsStream(resource)) {
+            return ByteStreams.toByteArray(in);
+        }
+    }
+}
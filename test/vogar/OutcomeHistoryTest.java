@@ -0,0 +1,186 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package vogar;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(JUnit4.class)
+public class OutcomeHistoryTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testAppendAndGet() throws IOException {
+        File directory = temporaryFolder.getRoot();
+        OutcomeHistory history = new OutcomeHistory(directory);
+        history.append(1000, Arrays.asList(
+                outcome("a", Result.SUCCESS, 5000000),
+                outcome("b", Result.EXEC_FAILED, -1)));
+        history.append(2000, Collections.singletonList(
+                outcome("a", Result.EXEC_TIMEOUT, 7000000)));
+
+        // Read through a fresh instance to check what was persisted.
+        OutcomeHistory reopened = new OutcomeHistory(directory);
+        List<OutcomeHistory.Entry> a = reopened.get("a", 10);
+        assertEquals(2, a.size());
+        assertEquals(2000, a.get(0).getDate());
+        assertEquals(Result.EXEC_TIMEOUT, a.get(0).getResult());
+        assertEquals(7000000, a.get(0).getWallTimeNanos());
+        assertEquals(1000, a.get(1).getDate());
+        assertEquals(Result.SUCCESS, a.get(1).getResult());
+
+        List<OutcomeHistory.Entry> b = reopened.get("b", 10);
+        assertEquals(1, b.size());
+        assertEquals(Result.EXEC_FAILED, b.get(0).getResult());
+        assertEquals(-1, b.get(0).getWallTimeNanos());
+
+        assertEquals(1, reopened.get("a", 1).size());
+        assertTrue(reopened.get("c", 10).isEmpty());
+    }
+
+    @Test
+    public void testCompactionRetainsNewestRecords() throws IOException {
+        File directory = temporaryFolder.getRoot();
+        OutcomeHistory history = new OutcomeHistory(directory);
+        int runs = OutcomeHistory.HISTORY_DEPTH + OutcomeHistory.COMPACTION_INTERVAL;
+        for (int run = 0; run < runs; run++) {
+            history.append(run, Collections.singletonList(
+                    outcome("a", run % 2 == 0 ? Result.SUCCESS : Result.EXEC_FAILED, run * 1000)));
+        }
+
+        List<OutcomeHistory.Entry> entries =
+                new OutcomeHistory(directory).get("a", Integer.MAX_VALUE);
+        assertEquals(OutcomeHistory.HISTORY_DEPTH, entries.size());
+        for (int i = 0; i < entries.size(); i++) {
+            int run = runs - 1 - i;
+            assertEquals(run, entries.get(i).getDate());
+            assertEquals(run * 1000, entries.get(i).getWallTimeNanos());
+        }
+    }
+
+    @Test
+    public void testGetSuccessfulWallTimes() throws IOException {
+        OutcomeHistory history = new OutcomeHistory(temporaryFolder.getRoot());
+        history.append(1000, Arrays.asList(
+                outcome("p.A#a", Result.SUCCESS, 1000),
+                outcome("p.A#b", Result.EXEC_FAILED, 2000),
+                outcome("q.B#a", Result.SUCCESS, 3000)));
+        history.append(2000, Arrays.asList(
+                outcome("p.A#a", Result.EXEC_TIMEOUT, 4000),
+                outcome("p.A#b", Result.SUCCESS, -1)));
+        history.append(3000, Collections.singletonList(
+                outcome("p.A#a", Result.SUCCESS, 5000)));
+
+        Map<String, List<Long>> wallTimes = history.getSuccessfulWallTimeNanos("p.", 10);
+        assertEquals(Collections.singleton("p.A#a"), wallTimes.keySet());
+        assertEquals(Arrays.asList(5000L, 1000L), wallTimes.get("p.A#a"));
+        assertEquals(Arrays.asList(5000L),
+                history.getSuccessfulWallTimeNanos("p.", 2).get("p.A#a"));
+    }
+
+    @Test
+    public void testAppendReadsConcurrentAppends() throws IOException {
+        File directory = temporaryFolder.getRoot();
+        OutcomeHistory first = new OutcomeHistory(directory);
+        OutcomeHistory second = new OutcomeHistory(directory);
+        first.append(1000, Collections.singletonMap("mode", "host"),
+                Collections.singletonList(outcome("a", Result.SUCCESS, 1000)));
+        second.append(2000, Collections.singletonMap("mode", "device"),
+                Collections.singletonList(outcome("a", Result.EXEC_FAILED, 2000)));
+        first.append(3000, Collections.singletonMap("mode", "host"),
+                Collections.singletonList(outcome("b", Result.SUCCESS, 3000)));
+
+        OutcomeHistory reopened = new OutcomeHistory(directory);
+        List<OutcomeHistory.Entry> a = reopened.get("a", 10);
+        assertEquals(2, a.size());
+        assertEquals(Collections.singletonMap("mode", "device"), a.get(0).getRunMetadata());
+        assertEquals(Collections.singletonMap("mode", "host"), a.get(1).getRunMetadata());
+        assertEquals(1, reopened.get("b", 10).size());
+    }
+
+    @Test
+    public void testIncompleteIndexDeltaIgnored() throws IOException {
+        File directory = temporaryFolder.getRoot();
+        OutcomeHistory history = new OutcomeHistory(directory);
+        history.append(1000, Collections.singletonList(outcome("a", Result.SUCCESS, 1000)));
+        File index = new File(directory, "history.idx");
+        long length = index.length();
+        history.append(2000, Collections.singletonList(outcome("a", Result.SUCCESS, 2000)));
+
+        // Simulate a run that was killed while appending its delta.
+        RandomAccessFile file = new RandomAccessFile(index, "rw");
+        file.setLength(index.length() - 1);
+        file.close();
+        assertEquals(1, new OutcomeHistory(directory).get("a", 10).size());
+
+        OutcomeHistory recovered = new OutcomeHistory(directory);
+        recovered.append(3000, Collections.singletonList(outcome("a", Result.SUCCESS, 3000)));
+        List<OutcomeHistory.Entry> a = new OutcomeHistory(directory).get("a", 10);
+        assertEquals(2, a.size());
+        assertEquals(3000, a.get(0).getDate());
+        assertEquals(1000, a.get(1).getDate());
+        assertTrue(index.length() > length);
+    }
+
+    @Test
+    public void testImportsJsonResults() throws IOException {
+        File directory = temporaryFolder.getRoot();
+        File older = new File(directory, "2011-01-01T00:00:00UTC.json");
+        Files.write("{\"a\":{\"result\":\"SUCCESS\",\"wallTimeNanos\":1000}}",
+                older, Charsets.UTF_8);
+        older.setLastModified(1000000);
+        File newer = new File(directory, "2011-01-02T00:00:00UTC.json");
+        Files.write("{\"a\":{\"result\":\"EXEC_FAILED\"},\"b\":{\"result\":\"SUCCESS\"}}",
+                newer, Charsets.UTF_8);
+        newer.setLastModified(2000000);
+
+        OutcomeHistory history = new OutcomeHistory(directory);
+        List<OutcomeHistory.Entry> a = history.get("a", 10);
+        assertEquals(2, a.size());
+        assertEquals(Result.EXEC_FAILED, a.get(0).getResult());
+        assertEquals(2000000, a.get(0).getDate());
+        assertEquals(Collections.singletonMap("importedFrom", newer.getName()),
+                a.get(0).getRunMetadata());
+        assertEquals(Result.SUCCESS, a.get(1).getResult());
+        assertEquals(1000, a.get(1).getWallTimeNanos());
+        assertEquals(1, history.get("b", 10).size());
+
+        // The import happens only once.
+        assertEquals(2, new OutcomeHistory(directory).get("a", 10).size());
+    }
+
+    private static Outcome outcome(String name, Result result, long wallTimeNanos) {
+        return new Outcome(name, result, Collections.<String>emptyList(), wallTimeNanos, -1, null);
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package vogar;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(JUnit4.class)
+public class OutcomeTest {
+
+    @Test
+    public void testOutputIsSanitized() {
+        Outcome outcome = new Outcome("Foo#testBar", Result.EXEC_FAILED, "a\r\nb\rc\u0000d");
+        assertEquals("a\nb\ncU+0000d", outcome.getOutput());
+        assertEquals("a\nb\ncU+0000d", outcome.getOutput());
+        assertEquals(3, outcome.getOutputLines().size());
+    }
+
+    @Test
+    public void testRenamedOutcome() {
+        Outcome outcome = new Outcome("testBar", Result.EXEC_FAILED, "a\r\nb", 5, 3, null);
+        Outcome renamed = new Outcome("Foo#testBar", outcome);
+        assertEquals("Foo#testBar", renamed.getName());
+        assertEquals(Result.EXEC_FAILED, renamed.getResult());
+        assertEquals("a\nb", renamed.getOutput());
+        assertEquals(5, renamed.getWallTimeNanos());
+        assertEquals(3, renamed.getCpuTimeNanos());
+        assertEquals(outcome.getDate(), renamed.getDate());
+    }
+
+    @Test
+    public void testWithoutOutput() {
+        Outcome outcome = new Outcome("Foo#testBar", Result.SUCCESS, "output", 5, 3, null);
+        Outcome withoutOutput = outcome.withoutOutput();
+        assertEquals("Foo#testBar", withoutOutput.getName());
+        assertEquals(Result.SUCCESS, withoutOutput.getResult());
+        assertEquals("", withoutOutput.getOutput());
+        assertEquals(5, withoutOutput.getWallTimeNanos());
+        assertEquals("output", outcome.getOutput());
+    }
+
+    /**
+     * Outcomes that print the same stack trace share its storage, so a run
+     * retaining many of them costs a fraction of the output's size.
+     */
+    @Test
+    public void testRepeatedOutputIsCompact() {
+        StringBuilder stackTrace = new StringBuilder("java.lang.AssertionError: expected\n");
+        while (stackTrace.length() < 8192) {
+            stackTrace.append("\tat com.example.Foo.frame").append(stackTrace.length())
+                    .append("(Foo.java:42)\n");
+        }
+        int count = 20000;
+        long uncompactBytes = (long) count * stackTrace.length();
+
+        List<Outcome> outcomes = new ArrayList<Outcome>(count);
+        long before = usedMemory();
+        for (int i = 0; i < count; i++) {
+            // A new string each time, as if it had just been read from the target.
+            outcomes.add(new Outcome("Foo#test" + i, Result.EXEC_FAILED,
+                    new String(stackTrace)));
+        }
+        long retained = usedMemory() - before;
+
+        assertEquals(count, outcomes.size());
+        assertTrue("retained " + retained + " bytes", retained < uncompactBytes / 10);
+    }
+
+    private static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package vogar;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import javax.xml.parsers.DocumentBuilderFactory;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import vogar.monitor.HostMonitor;
+import vogar.monitor.TargetMonitor;
+import vogar.target.OutcomeTimer;
+import vogar.target.ResourceUsageSampler;
+import vogar.testing.RecordingLog;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(JUnit4.class)
+public class XmlReportPrinterTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    /**
+     * Follows an outcome's time and resources from where the target measures
+     * them, through the monitor protocol and the host's Outcome, into the
+     * JUnit XML report.
+     */
+    @Test
+    public void testTimesAndResourcesRoundTrip() throws Exception {
+        OutcomeTimer timer = new OutcomeTimer();
+        ResourceUsageSampler sampler = new ResourceUsageSampler();
+        timer.start();
+        sampler.start();
+        byte[][] garbage = new byte[64][];
+        long end = System.nanoTime() + 20000000;
+        for (int i = 0; System.nanoTime() < end; i++) {
+            garbage[i % garbage.length] = new byte[16 * 1024];
+        }
+        sampler.stop();
+        timer.stop();
+
+        ByteArrayOutputStream events = new ByteArrayOutputStream();
+        TargetMonitor targetMonitor = TargetMonitor.forPrintStream(new PrintStream(events));
+        targetMonitor.outcomeStarted("a.B#c");
+        targetMonitor.output("some output\n");
+        targetMonitor.outcomeFinished(Result.SUCCESS, timer.getWallTimeNanos(),
+                timer.getCpuTimeNanos(), sampler.getResourceUsage());
+        targetMonitor.completedNormally(true);
+        targetMonitor.close();
+
+        final List<Outcome> outcomes = new ArrayList<Outcome>();
+        HostMonitor hostMonitor = new HostMonitor(new RecordingLog(), new HostMonitor.Handler() {
+            @Override public void start(String outcomeName) {}
+            @Override public void finish(Outcome outcome) {
+                outcomes.add(outcome);
+            }
+            @Override public void output(String outcomeName, String output) {}
+            @Override public void print(String string) {}
+            @Override public void heartbeat(String outcomeName, long cpuTimeNanos, boolean idle,
+                    String threadStates, String threadDump) {}
+        });
+        assertTrue(hostMonitor.followStream(new ByteArrayInputStream(events.toByteArray())));
+
+        assertEquals(1, outcomes.size());
+        Outcome outcome = outcomes.get(0);
+        assertEquals("a.B#c", outcome.getName());
+        assertEquals(Result.SUCCESS, outcome.getResult());
+        assertEquals("some output\n", outcome.getOutput());
+        assertTrue(outcome.getWallTimeNanos() >= 20000000);
+        assertEquals(timer.getWallTimeNanos(), outcome.getWallTimeNanos());
+        assertEquals(timer.getCpuTimeNanos(), outcome.getCpuTimeNanos());
+        ResourceUsage expected = sampler.getResourceUsage();
+        ResourceUsage actual = outcome.getResourceUsage();
+        assertNotNull(actual);
+        assertEquals(expected.getThreadDelta(), actual.getThreadDelta());
+        assertEquals(expected.getHeapDeltaBytes(), actual.getHeapDeltaBytes());
+        assertEquals(expected.getGcCount(), actual.getGcCount());
+        assertEquals(expected.getGcTimeMillis(), actual.getGcTimeMillis());
+        assertEquals(expected.getAllocatedBytes(), actual.getAllocatedBytes());
+        if (actual.getAllocatedBytes() != -1) {
+            assertTrue(actual.getAllocatedBytes() >= garbage.length * 16 * 1024);
+        }
+
+        File directory = temporaryFolder.getRoot();
+        XmlReportPrinter printer = new XmlReportPrinter(new RecordingLog(), directory, null,
+                new Date());
+        printer.addOutcome(outcome, Expectation.SUCCESS);
+        assertEquals(1, printer.finish());
+
+        Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder()
+                .parse(new File(directory, "TEST-a.B.xml"));
+        String seconds = String.format(Locale.US, "%.3f", outcome.getWallTimeNanos() / 1e9);
+        Element suite = document.getDocumentElement();
+        assertEquals(XmlReportConstants.TESTSUITE, suite.getTagName());
+        assertEquals(seconds, suite.getAttribute(XmlReportConstants.ATTR_TIME));
+        Element testCase = (Element) suite.getElementsByTagName(XmlReportConstants.TESTCASE)
+                .item(0);
+        assertEquals("c", testCase.getAttribute(XmlReportConstants.ATTR_NAME));
+        assertEquals(seconds, testCase.getAttribute(XmlReportConstants.ATTR_TIME));
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package vogar.monitor;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.ByteStreams;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import vogar.Outcome;
+import vogar.testing.RecordingLog;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@RunWith(JUnit4.class)
+public class HostMonitorTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private final List<Outcome> outcomes = new ArrayList<Outcome>();
+
+    @Test
+    public void testSpillFileClosedWhenTargetDiesMidOutcome() throws IOException {
+        assertFalse(newMonitor().followStream(stream(
+                "//00xx{\"outcome\":\"a.B#c\"}\n0123456789\n")));
+        assertTrue(outcomes.isEmpty());
+        assertEquals("0123456789\n", readSpill("a.B#c"));
+    }
+
+    @Test
+    public void testSpillFileClosedWhenOutcomeReplaced() throws IOException {
+        newMonitor().followStream(stream("//00xx{\"outcome\":\"a.B#c\"}\n0123456789\n"
+                + "//00xx{\"outcome\":\"a.B#d\"}\nabcdefghij\n"
+                + "//00xx{\"result\":\"SUCCESS\"}\n"));
+        assertEquals(1, outcomes.size());
+        assertEquals("0123456789\n", readSpill("a.B#c"));
+        assertEquals("abcdefghij\n", readSpill("a.B#d"));
+    }
+
+    @Test
+    public void testSpillFileClosedWhenReadFails() throws IOException {
+        InputStream failing = new InputStream() {
+            @Override public int read() throws IOException {
+                throw new IOException("connection reset");
+            }
+        };
+        try {
+            newMonitor().followStream(new SequenceInputStream(
+                    stream("//00xx{\"outcome\":\"a.B#c\"}\n0123456789\n"), failing));
+            fail();
+        } catch (IOException expected) {
+        }
+        assertEquals("0123456789\n", readSpill("a.B#c"));
+    }
+
+    private HostMonitor newMonitor() {
+        return new HostMonitor(new RecordingLog(), new HostMonitor.Handler() {
+            @Override public void start(String outcomeName) {}
+            @Override public void finish(Outcome outcome) {
+                outcomes.add(outcome);
+            }
+            @Override public void output(String outcomeName, String output) {}
+            @Override public void print(String string) {}
+            @Override public void heartbeat(String outcomeName, long cpuTimeNanos, boolean idle,
+                    String threadStates, String threadDump) {}
+        }, 2, 2, temporaryFolder.getRoot());
+    }
+
+    private static InputStream stream(String content) {
+        return new ByteArrayInputStream(content.getBytes(Charsets.UTF_8));
+    }
+
+    /** Reads a spill file, which fails unless it was closed. */
+    private String readSpill(String outcomeName) throws IOException {
+        File file = new File(temporaryFolder.getRoot(), outcomeName + ".0.txt.gz");
+        try (InputStream in = new GZIPInputStream(new FileInputStream(file))) {
+            return new String(ByteStreams.toByteArray(in), Charsets.UTF_8);
+        }
+    }
+}
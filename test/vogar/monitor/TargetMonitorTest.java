@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package vogar.monitor;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UnsupportedEncodingException;
+import java.util.EnumMap;
+import java.util.Map;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import vogar.ResourceUsage;
+import vogar.Result;
+
+import static org.junit.Assert.assertEquals;
+
+@RunWith(JUnit4.class)
+public class TargetMonitorTest {
+
+    private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    private final TargetMonitor monitor = TargetMonitor.forPrintStream(newPrintStream(bytes));
+
+    private static PrintStream newPrintStream(ByteArrayOutputStream bytes) {
+        try {
+            return new PrintStream(bytes, false, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    @Test
+    public void testEventsEncodedAsGsonEncodesThem() throws UnsupportedEncodingException {
+        StringBuilder name = new StringBuilder("Foo#test");
+        for (char c = 0; c < 0x80; c++) {
+            name.append(c);
+        }
+        name.append("\u00e9 \u4e2d");
+        monitor.outcomeStarted(name.toString());
+        JsonObject expected = new JsonObject();
+        expected.addProperty("outcome", name.toString());
+        assertEquals("//00xx" + new Gson().toJson(expected) + "\n", bytes.toString("UTF-8"));
+    }
+
+    @Test
+    public void testOutcomeFinishedWithResources() {
+        monitor.outcomeFinished(Result.SUCCESS, 5, -1, new ResourceUsage(-3, 1, 2, -1, 7));
+        monitor.completedNormally(false);
+        assertEquals("//00xx{\"result\":\"SUCCESS\",\"wallTimeNanos\":5,\"resources\":"
+                + "{\"heapDeltaBytes\":-3,\"threadDelta\":1,\"gcCount\":2,\"allocatedBytes\":7}}\n"
+                + "//00xx{\"completedNormally\":false}\n", bytes.toString());
+    }
+
+    @Test
+    public void testHeartbeatCarriesCurrentOutcome() {
+        Map<Thread.State, Integer> threadStates = new EnumMap<>(Thread.State.class);
+        threadStates.put(Thread.State.RUNNABLE, 1);
+        threadStates.put(Thread.State.WAITING, 2);
+        monitor.outcomeStarted("Foo");
+        monitor.heartbeat(12, true, threadStates, "\"main\" WAITING\n");
+        monitor.outcomeFinished(Result.SUCCESS);
+        monitor.heartbeat(-1, false, threadStates, null);
+        assertEquals("//00xx{\"outcome\":\"Foo\"}\n"
+                + "//00xx{\"heartbeat\":{\"outcome\":\"Foo\",\"cpuTimeNanos\":12,\"idle\":true,"
+                + "\"threads\":{\"RUNNABLE\":1,\"WAITING\":2},"
+                + "\"threadDump\":\"\\\"main\\\" WAITING\\n\"}}\n"
+                + "//00xx{\"result\":\"SUCCESS\"}\n"
+                + "//00xx{\"heartbeat\":{\"idle\":false,"
+                + "\"threads\":{\"RUNNABLE\":1,\"WAITING\":2}}}\n", bytes.toString());
+    }
+
+    @Test
+    public void testCoalescedOutputWrittenBeforeEvents() throws IOException {
+        TargetMonitor coalescing = TargetMonitor.forOutputStream(bytes);
+        coalescing.output("a");
+        coalescing.output("b");
+        coalescing.outcomeStarted("Foo");
+        assertEquals("ab//00xx{\"outcome\":\"Foo\"}\n", bytes.toString());
+        coalescing.output("c");
+        coalescing.close();
+        assertEquals("ab//00xx{\"outcome\":\"Foo\"}\nc", bytes.toString());
+    }
+}
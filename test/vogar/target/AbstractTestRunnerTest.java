@@ -109,7 +109,10 @@ public abstract class AbstractTestRunnerTest {
                 @Override
                 public String apply(String input) {
                     // Remove stack trace from output.
-                    return input.replaceAll("\\t(at[^\\n]+|\\.\\.\\. [0-9]+ more)\\n", "");
+                    input = input.replaceAll("\\t(at[^\\n]+|\\.\\.\\. [0-9]+ more)\\n", "");
+                    // Remove the measurements, which vary from run to run, from the result.
+                    return input.replaceAll(
+                            "(//00xx\\{\"result\":\"[A-Z_]+\")[^\\n]*\\}\\n", "$1}\n");
                 }
             };
             this.ios = ios;
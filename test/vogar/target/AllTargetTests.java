@@ -28,10 +28,14 @@ import vogar.target.main.AllMainTests;
  */
 @SuiteClasses({
         AssertTest.class,
+        OrderedMonitorChannelsTest.class,
+        TestEnvironmentTest.class,
+        TestRunnerResumeTest.class,
         TestRunnerTest.class,
         AllCaliperTests.class,
         AllJUnitTests.class,
         AllMainTests.class,
+        WatchdogTest.class,
 })
 @RunWith(Suite.class)
 public class AllTargetTests {
@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package vogar.target;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import vogar.Result;
+import vogar.monitor.TargetMonitor;
+
+import static org.junit.Assert.assertEquals;
+
+@RunWith(JUnit4.class)
+public class OrderedMonitorChannelsTest {
+
+    private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    private final TargetMonitor monitor = TargetMonitor.forPrintStream(new PrintStream(bytes));
+
+    @Test
+    public void testLaterChannelsHeldBackUntilEarlierOnesFinish() {
+        OrderedMonitorChannels channels = new OrderedMonitorChannels(monitor, 3);
+        runOutcome(channels.get(2), "C");
+        runOutcome(channels.get(1), "B");
+        channels.get(0).outcomeStarted("A");
+        // The first channel writes straight through.
+        assertEquals(event("{\"outcome\":\"A\"}"), bytes.toString());
+
+        channels.finish(2, true);
+        channels.finish(1, true);
+        channels.get(0).output("a");
+        channels.get(0).outcomeFinished(Result.SUCCESS);
+        assertEquals(event("{\"outcome\":\"A\"}") + "a" + event("{\"result\":\"SUCCESS\"}"),
+                bytes.toString());
+
+        channels.finish(0, true);
+        assertEquals(expected("A", "B", "C"), bytes.toString());
+    }
+
+    @Test
+    public void testChannelWritesThroughOnceEarlierOnesFinish() {
+        OrderedMonitorChannels channels = new OrderedMonitorChannels(monitor, 2);
+        channels.get(1).outcomeStarted("B");
+        runOutcome(channels.get(0), "A");
+        channels.finish(0, true);
+        assertEquals(expected("A") + event("{\"outcome\":\"B\"}"), bytes.toString());
+
+        channels.get(1).output("b");
+        channels.get(1).outcomeFinished(Result.SUCCESS);
+        channels.finish(1, true);
+        assertEquals(expected("A", "B"), bytes.toString());
+    }
+
+    @Test
+    public void testAbnormalFinishDropsLaterChannels() {
+        OrderedMonitorChannels channels = new OrderedMonitorChannels(monitor, 3);
+        runOutcome(channels.get(1), "B");
+        channels.finish(1, true);
+        runOutcome(channels.get(0), "A");
+        channels.finish(0, false);
+        runOutcome(channels.get(2), "C");
+        channels.finish(2, true);
+        assertEquals(expected("A"), bytes.toString());
+    }
+
+    @Test
+    public void testConcurrentChannelsWrittenInSequence() throws InterruptedException {
+        final int count = 8;
+        final OrderedMonitorChannels channels = new OrderedMonitorChannels(monitor, count);
+        List<Thread> threads = new ArrayList<>();
+        List<String> names = new ArrayList<>();
+        // Start the later channels first, so that most have to be held back.
+        for (int i = count - 1; i >= 0; i--) {
+            final int index = i;
+            final String name = "T" + i;
+            names.add(0, name);
+            Thread thread = new Thread(new Runnable() {
+                @Override public void run() {
+                    for (int j = 0; j < 50; j++) {
+                        runOutcome(channels.get(index), name + "#" + j);
+                    }
+                    channels.finish(index, true);
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        StringBuilder expected = new StringBuilder();
+        for (String name : names) {
+            for (int j = 0; j < 50; j++) {
+                expected.append(expected(name + "#" + j));
+            }
+        }
+        assertEquals(expected.toString(), bytes.toString());
+    }
+
+    private static void runOutcome(TargetMonitor monitor, String name) {
+        monitor.outcomeStarted(name);
+        monitor.output(name.toLowerCase());
+        monitor.outcomeFinished(Result.SUCCESS);
+    }
+
+    /**
+     * Returns what {@link #runOutcome} writes for each of {@code names}.
+     */
+    private static String expected(String... names) {
+        StringBuilder result = new StringBuilder();
+        for (String name : names) {
+            result.append(event("{\"outcome\":\"" + name + "\"}"))
+                    .append(name.toLowerCase())
+                    .append(event("{\"result\":\"SUCCESS\"}"));
+        }
+        return result.toString();
+    }
+
+    private static String event(String json) {
+        return "//00xx" + json + "\n";
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package vogar.target;
+
+import java.util.Properties;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.prefs.BackingStoreException;
+import java.util.prefs.Preferences;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+@RunWith(JUnit4.class)
+public class TestEnvironmentTest {
+
+    private static final String PROPERTY = "vogar.TestEnvironmentTest";
+    private static final String NODE = "vogar-TestEnvironmentTest";
+
+    private Properties properties;
+
+    @Before
+    public void setUp() {
+        properties = (Properties) System.getProperties().clone();
+    }
+
+    @After
+    public void tearDown() throws BackingStoreException {
+        if (Preferences.userRoot().nodeExists(NODE)) {
+            Preferences.userRoot().node(NODE).removeNode();
+        }
+        System.setProperties(properties);
+    }
+
+    @Test
+    public void testCleanStateNotReset() {
+        TestEnvironment testEnvironment = new TestEnvironment(false);
+        // The first reset may initialize the default time zone, which sets
+        // user.timezone and so dirties the properties once.
+        testEnvironment.reset();
+        testEnvironment.reset();
+        Properties cleanProperties = System.getProperties();
+        Handler cleanRootHandler = rootHandler();
+
+        testEnvironment.reset();
+        assertSame(cleanProperties, System.getProperties());
+        assertSame(cleanRootHandler, rootHandler());
+    }
+
+    @Test
+    public void testDirtyStateReset() throws BackingStoreException {
+        TestEnvironment testEnvironment = new TestEnvironment(false);
+        testEnvironment.reset();
+        Handler cleanRootHandler = rootHandler();
+
+        System.setProperty(PROPERTY, "dirty");
+        // Keep a reference, as the log manager only holds loggers weakly.
+        Logger logger = Logger.getLogger(PROPERTY);
+        logger.setLevel(Level.FINEST);
+        Preferences.userRoot().node(NODE).put("key", "dirty");
+
+        testEnvironment.reset();
+        assertNull(System.getProperty(PROPERTY));
+        assertNull(logger.getLevel());
+        assertNotSame(cleanRootHandler, rootHandler());
+        assertFalse(Preferences.userRoot().nodeExists(NODE));
+    }
+
+    private static Handler rootHandler() {
+        Handler[] handlers = Logger.getLogger("").getHandlers();
+        assertEquals(1, handlers.length);
+        return handlers[0];
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package vogar.target;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import java.io.File;
+import java.io.IOException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import vogar.target.resume.BTest;
+import vogar.target.resume.CTest;
+
+/**
+ * Tests that {@link TestRunner} resumes from its journal. These run the
+ * classes of a package, so like {@link TestRunnerTest#testRunner_Mixture}
+ * they need the tests to be run from a JAR.
+ */
+@RunWith(JUnit4.class)
+public class TestRunnerResumeTest extends AbstractTestRunnerTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @TestRunnerProperties(testClassOrPackage = "vogar.target.resume")
+    @Test
+    public void testRunner_ResumeQuarantinesClassThatDiedLoading() throws Exception {
+        File journal = journal(
+                "class vogar.target.resume.ATest",
+                "outcome vogar.target.resume.ATest#testA",
+                "class vogar.target.resume.BTest");
+        TestRunner runner = testRunnerRule.createTestRunner(
+                "--journal", journal.getPath(), "--resume");
+        runner.run();
+
+        // ATest is skipped, and BTest is reported without being loaded again.
+        expectedResults()
+                .text("//00xx{\"outcome\":\"vogar.target.resume.BTest\"}\n"
+                        + "Quarantined vogar.target.resume.BTest: the VM died or timed out"
+                        + " while loading or initializing it, before any of its tests started\n"
+                        + "//00xx{\"result\":\"ERROR\"}\n")
+                .forTestClass(CTest.class)
+                .success("testC")
+                .completedNormally();
+    }
+
+    @TestRunnerProperties(testClassOrPackage = "vogar.target.resume")
+    @Test
+    public void testRunner_ResumeWithinClass() throws Exception {
+        File journal = journal(
+                "class vogar.target.resume.ATest",
+                "outcome vogar.target.resume.ATest#testA",
+                "class vogar.target.resume.BTest",
+                "outcome vogar.target.resume.BTest#testB1");
+        TestRunner runner = testRunnerRule.createTestRunner(
+                "--journal", journal.getPath(), "--resume",
+                "--skipPast", "vogar.target.resume.BTest#testB1");
+        runner.run();
+
+        expectedResults()
+                .forTestClass(BTest.class)
+                .success("testB2")
+                .forTestClass(CTest.class)
+                .success("testC")
+                .completedNormally();
+    }
+
+    private File journal(String... lines) throws IOException {
+        File file = temporaryFolder.newFile();
+        StringBuilder content = new StringBuilder();
+        for (String line : lines) {
+            content.append(line).append('\n');
+        }
+        Files.write(content, file, Charsets.UTF_8);
+        return file;
+    }
+}
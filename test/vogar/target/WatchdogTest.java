@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package vogar.target;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(JUnit4.class)
+public class WatchdogTest {
+
+    private static final long TIMEOUT_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+    private static final long GRACE_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final AtomicReference<StackTraceElement[]> reportedStack = new AtomicReference<>();
+    private final CountDownLatch reported = new CountDownLatch(1);
+
+    private final Watchdog.UnresponsiveHandler handler = new Watchdog.UnresponsiveHandler() {
+        @Override public void unresponsive(Thread thread, StackTraceElement[] stackTrace) {
+            reportedStack.set(stackTrace);
+            reported.countDown();
+        }
+    };
+
+    @Test
+    public void testInterruptedThreadThatStopsIsNotReported() throws Exception {
+        Watchdog.Deadline deadline =
+                Watchdog.getInstance().watch(TIMEOUT_NANOS, GRACE_NANOS, handler);
+        try {
+            Thread.sleep(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException expected) {
+        } finally {
+            deadline.cancel();
+        }
+
+        assertTrue(deadline.hasExpired());
+        assertFalse(reported.await(2 * GRACE_NANOS, TimeUnit.NANOSECONDS));
+        assertNull(reportedStack.get());
+    }
+
+    @Test
+    public void testThreadThatIgnoresInterruptIsReportedWithItsStack() throws Exception {
+        Watchdog.Deadline deadline =
+                Watchdog.getInstance().watch(TIMEOUT_NANOS, GRACE_NANOS, handler);
+        try {
+            ignoreInterruptsUntilReported();
+        } finally {
+            deadline.cancel();
+            Thread.interrupted();
+        }
+
+        assertTrue(deadline.hasExpired());
+        StackTraceElement[] stackTrace = reportedStack.get();
+        assertArrayEquals(deadline.getStackTrace(), stackTrace);
+        boolean found = false;
+        for (StackTraceElement element : stackTrace) {
+            found |= element.getMethodName().equals("ignoreInterruptsUntilReported");
+        }
+        assertTrue(found);
+    }
+
+    private void ignoreInterruptsUntilReported() {
+        while (true) {
+            try {
+                if (reported.await(10, TimeUnit.SECONDS)) {
+                    return;
+                }
+            } catch (InterruptedException ignored) {
+            }
+        }
+    }
+}
@@ -22,6 +22,9 @@ import org.junit.runners.JUnit4;
 import vogar.target.AbstractTestRunnerTest;
 import vogar.target.TestRunner;
 import vogar.target.TestRunnerProperties;
+import vogar.testing.InterceptOutputStreams.Stream;
+
+import static org.junit.Assert.assertTrue;
 
 /**
  * Tests for using TestRunner to run JUnit 4 classes.
@@ -221,6 +224,10 @@ public class TestRunnerJUnit4Test extends AbstractTestRunnerTest {
         expectedResults()
                 .failure("test", "java.util.concurrent.TimeoutException\n")
                 .aborted();
+
+        // The timeout is reported with the stack that the test was interrupted in.
+        String output = ios.contents(Stream.OUT);
+        assertTrue(output, output.contains(LongTest.class.getName() + ".test("));
     }
 
     @TestRunnerProperties(testClass = LongTest2.class)
@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package vogar.tasks;
+
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(JUnit4.class)
+public class StallDetectorTest {
+
+    private static final long START = 1000;
+
+    @Test
+    public void testIdleHeartbeatsPastTimeoutStall() {
+        StallDetector detector = new StallDetector(10);
+        detector.reset(START);
+        assertFalse(detector.heartbeat(seconds(5), true, "a.B#c", "{}", null));
+        assertFalse(detector.heartbeat(seconds(9), true, "a.B#c", "{}", null));
+        assertFalse(detector.hasStalled());
+
+        assertTrue(detector.heartbeat(seconds(12), true, "a.B#c", "{WAITING=1}",
+                "\"main\" WAITING\n"));
+        assertTrue(detector.hasStalled());
+        assertEquals("Stalled for 12s with no CPU progress or output in a.B#c\n"
+                + "threads: {WAITING=1}\n\n\"main\" WAITING\n", detector.getReport());
+
+        // A stall is only reported once per command.
+        assertFalse(detector.heartbeat(seconds(20), true, "a.B#c", "{}", null));
+        detector.reset(seconds(20));
+        assertFalse(detector.hasStalled());
+        assertNull(detector.getReport());
+    }
+
+    @Test
+    public void testProgressRestartsTheClock() {
+        StallDetector detector = new StallDetector(10);
+        detector.reset(START);
+        detector.progress(seconds(8));
+        assertFalse(detector.heartbeat(seconds(15), true, null, "{}", null));
+
+        // A busy heartbeat is progress too.
+        assertFalse(detector.heartbeat(seconds(17), false, null, "{}", null));
+        assertFalse(detector.heartbeat(seconds(26), true, null, "{}", null));
+        assertTrue(detector.heartbeat(seconds(27), true, null, "{}", null));
+        assertEquals("Stalled for 10s with no CPU progress or output\nthreads: {}",
+                detector.getReport());
+    }
+
+    @Test
+    public void testNoTimeoutNeverStalls() {
+        StallDetector detector = new StallDetector(0);
+        detector.reset(START);
+        assertFalse(detector.heartbeat(seconds(3600), true, null, "{}", null));
+        assertFalse(detector.hasStalled());
+    }
+
+    private static long seconds(long seconds) {
+        return START + TimeUnit.SECONDS.toNanos(seconds);
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package vogar.tasks;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import vogar.Result;
+import vogar.Vogar;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+@RunWith(JUnit4.class)
+public class TaskQueueTest {
+
+    private final List<String> executed = new ArrayList<>();
+
+    @Test
+    public void testCancelSkipsTasksButRunsCleanup() {
+        final TaskQueue queue = new TaskQueue(Vogar.console, 1);
+        final CountDownLatch cancelled = new CountDownLatch(1);
+        Task canceller = new Task("canceller") {
+            @Override protected Result execute() throws Exception {
+                record("canceller");
+                queue.cancel("testing");
+                // Running tasks are asked to stop.
+                return cancelled.await(10, TimeUnit.SECONDS)
+                        ? Result.UNSUPPORTED
+                        : Result.SUCCESS;
+            }
+
+            @Override protected void cancel() {
+                cancelled.countDown();
+            }
+        };
+        Task skipped = new RecordingTask("skipped", false).after(canceller);
+        Task blocked = new RecordingTask("blocked", false).afterSuccess(skipped);
+        Task cleanup = new RecordingTask("cleanup", true).after(skipped).after(blocked);
+        queue.enqueueAll(Arrays.asList(canceller, skipped, blocked, cleanup));
+        queue.runTasks();
+
+        // Tasks enqueued after the cancellation are skipped too.
+        Task late = new RecordingTask("late", false);
+        Task lateCleanup = new RecordingTask("late cleanup", true).after(late);
+        queue.enqueueAll(Arrays.asList(late, lateCleanup));
+        queue.runTasks();
+
+        assertEquals(Arrays.asList("canceller", "cleanup", "late cleanup"), executed);
+        assertEquals(Result.UNSUPPORTED, canceller.result);
+        assertEquals(Result.UNSUPPORTED, skipped.result);
+        assertEquals(Result.UNSUPPORTED, blocked.result);
+        assertEquals(Result.SUCCESS, cleanup.result);
+        assertEquals(Result.UNSUPPORTED, late.result);
+        assertEquals("testing", queue.getCancelReason());
+        assertFalse(queue.hasFailedTasks());
+    }
+
+    private synchronized void record(String name) {
+        executed.add(name);
+    }
+
+    private class RecordingTask extends Task {
+        private final boolean cleanup;
+
+        RecordingTask(String name, boolean cleanup) {
+            super(name);
+            this.cleanup = cleanup;
+        }
+
+        @Override public boolean isCleanup() {
+            return cleanup;
+        }
+
+        @Override protected Result execute() {
+            record(toString());
+            return Result.SUCCESS;
+        }
+    }
+}
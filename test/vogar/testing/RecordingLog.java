@@ -0,0 +1,43 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package vogar.testing;
+
+import java.util.ArrayList;
+import java.util.List;
+import vogar.Log;
+
+/**
+ * A {@link Log} that keeps the warnings it is given, for tests to check.
+ */
+public class RecordingLog implements Log {
+
+    private final List<String> warnings = new ArrayList<>();
+
+    @Override public void verbose(String s) {}
+
+    @Override public void info(String s) {}
+
+    @Override public void info(String s, Throwable exception) {}
+
+    @Override public synchronized void warn(String s) {
+        warnings.add(s);
+    }
+
+    public synchronized List<String> getWarnings() {
+        return new ArrayList<>(warnings);
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package vogar.util;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.ByteStreams;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.zip.GZIPInputStream;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+@RunWith(JUnit4.class)
+public class BoundedOutputBufferTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testWithinLimits() {
+        BoundedOutputBuffer buffer = new BoundedOutputBuffer(4, 4, null);
+        buffer.append("abc");
+        buffer.append("defgh");
+        buffer.close();
+        assertFalse(buffer.isTruncated());
+        assertNull(buffer.getSpillFile());
+        assertEquals("abcdefgh", buffer.toString());
+    }
+
+    @Test
+    public void testTruncatedAndSpilled() throws IOException {
+        File spillFile = new File(temporaryFolder.getRoot(), "output.txt.gz");
+        BoundedOutputBuffer buffer = new BoundedOutputBuffer(3, 4, spillFile);
+        buffer.append("abcde");
+        buffer.append("fghijkl");
+        buffer.append("mn");
+        buffer.close();
+
+        assertEquals(14, buffer.length());
+        assertEquals(spillFile, buffer.getSpillFile());
+        assertEquals("abc\n[vogar: 7 characters omitted; full output in " + spillFile + "]\n"
+                + "klmn", buffer.toString());
+
+        GZIPInputStream in = new GZIPInputStream(new FileInputStream(spillFile));
+        try {
+            assertEquals("abcdefghijklmn",
+                    new String(ByteStreams.toByteArray(in), Charsets.UTF_8));
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package vogar.util;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(JUnit4.class)
+public class MultiLiteralMatcherTest {
+
+    @Test
+    public void testOverlappingLiterals() {
+        MultiLiteralMatcher matcher = new MultiLiteralMatcher(Arrays.asList("abc", "bcd", "cde"));
+        assertEquals(bits(0, 1), matcher.findAll("xabcdx"));
+        assertEquals(bits(0, 1, 2), matcher.findAll("abcde"));
+    }
+
+    @Test
+    public void testNestedLiterals() {
+        MultiLiteralMatcher matcher = new MultiLiteralMatcher(
+                Arrays.asList("he", "she", "his", "hers", "e"));
+        assertEquals(bits(0, 1, 3, 4), matcher.findAll("ushers"));
+        assertEquals(bits(2), matcher.findAll("this"));
+    }
+
+    @Test
+    public void testLiteralAtEndOfText() {
+        MultiLiteralMatcher matcher = new MultiLiteralMatcher(Arrays.asList("Error", "rror!"));
+        assertEquals(bits(0), matcher.findAll("at the end: Error"));
+        assertEquals(bits(0, 1), matcher.findAll("Error!"));
+    }
+
+    @Test
+    public void testNoMatches() {
+        List<String> literals = Arrays.asList("abc", "abd");
+        assertTrue(new MultiLiteralMatcher(literals).findAll("ab ac bc").isEmpty());
+        assertTrue(new MultiLiteralMatcher(literals).findAll("").isEmpty());
+        assertTrue(new MultiLiteralMatcher(Collections.<String>emptyList())
+                .findAll("abc").isEmpty());
+    }
+
+    @Test
+    public void testAgreesWithIndexOf() {
+        List<String> literals = Arrays.asList("aa", "aab", "ab", "ba", "bab", "b", "abba");
+        MultiLiteralMatcher matcher = new MultiLiteralMatcher(literals);
+        for (String text : Arrays.asList("aab", "abab", "babba", "bbbb", "aaaa", "abbab")) {
+            BitSet expected = new BitSet();
+            for (int i = 0; i < literals.size(); i++) {
+                if (text.contains(literals.get(i))) {
+                    expected.set(i);
+                }
+            }
+            assertEquals(text, expected, matcher.findAll(text));
+        }
+    }
+
+    private static BitSet bits(int... indices) {
+        BitSet result = new BitSet();
+        for (int index : indices) {
+            result.set(index);
+        }
+        return result;
+    }
+}